@@ -23,8 +23,6 @@ package org.structr.agent;
 
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -38,26 +36,30 @@ import org.structr.core.graph.Tx;
 /**
  * Abstract base class for all agents.
  *
+ * An agent is a worker thread of the {@link AgentService}. All agents for
+ * the same task type share the queue of their worker pool and wait on it
+ * while there is nothing to do.
+ *
  *
  */
 public abstract class Agent<T extends NodeInterface> extends Thread implements StatusInfo {
 
 	public static final String AVERAGE_EXECUTION_TIME = "average_execution_time";
 	public static final String EXECUTION_STATUS       = "execution_status";
-	public static final String MAX_QUEUE_SIZE         = "max_queue_size";
+	public static final String QUEUE_SIZE             = "queue_size";
 	private static final Logger logger                = LoggerFactory.getLogger(Agent.class.getName());
 
 	//~--- fields ---------------------------------------------------------
 
 	private final AtomicBoolean acceptingTasks = new AtomicBoolean(true);
+	private final AtomicBoolean suspended      = new AtomicBoolean(false);
 	private AgentService agentService          = null;
+	private WorkerPool workerPool              = null;
 	private long averageExecutionTime          = 0;
+	private WorkerPool.QueuedTask queuedTask   = null;
 	private Task currentTask                   = null;
-	private long lastStartTime                 = 0;
-	private int maxAgents                      = 4;
-	private int maxQueueSize                   = 10;
-	private final AtomicBoolean suspended      = new AtomicBoolean(false);
-	private final Queue<Task<T>> taskQueue     = new ConcurrentLinkedQueue<>();
+	private boolean taskDoneDeferred           = false;
+	private boolean waiting                    = false;
 
 	//~--- methods --------------------------------------------------------
 
@@ -66,7 +68,7 @@ public abstract class Agent<T extends NodeInterface> extends Thread implements S
 
 		agentService.notifyAgentStart(this);
 
-		do {
+		while (true) {
 
 			while (suspended.get()) {
 
@@ -74,48 +76,79 @@ public abstract class Agent<T extends NodeInterface> extends Thread implements S
 
 			}
 
-			synchronized (taskQueue) {
+			final WorkerPool.QueuedTask next;
 
-				currentTask = taskQueue.poll();
+			synchronized (this) {
+
+				if (!acceptingTasks.get()) {
+					break;
+				}
 
+				waiting = true;
 			}
 
-			if (currentTask != null) {
+			try {
 
-				lastStartTime = System.nanoTime();
+				next = workerPool.next(this);
 
-				ReturnValue ret = null;
+			} catch (InterruptedException iex) {
 
-				// only execute process if Service layer is ready
-				// (and not shutting down right now)
-				if (Services.getInstance().isInitialized()) {
+				break;
 
-					if (createEnclosingTransaction()) {
+			} finally {
 
-						try (final Tx tx = StructrApp.getInstance().tx()) {
+				synchronized (this) {
+					waiting = false;
+				}
+			}
+
+			// idle for too long
+			if (next == null) {
+				break;
+			}
 
-							ret = processTask(currentTask);
-							tx.success();
+			currentTask      = next.getTask();
+			queuedTask       = next;
+			taskDoneDeferred = false;
 
-						} catch (Throwable t) {
+			final long startTime = System.nanoTime();
+			ReturnValue ret      = null;
+			boolean success      = false;
+
+			// only execute process if Service layer is ready
+			// (and not shutting down right now), the task stays
+			// in the journal otherwise
+			if (Services.getInstance().isInitialized()) {
+
+				if (createEnclosingTransaction()) {
+
+					try (final Tx tx = StructrApp.getInstance().tx()) {
+
+						ret = processTask(currentTask);
+						tx.success();
+
+						success = true;
+
+					} catch (Throwable t) {
+
+						// someone killed us or the task processing failed..
+						// Logger this!!
+						logger.error("Processing task {} failed. Maybe someone killed us?", currentTask.getType(), t);
+					}
 
-							// someone killed us or the task processing failed..
-							// Logger this!!
-							logger.error("Processing task {} failed. Maybe someone killed us?", currentTask.getType(), t);
-						}
+				} else {
 
-					} else {
+					try {
 
-						try {
+						ret = processTask(currentTask);
 
-							ret = processTask(currentTask);
+						success = true;
 
-						} catch (Throwable t) {
+					} catch (Throwable t) {
 
-							// someone killed us or the task processing failed..
-							// Logger this!!
-							logger.error("Processing task {} failed. Maybe someone killed us?", currentTask.getType(), t);
-						}
+						// someone killed us or the task processing failed..
+						// Logger this!!
+						logger.error("Processing task {} failed. Maybe someone killed us?", currentTask.getType(), t);
 					}
 				}
 
@@ -138,19 +171,22 @@ public abstract class Agent<T extends NodeInterface> extends Thread implements S
 					}
 				}
 
-				long endTime = System.nanoTime();
+				if (!taskDoneDeferred) {
+					agentService.notifyTaskDone(next);
+				}
+			}
 
-				// calc. average execution time
-				averageExecutionTime += endTime;
-				averageExecutionTime /= 2;
+			workerPool.finished(next, startTime, success);
 
-			} else {
+			// calc. average execution time
+			averageExecutionTime += System.nanoTime() - startTime;
+			averageExecutionTime /= 2;
 
-				// queue is empty, quit.
-				acceptingTasks.set(false);
-			}
+			currentTask = null;
+			queuedTask  = null;
+		}
 
-		} while (acceptingTasks.get());
+		workerPool.removeWorker(this);
 
 		// call beforeShutdown to allow agents to clean up
 		beforeShutdown();
@@ -160,13 +196,9 @@ public abstract class Agent<T extends NodeInterface> extends Thread implements S
 	public final boolean assignTask(final Task<T> task) {
 
 		// TODO: do type check here
-		if (canHandleMore() && acceptingTasks.get()) {
-
-			synchronized (taskQueue) {
+		if (acceptingTasks.get() && agentService != null) {
 
-				taskQueue.add(task);
-
-			}
+			agentService.processTask(task);
 
 			return (true);
 
@@ -180,24 +212,35 @@ public abstract class Agent<T extends NodeInterface> extends Thread implements S
 		// stop accepting tasks
 		acceptingTasks.set(false);
 
-		// clear queue
-		taskQueue.clear();
-
 		// interrupt running process..
 		// not sure if this works... see Thread.interrupt()'s description!
 		// may not work if the processTask method itself catches the interrupt..
 		this.interrupt();
 	}
 
-	public final void suspendAgent() {
+	/**
+	 * Stops this agent after the current task, or immediately if the
+	 * agent is waiting for a task.
+	 */
+	public final void stopAgent() {
 
-		acceptingTasks.set(false);
+		synchronized (this) {
+
+			acceptingTasks.set(false);
+
+			if (waiting) {
+				this.interrupt();
+			}
+		}
+
+		suspended.set(false);
+	}
+
+	public final void suspendAgent() {
 		suspended.set(true);
 	}
 
 	public final void resumeAgent() {
-
-		acceptingTasks.set(true);
 		suspended.set(false);
 	}
 
@@ -206,50 +249,27 @@ public abstract class Agent<T extends NodeInterface> extends Thread implements S
 		// override me
 	}
 
-	// </editor-fold>
-
-	// <editor-fold defaultstate="collapsed" desc="private methods">
-	private boolean canHandleMore() {
-
-//              return (taskQueue.isEmpty());
-		int size = 0;
-
-		synchronized (taskQueue) {
-
-			// FIXME: size may not be a constant time operation! slow?
-			size = taskQueue.size();
-		}
-
-		// queue is empty, assume new agent
-		if (size == 0) {
-
-			return (true);
-
-		}
-
-		long actualExecutionTime = System.nanoTime() - lastStartTime;
-
-		// calculate thresholds for queue size adaption
-		long upperThreshold = averageExecutionTime + (averageExecutionTime / 2);
-		long lowerThreshold = averageExecutionTime - (averageExecutionTime / 2);
-
-		if ((actualExecutionTime > upperThreshold) && (maxQueueSize > 2)) {
-
-			// FIXME
-			maxQueueSize -= 2;
+	/**
+	 * Keeps the current task in the task journal after processTask()
+	 * returns, f.e. because its results are written asynchronously. The
+	 * task is finished when the returned callback is run, which must
+	 * happen at most once.
+	 *
+	 * @return the callback that finishes the current task
+	 */
+	protected final Runnable deferTaskDone() {
 
-			// do not take the next task
-			return (false);
-		} else if ((actualExecutionTime < lowerThreshold) && (maxQueueSize < 200)) {
+		final WorkerPool.QueuedTask task = queuedTask;
+		final AtomicBoolean done         = new AtomicBoolean(false);
 
-			// FIXME
-			maxQueueSize += 2;
+		taskDoneDeferred = true;
 
-			// can take the next task
-			return (true);
-		}
+		return () -> {
 
-		return (size < maxQueueSize);
+			if (task != null && done.compareAndSet(false, true)) {
+				agentService.notifyTaskDone(task);
+			}
+		};
 	}
 
 	// </editor-fold>
@@ -268,27 +288,34 @@ public abstract class Agent<T extends NodeInterface> extends Thread implements S
 		return (currentTask);
 	}
 
+	/**
+	 * Returns the tasks waiting in the queue this agent takes its tasks
+	 * from. The queue is shared with all other agents of the same type.
+	 *
+	 * @return tasks
+	 */
 	public final List<Task<T>> getTaskQueue() {
 
 		List<Task<T>> ret = new LinkedList<Task<T>>();
 
-		ret.addAll(taskQueue);
+		if (workerPool != null) {
+
+			for (final Task task : workerPool.getQueuedTasks()) {
+				ret.add(task);
+			}
+		}
 
 		return (ret);
 	}
 
-	public final int getMaxQueueSize() {
-		return (maxQueueSize);
+	public final int getQueueSize() {
+		return workerPool != null ? workerPool.size() : 0;
 	}
 
 	public final long getAverageExecutionTime() {
 		return (averageExecutionTime);
 	}
 
-	public int getMaxAgents() {
-		return (maxAgents);
-	}
-
 	// ----- interface StatusInfo -----
 	@Override
 	public Object getStatusProperty(String key) {
@@ -297,9 +324,9 @@ public abstract class Agent<T extends NodeInterface> extends Thread implements S
 
 			return (getAverageExecutionTime());
 
-		} else if (key.equals(MAX_QUEUE_SIZE)) {
+		} else if (key.equals(QUEUE_SIZE)) {
 
-			return (getMaxQueueSize());
+			return (getQueueSize());
 
 		} else if (key.equals(EXECUTION_STATUS)) {
 
@@ -337,9 +364,10 @@ public abstract class Agent<T extends NodeInterface> extends Thread implements S
 		this.setDaemon(false);
 
 		this.agentService = service;
+	}
 
-		// initialize lastStartTime
-		lastStartTime = System.nanoTime();
+	final void setWorkerPool(final WorkerPool workerPool) {
+		this.workerPool = workerPool;
 	}
 
 	// </editor-fold>
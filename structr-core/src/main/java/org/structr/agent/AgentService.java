@@ -18,24 +18,30 @@
  */
 package org.structr.agent;
 
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
-import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.structr.api.service.Command;
 import org.structr.api.service.RunnableService;
 import org.structr.api.service.StructrServices;
+import org.structr.api.util.Statistics;
 import org.structr.core.Services;
+import org.structr.core.app.App;
+import org.structr.core.app.StructrApp;
+import org.structr.core.graph.Tx;
 import org.structr.schema.ConfigurationProvider;
 
 //~--- classes ----------------------------------------------------------------
@@ -43,41 +49,62 @@ import org.structr.schema.ConfigurationProvider;
 /**
  * The agent service main class.
  *
+ * Tasks are handed to a worker pool per task type whose agents wait for
+ * new tasks instead of polling. The number of agents per task type can be
+ * configured with agent.workers, or with &lt;AgentClass&gt;.workers for a
+ * single agent type. Submitted tasks are written to a journal file and
+ * restored after a restart if they were not processed before.
+ *
  *
  */
-public class AgentService extends Thread implements RunnableService {
+public class AgentService implements RunnableService {
 
 	private static final Logger logger = LoggerFactory.getLogger(AgentService.class.getName());
 
 	//~--- fields ---------------------------------------------------------
 
-	private final int maxAgents                          = 4;    // TODO: make configurable
 	private final Map<String, List<Agent>> runningAgents = new ConcurrentHashMap<>(10, 0.9f, 8);
 	private final Map<String, Class> agentClassCache     = new ConcurrentHashMap<>(10, 0.9f, 8);
-	private final Queue<Task> taskQueue                  = new ConcurrentLinkedQueue<>();
+	private final Map<String, WorkerPool> workerPools    = new ConcurrentHashMap<>(10, 0.9f, 8);
+	private final List<WorkerPool.QueuedTask> pending    = new LinkedList<>();
+	private final AtomicLong sequence                    = new AtomicLong();
+	private List<TaskJournal.Entry> journalEntries       = null;
 	private Set<Class> supportedCommands                 = null;
+	private volatile TaskJournal journal                 = null;
+	private Properties config                            = null;
+	private int defaultWorkers                           = 4;
+	private boolean active                               = false;
 	private boolean run                                  = false;
 
 	//~--- constructors ---------------------------------------------------
 
 	public AgentService() {
 
-		super("AgentService");
 		supportedCommands = new LinkedHashSet<>();
 		supportedCommands.add(ProcessTaskCommand.class);
-
-		super.setDaemon(true);
 	}
 
 	//~--- methods --------------------------------------------------------
 
 	public void processTask(Task task) {
 
-		synchronized (taskQueue) {
+		final long id                          = sequence.incrementAndGet();
+		final boolean persistent               = journal != null && journal.add(id, task);
+		final WorkerPool.QueuedTask queuedTask = new WorkerPool.QueuedTask(id, task, persistent);
 
-			taskQueue.add(task);
-			logger.debug("Task {} added to task queue", task);
+		synchronized (pending) {
+
+			// tasks are held back until the service layer is initialized
+			if (!active) {
+
+				pending.add(queuedTask);
+				logger.debug("Task {} added to pending tasks", task);
+
+				return;
+			}
 		}
+
+		dispatch(queuedTask);
 	}
 
 	public Agent findAgentForTask(Task task) {
@@ -88,7 +115,7 @@ public class AgentService extends Thread implements RunnableService {
 
 			for (Agent agent : agents) {
 
-				if (agent.getTaskQueue().contains(task)) {
+				if (task.equals(agent.getCurrentTask())) {
 					return (agent);
 				}
 			}
@@ -97,24 +124,6 @@ public class AgentService extends Thread implements RunnableService {
 		return (null);
 	}
 
-	@Override
-	public void run() {
-
-		logger.info("AgentService started");
-
-		while (run) {
-
-			Task nextTask = taskQueue.poll();
-			if (nextTask != null) {
-
-				assignNextAgentForTask(nextTask);
-			}
-
-			// let others act
-			try { Thread.sleep(10); } catch(Throwable ignore) {}
-		}
-	}
-
 	public void notifyAgentStart(Agent agent) {
 
 		List<Agent> agents = getRunningAgentsForTask(agent.getSupportedTaskType());
@@ -133,6 +142,13 @@ public class AgentService extends Thread implements RunnableService {
 		}
 	}
 
+	void notifyTaskDone(final WorkerPool.QueuedTask task) {
+
+		if (task.isPersistent() && journal != null) {
+			journal.done(task.getId());
+		}
+	}
+
 	public Map<String, Class<? extends Agent>> getAgents() {
 
 		final ConfigurationProvider configuration = Services.getInstance().getConfigurationProvider();
@@ -152,6 +168,23 @@ public class AgentService extends Thread implements RunnableService {
 
 	@Override
 	public void initialize(final StructrServices services, final Properties config) throws ClassNotFoundException, InstantiationException, IllegalAccessException {
+
+		this.config         = config;
+		this.defaultWorkers = Services.parseInt(config.getProperty(Services.AGENT_WORKERS), 4);
+
+		// the journal must be open before the first task is submitted and
+		// before activate() restores the entries, which may happen right away
+		openJournal();
+
+		// restore tasks after all other services are available
+		if (services instanceof Services && ((Services)services).isInitialized()) {
+
+			activate();
+
+		} else {
+
+			services.registerInitializationCallback(this::activate);
+		}
 	}
 
 	@Override
@@ -163,13 +196,25 @@ public class AgentService extends Thread implements RunnableService {
 	@Override
 	public void startService() throws Exception {
 
+		Statistics.register("agents", this::getStatistics);
+
 		run = true;
-		this.start();
+
+		logger.info("AgentService started");
 	}
 
 	@Override
 	public void stopService() {
+
 		run = false;
+
+		for (final WorkerPool pool : workerPools.values()) {
+			pool.stop();
+		}
+
+		if (journal != null) {
+			journal.close();
+		}
 	}
 
 	@Override
@@ -177,92 +222,153 @@ public class AgentService extends Thread implements RunnableService {
 		return (true);
 	}
 
+	@Override
+	public String getName() {
+		return AgentService.class.getSimpleName();
+	}
+
 	// </editor-fold>
 
 	// <editor-fold defaultstate="collapsed" desc="private methods">
-	private void assignNextAgentForTask(Task nextTask) {
-
-		Class taskClass    = nextTask.getClass();
-		List<Agent> agents = getRunningAgentsForTask(taskClass);
+	private void openJournal() {
 
-		// need to synchronize on agents
-		synchronized (agents) {
+		final String basePath    = config.getProperty(Services.BASE_PATH, "");
+		final String journalPath = config.getProperty(Services.AGENT_JOURNAL_PATH, Paths.get(basePath, "tasks.journal").toString());
 
-			// find next free agent (agents should be sorted by load, so one
-			// of the first should do..
-			for (Agent agent : agents) {
+		try {
 
-				if (agent.assignTask(nextTask)) {
+			final TaskJournal taskJournal = new TaskJournal(Paths.get(journalPath));
 
-					// ok, task is assigned
-					logger.debug("Task assigned to agent {}", agent.getName());
+			journalEntries = taskJournal.open();
 
-					return;
-				}
+			for (final TaskJournal.Entry entry : journalEntries) {
+				sequence.set(Math.max(sequence.get(), entry.getId()));
 			}
+
+			journal = taskJournal;
+
+		} catch (IOException ioex) {
+
+			logger.warn("Unable to open task journal {}, queued tasks will not be persisted: {}", journalPath, ioex.getMessage());
+			journal = null;
 		}
+	}
+
+	/**
+	 * Restores the tasks from the journal and dispatches them together
+	 * with all tasks that were submitted during startup.
+	 */
+	private void activate() {
+
+		final List<WorkerPool.QueuedTask> tasks = new LinkedList<>();
+
+		if (journalEntries != null && !journalEntries.isEmpty()) {
+
+			final App app = StructrApp.getInstance();
 
-		// FIXME: find better solution for hard limit here!
-		if (agents.size() < maxAgents) {
+			try (final Tx tx = app.tx()) {
 
-			// if we get here, task was not assigned to any agent, need to
-			// create a new one.
-			Agent agent = createAgent(nextTask);
+				for (final TaskJournal.Entry entry : journalEntries) {
 
-			if ((agent != null) && agent.assignTask(nextTask)) {
-				agent.start();
-			} else {
+					final Task task = entry.restore(app);
+					if (task != null) {
 
-				// re-add task..
-				synchronized (taskQueue) {
-					taskQueue.add(nextTask);
+						tasks.add(new WorkerPool.QueuedTask(entry.getId(), task, true));
+
+					} else {
+
+						journal.done(entry.getId());
+					}
 				}
+
+				tx.success();
+
+			} catch (Throwable t) {
+
+				logger.warn("Unable to restore queued tasks: {}", t.getMessage());
 			}
+
+			logger.info("Restored {} of {} queued tasks", tasks.size(), journalEntries.size());
+
+			journalEntries = null;
+		}
+
+		synchronized (pending) {
+
+			tasks.addAll(pending);
+			pending.clear();
+
+			active = true;
+		}
+
+		for (final WorkerPool.QueuedTask task : tasks) {
+			dispatch(task);
+		}
+	}
+
+	private void dispatch(final WorkerPool.QueuedTask queuedTask) {
+
+		final Task task       = queuedTask.getTask();
+		final WorkerPool pool = getWorkerPool(task.getClass());
+
+		if (pool != null) {
+
+			pool.submit(queuedTask);
+			logger.debug("Task {} added to task queue", task);
+
 		} else {
 
-			logger.debug("Overall agents limit reached, re-queueing task");
+			logger.warn("No agent found for task {}, ignoring.", task.getClass().getName());
+			notifyTaskDone(queuedTask);
+		}
+	}
+
+	private synchronized WorkerPool getWorkerPool(final Class taskClass) {
+
+		WorkerPool pool = workerPools.get(taskClass.getName());
+		if (pool == null) {
 
-			// re-add task..
-			synchronized (taskQueue) {
-				taskQueue.add(nextTask);
+			final Class agentClass = lookupAgentClass(taskClass);
+			if (agentClass != null) {
+
+				final int workers = Services.parseInt(config.getProperty(agentClass.getSimpleName() + ".workers"), defaultWorkers);
+
+				pool = new WorkerPool(taskClass.getName(), workers, () -> createAgent(agentClass));
+				workerPools.put(taskClass.getName(), pool);
 			}
 		}
+
+		return pool;
 	}
 
 	/**
-	 * Creates a new agent for the given Task. Note that the agent must be
+	 * Creates a new agent of the given type. Note that the agent must be
 	 * started manually after creation.
 	 *
-	 * @param forTask
-	 * @return a new agent for the given task
+	 * @param agentClass
+	 * @return a new agent
 	 */
-	private Agent createAgent(Task forTask) {
+	private Agent createAgent(final Class agentClass) {
 
 		Agent agent = null;
 
 		try {
 
-			agent = lookupAgent(forTask);
+			agent = (Agent) agentClass.newInstance();
 
-			if (agent != null) {
+			// register us in agent..
+			agent.setAgentService(this);
 
-				// register us in agent..
-				agent.setAgentService(this);
-			}
-
-		} catch (Exception ex) {
+		} catch (Throwable t) {
 
-			// TODO: handle exception etc..
+			logger.warn("Unable to create agent {}: {}", agentClass.getName(), t.getMessage());
 		}
 
 		return (agent);
 	}
 
-	private Agent lookupAgent(Task task) {
+	private Class lookupAgentClass(final Class taskClass) {
 
-		// FIXME: superuser security context
-		Class taskClass  = task.getClass();
-		Agent agent      = null;
 		Class agentClass = agentClassCache.get(taskClass.getName());
 
 		// cache miss
@@ -292,15 +398,22 @@ public class AgentService extends Thread implements RunnableService {
 			}
 		}
 
-		if (agentClass != null) {
+		return agentClass;
+	}
 
-			try {
-				agent = (Agent) agentClass.newInstance();
+	private Map<String, Object> getStatistics() {
 
-			} catch (Throwable ignore) {}
+		final Map<String, Object> data = new LinkedHashMap<>();
+
+		synchronized (pending) {
+			data.put("pending", pending.size());
 		}
 
-		return (agent);
+		for (final WorkerPool pool : workerPools.values()) {
+			data.put(pool.getTaskType(), pool.getStatistics());
+		}
+
+		return data;
 	}
 
 	// </editor-fold>
@@ -312,7 +425,21 @@ public class AgentService extends Thread implements RunnableService {
 	 * @return tasks
 	 */
 	public Collection<Task> getTaskQueue() {
-		return (taskQueue);
+
+		final List<Task> tasks = new LinkedList<>();
+
+		synchronized (pending) {
+
+			for (final WorkerPool.QueuedTask task : pending) {
+				tasks.add(task.getTask());
+			}
+		}
+
+		for (final WorkerPool pool : workerPools.values()) {
+			tasks.addAll(pool.getQueuedTasks());
+		}
+
+		return (tasks);
 	}
 
 	/**
@@ -0,0 +1,341 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.agent;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.app.App;
+import org.structr.core.entity.Principal;
+import org.structr.core.graph.NodeInterface;
+
+/**
+ * Append-only file of queued tasks.
+ *
+ * Every submitted {@link AbstractTask} is appended as an "add" record
+ * with the ids of its nodes and user, and a "done" record is appended
+ * when it was processed. Tasks without a "done" record are restored when
+ * the journal is opened again, and the file is rewritten so that it only
+ * contains those. Other task types are not persisted, they either carry
+ * no state or are recreated by their source (e.g. the CronService).
+ */
+public class TaskJournal {
+
+	private static final Logger logger = LoggerFactory.getLogger(TaskJournal.class.getName());
+	private static final int COMPACT_THRESHOLD = 10000;
+
+	private final Path path;
+	private BufferedWriter writer = null;
+	private int pending           = 0;
+	private int records           = 0;
+
+	public TaskJournal(final Path path) {
+		this.path = path;
+	}
+
+	/**
+	 * Opens the journal for writing and returns the entries of all tasks
+	 * that were not completed when the journal was closed.
+	 *
+	 * @return the open entries, in order of submission
+	 * @throws IOException
+	 */
+	public synchronized List<Entry> open() throws IOException {
+
+		final Map<Long, Entry> entries = new LinkedHashMap<>();
+
+		if (Files.exists(path)) {
+
+			try (final BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+
+				String line = null;
+
+				while ((line = reader.readLine()) != null) {
+
+					try {
+
+						final String[] parts = line.split("\t", -1);
+
+						switch (parts[0]) {
+
+							case "A":
+								final Entry entry = new Entry(parts);
+								entries.put(entry.id, entry);
+								break;
+
+							case "D":
+								entries.remove(Long.valueOf(parts[1]));
+								break;
+						}
+
+					} catch (Throwable t) {
+
+						// an incomplete last line after a crash
+						logger.warn("Ignoring invalid task journal record {}", line);
+					}
+				}
+			}
+
+		} else if (path.getParent() != null) {
+
+			Files.createDirectories(path.getParent());
+		}
+
+		// rewrite journal with the open entries only
+		final Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+
+		try (final BufferedWriter compacted = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+
+			for (final Entry entry : entries.values()) {
+
+				compacted.write(entry.toString());
+				compacted.newLine();
+			}
+		}
+
+		Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+
+		writer  = Files.newBufferedWriter(path, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+		pending = entries.size();
+		records = entries.size();
+
+		return new ArrayList<>(entries.values());
+	}
+
+	/**
+	 * Appends an "add" record for the given task if it can be persisted.
+	 *
+	 * @param id the id of the task
+	 * @param task the task
+	 * @return whether a record was written
+	 */
+	public boolean add(final long id, final Task task) {
+
+		if (task instanceof AbstractTask) {
+
+			final List<String> nodeIds = new ArrayList<>();
+			final Principal user       = task.getUser();
+
+			for (final Object node : task.getNodes()) {
+
+				if (node instanceof NodeInterface) {
+					nodeIds.add(((NodeInterface)node).getUuid());
+				}
+			}
+
+			return write(new Entry(id, task.getClass().getName(), task.priority(), user != null ? user.getUuid() : null, nodeIds).toString(), true);
+		}
+
+		return false;
+	}
+
+	public void done(final long id) {
+		write("D\t" + id, false);
+	}
+
+	public synchronized void close() {
+
+		if (writer != null) {
+
+			try {
+
+				writer.close();
+
+			} catch (IOException ioex) {
+
+				logger.warn("Unable to close task journal {}: {}", path, ioex.getMessage());
+			}
+
+			writer = null;
+		}
+	}
+
+	// ----- private methods -----
+	private synchronized boolean write(final String record, final boolean add) {
+
+		if (writer == null) {
+			return false;
+		}
+
+		try {
+
+			// truncate the file when all tasks are done
+			if (!add && --pending == 0 && records >= COMPACT_THRESHOLD) {
+
+				writer.close();
+
+				writer  = Files.newBufferedWriter(path, StandardCharsets.UTF_8, StandardOpenOption.TRUNCATE_EXISTING);
+				records = 0;
+
+				return true;
+			}
+
+			writer.write(record);
+			writer.newLine();
+			writer.flush();
+
+			if (add) {
+				pending++;
+			}
+
+			records++;
+
+			return true;
+
+		} catch (IOException ioex) {
+
+			logger.warn("Unable to write to task journal {}: {}", path, ioex.getMessage());
+		}
+
+		return false;
+	}
+
+	// ----- nested classes -----
+	/**
+	 * A persisted task.
+	 */
+	public static class Entry {
+
+		private List<String> nodeIds = null;
+		private String taskClass     = null;
+		private String userId        = null;
+		private int priority         = 0;
+		private long id              = 0L;
+
+		private Entry(final long id, final String taskClass, final int priority, final String userId, final List<String> nodeIds) {
+
+			this.id        = id;
+			this.taskClass = taskClass;
+			this.priority  = priority;
+			this.userId    = userId;
+			this.nodeIds   = nodeIds;
+		}
+
+		private Entry(final String[] parts) {
+
+			this(Long.valueOf(parts[1]), parts[2], Integer.valueOf(parts[3]), StringUtils.defaultIfEmpty(parts[4], null), new ArrayList<>());
+
+			if (StringUtils.isNotEmpty(parts[5])) {
+
+				for (final String nodeId : parts[5].split(",")) {
+					nodeIds.add(nodeId);
+				}
+			}
+		}
+
+		public long getId() {
+			return id;
+		}
+
+		/**
+		 * Recreates the task of this entry. The task class must have a
+		 * public constructor that takes the first node, or none at all.
+		 *
+		 * @param app
+		 * @return the task, or null if the task could not be recreated
+		 * @throws FrameworkException
+		 */
+		public Task restore(final App app) throws FrameworkException {
+
+			final List<NodeInterface> nodes = new ArrayList<>();
+
+			for (final String nodeId : nodeIds) {
+
+				final NodeInterface node = app.getNodeById(nodeId);
+				if (node != null) {
+
+					nodes.add(node);
+				}
+			}
+
+			// all nodes of this task have been deleted
+			if (nodes.isEmpty() && !nodeIds.isEmpty()) {
+				return null;
+			}
+
+			try {
+
+				final AbstractTask task = instantiate(Class.forName(taskClass), nodes);
+				if (task != null) {
+
+					for (int i=1; i<nodes.size(); i++) {
+						task.addNode(nodes.get(i));
+					}
+
+					if (userId != null) {
+						task.setUser(app.get(Principal.class, userId));
+					}
+
+					task.setPriority(priority);
+				}
+
+				return task;
+
+			} catch (Throwable t) {
+
+				logger.warn("Unable to restore task {}: {}", taskClass, t.getMessage());
+			}
+
+			return null;
+		}
+
+		@Override
+		public String toString() {
+			return "A\t" + id + "\t" + taskClass + "\t" + priority + "\t" + StringUtils.defaultString(userId) + "\t" + StringUtils.join(nodeIds, ",");
+		}
+
+		// ----- private methods -----
+		private AbstractTask instantiate(final Class type, final Collection<NodeInterface> nodes) throws ReflectiveOperationException {
+
+			final NodeInterface first = nodes.isEmpty() ? null : nodes.iterator().next();
+
+			for (final Constructor constructor : type.getConstructors()) {
+
+				final Class[] parameterTypes = constructor.getParameterTypes();
+
+				if (first != null && parameterTypes.length == 1 && parameterTypes[0].isInstance(first)) {
+					return (AbstractTask)constructor.newInstance(first);
+				}
+
+				if (first == null && parameterTypes.length == 0) {
+					return (AbstractTask)constructor.newInstance();
+				}
+			}
+
+			logger.warn("Unable to restore task {}, no suitable constructor found.", type.getName());
+
+			return null;
+		}
+	}
+}
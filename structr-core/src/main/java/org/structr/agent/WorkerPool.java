@@ -0,0 +1,259 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.agent;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * The queue and the worker agents of a single task type.
+ *
+ * Tasks are ordered by priority and, within the same priority, by the
+ * order in which they were submitted. Workers are started on demand up
+ * to the configured maximum, wait on the queue while it is empty and
+ * stop after being idle for a while.
+ */
+class WorkerPool {
+
+	private static final long KEEP_ALIVE_SECONDS          = 60L;
+
+	private final PriorityBlockingQueue<QueuedTask> queue = new PriorityBlockingQueue<>();
+	private final List<Agent> workers                     = new LinkedList<>();
+	private final AtomicLong submitted                    = new AtomicLong();
+	private final AtomicLong completed                    = new AtomicLong();
+	private final AtomicLong failed                       = new AtomicLong();
+	private final AtomicLong latency                      = new AtomicLong();
+	private final AtomicLong executionTime                = new AtomicLong();
+	private final long created                            = System.nanoTime();
+	private final Supplier<Agent> factory;
+	private final String taskType;
+	private final int maxWorkers;
+	private boolean stopped                               = false;
+	private int idle                                      = 0;
+
+	public WorkerPool(final String taskType, final int maxWorkers, final Supplier<Agent> factory) {
+
+		this.taskType   = taskType;
+		this.maxWorkers = Math.max(1, maxWorkers);
+		this.factory    = factory;
+	}
+
+	public String getTaskType() {
+		return taskType;
+	}
+
+	public synchronized void submit(final QueuedTask task) {
+
+		submitted.incrementAndGet();
+		queue.add(task);
+
+		// start a new worker if the waiting ones can't take all tasks
+		if (!stopped && idle < queue.size() && workers.size() < maxWorkers) {
+
+			final Agent agent = factory.get();
+			if (agent != null) {
+
+				agent.setWorkerPool(this);
+				workers.add(agent);
+
+				agent.start();
+			}
+		}
+	}
+
+	/**
+	 * Waits for the next task. Returns null if the worker was idle for
+	 * too long and has been removed from this pool.
+	 *
+	 * @param worker the worker
+	 * @return the next task, or null
+	 * @throws InterruptedException
+	 */
+	public QueuedTask next(final Agent worker) throws InterruptedException {
+
+		while (true) {
+
+			QueuedTask task = null;
+
+			synchronized (this) {
+				idle++;
+			}
+
+			try {
+
+				task = queue.poll(KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+
+			} finally {
+
+				synchronized (this) {
+
+					idle--;
+
+					if (task == null && queue.isEmpty()) {
+
+						workers.remove(worker);
+					}
+				}
+			}
+
+			if (task != null) {
+				return task;
+			}
+
+			synchronized (this) {
+
+				if (!workers.contains(worker)) {
+					return null;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Records the outcome of a task that was taken from this pool.
+	 *
+	 * @param task the task
+	 * @param started the time the task was taken from the queue, in nanoseconds
+	 * @param success whether the task was processed without an error
+	 */
+	public void finished(final QueuedTask task, final long started, final boolean success) {
+
+		latency.addAndGet(started - task.getEnqueued());
+		executionTime.addAndGet(System.nanoTime() - started);
+
+		if (success) {
+
+			completed.incrementAndGet();
+
+		} else {
+
+			failed.incrementAndGet();
+		}
+	}
+
+	public synchronized void removeWorker(final Agent agent) {
+		workers.remove(agent);
+	}
+
+	public synchronized List<Agent> getWorkers() {
+		return new LinkedList<>(workers);
+	}
+
+	public List<Task> getQueuedTasks() {
+
+		final List<Task> tasks = new LinkedList<>();
+
+		for (final QueuedTask task : queue) {
+			tasks.add(task.getTask());
+		}
+
+		return tasks;
+	}
+
+	public int size() {
+		return queue.size();
+	}
+
+	public synchronized void stop() {
+
+		stopped = true;
+
+		for (final Agent worker : workers) {
+			worker.stopAgent();
+		}
+	}
+
+	public Map<String, Object> getStatistics() {
+
+		final Map<String, Object> data = new LinkedHashMap<>();
+		final long done                = completed.get() + failed.get();
+		final long seconds             = Math.max(1L, TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - created));
+
+		synchronized (this) {
+
+			data.put("workers", workers.size());
+			data.put("maxWorkers", maxWorkers);
+		}
+
+		data.put("queued",          queue.size());
+		data.put("submitted",       submitted.get());
+		data.put("completed",       completed.get());
+		data.put("failed",          failed.get());
+		data.put("avgLatencyMs",    done > 0 ? TimeUnit.NANOSECONDS.toMillis(latency.get() / done) : 0L);
+		data.put("avgExecutionMs",  done > 0 ? TimeUnit.NANOSECONDS.toMillis(executionTime.get() / done) : 0L);
+		data.put("tasksPerSecond",  (double)done / seconds);
+
+		return data;
+	}
+
+	// ----- nested classes -----
+	/**
+	 * A task waiting for execution, together with its id, the time it was
+	 * submitted and whether it was written to the journal.
+	 */
+	static class QueuedTask implements Comparable<QueuedTask> {
+
+		private final long enqueued = System.nanoTime();
+		private final boolean persistent;
+		private final Task task;
+		private final long id;
+
+		public QueuedTask(final long id, final Task task, final boolean persistent) {
+
+			this.id         = id;
+			this.task       = task;
+			this.persistent = persistent;
+		}
+
+		public long getId() {
+			return id;
+		}
+
+		public boolean isPersistent() {
+			return persistent;
+		}
+
+		public Task getTask() {
+			return task;
+		}
+
+		public long getEnqueued() {
+			return enqueued;
+		}
+
+		@Override
+		public int compareTo(final QueuedTask other) {
+
+			// higher priority first, then in order of submission
+			final int result = Integer.compare(other.task.priority(), task.priority());
+			if (result != 0) {
+
+				return result;
+			}
+
+			return Long.compare(id, other.id);
+		}
+	}
+}
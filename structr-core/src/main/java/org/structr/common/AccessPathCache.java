@@ -18,131 +18,252 @@
  */
 package org.structr.common;
 
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import org.structr.api.graph.Node;
 import org.structr.api.graph.PropertyContainer;
 import org.structr.api.graph.Relationship;
+import org.structr.api.util.Cachable;
+import org.structr.api.util.FixedSizeCache;
+import org.structr.api.util.Statistics;
+import org.structr.core.Services;
+import org.structr.core.app.StructrApp;
 import org.structr.core.graph.NodeInterface;
 
 /**
+ * Caches resolved permission masks between a principal and a node, along
+ * with the UUIDs and relationship types of the access path they were
+ * resolved from.
  *
+ * Reverse indexes map each UUID and relationship type to the cache keys
+ * that depend on it, so invalidation does not need to scan the cache. The
+ * entries are stored in a {@link FixedSizeCache}, evicted entries remove
+ * themselves from the reverse indexes.
  */
 public class AccessPathCache {
 
-	private static final Map<String, CacheEntry> cache = new ConcurrentHashMap<>();
-	private static final Set<String> allRelTypes       = new HashSet<>();
-	private static final Set<String> allUuids          = new HashSet<>();
+	private static final AccessPathCache instance = new AccessPathCache(Services.parseInt(StructrApp.getConfigurationValue(Services.APPLICATION_ACCESS_PATH_CACHE_SIZE), 100000));
 
-	public static PermissionResolutionMask get(final NodeInterface startNode, final NodeInterface endNode) {
+	static {
 
-		final String cacheKey  = cacheKey(startNode, endNode);
-		final CacheEntry entry = cache.get(cacheKey);
+		Statistics.register("accessPathCache", instance::getCacheStatistics);
+	}
 
-		if (entry != null) {
-			return entry.mask;
-		}
+	private final Map<String, Set<String>> uuidIndex    = new ConcurrentHashMap<>();
+	private final Map<String, Set<String>> relTypeIndex = new ConcurrentHashMap<>();
+	private final AtomicLong hits                       = new AtomicLong();
+	private final AtomicLong misses                     = new AtomicLong();
+	private final AtomicLong invalidations              = new AtomicLong();
+	private final FixedSizeCache<String, CacheEntry> cache;
+	private final int maxSize;
 
-		return null;
+	AccessPathCache(final int maxSize) {
+
+		this.cache   = new FixedSizeCache<>(maxSize);
+		this.maxSize = maxSize;
+	}
+
+	public static PermissionResolutionMask get(final NodeInterface startNode, final NodeInterface endNode) {
+		return instance.getMask(cacheKey(startNode, endNode));
 	}
 
 	public static void put(final NodeInterface startNode, final NodeInterface endNode, final PermissionResolutionMask mask) {
+		instance.putMask(cacheKey(startNode, endNode), mask);
+	}
 
-		final CacheEntry entry = getOrCreateCacheEntry(startNode, endNode);
+	public static void update(final NodeInterface startNode, final NodeInterface endNode, final Node node) {
 
-		// remember UUIDs
-		allUuids.add(startNode.getUuid());
-		allUuids.add(endNode.getUuid());
+		final String uuid = getUuid(node);
+		if (uuid != null) {
 
-		entry.mask = mask;
+			instance.addUuid(cacheKey(startNode, endNode), uuid);
+		}
 	}
 
-	public static void update(final NodeInterface startNode, final NodeInterface endNode, final Node node) {
-
-		final CacheEntry entry = getOrCreateCacheEntry(startNode, endNode);
-		final String uuid      = getUuid(node);
+	public static void update(final NodeInterface startNode, final NodeInterface endNode, final Relationship rel) {
 
+		final String uuid = getUuid(rel);
 		if (uuid != null) {
 
-			entry.uuids.add(uuid);
-			allUuids.add(uuid);
+			final String key = cacheKey(startNode, endNode);
+
+			instance.addUuid(key, uuid);
+			instance.addRelType(key, rel.getType().name());
 		}
 	}
 
-	public static void update(final NodeInterface startNode, final NodeInterface endNode, final Relationship rel) {
+	public static void invalidateForId(final String uuid) {
+		instance.invalidateUuid(uuid);
+	}
 
-		final CacheEntry entry = getOrCreateCacheEntry(startNode, endNode);
-		final String uuid      = getUuid(rel);
+	public static void invalidateForRelType(final String relType) {
+		instance.invalidateRelType(relType);
+	}
 
-		if (uuid != null) {
+	public static void invalidate() {
+		instance.clear();
+	}
 
-			final String relType   = rel.getType().name();
+	/**
+	 * Returns the size of the cache and the number of hits, misses,
+	 * evictions and invalidations since startup.
+	 *
+	 * @return a map of statistics
+	 */
+	public static Map<String, Object> getStatistics() {
+		return instance.getCacheStatistics();
+	}
+
+	// ----- package methods -----
+	PermissionResolutionMask getMask(final String key) {
 
-			entry.uuids.add(uuid);
-			allUuids.add(uuid);
+		final CacheEntry entry = cache.get(key);
+		if (entry != null && entry.mask != null) {
 
-			entry.relTypes.add(relType);
-			allRelTypes.add(relType);
+			hits.incrementAndGet();
 
+			return entry.mask;
 		}
+
+		misses.incrementAndGet();
+
+		return null;
 	}
 
-	public static void invalidateForId(final String uuid) {
+	void putMask(final String key, final PermissionResolutionMask mask) {
+		getOrCreateCacheEntry(key).mask = mask;
+	}
+
+	void addUuid(final String key, final String uuid) {
+
+		final CacheEntry entry = getOrCreateCacheEntry(key);
 
-		if (allUuids.contains(uuid)) {
+		entry.uuids.add(uuid);
+		index(uuidIndex, uuid, key);
+	}
+
+	void addRelType(final String key, final String relType) {
+
+		final CacheEntry entry = getOrCreateCacheEntry(key);
+
+		entry.relTypes.add(relType);
+		index(relTypeIndex, relType, key);
+	}
 
-			for (final CacheEntry entry : cache.values()) {
+	void invalidateUuid(final String uuid) {
 
-				if (entry.uuids.contains(uuid)) {
-					cache.remove(entry.key);
+		final Set<String> keys = uuidIndex.remove(uuid);
+		if (keys != null) {
+
+			for (final String key : keys) {
+
+				if (remove(key)) {
+					invalidations.incrementAndGet();
 				}
 			}
-
-			allUuids.remove(uuid);
 		}
 	}
 
-	public static void invalidateForRelType(final String relType) {
+	void invalidateRelType(final String relType) {
 
-		if (allRelTypes.contains(relType)) {
+		final Set<String> keys = relTypeIndex.remove(relType);
+		if (keys != null) {
 
-			for (final CacheEntry entry : cache.values()) {
+			for (final String key : keys) {
 
-				if (entry.relTypes.contains(relType)) {
-					cache.remove(entry.key);
+				if (remove(key)) {
+					invalidations.incrementAndGet();
 				}
 			}
-
-			allRelTypes.remove(relType);
 		}
 	}
 
-	public static void invalidate() {
+	void clear() {
 
-		allRelTypes.clear();
-		allUuids.clear();
 		cache.clear();
+		uuidIndex.clear();
+		relTypeIndex.clear();
 	}
 
-	// ----- private methods -----
-	private static CacheEntry getOrCreateCacheEntry(final NodeInterface startNode, final NodeInterface endNode) {
+	Map<String, Object> getCacheStatistics() {
+
+		final Map<String, Object> data = new LinkedHashMap<>();
+
+		data.put("size",          cache.size());
+		data.put("maxSize",       maxSize);
+		data.put("hits",          hits.get());
+		data.put("misses",        misses.get());
+		data.put("evictions",     cache.getStatistics().get("evictions"));
+		data.put("invalidations", invalidations.get());
+		data.put("indexedIds",    uuidIndex.size());
+		data.put("indexedTypes",  relTypeIndex.size());
+
+		return data;
+	}
 
-		final String cacheKey = cacheKey(startNode, endNode);
-		CacheEntry entry      = cache.get(cacheKey);
+	// ----- private methods -----
+	private CacheEntry getOrCreateCacheEntry(final String key) {
 
+		CacheEntry entry = cache.get(key);
 		if (entry == null) {
 
-			entry = new CacheEntry();
-			entry.key = cacheKey;
+			synchronized (cache) {
+
+				entry = cache.get(key);
+				if (entry == null) {
 
-			cache.put(cacheKey, entry);
+					entry = new CacheEntry(key);
+					cache.put(key, entry);
+				}
+			}
 		}
 
 		return entry;
 	}
 
+	private boolean remove(final String key) {
+
+		final CacheEntry entry = cache.remove(key);
+		if (entry != null) {
+
+			unindex(entry);
+
+			return true;
+		}
+
+		return false;
+	}
+
+	private void unindex(final CacheEntry entry) {
+
+		// remove the key from the other reverse index entries
+		for (final String uuid : entry.uuids) {
+			unindex(uuidIndex, uuid, entry.key);
+		}
+
+		for (final String relType : entry.relTypes) {
+			unindex(relTypeIndex, relType, entry.key);
+		}
+	}
+
+	private static void index(final Map<String, Set<String>> index, final String value, final String key) {
+		index.computeIfAbsent(value, k -> Collections.newSetFromMap(new ConcurrentHashMap<>())).add(key);
+	}
+
+	private static void unindex(final Map<String, Set<String>> index, final String value, final String key) {
+
+		index.computeIfPresent(value, (k, keys) -> {
+
+			keys.remove(key);
+
+			return keys.isEmpty() ? null : keys;
+		});
+	}
+
 	private static String cacheKey(final NodeInterface startNode, final NodeInterface endNode) {
 		return startNode.getUuid() + endNode.getUuid();
 	}
@@ -157,11 +278,23 @@ public class AccessPathCache {
 	}
 
 	// ----- nested classes -----
-	private static class CacheEntry {
+	private class CacheEntry implements Cachable {
+
+		protected final Set<String> uuids                = Collections.newSetFromMap(new ConcurrentHashMap<>());
+		protected final Set<String> relTypes             = Collections.newSetFromMap(new ConcurrentHashMap<>());
+		protected volatile PermissionResolutionMask mask = null;
+		protected final String key;
 
-		protected Set<String> uuids             = new HashSet<>();
-		protected Set<String> relTypes          = new HashSet<>();
-		protected PermissionResolutionMask mask = null;
-		protected String key                    = null;
+		public CacheEntry(final String key) {
+			this.key = key;
+		}
+
+		/**
+		 * Called by the cache when this entry is evicted.
+		 */
+		@Override
+		public void invalidate() {
+			unindex(this);
+		}
 	}
 }
@@ -79,7 +79,10 @@ public class Services implements StructrServices {
 	public static final String FILES_PATH                                = "files.path";
 	public static final String DATA_EXCHANGE_PATH                        = "data.exchange.path";
 	public static final String LOG_DATABASE_PATH                         = "log.database.path";
+	public static final String LOG_EVENTS_PATH                           = "log.events.path";
 	public static final String FOREIGN_TYPE                              = "foreign.type.key";
+	public static final String AGENT_WORKERS                             = "agent.workers";
+	public static final String AGENT_JOURNAL_PATH                        = "agent.journal.path";
 	public static final String LOG_SERVICE_INTERVAL                      = "structr.logging.interval";
 	public static final String LOG_SERVICE_THRESHOLD                     = "structr.logging.threshold";
 	public static final String SERVER_IP                                 = "server.ip";
@@ -97,6 +100,7 @@ public class Services implements StructrServices {
 	public static final String JSON_INDENTATION                          = "json.indentation";
 	public static final String HTML_INDENTATION                          = "html.indentation";
 	public static final String WS_INDENTATION                            = "ws.indentation";
+	public static final String WS_OUTBOUND_QUEUE_SIZE                    = "ws.outbound.queuesize";
 	public static final String JSON_REDUNDANCY_REDUCTION                 = "json.redundancyReduction";
 	public static final String GEOCODING_PROVIDER                        = "geocoding.provider";
 	public static final String GEOCODING_LANGUAGE                        = "geocoding.language";
@@ -110,16 +114,32 @@ public class Services implements StructrServices {
 	public static final String ACCESS_CONTROL_ALLOW_CREDENTIALS          = "access.control.allow.credentials";
 	public static final String ACCESS_CONTROL_EXPOSE_HEADERS             = "access.control.expose.headers";
 	public static final String APPLICATION_SESSION_TIMEOUT               = "application.session.timeout";
+	public static final String APPLICATION_SESSION_CACHE_SIZE            = "application.cache.session.size";
 	public static final String APPLICATION_SECURITY_OWNERLESS_NODES      = "application.security.ownerless.nodes";
 	public static final String APPLICATION_CHANGELOG_ENABLED             = "application.changelog.enabled";
+	public static final String APPLICATION_SYNCHRONIZATION_VALUE_LOCKS   = "application.synchronization.valuelocks";
 	public static final String APPLICATION_UUID_CACHE_SIZE               = "application.cache.uuid.size";
 	public static final String APPLICATION_NODE_CACHE_SIZE               = "application.cache.node.size";
 	public static final String APPLICATION_REL_CACHE_SIZE                = "application.cache.relationship.size";
+	public static final String APPLICATION_SCRIPT_CACHE_SIZE             = "application.cache.script.size";
+	public static final String APPLICATION_EXPRESSION_CACHE_SIZE         = "application.cache.expression.size";
+	public static final String APPLICATION_ACCESS_PATH_CACHE_SIZE        = "application.cache.accesspath.size";
+	public static final String APPLICATION_FRAGMENT_CACHE_SIZE           = "application.cache.fragment.size";
+	public static final String APPLICATION_SCHEMA_CACHE_ENABLED          = "application.schema.cache.enabled";
+	public static final String APPLICATION_MODULE_INDEX_ENABLED          = "application.moduleindex.enabled";
+	public static final String APPLICATION_MAINTENANCE_THREADS           = "application.maintenance.threads";
+	public static final String APPLICATION_SYNC_THREADS                  = "application.sync.threads";
+	public static final String APPLICATION_DEPLOYMENT_THREADS            = "application.deployment.threads";
+	public static final String APPLICATION_SCRIPT_OPTIMIZATION_LEVEL     = "application.scripting.optimizationlevel";
+	public static final String APPLICATION_PREFETCH_ENABLED              = "application.prefetch.enabled";
 	public static final String APPLICATION_FILESYSTEM_ENABLED            = "application.filesystem.enabled";
 	public static final String APPLICATION_FILESYSTEM_INDEXING_LIMIT     = "application.filesystem.indexing.limit";
 	public static final String APPLICATION_FILESYSTEM_INDEXING_MINLENGTH = "application.filesystem.indexing.word.minlength";
 	public static final String APPLICATION_FILESYSTEM_INDEXING_MAXLENGTH = "application.filesystem.indexing.word.maxlength";
+	public static final String APPLICATION_FILESYSTEM_INDEXING_BATCH     = "application.filesystem.indexing.batch.size";
+	public static final String APPLICATION_FILESYSTEM_INDEXING_WORDS     = "application.filesystem.indexing.batch.words";
 	public static final String APPLICATION_FILESYSTEM_UNIQUE_PATHS       = "application.filesystem.unique.paths";
+	public static final String APPLICATION_FILESYSTEM_CHANNEL_CACHE_SIZE = "application.filesystem.channel.cache.size";
 	public static final String APPLICATION_INSTANCE_NAME                 = "application.instance.name";
 	public static final String APPLICATION_INSTANCE_STAGE                = "application.instance.stage";
 	public static final String APPLICATION_DEFAULT_UPLOAD_FOLDER         = "application.uploads.folder";
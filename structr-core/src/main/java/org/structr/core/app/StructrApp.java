@@ -504,7 +504,7 @@ public class StructrApp implements App {
 		if (nodeUuidMap == null) {
 
 			final int cacheSize = Services.parseInt(StructrApp.getConfigurationValue(Services.APPLICATION_UUID_CACHE_SIZE), 100000);
-			nodeUuidMap = new FixedSizeCache<>(cacheSize);
+			nodeUuidMap = new FixedSizeCache<>("nodeUuidCache", cacheSize);
 		}
 
 		return nodeUuidMap.get(uuid);
@@ -515,7 +515,7 @@ public class StructrApp implements App {
 		if (relUuidMap == null) {
 
 			final int cacheSize = Services.parseInt(StructrApp.getConfigurationValue(Services.APPLICATION_UUID_CACHE_SIZE), 100000);
-			relUuidMap = new FixedSizeCache<>(cacheSize);
+			relUuidMap = new FixedSizeCache<>("relationshipUuidCache", cacheSize);
 		}
 
 		return relUuidMap.get(uuid);
@@ -531,7 +531,7 @@ public class StructrApp implements App {
 				if (nodeUuidMap == null) {
 
 					final int cacheSize = Services.parseInt(StructrApp.getConfigurationValue(Services.APPLICATION_UUID_CACHE_SIZE), 100000);
-					nodeUuidMap = new FixedSizeCache<>(cacheSize);
+					nodeUuidMap = new FixedSizeCache<>("nodeUuidCache", cacheSize);
 				}
 
 			}
@@ -548,7 +548,7 @@ public class StructrApp implements App {
 				if (relUuidMap == null) {
 
 					final int cacheSize = Services.parseInt(StructrApp.getConfigurationValue(Services.APPLICATION_UUID_CACHE_SIZE), 100000);
-					relUuidMap = new FixedSizeCache<>(cacheSize);
+					relUuidMap = new FixedSizeCache<>("relationshipUuidCache", cacheSize);
 				}
 
 			}
@@ -24,9 +24,14 @@ import java.io.StringReader;
 import java.text.Normalizer;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 import org.apache.commons.lang3.StringUtils;
+import org.structr.api.util.FixedSizeCache;
+import org.structr.api.util.Statistics;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.GraphObject;
+import org.structr.core.Services;
+import org.structr.core.app.StructrApp;
 import org.structr.core.parser.AllExpression;
 import org.structr.core.parser.AnyExpression;
 import org.structr.core.parser.ArrayExpression;
@@ -55,12 +60,68 @@ public class Functions {
 	public static final Map<String, Function<Object, Object>> functions = new LinkedHashMap<>();
 	public static final String NULL_STRING                              = "___NULL___";
 
+	private static final FixedSizeCache<String, Expression> expressionCache = new FixedSizeCache<>(Services.parseInt(StructrApp.getConfigurationValue(Services.APPLICATION_EXPRESSION_CACHE_SIZE), 10000));
+	private static final AtomicLong expressionCacheHits                     = new AtomicLong();
+	private static final AtomicLong expressionCacheMisses                   = new AtomicLong();
+
 	public static Function<Object, Object> get(final String name) {
 		return functions.get(name);
 	}
 
 	public static Object evaluate(final ActionContext actionContext, final GraphObject entity, final String expression) throws FrameworkException {
 
+		Expression root = expressionCache.get(expression);
+		if (root != null) {
+
+			expressionCacheHits.incrementAndGet();
+
+		} else {
+
+			expressionCacheMisses.incrementAndGet();
+
+			root = parse(expression);
+
+			expressionCache.put(expression, root);
+		}
+
+		return root.evaluate(actionContext, entity);
+	}
+
+	/**
+	 * Returns statistics about the parsed expression cache.
+	 *
+	 * @return a map with cache size, hits and misses
+	 */
+	public static Map<String, Object> getExpressionCacheStatistics() {
+
+		final Map<String, Object> data = new LinkedHashMap<>();
+		final long hits                = expressionCacheHits.get();
+		final long misses              = expressionCacheMisses.get();
+		final long total               = hits + misses;
+
+		data.put("size",    expressionCache.size());
+		data.put("hits",    hits);
+		data.put("misses",  misses);
+		data.put("hitRate", total > 0 ? (double)hits / (double)total : 0.0);
+
+		return data;
+	}
+
+	public static void clearExpressionCache() {
+		expressionCache.clear();
+	}
+
+	/**
+	 * Parses the given expression into a tree of expressions. The tree
+	 * does not hold any evaluation state (that is stored in the action
+	 * context), so it can be cached and evaluated concurrently.
+	 *
+	 * @param expression
+	 * @return the root expression
+	 * @throws FrameworkException
+	 */
+	private static Expression parse(final String expression) throws FrameworkException {
+
 		final String expressionWithoutNewlines = expression.replace('\n', ' ');
 		final StreamTokenizer tokenizer = new StreamTokenizer(new StringReader(expressionWithoutNewlines));
 		tokenizer.eolIsSignificant(true);
@@ -186,7 +247,7 @@ public class Functions {
 			throw new FrameworkException(422, "Invalid expression: mismatched closing bracket after " + lastToken);
 		}
 
-		return root.evaluate(actionContext, entity);
+		return root;
 	}
 
 	private static Expression checkReservedWords(final String word) throws FrameworkException {
@@ -257,6 +318,8 @@ public class Functions {
 
 	static {
 
+		Statistics.register("expressionCache", Functions::getExpressionCacheStatistics);
+
 		functions.put("error", new ErrorFunction());
 		functions.put("md5", new MD5Function());
 		functions.put("upper", new UpperFunction());
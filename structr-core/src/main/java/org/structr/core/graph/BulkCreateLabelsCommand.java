@@ -19,15 +19,15 @@
 package org.structr.core.graph;
 
 import java.util.Collections;
-import java.util.Iterator;
 import java.util.Map;
+import java.util.function.Function;
 import org.structr.api.DatabaseService;
+import org.structr.api.graph.Node;
 import org.structr.api.util.Iterables;
 import org.structr.common.SecurityContext;
 import org.structr.common.StructrAndSpatialPredicate;
 import org.structr.common.error.ErrorBuffer;
 import org.structr.common.error.FrameworkException;
-import org.structr.core.app.StructrApp;
 import org.structr.core.entity.AbstractNode;
 import org.structr.core.property.TypeProperty;
 
@@ -44,17 +44,9 @@ public class BulkCreateLabelsCommand extends NodeServiceCommand implements Maint
 		final DatabaseService graphDb          = (DatabaseService) arguments.get("graphDb");
 		final SecurityContext superUserContext = SecurityContext.getSuperUserInstance();
 		final NodeFactory nodeFactory          = new NodeFactory(superUserContext);
+		final int threads                      = getThreadCount(attributes);
 
-		Iterator<AbstractNode> nodeIterator = null;
-
-		try (final Tx tx = StructrApp.getInstance().tx()) {
-
-			nodeIterator = Iterables.filter(new TypePredicate<>(entityType), Iterables.map(nodeFactory, Iterables.filter(new StructrAndSpatialPredicate(true, false, false), graphDb.getAllNodes()))).iterator();
-			tx.success();
-
-		} catch (FrameworkException fex) {
-			warn("Exception while creating all nodes iterator.", fex);
-		}
+		final Function<Iterable<Node>, Iterable<AbstractNode>> mapper = nodes -> Iterables.filter(new TypePredicate<>(entityType), Iterables.map(nodeFactory, Iterables.filter(new StructrAndSpatialPredicate(true, false, false), nodes)));
 
 		if (entityType == null) {
 
@@ -65,7 +57,7 @@ public class BulkCreateLabelsCommand extends NodeServiceCommand implements Maint
 			info("Starting creation of labels for all nodes of type {}", entityType);
 		}
 
-		final long count = bulkGraphOperation(securityContext, nodeIterator, 10000, "CreateLabels", new BulkGraphOperation<AbstractNode>() {
+		final long count = bulkNodeOperation(securityContext, mapper, threads, 10000, "CreateLabels", new BulkGraphOperation<AbstractNode>() {
 
 			@Override
 			public void handleGraphObject(SecurityContext securityContext, AbstractNode node) {
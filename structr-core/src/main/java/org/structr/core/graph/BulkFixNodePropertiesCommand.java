@@ -20,9 +20,11 @@ package org.structr.core.graph;
 
 import java.util.Iterator;
 import java.util.Map;
+import java.util.function.Function;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.structr.api.graph.Node;
+import org.structr.api.util.Iterables;
 import org.structr.common.PropertyView;
 import org.structr.common.SecurityContext;
 import org.structr.common.error.FrameworkException;
@@ -54,19 +56,11 @@ public class BulkFixNodePropertiesCommand extends NodeServiceCommand implements
 			final Class type = SchemaHelper.getEntityClassForRawType(entityTypeName);
 			if (type != null) {
 
-				Iterator<AbstractNode> nodeIterator = null;
-
-				try (final Tx tx = StructrApp.getInstance().tx()) {
-
-					nodeIterator = StructrApp.getInstance(securityContext).nodeQuery(type).getAsList().iterator();
-					tx.success();
-				}
-
 				if (type != null) {
 
 					logger.info("Trying to fix properties of all {} nodes", type.getSimpleName() );
 
-					long nodeCount = bulkGraphOperation(securityContext, nodeIterator, 100, "FixNodeProperties", new BulkGraphOperation<AbstractNode>() {
+					final BulkGraphOperation<AbstractNode> operation = new BulkGraphOperation<AbstractNode>() {
 
 						private void fixProperty(AbstractNode node, Property propertyToFix) {
 
@@ -141,7 +135,31 @@ public class BulkFixNodePropertiesCommand extends NodeServiceCommand implements
 								}
 							}
 						}
-					});
+					};
+
+					final int threads = getThreadCount(attributes);
+					final long nodeCount;
+
+					if (threads > 1) {
+
+						// the parallel mode partitions the ids of all nodes, so nodes of other types are filtered out here
+						final NodeFactory nodeFactory = new NodeFactory(securityContext);
+						final Function<Iterable<Node>, Iterable<AbstractNode>> mapper = nodes -> Iterables.filter((AbstractNode node) -> type.isInstance(node), Iterables.map(nodeFactory, nodes));
+
+						nodeCount = bulkNodeOperation(securityContext, mapper, threads, 100, "FixNodeProperties", operation);
+
+					} else {
+
+						Iterator<AbstractNode> nodeIterator = null;
+
+						try (final Tx tx = StructrApp.getInstance().tx()) {
+
+							nodeIterator = StructrApp.getInstance(securityContext).nodeQuery(type).getAsList().iterator();
+							tx.success();
+						}
+
+						nodeCount = bulkGraphOperation(securityContext, nodeIterator, 100, "FixNodeProperties", operation);
+					}
 
 					logger.info("Fixed {} nodes", nodeCount);
 
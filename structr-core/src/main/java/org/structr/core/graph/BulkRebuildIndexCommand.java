@@ -19,17 +19,17 @@
 package org.structr.core.graph;
 
 import java.util.Collections;
-import java.util.Iterator;
 import java.util.Map;
+import java.util.function.Function;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.structr.api.DatabaseService;
+import org.structr.api.graph.Node;
+import org.structr.api.graph.Relationship;
 import org.structr.api.util.Iterables;
 import org.structr.common.SecurityContext;
 import org.structr.common.StructrAndSpatialPredicate;
 import org.structr.common.error.ErrorBuffer;
 import org.structr.common.error.FrameworkException;
-import org.structr.core.app.StructrApp;
 import org.structr.core.entity.AbstractNode;
 import org.structr.core.entity.AbstractRelationship;
 
@@ -52,13 +52,14 @@ public class BulkRebuildIndexCommand extends NodeServiceCommand implements Maint
 		final String mode       = (String) attributes.get("mode");
 		final String entityType = (String) attributes.get("type");
 		final String relType    = (String) attributes.get("relType");
+		final int threads       = getThreadCount(attributes);
 
 		if (mode == null || "nodesOnly".equals(mode)) {
-			rebuildNodeIndex(entityType);
+			rebuildNodeIndex(entityType, threads);
 		}
 
 		if (mode == null || "relsOnly".equals(mode)) {
-			rebuildRelationshipIndex(relType);
+			rebuildRelationshipIndex(relType, threads);
 		}
 	}
 
@@ -77,20 +78,9 @@ public class BulkRebuildIndexCommand extends NodeServiceCommand implements Maint
 	}
 
 	// ----- private methods -----
-	private void rebuildNodeIndex(final String entityType) {
+	private void rebuildNodeIndex(final String entityType, final int threads) {
 
-		final NodeFactory nodeFactory       = new NodeFactory(SecurityContext.getSuperUserInstance());
-		final DatabaseService graphDb       = (DatabaseService) arguments.get("graphDb");
-		Iterator<AbstractNode> nodeIterator = null;
-
-		try (final Tx tx = StructrApp.getInstance().tx()) {
-
-			nodeIterator = Iterables.filter(new TypePredicate<>(entityType), Iterables.map(nodeFactory, Iterables.filter(new StructrAndSpatialPredicate(true, false, false), graphDb.getAllNodes()))).iterator();
-			tx.success();
-
-		} catch (FrameworkException fex) {
-			logger.warn("Exception while creating all nodes iterator.", fex);
-		}
+		final NodeFactory nodeFactory = new NodeFactory(SecurityContext.getSuperUserInstance());
 
 		if (entityType == null) {
 
@@ -101,7 +91,9 @@ public class BulkRebuildIndexCommand extends NodeServiceCommand implements Maint
 			info("Starting (re-)indexing all nodes of type {}", entityType);
 		}
 
-		long count = bulkGraphOperation(securityContext, nodeIterator, 1000, "RebuildNodeIndex", new BulkGraphOperation<AbstractNode>() {
+		final Function<Iterable<Node>, Iterable<AbstractNode>> mapper = nodes -> Iterables.filter(new TypePredicate<>(entityType), Iterables.map(nodeFactory, Iterables.filter(new StructrAndSpatialPredicate(true, false, false), nodes)));
+
+		long count = bulkNodeOperation(securityContext, mapper, threads, 1000, "RebuildNodeIndex", new BulkGraphOperation<AbstractNode>() {
 
 			@Override
 			public void handleGraphObject(SecurityContext securityContext, AbstractNode node) {
@@ -122,22 +114,9 @@ public class BulkRebuildIndexCommand extends NodeServiceCommand implements Maint
 		info("Done with (re-)indexing {} nodes", count);
 	}
 
-	private void rebuildRelationshipIndex(final String relType) {
+	private void rebuildRelationshipIndex(final String relType, final int threads) {
 
 		final RelationshipFactory relFactory = new RelationshipFactory(SecurityContext.getSuperUserInstance());
-		final DatabaseService graphDb        = (DatabaseService) arguments.get("graphDb");
-
-		Iterator<AbstractRelationship> relIterator = null;
-
-
-		try (final Tx tx = StructrApp.getInstance().tx()) {
-
-			relIterator = Iterables.filter(new TypePredicate<>(relType), Iterables.map(relFactory,Iterables.filter(new StructrAndSpatialPredicate(true, false, false), graphDb.getAllRelationships()))).iterator();
-			tx.success();
-
-		} catch (FrameworkException fex) {
-			logger.warn("Exception while creating all relationships iterator.", fex);
-		}
 
 		if (relType == null) {
 
@@ -149,7 +128,9 @@ public class BulkRebuildIndexCommand extends NodeServiceCommand implements Maint
 
 		}
 
-		long count = bulkGraphOperation(securityContext, relIterator, 1000, "RebuildRelIndex", new BulkGraphOperation<AbstractRelationship>() {
+		final Function<Iterable<Relationship>, Iterable<AbstractRelationship>> mapper = rels -> Iterables.filter(new TypePredicate<>(relType), Iterables.map(relFactory, Iterables.filter(new StructrAndSpatialPredicate(true, false, false), rels)));
+
+		long count = bulkRelationshipOperation(securityContext, mapper, threads, 1000, "RebuildRelIndex", new BulkGraphOperation<AbstractRelationship>() {
 
 			@Override
 			public void handleGraphObject(SecurityContext securityContext, AbstractRelationship rel) {
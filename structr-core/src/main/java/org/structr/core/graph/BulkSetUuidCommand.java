@@ -18,16 +18,17 @@
  */
 package org.structr.core.graph;
 
-import java.util.Iterator;
 import java.util.Map;
+import java.util.function.Function;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.structr.api.DatabaseService;
+import org.structr.api.graph.Node;
+import org.structr.api.graph.Relationship;
 import org.structr.api.util.Iterables;
 import org.structr.common.SecurityContext;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.GraphObject;
-import org.structr.core.app.StructrApp;
 import org.structr.core.entity.AbstractNode;
 import org.structr.core.entity.AbstractRelationship;
 import org.structr.core.property.TypeProperty;
@@ -55,6 +56,7 @@ public class BulkSetUuidCommand extends NodeServiceCommand implements Maintenanc
 		final Boolean allNodes        = (Boolean) attributes.get("allNodes");
 		final Boolean allRels         = (Boolean) attributes.get("allRels");
 		final DatabaseService graphDb = (DatabaseService) arguments.get("graphDb");
+		final int threads             = getThreadCount(attributes);
 
 		final SecurityContext superUserContext = SecurityContext.getSuperUserInstance();
 		final NodeFactory nodeFactory          = new NodeFactory(superUserContext);
@@ -62,30 +64,22 @@ public class BulkSetUuidCommand extends NodeServiceCommand implements Maintenanc
 
 		if (nodeType != null || Boolean.TRUE.equals(allNodes)) {
 
-			Iterator<AbstractNode> nodeIterator = null;
+			final Function<Iterable<Node>, Iterable<AbstractNode>> mapper;
 
-			try (final Tx tx = StructrApp.getInstance().tx()) {
+			if (Boolean.TRUE.equals(allNodes)) {
 
-				if (Boolean.TRUE.equals(allNodes)) {
+				mapper = nodes -> Iterables.map(nodeFactory, nodes);
 
-					nodeIterator = Iterables.map(nodeFactory, graphDb.getAllNodes()).iterator();
+				info("Start setting UUID on all nodes");
 
-					info("Start setting UUID on all nodes");
+			} else {
 
-				} else {
+				mapper = nodes -> Iterables.filter(new TypePredicate<>(nodeType), Iterables.map(nodeFactory, nodes));
 
-					nodeIterator = Iterables.filter(new TypePredicate<>(nodeType), Iterables.map(nodeFactory, graphDb.getAllNodes())).iterator();
-
-					info("Start setting UUID on nodes of type {}", new Object[] { nodeType });
-				}
-
-				tx.success();
-
-			} catch (FrameworkException fex) {
-				logger.warn("Exception while creating all nodes iterator.", fex);
+				info("Start setting UUID on nodes of type {}", new Object[] { nodeType });
 			}
 
-			final long count = bulkGraphOperation(securityContext, nodeIterator, 1000, "SetNodeUuid", new BulkGraphOperation<AbstractNode>() {
+			final long count = bulkNodeOperation(securityContext, mapper, threads, 1000, "SetNodeUuid", new BulkGraphOperation<AbstractNode>() {
 
 				@Override
 				public void handleGraphObject(final SecurityContext securityContext, final AbstractNode node) {
@@ -130,30 +124,22 @@ public class BulkSetUuidCommand extends NodeServiceCommand implements Maintenanc
 
 		if (relType != null || Boolean.TRUE.equals(allRels)) {
 
-			Iterator<AbstractRelationship> relIterator = null;
+			final Function<Iterable<Relationship>, Iterable<AbstractRelationship>> mapper;
 
-			try (final Tx tx = StructrApp.getInstance().tx()) {
+			if (Boolean.TRUE.equals(allRels)) {
 
-				if (Boolean.TRUE.equals(allRels)) {
+				mapper = rels -> Iterables.map(relFactory, rels);
 
-					relIterator = Iterables.map(relFactory, graphDb.getAllRelationships()).iterator();
+				info("Start setting UUID on all rels", new Object[] { relType });
 
-					info("Start setting UUID on all rels", new Object[] { relType });
-
-				} else {
-
-					relIterator = Iterables.filter(new TypePredicate<>(relType), Iterables.map(relFactory, graphDb.getAllRelationships())).iterator();
-
-					info("Start setting UUID on rels of type {}", new Object[] { relType });
-				}
+			} else {
 
-				tx.success();
+				mapper = rels -> Iterables.filter(new TypePredicate<>(relType), Iterables.map(relFactory, rels));
 
-			} catch (FrameworkException fex) {
-				logger.warn("Exception while creating all nodes iterator.", fex);
+				info("Start setting UUID on rels of type {}", new Object[] { relType });
 			}
 
-			final long count = bulkGraphOperation(securityContext, relIterator, 1000, "SetRelationshipUuid", new BulkGraphOperation<AbstractRelationship>() {
+			final long count = bulkRelationshipOperation(securityContext, mapper, threads, 1000, "SetRelationshipUuid", new BulkGraphOperation<AbstractRelationship>() {
 
 				@Override
 				public void handleGraphObject(SecurityContext securityContext, AbstractRelationship rel) {
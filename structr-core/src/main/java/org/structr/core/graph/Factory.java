@@ -163,6 +163,23 @@ public abstract class Factory<S, T extends GraphObject> implements Adapter<S, T>
 		return nodes;
 	}
 
+	/**
+	 * Indicates whether paging can be delegated to the database, i.e. whether
+	 * every element of the raw query result will be instantiated by this
+	 * factory. This is only the case if no offsetId is set, the page is
+	 * positive and no visibility filtering takes place in Java.
+	 *
+	 * @return whether the database can page the raw query result
+	 */
+	public boolean canPageInDatabase() {
+
+		final SecurityContext securityContext = factoryProfile.getSecurityContext();
+		final int pageSize                    = factoryProfile.getPageSize();
+		final int page                        = factoryProfile.getPage();
+
+		return factoryProfile.getOffsetId() == null && page > 0 && pageSize < Integer.MAX_VALUE && !factoryProfile.publicOnly() && securityContext != null && securityContext.isSuperUser();
+	}
+
 	@Override
 	public T adapt(S s) {
 		return instantiate(s);
@@ -173,6 +190,16 @@ public abstract class Factory<S, T extends GraphObject> implements Adapter<S, T>
 		return adapt(from);
 	}
 
+	/**
+	 * Hook for subclasses to load the relationships of the given raw
+	 * elements in bulk before they are instantiated. The default
+	 * implementation does nothing.
+	 *
+	 * @param input
+	 */
+	protected void prefetchRelationships(final List<S> input) {
+	}
+
 	protected Class<T> getClassForName(final String rawType) {
 		return SchemaHelper.getEntityClassForRawType(rawType);
 	}
@@ -354,6 +381,25 @@ public abstract class Factory<S, T extends GraphObject> implements Adapter<S, T>
 			queue.add(new Item<>(rawCount++, item));
 		}
 
+		// the visibility check of non-admin users traverses the security
+		// relationships of every instantiated element, so load them in bulk
+		if (!securityContext.isSuperUser() && rawCount > 1) {
+
+			final List<S> prefetch = new LinkedList<>();
+			final long limit       = (long)offset + pageSize;
+
+			for (final Item<S> item : queue) {
+
+				if (prefetch.size() >= limit) {
+					break;
+				}
+
+				prefetch.add(item.item);
+			}
+
+			prefetchRelationships(prefetch);
+		}
+
 		//if (rawCount < 100) {
 
 			// do not use multithreading
@@ -19,6 +19,7 @@
 package org.structr.core.graph;
 
 import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
@@ -53,6 +54,7 @@ public class ModificationQueue {
 	private static final Logger logger = LoggerFactory.getLogger(ModificationQueue.class.getName());
 
 	private final boolean auditLogEnabled                                                   = "true".equals(StructrApp.getConfigurationValue(Services.APPLICATION_CHANGELOG_ENABLED, "false"));
+	private final boolean valueLocksEnabled                                                 = "true".equals(StructrApp.getConfigurationValue(Services.APPLICATION_SYNCHRONIZATION_VALUE_LOCKS, "false"));
 	private final ConcurrentSkipListMap<String, GraphObjectModificationState> modifications = new ConcurrentSkipListMap<>();
 	private final Collection<ModificationEvent> modificationEvents                          = new ArrayDeque<>(1000);
 	private final Map<String, TransactionPostProcess> postProcesses                         = new LinkedHashMap<>();
@@ -60,10 +62,12 @@ public class ModificationQueue {
 	private final Set<String> synchronizationKeys                                           = new TreeSet<>();
 
 	/**
-	 * Returns a set containing the different entity types of
-	 * nodes modified in this queue.
+	 * Returns a set containing the synchronization keys of all
+	 * properties modified in this queue. If value locks are enabled,
+	 * the keys also contain the new property values, so that only
+	 * transactions writing the same value are serialized.
 	 *
-	 * @return the types
+	 * @return the synchronization keys
 	 */
 	public Set<String> getSynchronizationKeys() {
 		return synchronizationKeys;
@@ -232,7 +236,7 @@ public class ModificationQueue {
 		getState(node).modify(user, key, previousValue, newValue);
 
 		if (key != null&& key.requiresSynchronization()) {
-			synchronizationKeys.add(key.getSynchronizationKey());
+			synchronizationKeys.add(getSynchronizationKey(key, newValue));
 		}
 	}
 
@@ -240,7 +244,7 @@ public class ModificationQueue {
 		getState(relationship).modify(user, key, previousValue, newValue);
 
 		if (key != null && key.requiresSynchronization()) {
-			synchronizationKeys.add(key.getSynchronizationKey());
+			synchronizationKeys.add(getSynchronizationKey(key, newValue));
 		}
 	}
 
@@ -398,6 +402,25 @@ public class ModificationQueue {
 	}
 
 	// ----- private methods -----
+	private String getSynchronizationKey(final PropertyKey key, final Object value) {
+
+		final String synchronizationKey = key.getSynchronizationKey();
+
+		if (valueLocksEnabled) {
+
+			if (value instanceof Object[]) {
+
+				return synchronizationKey + "=" + Arrays.deepToString((Object[])value);
+
+			} else if (value != null && !value.getClass().isArray()) {
+
+				return synchronizationKey + "=" + value;
+			}
+		}
+
+		return synchronizationKey;
+	}
+
 	private void modifyEndNodes(final Principal user, final NodeInterface startNode, final NodeInterface endNode, final RelationshipType relType) {
 
 		// only modify if nodes are accessible
@@ -18,65 +18,209 @@
  */
 package org.structr.core.graph;
 
-import java.util.LinkedHashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
+ * A set of named locks that can be acquired together without a global
+ * monitor. Locks are always acquired in the natural order of their keys,
+ * so two threads acquiring overlapping key sets cannot deadlock.
  *
+ * Releasing only affects locks held by the current thread, so it is safe
+ * to call {@link #release(java.util.Set)} for keys that were never acquired.
+ * Locks are created on demand and discarded when no thread uses them, so
+ * fine-grained keys (e.g. keys that contain a property value) do not
+ * accumulate. Statistics are collected per key, with everything after the
+ * first "=" removed.
  */
 public class MultiSemaphore {
 
 	private static final Logger logger = LoggerFactory.getLogger(MultiSemaphore.class.getName());
 
-	private final Map<String, Semaphore> semaphoreMap = new ConcurrentHashMap<>();
+	private final Map<String, KeyLock> lockMap             = new ConcurrentHashMap<>();
+	private final Map<String, LockStatistics> statisticsMap = new ConcurrentHashMap<>();
 
-	public synchronized void acquire(final Set<String> types) throws InterruptedException {
+	public void acquire(final Set<String> keys) throws InterruptedException {
 
-		if (types != null && !types.isEmpty()) {
+		if (keys != null && !keys.isEmpty()) {
 
-			for (Semaphore semaphore : getSemaphores(types)) {
-				semaphore.acquire();
+			for (final String key : new TreeSet<>(keys)) {
+
+				if (key != null) {
+
+					try {
+
+						acquire(key);
+
+					} catch (InterruptedException iex) {
+
+						// release everything acquired so far
+						release(keys);
+
+						throw iex;
+					}
+				}
 			}
 		}
 	}
 
-	public void release(final Set<String> types) {
+	public void release(final Set<String> keys) {
 
-		if (types != null && !types.isEmpty()) {
+		if (keys != null && !keys.isEmpty()) {
 
-			for (Semaphore semaphore : getSemaphores(types)) {
-				semaphore.release();
+			for (final String key : keys) {
+
+				if (key != null) {
+
+					// unlock and remove the lock if no other thread uses it
+					lockMap.computeIfPresent(key, (k, lock) -> lock.release() ? null : lock);
+				}
 			}
 		}
 	}
 
-	private Set<Semaphore> getSemaphores(final Set<String> types) {
+	/**
+	 * Returns contention statistics for each key that was acquired at least
+	 * once, i.e. the number of acquisitions, the number of acquisitions that
+	 * had to wait, and the total and maximum waiting time in milliseconds.
+	 *
+	 * @return a map of statistics per key
+	 */
+	public Map<String, Map<String, Object>> getStatistics() {
 
-		Set<Semaphore> semaphores = new LinkedHashSet<>();
+		final Map<String, Map<String, Object>> statistics = new LinkedHashMap<>();
 
-		if (types != null) {
+		for (final Entry<String, LockStatistics> entry : new TreeMap<>(statisticsMap).entrySet()) {
 
-			for (String type : types) {
+			statistics.put(entry.getKey(), entry.getValue().toMap());
+		}
 
-				if (type != null) {
+		return statistics;
+	}
 
-					Semaphore semaphore = semaphoreMap.get(type);
-					if (semaphore == null) {
+	public void clearStatistics() {
+		statisticsMap.clear();
+	}
 
-						semaphore = new Semaphore(1, true);
-						semaphoreMap.put(type, semaphore);
-					}
+	// ----- private methods -----
+	private void acquire(final String key) throws InterruptedException {
+
+		final LockStatistics statistics = statisticsMap.computeIfAbsent(getStatisticsKey(key), k -> new LockStatistics());
+
+		// register as a user of the lock so it is not discarded while we wait
+		final KeyLock lock = lockMap.compute(key, (k, existing) -> {
+
+			final KeyLock keyLock = existing != null ? existing : new KeyLock();
+
+			keyLock.users++;
+
+			return keyLock;
+		});
+
+		try {
+
+			lock.acquire(statistics);
+
+		} catch (InterruptedException iex) {
+
+			lockMap.computeIfPresent(key, (k, existing) -> --existing.users == 0 ? null : existing);
+
+			throw iex;
+		}
+	}
+
+	private String getStatisticsKey(final String key) {
+
+		final int pos = key.indexOf("=");
+		if (pos >= 0) {
+
+			return key.substring(0, pos);
+		}
+
+		return key;
+	}
+
+	// ----- nested classes -----
+	private static class KeyLock {
+
+		private final ReentrantLock lock = new ReentrantLock(true);
+		private int users                = 0;
+
+		public void acquire(final LockStatistics statistics) throws InterruptedException {
+
+			if (!lock.tryLock()) {
+
+				final long t0 = System.nanoTime();
 
-					semaphores.add(semaphore);
+				lock.lockInterruptibly();
+
+				final long waited = System.nanoTime() - t0;
+
+				statistics.contended(waited);
+
+				if (waited > 1000000000L) {
+					logger.info("Waited {} ms for synchronization lock", waited / 1000000L);
 				}
 			}
+
+			statistics.acquired();
+		}
+
+		/**
+		 * Releases all holds of the current thread, if any. Must be called
+		 * while the lock map entry is locked.
+		 *
+		 * @return whether the lock is unused and can be discarded
+		 */
+		public boolean release() {
+
+			while (lock.isHeldByCurrentThread()) {
+
+				lock.unlock();
+				users--;
+			}
+
+			return users <= 0;
+		}
+	}
+
+	private static class LockStatistics {
+
+		private final AtomicLong acquired  = new AtomicLong();
+		private final AtomicLong contended = new AtomicLong();
+		private final AtomicLong waitNanos = new AtomicLong();
+		private final AtomicLong maxWait   = new AtomicLong();
+
+		public void acquired() {
+			acquired.incrementAndGet();
 		}
 
-		return semaphores;
+		public void contended(final long nanos) {
+
+			contended.incrementAndGet();
+			waitNanos.addAndGet(nanos);
+			maxWait.accumulateAndGet(nanos, Math::max);
+		}
+
+		public Map<String, Object> toMap() {
+
+			final Map<String, Object> data = new LinkedHashMap<>();
+
+			data.put("acquired",    acquired.get());
+			data.put("contended",   contended.get());
+			data.put("waitTime",    waitNanos.get() / 1000000L);
+			data.put("maxWaitTime", maxWait.get() / 1000000L);
+
+			return data;
+		}
 	}
 }
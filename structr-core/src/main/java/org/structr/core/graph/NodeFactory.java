@@ -22,6 +22,7 @@ package org.structr.core.graph;
 import java.util.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.structr.api.DatabaseService;
 import org.structr.api.graph.Node;
 import org.structr.api.graph.Relationship;
 import org.structr.api.util.FixedSizeCache;
@@ -47,7 +48,8 @@ public class NodeFactory<T extends NodeInterface & AccessControllable> extends F
 
 	private static final Logger logger = LoggerFactory.getLogger(NodeFactory.class.getName());
 
-	private static final FixedSizeCache<Long, Class> idTypeMap = new FixedSizeCache<>(Services.parseInt(StructrApp.getConfigurationValue(Services.APPLICATION_NODE_CACHE_SIZE), 100000));
+	private static final FixedSizeCache<Long, Class> idTypeMap = new FixedSizeCache<>("nodeTypeCache", Services.parseInt(StructrApp.getConfigurationValue(Services.APPLICATION_NODE_CACHE_SIZE), 100000));
+	private static final boolean prefetchEnabled               = Services.parseBoolean(StructrApp.getConfigurationValue(Services.APPLICATION_PREFETCH_ENABLED), true);
 
 	public NodeFactory(final SecurityContext securityContext) {
 		super(securityContext);
@@ -129,6 +131,48 @@ public class NodeFactory<T extends NodeInterface & AccessControllable> extends F
 		return null;
 	}
 
+	/**
+	 * Loads the relationships of all the given nodes with a single
+	 * database round-trip, so that subsequent relationship traversals
+	 * on these nodes are served from the cache.
+	 *
+	 * @param nodes
+	 */
+	public static void prefetchRelationships(final Iterable<? extends NodeInterface> nodes) {
+
+		if (prefetchEnabled && nodes != null) {
+
+			final List<Long> ids = new LinkedList<>();
+
+			for (final NodeInterface node : nodes) {
+
+				if (node != null && node.getNode() != null) {
+					ids.add(node.getNode().getId());
+				}
+			}
+
+			prefetch(ids);
+		}
+	}
+
+	@Override
+	protected void prefetchRelationships(final List<Node> input) {
+
+		if (prefetchEnabled) {
+
+			final List<Long> ids = new LinkedList<>();
+
+			for (final Node node : input) {
+
+				if (node != null) {
+					ids.add(node.getId());
+				}
+			}
+
+			prefetch(ids);
+		}
+	}
+
 	@Override
 	public T instantiate(final Node node, final boolean includeDeletedAndHidden, final boolean publicOnly) throws FrameworkException {
 
@@ -192,4 +236,18 @@ public class NodeFactory<T extends NodeInterface & AccessControllable> extends F
 		return nodes;
 
 	}
+
+	// ----- private static methods -----
+	private static void prefetch(final List<Long> ids) {
+
+		// a single node does not benefit from batching
+		if (ids.size() > 1) {
+
+			final DatabaseService db = Services.getInstance().getDatabaseService();
+			if (db != null) {
+
+				db.prefetchRelationships(ids);
+			}
+		}
+	}
 }
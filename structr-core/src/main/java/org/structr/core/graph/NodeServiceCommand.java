@@ -20,17 +20,33 @@ package org.structr.core.graph;
 
 import java.io.IOException;
 import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.structr.api.DatabaseService;
 import org.structr.api.Predicate;
+import org.structr.api.RetryException;
+import org.structr.api.graph.Node;
+import org.structr.api.graph.Relationship;
 import org.structr.api.service.Command;
 import org.structr.common.Filter;
 import org.structr.common.SecurityContext;
 import org.structr.common.error.FrameworkException;
+import org.structr.core.Services;
 import org.structr.core.app.App;
 import org.structr.core.app.StructrApp;
 import org.structr.util.Writable;
@@ -44,6 +60,8 @@ public abstract class NodeServiceCommand extends Command {
 
 	private static final Logger logger                        = LoggerFactory.getLogger(NodeServiceCommand.class.getName());
 	private static final ArrayBlockingQueue<String> uuidQueue = new ArrayBlockingQueue<>(100000);
+	static final int MAX_BATCH_RETRIES                        = 10;
+	static final long TERMINATION_TIMEOUT_MINUTES             = 10;
 
 	protected SecurityContext securityContext = null;
 	private Writable logWritable              = null;
@@ -136,6 +154,288 @@ public abstract class NodeServiceCommand extends Command {
 		return objectCount;
 	}
 
+	/**
+	 * Executes the given operation on all nodes that the given mapper
+	 * returns for the nodes of the database. If more than one thread is
+	 * requested, the node id space is partitioned and processed in
+	 * parallel, see {@link #bulkGraphOperation(SecurityContext, long, int, BiFunction, long, String, BulkGraphOperation)}.
+	 *
+	 * @param <T>
+	 * @param securityContext
+	 * @param mapper the function that maps database nodes to the objects to operate on
+	 * @param threads the number of threads
+	 * @param commitCount
+	 * @param description
+	 * @param operation the operation to execute
+	 * @return the number of objects processed
+	 */
+	public <T> long bulkNodeOperation(final SecurityContext securityContext, final Function<Iterable<Node>, Iterable<T>> mapper, final int threads, final long commitCount, final String description, final BulkGraphOperation<T> operation) {
+
+		final DatabaseService graphDb = (DatabaseService)arguments.get("graphDb");
+		Iterator<T> iterator          = null;
+		long highestId                = -1L;
+
+		try (final Tx tx = StructrApp.getInstance().tx()) {
+
+			if (threads > 1) {
+
+				highestId = graphDb.getHighestNodeId();
+
+			} else {
+
+				iterator = mapper.apply(graphDb.getAllNodes()).iterator();
+			}
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+			logger.warn("Exception while creating all nodes iterator.", fex);
+		}
+
+		if (threads > 1) {
+
+			return bulkGraphOperation(securityContext, highestId, threads, (fromId, toId) -> mapper.apply(graphDb.getNodesInRange(fromId, toId)), commitCount, description, operation);
+		}
+
+		return bulkGraphOperation(securityContext, iterator, commitCount, description, operation);
+	}
+
+	/**
+	 * Executes the given operation on all relationships that the given
+	 * mapper returns for the relationships of the database. If more than
+	 * one thread is requested, the relationship id space is partitioned
+	 * and processed in parallel, see {@link #bulkGraphOperation(SecurityContext, long, int, BiFunction, long, String, BulkGraphOperation)}.
+	 *
+	 * @param <T>
+	 * @param securityContext
+	 * @param mapper the function that maps database relationships to the objects to operate on
+	 * @param threads the number of threads
+	 * @param commitCount
+	 * @param description
+	 * @param operation the operation to execute
+	 * @return the number of objects processed
+	 */
+	public <T> long bulkRelationshipOperation(final SecurityContext securityContext, final Function<Iterable<Relationship>, Iterable<T>> mapper, final int threads, final long commitCount, final String description, final BulkGraphOperation<T> operation) {
+
+		final DatabaseService graphDb = (DatabaseService)arguments.get("graphDb");
+		Iterator<T> iterator          = null;
+		long highestId                = -1L;
+
+		try (final Tx tx = StructrApp.getInstance().tx()) {
+
+			if (threads > 1) {
+
+				highestId = graphDb.getHighestRelationshipId();
+
+			} else {
+
+				iterator = mapper.apply(graphDb.getAllRelationships()).iterator();
+			}
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+			logger.warn("Exception while creating all relationships iterator.", fex);
+		}
+
+		if (threads > 1) {
+
+			return bulkGraphOperation(securityContext, highestId, threads, (fromId, toId) -> mapper.apply(graphDb.getRelationshipsInRange(fromId, toId)), commitCount, description, operation);
+		}
+
+		return bulkGraphOperation(securityContext, iterator, commitCount, description, operation);
+	}
+
+	/**
+	 * Executes the given operation in parallel on all objects with ids
+	 * between 0 and the given highest id.
+	 *
+	 * The id space is partitioned into ranges of commitCount ids. Each
+	 * thread repeatedly takes the next unprocessed range and processes all
+	 * objects that the given source returns for it in its own transaction.
+	 * A range whose transaction fails because of a conflict with another
+	 * transaction is retried up to {@link #MAX_BATCH_RETRIES} times.
+	 *
+	 * @param <T>
+	 * @param securityContext
+	 * @param highestId the highest id to process
+	 * @param threads the number of threads
+	 * @param source the function that returns the objects for a range of ids (from inclusive, to exclusive)
+	 * @param commitCount the number of ids per range and transaction
+	 * @param description
+	 * @param operation the operation to execute
+	 * @return the number of objects processed
+	 */
+	public <T> long bulkGraphOperation(final SecurityContext securityContext, final long highestId, final int threads, final BiFunction<Long, Long, Iterable<T>> source, final long commitCount, final String description, final BulkGraphOperation<T> operation) {
+
+		final Predicate<Long> condition = operation.getCondition();
+		final App app                   = StructrApp.getInstance(securityContext);
+		final boolean doValidation      = operation.doValidation();
+		final boolean doCallbacks       = operation.doCallbacks();
+		final boolean doNotifications   = operation.doNotifications();
+		final AtomicLong nextId         = new AtomicLong(0L);
+		final AtomicLong objectCount    = new AtomicLong(0L);
+		final AtomicLong retryCount     = new AtomicLong(0L);
+		final AtomicBoolean stopped     = new AtomicBoolean(false);
+		final ExecutorService executor  = Executors.newFixedThreadPool(threads);
+		final List<Future<Object>> futures = new LinkedList<>();
+		final long start                = System.currentTimeMillis();
+
+		if (description != null) {
+			info("{}: processing ids 0 to {} with {} threads", description, highestId, threads);
+		}
+
+		for (int i=0; i<threads; i++) {
+
+			futures.add(executor.submit(() -> {
+
+				long fromId = nextId.getAndAdd(commitCount);
+
+				while (fromId <= highestId && !stopped.get()) {
+
+					final long toId = Math.min(fromId + commitCount, highestId + 1);
+					int retries     = 0;
+					boolean retry   = true;
+
+					while (retry) {
+
+						retry = false;
+
+						long count = 0L;
+
+						try (final Tx tx = app.tx(doValidation, doCallbacks, doNotifications)) {
+
+							for (final T obj : source.apply(fromId, toId)) {
+
+								if (condition != null && !condition.accept(objectCount.get() + count)) {
+
+									stopped.set(true);
+									break;
+								}
+
+								try {
+
+									operation.handleGraphObject(securityContext, obj);
+
+								} catch (RetryException rex) {
+
+									// a conflict fails the whole range
+									throw rex;
+
+								} catch (Throwable t) {
+
+									operation.handleThrowable(securityContext, t, obj);
+								}
+
+								count++;
+							}
+
+							tx.success();
+
+						} catch (Throwable t) {
+
+							if (isRetryable(t) && retries++ < MAX_BATCH_RETRIES) {
+
+								retryCount.incrementAndGet();
+								retry = true;
+
+								continue;
+							}
+
+							// bulk transaction failed, what to do?
+							operation.handleTransactionFailure(securityContext, t);
+						}
+
+						final long total = objectCount.addAndGet(count);
+
+						if (description != null && count > 0) {
+							info("{}: {} objects processed", description, total);
+						}
+					}
+
+					fromId = nextId.getAndAdd(commitCount);
+				}
+
+				return null;
+			}));
+		}
+
+		boolean interrupted = false;
+
+		try {
+
+			for (final Future<Object> future : futures) {
+
+				try {
+
+					future.get();
+
+				} catch (ExecutionException ex) {
+
+					logger.warn("Exception in parallel bulk graph operation.", ex.getCause());
+				}
+			}
+
+		} catch (InterruptedException iex) {
+
+			// let the workers finish their current range
+			stopped.set(true);
+			interrupted = true;
+
+		} finally {
+
+			executor.shutdown();
+		}
+
+		// don't return while workers are still committing their ranges
+		try {
+
+			if (!executor.awaitTermination(TERMINATION_TIMEOUT_MINUTES, TimeUnit.MINUTES)) {
+
+				logger.warn("{}: workers did not finish within {} minutes, returning before all ranges are committed", description, TERMINATION_TIMEOUT_MINUTES);
+			}
+
+		} catch (InterruptedException iex) {
+
+			logger.warn("{}: interrupted while waiting for workers to finish", description);
+			interrupted = true;
+		}
+
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+
+		if (description != null) {
+			info("{}: {} objects processed in {} ms with {} threads, {} ranges retried", description, objectCount.get(), System.currentTimeMillis() - start, threads, retryCount.get());
+		}
+
+		return objectCount.get();
+	}
+
+	/**
+	 * Returns the number of threads for a bulk operation, which is taken
+	 * from the "threads" attribute if present, or from the configuration.
+	 *
+	 * @param attributes the attributes of the maintenance command
+	 * @return the number of threads
+	 */
+	public static int getThreadCount(final Map<String, Object> attributes) {
+
+		final int defaultValue = Services.parseInt(StructrApp.getConfigurationValue(Services.APPLICATION_MAINTENANCE_THREADS), 1);
+		final Object value     = attributes.get("threads");
+
+		if (value instanceof Number) {
+
+			return Math.max(1, ((Number)value).intValue());
+
+		} else if (value != null) {
+
+			return Math.max(1, Services.parseInt(value.toString(), defaultValue));
+		}
+
+		return Math.max(1, defaultValue);
+	}
+
 	/**
 	 * Executes the given transaction until the stop condition evaluates to
 	 * <b>true</b>.
@@ -207,7 +507,7 @@ public abstract class NodeServiceCommand extends Command {
 
 	}
 
-	protected void duplicateLogToConsole (final String msg, final Object... data) {
+	protected synchronized void duplicateLogToConsole (final String msg, final Object... data) {
 
 		// allow duplication of logging output to the console
 		if (logWritable != null) {
@@ -232,6 +532,23 @@ public abstract class NodeServiceCommand extends Command {
 		}
 	}
 
+	// ----- private methods -----
+	static boolean isRetryable(final Throwable t) {
+
+		Throwable cause = t;
+
+		while (cause != null) {
+
+			if (cause instanceof RetryException) {
+				return true;
+			}
+
+			cause = cause.getCause();
+		}
+
+		return false;
+	}
+
 	// create uuid producer that fills the queue
 	static {
 
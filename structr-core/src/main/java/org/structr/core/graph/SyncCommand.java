@@ -31,6 +31,11 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Serializable;
 import java.lang.reflect.Array;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
 import java.util.Collections;
@@ -48,7 +53,6 @@ import java.util.function.Function;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
-import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.structr.api.DatabaseService;
@@ -121,6 +125,8 @@ public class SyncCommand extends NodeServiceCommand implements MaintenanceComman
 		String validate         = (String)attributes.get("validate");
 		String query            = (String)attributes.get("query");
 		Long batchSize          = (Long)attributes.get("batchSize");
+		boolean legacyFormat    = "legacy".equals(attributes.get("format"));
+		int threads             = attributes.containsKey("threads") ? getThreadCount(attributes) : getSyncThreadCount();
 		boolean doValidation    = true;
 
 		// should we validate imported nodes?
@@ -143,15 +149,15 @@ public class SyncCommand extends NodeServiceCommand implements MaintenanceComman
 
 		if ("export".equals(mode)) {
 
-			exportToFile(graphDb, fileName, query, true);
+			exportToFile(graphDb, fileName, query, true, legacyFormat, threads);
 
 		} else if ("exportDb".equals(mode)) {
 
-			exportToFile(graphDb, fileName, query, false);
+			exportToFile(graphDb, fileName, query, false, legacyFormat, threads);
 
 		} else if ("import".equals(mode)) {
 
-			importFromFile(graphDb, securityContext, fileName, doValidation, batchSize);
+			importFromFile(graphDb, securityContext, fileName, doValidation, batchSize, threads);
 
 		} else {
 
@@ -174,6 +180,21 @@ public class SyncCommand extends NodeServiceCommand implements MaintenanceComman
 	 * @throws FrameworkException
 	 */
 	public static void exportToFile(final DatabaseService graphDb, final String fileName, final String query, final boolean includeFiles) throws FrameworkException {
+		exportToFile(graphDb, fileName, query, includeFiles, false, getSyncThreadCount());
+	}
+
+	/**
+	 * Exports the whole structr database to a file with the given name.
+	 *
+	 * @param graphDb
+	 * @param fileName
+	 * @param query
+	 * @param includeFiles
+	 * @param legacyFormat whether to write the legacy single-entry format
+	 * @param threads the number of threads that write the dump
+	 * @throws FrameworkException
+	 */
+	public static void exportToFile(final DatabaseService graphDb, final String fileName, final String query, final boolean includeFiles, final boolean legacyFormat, final int threads) throws FrameworkException {
 
 		final App app = StructrApp.getInstance();
 
@@ -181,12 +202,13 @@ public class SyncCommand extends NodeServiceCommand implements MaintenanceComman
 
 			final NodeFactory nodeFactory         = new NodeFactory(SecurityContext.getSuperUserInstance());
 			final RelationshipFactory relFactory  = new RelationshipFactory(SecurityContext.getSuperUserInstance());
-			final Set<AbstractNode> nodes         = new HashSet<>();
-			final Set<AbstractRelationship> rels  = new HashSet<>();
-			boolean conditionalIncludeFiles = includeFiles;
+			boolean conditionalIncludeFiles       = includeFiles;
 
 			if (query != null) {
 
+				final Set<AbstractNode> nodes         = new HashSet<>();
+				final Set<AbstractRelationship> rels  = new HashSet<>();
+
 				logger.info("Using Cypher query {} to determine export set, disabling export of files", query);
 
 				conditionalIncludeFiles = false;
@@ -203,20 +225,22 @@ public class SyncCommand extends NodeServiceCommand implements MaintenanceComman
 
 				logger.info("Query returned {} nodes and {} relationships.", new Object[] { nodes.size(), rels.size() } );
 
+				exportToStream(new FileOutputStream(fileName), nodes, rels, null, conditionalIncludeFiles, legacyFormat, threads);
+
 			} else {
 
-				nodes.addAll(nodeFactory.bulkInstantiate(graphDb.getAllNodes()));
-				rels.addAll(relFactory.bulkInstantiate(graphDb.getAllRelationships()));
+				// stream all nodes and relationships instead of collecting them first
+				exportToStream(
+					new FileOutputStream(fileName),
+					Iterables.map(nodeFactory, graphDb.getAllNodes()),
+					Iterables.map(relFactory, graphDb.getAllRelationships()),
+					null,
+					conditionalIncludeFiles,
+					legacyFormat,
+					threads
+				);
 			}
 
-			exportToStream(
-				new FileOutputStream(fileName),
-				nodes,
-				rels,
-				null,
-				conditionalIncludeFiles
-			);
-
 			tx.success();
 
 		} catch (Throwable t) {
@@ -262,6 +286,22 @@ public class SyncCommand extends NodeServiceCommand implements MaintenanceComman
 	 * @throws FrameworkException
 	 */
 	public static void exportToStream(final OutputStream outputStream, final Iterable<? extends NodeInterface> nodes, final Iterable<? extends RelationshipInterface> relationships, final Iterable<String> filePaths, final boolean includeFiles) throws FrameworkException {
+		exportToStream(outputStream, nodes, relationships, filePaths, includeFiles, false, getSyncThreadCount());
+	}
+
+	/**
+	 * Exports the given part of the structr database to the given output stream.
+	 *
+	 * @param outputStream
+	 * @param nodes
+	 * @param relationships
+	 * @param filePaths
+	 * @param includeFiles
+	 * @param legacyFormat whether to write the legacy single-entry format
+	 * @param threads the number of threads that write the dump
+	 * @throws FrameworkException
+	 */
+	public static void exportToStream(final OutputStream outputStream, final Iterable<? extends NodeInterface> nodes, final Iterable<? extends RelationshipInterface> relationships, final Iterable<String> filePaths, final boolean includeFiles, final boolean legacyFormat, final int threads) throws FrameworkException {
 
 		try {
 
@@ -289,7 +329,14 @@ public class SyncCommand extends NodeServiceCommand implements MaintenanceComman
 			}
 
 			// export database
-			exportDatabase(zos, new BufferedOutputStream(zos), nodes, relationships);
+			if (legacyFormat) {
+
+				exportDatabase(zos, new BufferedOutputStream(zos), nodes, relationships);
+
+			} else {
+
+				exportDump(zos, nodes, relationships, threads);
+			}
 
 			// finish ZIP file
 			zos.finish();
@@ -311,9 +358,13 @@ public class SyncCommand extends NodeServiceCommand implements MaintenanceComman
 	}
 
 	public static void importFromFile(final DatabaseService graphDb, final SecurityContext securityContext, final String fileName, boolean doValidation, final Long batchSize) throws FrameworkException {
+		importFromFile(graphDb, securityContext, fileName, doValidation, batchSize, getSyncThreadCount());
+	}
+
+	public static void importFromFile(final DatabaseService graphDb, final SecurityContext securityContext, final String fileName, boolean doValidation, final Long batchSize, final int threads) throws FrameworkException {
 
 		try {
-			importFromStream(graphDb, securityContext, new FileInputStream(fileName), doValidation, batchSize);
+			importFromStream(graphDb, securityContext, new FileInputStream(fileName), doValidation, batchSize, threads);
 
 		} catch (Throwable t) {
 
@@ -324,17 +375,45 @@ public class SyncCommand extends NodeServiceCommand implements MaintenanceComman
 	}
 
 	public static void importFromStream(final DatabaseService graphDb, final SecurityContext securityContext, final InputStream inputStream, boolean doValidation, final Long batchSize) throws FrameworkException {
+		importFromStream(graphDb, securityContext, inputStream, doValidation, batchSize, getSyncThreadCount());
+	}
+
+	/**
+	 * Imports the given stream, which can contain either format. Blocks of
+	 * the dump format are imported by the given number of threads.
+	 *
+	 * @param graphDb
+	 * @param securityContext
+	 * @param inputStream
+	 * @param doValidation
+	 * @param batchSize the number of objects per transaction
+	 * @param threads the number of threads that import the dump
+	 * @throws FrameworkException
+	 */
+	public static void importFromStream(final DatabaseService graphDb, final SecurityContext securityContext, final InputStream inputStream, boolean doValidation, final Long batchSize, final int threads) throws FrameworkException {
 
 		try {
-			ZipInputStream zis = new ZipInputStream(inputStream);
-			ZipEntry entry     = zis.getNextEntry();
+			ZipInputStream zis     = new ZipInputStream(inputStream);
+			ZipEntry entry         = zis.getNextEntry();
+			SyncDumpReader reader  = null;
+			double t0              = System.nanoTime();
 
 			while (entry != null) {
 
-				if (STRUCTR_ZIP_DB_NAME.equals(entry.getName())) {
+				final String name = entry.getName();
+
+				if (STRUCTR_ZIP_DB_NAME.equals(name)) {
 
 					importDatabase(graphDb, securityContext, zis, doValidation, batchSize);
 
+				} else if (name.startsWith(SyncDumpEncoding.ENTRY_PREFIX)) {
+
+					if (reader == null) {
+						reader = new SyncDumpReader(graphDb, securityContext, doValidation, batchSize != null ? batchSize : 200, threads);
+					}
+
+					reader.read(name, zis);
+
 				} else {
 
 					// store other files in "files" dir..
@@ -344,6 +423,12 @@ public class SyncCommand extends NodeServiceCommand implements MaintenanceComman
 				entry = zis.getNextEntry();
 			}
 
+			if (reader != null) {
+
+				reader.finish();
+				finishImport(t0);
+			}
+
 		} catch (IOException ioex) {
 
 			logger.warn("", ioex);
@@ -498,9 +583,16 @@ public class SyncCommand extends NodeServiceCommand implements MaintenanceComman
 						zos.putNextEntry(fileEntry);
 
 						// copy file into stream
-						FileInputStream fis = new FileInputStream(file);
-						IOUtils.copy(fis, zos);
-						fis.close();
+						try (final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+
+							final WritableByteChannel target = Channels.newChannel(zos);
+							final long size                  = channel.size();
+							long position                    = 0L;
+
+							while (position < size) {
+								position += channel.transferTo(position, size - position, target);
+							}
+						}
 
 						// flush and close entry
 						zos.flush();
@@ -622,11 +714,20 @@ public class SyncCommand extends NodeServiceCommand implements MaintenanceComman
 
 			if (overwrite) {
 
-				FileOutputStream fos = new FileOutputStream(newFile);
-				IOUtils.copy(zis, fos);
+				try (final FileChannel channel = FileChannel.open(newFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+
+					final ReadableByteChannel source = Channels.newChannel(zis);
+					long position                    = 0L;
+					long count                       = 0L;
 
-				fos.flush();
-				fos.close();
+					// the source is a stream, so transferFrom returns 0 at its end
+					do {
+
+						count     = channel.transferFrom(source, position, 65536);
+						position += count;
+
+					} while (count > 0);
+				}
 			}
 		}
 	}
@@ -824,6 +925,31 @@ public class SyncCommand extends NodeServiceCommand implements MaintenanceComman
 
 		} while (!finished);
 
+		finishImport(t0);
+	}
+
+	private static void exportDump(final ZipOutputStream zos, final Iterable<? extends NodeInterface> nodes, final Iterable<? extends RelationshipInterface> relationships, final int threads) throws IOException {
+
+		final SyncDumpWriter writer = new SyncDumpWriter(threads);
+
+		for (final NodeInterface node : nodes) {
+			writer.addNode(node.getNode());
+		}
+
+		for (final RelationshipInterface rel : relationships) {
+			writer.addRelationship(rel.getRelationship());
+		}
+
+		writer.finish(zos);
+	}
+
+	/**
+	 * Compiles the imported schema and sets the labels of the imported nodes.
+	 */
+	private static void finishImport(final double t0) throws FrameworkException {
+
+		final App app = StructrApp.getInstance();
+
 		// build schema
 		try (final Tx tx = app.tx()) {
 
@@ -945,7 +1071,13 @@ public class SyncCommand extends NodeServiceCommand implements MaintenanceComman
 		}
 	}
 
-	private static boolean checkAndMerge(final NodeInterface node, final Set<Long> deletedNodes, final Set<Long> deletedRels) throws FrameworkException {
+	/**
+	 * Merges the given schema node into an existing one with the same type
+	 * and name. The relationships of the given node must already exist, so
+	 * that its properties, views and methods are merged with the existing
+	 * ones instead of being added to them.
+	 */
+	static boolean checkAndMerge(final NodeInterface node, final Set<Long> deletedNodes, final Set<Long> deletedRels) throws FrameworkException {
 
 		final Class type                        = node.getClass();
 		final String name                       = node.getName();
@@ -1078,6 +1210,10 @@ public class SyncCommand extends NodeServiceCommand implements MaintenanceComman
 		return groupedNodes;
 	}
 
+	private static int getSyncThreadCount() {
+		return Math.max(1, Services.parseInt(StructrApp.getConfigurationValue(Services.APPLICATION_SYNC_THREADS), Runtime.getRuntime().availableProcessors()));
+	}
+
 	private static class EndNodes implements Function<Relationship, Node> {
 
 		@Override
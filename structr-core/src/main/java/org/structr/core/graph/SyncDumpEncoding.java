@@ -0,0 +1,400 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.core.graph;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Binary encoding of the block-based dump format of {@link SyncCommand}.
+ *
+ * A dump consists of zip entries below {@link #ENTRY_PREFIX}. Each entry
+ * starts with the {@link #MAGIC} bytes and the format version, followed
+ * by length-prefixed blocks. A block contains the objects of a single
+ * node or relationship type, stored column by column:
+ *
+ * <pre>
+ * block        = varint(length) payload
+ * node payload = 'N' string(type) varint(count) columns
+ * rel payload  = 'R' string(type) varint(count) uuid(start){count} uuid(end){count} columns
+ * columns      = varint(keyCount) (string(key) value{count}){keyCount}
+ * </pre>
+ *
+ * The property keys of a block form its dictionary, so every key is
+ * written once per block instead of once per object. Lengths, counts
+ * and integral numbers are written as variable-length integers, UUIDs
+ * as 16 bytes. Properties that an object does not have are written as
+ * null values.
+ */
+final class SyncDumpEncoding {
+
+	private static final Logger logger = LoggerFactory.getLogger(SyncDumpEncoding.class.getName());
+
+	public static final String ENTRY_PREFIX = "dump/";
+	public static final String NODES_ENTRY  = ENTRY_PREFIX + "nodes-";
+	public static final String RELS_ENTRY   = ENTRY_PREFIX + "rels-";
+	public static final byte[] MAGIC        = new byte[] { 'S', 'D' };
+	public static final byte VERSION        = 1;
+	public static final byte NODE_BLOCK     = 'N';
+	public static final byte REL_BLOCK      = 'R';
+
+	private static final byte NULL          = 127;
+	private static final byte UUID_BINARY   = 1;
+	private static final byte UUID_STRING   = 0;
+
+	private static final Map<Class, Byte> typeMap  = new HashMap<>();
+	private static final Map<Byte, Class> classMap = new HashMap<>();
+
+	static {
+
+		// same type tags as the legacy format
+		typeMap.put(Byte[].class,      (byte) 0);
+		typeMap.put(Byte.class,        (byte) 1);
+		typeMap.put(Short[].class,     (byte) 2);
+		typeMap.put(Short.class,       (byte) 3);
+		typeMap.put(Integer[].class,   (byte) 4);
+		typeMap.put(Integer.class,     (byte) 5);
+		typeMap.put(Long[].class,      (byte) 6);
+		typeMap.put(Long.class,        (byte) 7);
+		typeMap.put(Float[].class,     (byte) 8);
+		typeMap.put(Float.class,       (byte) 9);
+		typeMap.put(Double[].class,    (byte)10);
+		typeMap.put(Double.class,      (byte)11);
+		typeMap.put(Character[].class, (byte)12);
+		typeMap.put(Character.class,   (byte)13);
+		typeMap.put(String[].class,    (byte)14);
+		typeMap.put(String.class,      (byte)15);
+		typeMap.put(Boolean[].class,   (byte)16);
+		typeMap.put(Boolean.class,     (byte)17);
+
+		for (final Entry<Class, Byte> entry : typeMap.entrySet()) {
+			classMap.put(entry.getValue(), entry.getKey());
+		}
+	}
+
+	private SyncDumpEncoding() {}
+
+	public static void writeHeader(final DataOutputStream out) throws IOException {
+
+		out.write(MAGIC);
+		out.writeByte(VERSION);
+	}
+
+	public static void readHeader(final DataInputStream in) throws IOException {
+
+		final byte[] magic = new byte[MAGIC.length];
+
+		in.readFully(magic);
+
+		if (magic[0] != MAGIC[0] || magic[1] != MAGIC[1]) {
+			throw new IOException("Invalid dump entry, header not found.");
+		}
+
+		final byte version = in.readByte();
+		if (version != VERSION) {
+			throw new IOException("Unsupported dump format version " + version);
+		}
+	}
+
+	public static void writeVarLong(final DataOutputStream out, final long value) throws IOException {
+
+		long v = value;
+
+		while ((v & ~0x7FL) != 0L) {
+
+			out.writeByte((int)((v & 0x7F) | 0x80));
+			v >>>= 7;
+		}
+
+		out.writeByte((int)v);
+	}
+
+	public static long readVarLong(final DataInputStream in) throws IOException {
+
+		long value = 0L;
+		int shift  = 0;
+
+		while (shift < 64) {
+
+			final byte b = in.readByte();
+
+			value |= (long)(b & 0x7F) << shift;
+
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+
+			shift += 7;
+		}
+
+		throw new IOException("Malformed variable-length integer");
+	}
+
+	public static void writeVarInt(final DataOutputStream out, final int value) throws IOException {
+		writeVarLong(out, value & 0xFFFFFFFFL);
+	}
+
+	public static int readVarInt(final DataInputStream in) throws IOException {
+		return (int)readVarLong(in);
+	}
+
+	public static void writeString(final DataOutputStream out, final String value) throws IOException {
+
+		final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+
+		writeVarInt(out, bytes.length);
+		out.write(bytes);
+	}
+
+	public static String readString(final DataInputStream in) throws IOException {
+
+		final byte[] bytes = new byte[readVarInt(in)];
+
+		in.readFully(bytes);
+
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Writes the given UUID as 16 bytes if it consists of 32 hexadecimal
+	 * characters, and as a string otherwise.
+	 */
+	public static void writeUuid(final DataOutputStream out, final String uuid) throws IOException {
+
+		if (uuid.length() == 32 && isLowerCaseHex(uuid)) {
+
+			out.writeByte(UUID_BINARY);
+			out.writeLong(Long.parseUnsignedLong(uuid.substring(0, 16), 16));
+			out.writeLong(Long.parseUnsignedLong(uuid.substring(16), 16));
+
+		} else {
+
+			out.writeByte(UUID_STRING);
+			writeString(out, uuid);
+		}
+	}
+
+	public static String readUuid(final DataInputStream in) throws IOException {
+
+		if (in.readByte() == UUID_BINARY) {
+
+			return toHex(in.readLong()).concat(toHex(in.readLong()));
+		}
+
+		return readString(in);
+	}
+
+	public static void writeValue(final DataOutputStream out, final Object value) throws IOException {
+
+		if (value == null) {
+
+			out.writeByte(NULL);
+			return;
+		}
+
+		final Byte type = typeMap.get(value.getClass());
+		if (type == null) {
+
+			logger.warn("Unable to serialize object of type {}, type not supported", value.getClass());
+			out.writeByte(NULL);
+
+			return;
+		}
+
+		out.writeByte(type);
+
+		switch (type) {
+
+			case  0:
+			case  2:
+			case  4:
+			case  6:
+			case  8:
+			case 10:
+			case 12:
+			case 14:
+			case 16:
+				final Object[] array = (Object[])value;
+
+				writeVarInt(out, array.length);
+
+				for (final Object element : array) {
+					writeValue(out, element);
+				}
+				break;
+
+			case  1:
+				out.writeByte((byte)value);
+				break;
+
+			case  3:
+				writeVarLong(out, zigZag((short)value));
+				break;
+
+			case  5:
+				writeVarLong(out, zigZag((int)value));
+				break;
+
+			case  7:
+				writeVarLong(out, zigZag((long)value));
+				break;
+
+			case  9:
+				out.writeFloat((float)value);
+				break;
+
+			case 11:
+				out.writeDouble((double)value);
+				break;
+
+			case 13:
+				out.writeChar((char)value);
+				break;
+
+			case 15:
+				writeString(out, (String)value);
+				break;
+
+			case 17:
+				out.writeBoolean((boolean)value);
+				break;
+		}
+	}
+
+	public static Object readValue(final DataInputStream in) throws IOException {
+
+		final byte type = in.readByte();
+
+		switch (type) {
+
+			case NULL:
+				return null;
+
+			case  0:
+			case  2:
+			case  4:
+			case  6:
+			case  8:
+			case 10:
+			case 12:
+			case 14:
+			case 16:
+				final int length     = readVarInt(in);
+				final Object[] array = (Object[])Array.newInstance(classMap.get(type).getComponentType(), length);
+
+				for (int i=0; i<length; i++) {
+					array[i] = readValue(in);
+				}
+
+				return array;
+
+			case  1:
+				return in.readByte();
+
+			case  3:
+				return (short)unZigZag(readVarLong(in));
+
+			case  5:
+				return (int)unZigZag(readVarLong(in));
+
+			case  7:
+				return unZigZag(readVarLong(in));
+
+			case  9:
+				return in.readFloat();
+
+			case 11:
+				return in.readDouble();
+
+			case 13:
+				return in.readChar();
+
+			case 15:
+				return readString(in);
+
+			case 17:
+				return in.readBoolean();
+		}
+
+		throw new IOException("Unsupported type " + type + " in input");
+	}
+
+	/**
+	 * Reads the next block of the given stream, or returns null at the
+	 * end of the stream.
+	 */
+	public static byte[] readBlock(final DataInputStream in) throws IOException {
+
+		final long length;
+
+		try {
+
+			length = readVarLong(in);
+
+		} catch (EOFException eof) {
+			return null;
+		}
+
+		final byte[] block = new byte[(int)length];
+
+		in.readFully(block);
+
+		return block;
+	}
+
+	// ----- private methods -----
+	private static long zigZag(final long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+
+	private static long unZigZag(final long value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	private static boolean isLowerCaseHex(final String value) {
+
+		for (int i=0; i<value.length(); i++) {
+
+			final char c = value.charAt(i);
+
+			if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private static String toHex(final long value) {
+
+		final String hex = Long.toHexString(value);
+
+		// pad to 16 characters
+		return "0000000000000000".substring(hex.length()).concat(hex);
+	}
+}
@@ -0,0 +1,452 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.core.graph;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.InflaterInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.structr.api.DatabaseService;
+import org.structr.api.graph.Node;
+import org.structr.api.graph.Relationship;
+import org.structr.common.SecurityContext;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.GraphObject;
+import org.structr.core.app.App;
+import org.structr.core.app.StructrApp;
+import org.structr.core.entity.AbstractSchemaNode;
+import org.structr.core.entity.SuperUser;
+
+/**
+ * Reads dump entries in the block-based format, see {@link SyncDumpEncoding}.
+ *
+ * The calling thread reads the blocks from the zip stream and hands them
+ * to a pool of workers that decode them and create the objects in batched
+ * transactions. Blocks of schema node types are imported by a single
+ * worker. Relationships are only imported after all nodes have been
+ * created. Imported schema nodes are merged with existing ones at the
+ * very end, when their properties, views and methods are connected, so
+ * that these are merged as well instead of being duplicated.
+ */
+final class SyncDumpReader {
+
+	private static final Logger logger        = LoggerFactory.getLogger(SyncDumpReader.class.getName());
+
+	private final Map<String, Long> uuidMap    = new ConcurrentHashMap<>();
+	private final Set<Long> deletedNodes       = ConcurrentHashMap.newKeySet();
+	private final Set<Long> deletedRels        = ConcurrentHashMap.newKeySet();
+	private final Queue<Long> schemaNodes      = new ConcurrentLinkedQueue<>();
+	private final AtomicLong nodeCount         = new AtomicLong();
+	private final AtomicLong relCount          = new AtomicLong();
+	private final AtomicLong skippedRelCount   = new AtomicLong();
+	private final AtomicInteger failedBlocks   = new AtomicInteger();
+	private final String uuidPropertyName      = GraphObject.id.dbName();
+	private final SuperUser superUser          = new SuperUser();
+	private final ExecutorService schemaWorker = Executors.newSingleThreadExecutor();
+	private final SecurityContext securityContext;
+	private final ExecutorService workers;
+	private final DatabaseService graphDb;
+	private final Semaphore pendingBlocks;
+	private final boolean doValidation;
+	private final int pendingLimit;
+	private final long batchSize;
+	private boolean nodesFinished              = false;
+
+	public SyncDumpReader(final DatabaseService graphDb, final SecurityContext securityContext, final boolean doValidation, final long batchSize, final int threads) {
+
+		this.graphDb         = graphDb;
+		this.securityContext = securityContext;
+		this.doValidation    = doValidation;
+		this.batchSize       = batchSize;
+		this.workers         = Executors.newFixedThreadPool(threads);
+		this.pendingLimit    = threads * 2;
+		this.pendingBlocks   = new Semaphore(pendingLimit);
+	}
+
+	/**
+	 * Reads all blocks of the given dump entry and schedules them for
+	 * import. Must be called in the order of the entries in the zip file.
+	 */
+	public void read(final String entryName, final InputStream inputStream) throws IOException {
+
+		if (entryName.startsWith(SyncDumpEncoding.RELS_ENTRY) && !nodesFinished) {
+
+			// relationships need the ids of all imported nodes
+			awaitPendingBlocks();
+			nodesFinished = true;
+
+			logger.info("Imported {} nodes, importing relationships..", nodeCount.get());
+		}
+
+		// the entry must not close the enclosing zip stream
+		final InputStream entryStream = new FilterInputStream(inputStream) {
+
+			@Override
+			public void close() {
+			}
+		};
+
+		final DataInputStream dis = new DataInputStream(new BufferedInputStream(new InflaterInputStream(entryStream), 65536));
+
+		SyncDumpEncoding.readHeader(dis);
+
+		byte[] block = SyncDumpEncoding.readBlock(dis);
+		while (block != null) {
+
+			final DataInputStream in = new DataInputStream(new ByteArrayInputStream(block));
+			final byte kind          = in.readByte();
+			final String type        = SyncDumpEncoding.readString(in);
+
+			if (kind == SyncDumpEncoding.NODE_BLOCK) {
+
+				submit(isSchemaType(type) ? schemaWorker : workers, () -> importNodes(type, in));
+
+			} else if (kind == SyncDumpEncoding.REL_BLOCK) {
+
+				submit(workers, () -> importRelationships(type, in));
+
+			} else {
+
+				throw new IOException("Invalid block type " + kind + " in entry " + entryName);
+			}
+
+			block = SyncDumpEncoding.readBlock(dis);
+		}
+	}
+
+	/**
+	 * Waits for all scheduled blocks and shuts down the workers.
+	 */
+	public void finish() throws FrameworkException {
+
+		try {
+
+			awaitPendingBlocks();
+
+		} catch (IOException ioex) {
+
+			throw new FrameworkException(500, ioex.getMessage());
+
+		} finally {
+
+			workers.shutdown();
+			schemaWorker.shutdown();
+		}
+
+		mergeSchemaNodes();
+
+		logger.info("Imported {} nodes and {} rels, skipped {} rels", new Object[] { nodeCount.get(), relCount.get(), skippedRelCount.get() } );
+
+		if (failedBlocks.get() > 0) {
+			throw new FrameworkException(500, "Import incomplete, " + failedBlocks.get() + " blocks could not be imported.");
+		}
+	}
+
+	// ----- private methods -----
+	private void importNodes(final String type, final DataInputStream in) throws IOException, FrameworkException {
+
+		final List<Map<String, Object>> records = readColumns(in, SyncDumpEncoding.readVarInt(in));
+		final Set<String> labels                = type.isEmpty() ? Collections.emptySet() : Collections.singleton(type);
+		final NodeFactory nodeFactory           = new NodeFactory(securityContext);
+		final App app                           = StructrApp.getInstance();
+
+		for (final List<Map<String, Object>> batch : partition(records)) {
+
+			int retries = 0;
+
+			while (true) {
+
+				try (final Tx tx = app.tx(doValidation)) {
+
+					final List<Node> nodes = graphDb.createNodes(labels, batch);
+
+					for (final Node node : nodes) {
+
+						if (!deletedNodes.contains(node.getId())) {
+
+							final NodeInterface entity = nodeFactory.instantiate(node);
+
+							// schema nodes are merged with existing ones after the relationships are imported
+							if (entity instanceof AbstractSchemaNode) {
+
+								schemaNodes.add(node.getId());
+
+							} else {
+
+								TransactionCommand.nodeCreated(superUser, entity);
+								entity.addToIndex();
+							}
+						}
+					}
+
+					tx.success();
+
+					// publish the ids only after the nodes have been committed
+					for (int i=0; i<nodes.size(); i++) {
+
+						final Object uuid = batch.get(i).get(uuidPropertyName);
+						if (uuid instanceof String) {
+
+							uuidMap.put((String)uuid, nodes.get(i).getId());
+						}
+					}
+
+					nodeCount.addAndGet(nodes.size());
+					break;
+
+				} catch (FrameworkException | RuntimeException ex) {
+
+					if (!NodeServiceCommand.isRetryable(ex) || retries++ >= NodeServiceCommand.MAX_BATCH_RETRIES) {
+						throw ex;
+					}
+				}
+			}
+		}
+	}
+
+	private void importRelationships(final String type, final DataInputStream in) throws IOException, FrameworkException {
+
+		final int count                         = SyncDumpEncoding.readVarInt(in);
+		final List<String> startIds             = new ArrayList<>(count);
+		final List<String> endIds               = new ArrayList<>(count);
+
+		for (int i=0; i<count; i++) {
+			startIds.add(SyncDumpEncoding.readUuid(in));
+		}
+
+		for (int i=0; i<count; i++) {
+			endIds.add(SyncDumpEncoding.readUuid(in));
+		}
+
+		final List<Map<String, Object>> records = readColumns(in, count);
+		final RelationshipFactory relFactory    = new RelationshipFactory(securityContext);
+		final List<Map<String, Object>> props   = new ArrayList<>(count);
+		final List<Long> startNodeIds           = new ArrayList<>(count);
+		final List<Long> endNodeIds             = new ArrayList<>(count);
+		final App app                           = StructrApp.getInstance();
+
+		for (int i=0; i<count; i++) {
+
+			final Long startNodeId = uuidMap.get(startIds.get(i));
+			final Long endNodeId   = uuidMap.get(endIds.get(i));
+
+			if (startNodeId != null && endNodeId != null && !deletedNodes.contains(startNodeId) && !deletedNodes.contains(endNodeId)) {
+
+				startNodeIds.add(startNodeId);
+				endNodeIds.add(endNodeId);
+				props.add(records.get(i));
+
+			} else {
+
+				logger.debug("NOT creating relationship of type {}, start: {}, end: {}", new Object[] { type, startIds.get(i), endIds.get(i) } );
+				skippedRelCount.incrementAndGet();
+			}
+		}
+
+		for (int from=0; from<props.size(); from+=batchSize) {
+
+			final int to = (int)Math.min(props.size(), from + batchSize);
+			int retries  = 0;
+
+			while (true) {
+
+				try (final Tx tx = app.tx(doValidation)) {
+
+					final List<Relationship> rels = graphDb.createRelationships(type, startNodeIds.subList(from, to), endNodeIds.subList(from, to), props.subList(from, to));
+
+					for (final Relationship rel : rels) {
+
+						if (!deletedRels.contains(rel.getId())) {
+
+							final RelationshipInterface entity = relFactory.instantiate(rel);
+
+							TransactionCommand.relationshipCreated(superUser, entity);
+							entity.addToIndex();
+						}
+					}
+
+					tx.success();
+
+					relCount.addAndGet(rels.size());
+					break;
+
+				} catch (FrameworkException | RuntimeException ex) {
+
+					// concurrent relationship creation can conflict on shared nodes
+					if (!NodeServiceCommand.isRetryable(ex) || retries++ >= NodeServiceCommand.MAX_BATCH_RETRIES) {
+						throw ex;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Merges the imported schema nodes into existing schema nodes with the
+	 * same type and name, together with their properties, views and methods.
+	 */
+	private void mergeSchemaNodes() throws FrameworkException {
+
+		if (schemaNodes.isEmpty()) {
+			return;
+		}
+
+		final NodeFactory nodeFactory = new NodeFactory(securityContext);
+		final App app                 = StructrApp.getInstance();
+
+		try (final Tx tx = app.tx(doValidation)) {
+
+			for (final Long id : schemaNodes) {
+
+				if (!deletedNodes.contains(id)) {
+
+					final NodeInterface entity = nodeFactory.instantiate(graphDb.getNodeById(id));
+
+					SyncCommand.checkAndMerge(entity, deletedNodes, deletedRels);
+
+					if (!deletedNodes.contains(id)) {
+
+						TransactionCommand.nodeCreated(superUser, entity);
+						entity.addToIndex();
+					}
+				}
+			}
+
+			tx.success();
+		}
+	}
+
+	private List<Map<String, Object>> readColumns(final DataInputStream in, final int count) throws IOException {
+
+		final List<Map<String, Object>> records = new ArrayList<>(count);
+
+		for (int i=0; i<count; i++) {
+			records.add(new LinkedHashMap<>());
+		}
+
+		final int keyCount = SyncDumpEncoding.readVarInt(in);
+		for (int k=0; k<keyCount; k++) {
+
+			final String key = SyncDumpEncoding.readString(in);
+
+			for (int i=0; i<count; i++) {
+
+				final Object value = SyncDumpEncoding.readValue(in);
+				if (value != null) {
+
+					if (key.isEmpty()) {
+
+						logger.error("Invalid property key for value {}, ignoring", value);
+
+					} else {
+
+						records.get(i).put(key, value);
+					}
+				}
+			}
+		}
+
+		return records;
+	}
+
+	private List<List<Map<String, Object>>> partition(final List<Map<String, Object>> records) {
+
+		final List<List<Map<String, Object>>> batches = new ArrayList<>();
+
+		for (int from=0; from<records.size(); from+=batchSize) {
+			batches.add(records.subList(from, (int)Math.min(records.size(), from + batchSize)));
+		}
+
+		return batches;
+	}
+
+	private boolean isSchemaType(final String type) {
+
+		final Class entityType = StructrApp.getConfiguration().getNodeEntityClass(type);
+
+		return entityType != null && AbstractSchemaNode.class.isAssignableFrom(entityType);
+	}
+
+	private void submit(final ExecutorService executor, final BlockTask task) throws IOException {
+
+		try {
+
+			pendingBlocks.acquire();
+
+		} catch (InterruptedException iex) {
+			throw new IOException("Import interrupted", iex);
+		}
+
+		executor.submit(() -> {
+
+			try {
+
+				task.run();
+
+			} catch (Throwable t) {
+
+				failedBlocks.incrementAndGet();
+				logger.warn("Unable to import block", t);
+
+			} finally {
+
+				pendingBlocks.release();
+			}
+		});
+	}
+
+	private void awaitPendingBlocks() throws IOException {
+
+		try {
+
+			pendingBlocks.acquire(pendingLimit);
+			pendingBlocks.release(pendingLimit);
+
+		} catch (InterruptedException iex) {
+			throw new IOException("Import interrupted", iex);
+		}
+	}
+
+	// ----- nested classes -----
+	@FunctionalInterface
+	private interface BlockTask {
+
+		void run() throws IOException, FrameworkException;
+	}
+}
@@ -0,0 +1,424 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.core.graph;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.structr.api.graph.Node;
+import org.structr.api.graph.PropertyContainer;
+import org.structr.api.graph.Relationship;
+import org.structr.core.GraphObject;
+
+/**
+ * Writes nodes and relationships in the block-based dump format, see
+ * {@link SyncDumpEncoding}.
+ *
+ * The calling thread reads the properties of the exported objects and
+ * groups them into blocks by type. Full blocks are encoded, compressed
+ * and written by a number of lanes, each with its own thread and its own
+ * pair of temporary files, so encoding and compression run in parallel.
+ * When the export is finished, the compressed files of all lanes are
+ * copied into the zip file as stored entries.
+ */
+final class SyncDumpWriter {
+
+	private static final Logger logger                         = LoggerFactory.getLogger(SyncDumpWriter.class.getName());
+	private static final int BLOCK_SIZE                        = 1000;
+
+	private final Map<String, List<Map<String, Object>>> nodes = new LinkedHashMap<>();
+	private final Map<String, RelationshipBlock> rels          = new LinkedHashMap<>();
+	private final String uuidPropertyName                      = GraphObject.id.dbName();
+	private final String typePropertyName                      = NodeInterface.type.dbName();
+	private final List<Lane> lanes                             = new ArrayList<>();
+	private final Semaphore pendingBlocks;
+	private volatile Throwable failure                         = null;
+	private int nextLane                                       = 0;
+	private long nodeCount                                     = 0L;
+	private long relCount                                      = 0L;
+
+	public SyncDumpWriter(final int threads) throws IOException {
+
+		for (int i=0; i<threads; i++) {
+			lanes.add(new Lane(i));
+		}
+
+		// limit the number of blocks that wait for a lane
+		this.pendingBlocks = new Semaphore(threads * 4);
+	}
+
+	public void addNode(final Node node) throws IOException {
+
+		// ignore non-structr nodes
+		if (node.hasProperty(uuidPropertyName)) {
+
+			final Map<String, Object> properties = getProperties(node);
+			final Object type                    = properties.get(typePropertyName);
+			final String typeName                = type != null ? type.toString() : "";
+
+			List<Map<String, Object>> block = nodes.get(typeName);
+			if (block == null) {
+
+				block = new ArrayList<>(BLOCK_SIZE);
+				nodes.put(typeName, block);
+			}
+
+			block.add(properties);
+			nodeCount++;
+
+			if (block.size() >= BLOCK_SIZE) {
+
+				nodes.remove(typeName);
+				submitNodes(typeName, block);
+			}
+		}
+	}
+
+	public void addRelationship(final Relationship rel) throws IOException {
+
+		// ignore non-structr relationships
+		if (rel.hasProperty(uuidPropertyName)) {
+
+			final Node startNode = rel.getStartNode();
+			final Node endNode   = rel.getEndNode();
+
+			if (startNode.hasProperty(uuidPropertyName) && endNode.hasProperty(uuidPropertyName)) {
+
+				final String typeName   = rel.getType().name();
+				RelationshipBlock block = rels.get(typeName);
+
+				if (block == null) {
+
+					block = new RelationshipBlock();
+					rels.put(typeName, block);
+				}
+
+				block.startIds.add((String)startNode.getProperty(uuidPropertyName));
+				block.endIds.add((String)endNode.getProperty(uuidPropertyName));
+				block.properties.add(getProperties(rel));
+				relCount++;
+
+				if (block.properties.size() >= BLOCK_SIZE) {
+
+					rels.remove(typeName);
+					submitRelationships(typeName, block);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes the remaining blocks, waits for all lanes and copies their
+	 * output into the given zip stream.
+	 */
+	public void finish(final ZipOutputStream zos) throws IOException {
+
+		try {
+
+			for (final Map.Entry<String, List<Map<String, Object>>> entry : nodes.entrySet()) {
+				submitNodes(entry.getKey(), entry.getValue());
+			}
+
+			for (final Map.Entry<String, RelationshipBlock> entry : rels.entrySet()) {
+				submitRelationships(entry.getKey(), entry.getValue());
+			}
+
+			nodes.clear();
+			rels.clear();
+
+			for (final Lane lane : lanes) {
+				lane.close();
+			}
+
+			checkFailure();
+
+			// the channel is not closed, because the zip file continues after each entry
+			final WritableByteChannel target = Channels.newChannel(zos);
+
+			for (final Lane lane : lanes) {
+				copyEntry(zos, target, SyncDumpEncoding.NODES_ENTRY + lane.index, lane.nodeFile, lane.nodeChecksum);
+			}
+
+			for (final Lane lane : lanes) {
+				copyEntry(zos, target, SyncDumpEncoding.RELS_ENTRY + lane.index, lane.relFile, lane.relChecksum);
+			}
+
+			logger.info("Exported {} nodes and {} rels in {} lanes", new Object[] { nodeCount, relCount, lanes.size() } );
+
+		} finally {
+
+			for (final Lane lane : lanes) {
+				lane.delete();
+			}
+		}
+	}
+
+	// ----- private methods -----
+	private Map<String, Object> getProperties(final PropertyContainer container) {
+
+		final Map<String, Object> properties = new LinkedHashMap<>();
+
+		for (final String key : container.getPropertyKeys()) {
+			properties.put(key, container.getProperty(key));
+		}
+
+		return properties;
+	}
+
+	private void submitNodes(final String typeName, final List<Map<String, Object>> records) throws IOException {
+
+		submit(lane -> {
+
+			final ByteArrayOutputStream buf = new ByteArrayOutputStream();
+			final DataOutputStream out      = new DataOutputStream(buf);
+
+			out.writeByte(SyncDumpEncoding.NODE_BLOCK);
+			SyncDumpEncoding.writeString(out, typeName);
+			SyncDumpEncoding.writeVarInt(out, records.size());
+			writeColumns(out, records);
+
+			writeBlock(lane.nodes, buf);
+		});
+	}
+
+	private void submitRelationships(final String typeName, final RelationshipBlock block) throws IOException {
+
+		submit(lane -> {
+
+			final ByteArrayOutputStream buf = new ByteArrayOutputStream();
+			final DataOutputStream out      = new DataOutputStream(buf);
+
+			out.writeByte(SyncDumpEncoding.REL_BLOCK);
+			SyncDumpEncoding.writeString(out, typeName);
+			SyncDumpEncoding.writeVarInt(out, block.properties.size());
+
+			for (final String startId : block.startIds) {
+				SyncDumpEncoding.writeUuid(out, startId);
+			}
+
+			for (final String endId : block.endIds) {
+				SyncDumpEncoding.writeUuid(out, endId);
+			}
+
+			writeColumns(out, block.properties);
+
+			writeBlock(lane.rels, buf);
+		});
+	}
+
+	private void submit(final BlockTask task) throws IOException {
+
+		checkFailure();
+
+		try {
+
+			pendingBlocks.acquire();
+
+		} catch (InterruptedException iex) {
+			throw new IOException("Export interrupted", iex);
+		}
+
+		final Lane lane = lanes.get(nextLane++ % lanes.size());
+
+		lane.executor.submit(() -> {
+
+			try {
+
+				task.write(lane);
+
+			} catch (Throwable t) {
+
+				failure = t;
+
+			} finally {
+
+				pendingBlocks.release();
+			}
+		});
+	}
+
+	private void checkFailure() throws IOException {
+
+		if (failure != null) {
+			throw new IOException("Unable to write dump block", failure);
+		}
+	}
+
+	private static void writeColumns(final DataOutputStream out, final List<Map<String, Object>> records) throws IOException {
+
+		final Set<String> keys = new LinkedHashSet<>();
+
+		for (final Map<String, Object> record : records) {
+			keys.addAll(record.keySet());
+		}
+
+		SyncDumpEncoding.writeVarInt(out, keys.size());
+
+		for (final String key : keys) {
+
+			SyncDumpEncoding.writeString(out, key);
+
+			for (final Map<String, Object> record : records) {
+				SyncDumpEncoding.writeValue(out, record.get(key));
+			}
+		}
+	}
+
+	private static void writeBlock(final DataOutputStream out, final ByteArrayOutputStream block) throws IOException {
+
+		SyncDumpEncoding.writeVarInt(out, block.size());
+		block.writeTo(out);
+	}
+
+	private static void copyEntry(final ZipOutputStream zos, final WritableByteChannel target, final String name, final Path file, final CRC32 checksum) throws IOException {
+
+		try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+
+			final long size      = channel.size();
+			final ZipEntry entry = new ZipEntry(name);
+
+			// the data is already compressed by the lane
+			entry.setMethod(ZipEntry.STORED);
+			entry.setSize(size);
+			entry.setCompressedSize(size);
+			entry.setCrc(checksum.getValue());
+
+			zos.putNextEntry(entry);
+
+			long position = 0L;
+
+			while (position < size) {
+				position += channel.transferTo(position, size - position, target);
+			}
+
+			zos.closeEntry();
+		}
+	}
+
+	// ----- nested classes -----
+	@FunctionalInterface
+	private interface BlockTask {
+
+		void write(final Lane lane) throws IOException;
+	}
+
+	private static class RelationshipBlock {
+
+		private final List<Map<String, Object>> properties = new ArrayList<>(BLOCK_SIZE);
+		private final List<String> startIds                = new ArrayList<>(BLOCK_SIZE);
+		private final List<String> endIds                  = new ArrayList<>(BLOCK_SIZE);
+	}
+
+	private static class Lane {
+
+		private final ExecutorService executor = Executors.newSingleThreadExecutor();
+		private final CRC32 nodeChecksum       = new CRC32();
+		private final CRC32 relChecksum        = new CRC32();
+		private final List<Deflater> deflaters = new ArrayList<>();
+		private final DataOutputStream nodes;
+		private final DataOutputStream rels;
+		private final Path nodeFile;
+		private final Path relFile;
+		private final int index;
+
+		public Lane(final int index) throws IOException {
+
+			this.index    = index;
+			this.nodeFile = Files.createTempFile("structr-dump-nodes-", ".tmp");
+			this.relFile  = Files.createTempFile("structr-dump-rels-", ".tmp");
+			this.nodes    = open(nodeFile, nodeChecksum);
+			this.rels     = open(relFile, relChecksum);
+		}
+
+		public void close() throws IOException {
+
+			executor.shutdown();
+
+			try {
+
+				if (!executor.awaitTermination(1, TimeUnit.DAYS)) {
+					throw new IOException("Timeout waiting for export lane " + index);
+				}
+
+			} catch (InterruptedException iex) {
+				throw new IOException("Export interrupted", iex);
+			}
+
+			nodes.close();
+			rels.close();
+
+			for (final Deflater deflater : deflaters) {
+				deflater.end();
+			}
+		}
+
+		public void delete() {
+
+			executor.shutdownNow();
+
+			try {
+
+				Files.deleteIfExists(nodeFile);
+				Files.deleteIfExists(relFile);
+
+			} catch (IOException ioex) {
+				logger.warn("Unable to delete temporary export file: {}", ioex.getMessage());
+			}
+		}
+
+		private DataOutputStream open(final Path file, final CRC32 checksum) throws IOException {
+
+			final Deflater deflater    = new Deflater(Deflater.BEST_SPEED);
+			final OutputStream out     = new CheckedOutputStream(Files.newOutputStream(file), checksum);
+			final DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new DeflaterOutputStream(out, deflater), 65536));
+
+			deflaters.add(deflater);
+
+			SyncDumpEncoding.writeHeader(dos);
+
+			return dos;
+		}
+	}
+}
@@ -20,7 +20,9 @@ package org.structr.core.graph;
 
 
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Set;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -28,6 +30,7 @@ import org.structr.api.DatabaseService;
 import org.structr.api.NotInTransactionException;
 import org.structr.api.graph.Node;
 import org.structr.api.graph.Relationship;
+import org.structr.api.util.Statistics;
 import org.structr.common.error.ErrorBuffer;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.StructrTransactionListener;
@@ -64,6 +67,11 @@ public class TransactionCommand extends NodeServiceCommand implements AutoClosea
 	private static final ThreadLocal<TransactionReference> transactions = new ThreadLocal<>();
 	private static final MultiSemaphore                    semaphore    = new MultiSemaphore();
 
+	static {
+
+		Statistics.register("synchronization", () -> new LinkedHashMap<>(getSynchronizationStatistics()));
+	}
+
 	public TransactionCommand beginTx() {
 
 		final DatabaseService graphDb = (DatabaseService)arguments.get("graphDb");
@@ -359,6 +367,16 @@ public class TransactionCommand extends NodeServiceCommand implements AutoClosea
 		}
 	}
 
+	/**
+	 * Returns lock contention statistics for the synchronization keys
+	 * that were acquired during commit.
+	 *
+	 * @return a map of statistics per synchronization key
+	 */
+	public static Map<String, Map<String, Object>> getSynchronizationStatistics() {
+		return semaphore.getStatistics();
+	}
+
 	public static void registerTransactionListener(final StructrTransactionListener listener) {
 		listeners.add(listener);
 	}
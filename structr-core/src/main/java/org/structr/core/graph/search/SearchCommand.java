@@ -200,6 +200,16 @@ public abstract class SearchCommand<S extends PropertyContainer, T extends Graph
 				rootGroup.sortDescending(sortDescending);
 			}
 
+			if (!hasEmptySearchFields && !hasSpatialSource && factory.canPageInDatabase()) {
+
+				// no post-filtering needed, let the database do the paging
+				final Index<S> index   = getIndex();
+				final List<T> results  = factory.bulkInstantiate(index.query(rootGroup, pageSize, page));
+				final Integer count    = securityContext.ignoreResultCount() ? null : (int)index.count(rootGroup);
+
+				return new Result(results, count, true, false);
+			}
+
 			// do query
 			final Iterable hits = getIndex().query(rootGroup);
 			intermediateResult  = factory.instantiate(hits);
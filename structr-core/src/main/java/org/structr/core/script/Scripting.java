@@ -20,8 +20,11 @@ package org.structr.core.script;
 
 import java.io.StringWriter;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import javax.script.Bindings;
@@ -32,13 +35,19 @@ import javax.script.ScriptException;
 import org.apache.commons.lang.StringUtils;
 import org.mozilla.javascript.Context;
 import org.mozilla.javascript.ContextFactory;
+import org.mozilla.javascript.RhinoException;
+import org.mozilla.javascript.Script;
 import org.mozilla.javascript.Scriptable;
 import org.mozilla.javascript.Undefined;
 import org.renjin.script.RenjinScriptEngine;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.structr.api.util.FixedSizeCache;
+import org.structr.api.util.Statistics;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.GraphObject;
+import org.structr.core.Services;
+import org.structr.core.app.StructrApp;
 import org.structr.core.entity.AbstractNode;
 import org.structr.core.function.Functions;
 import org.structr.core.property.DateProperty;
@@ -51,8 +60,21 @@ import org.structr.schema.parser.DatePropertyParser;
  */
 public class Scripting {
 
-	private static final Logger logger                  = LoggerFactory.getLogger(Scripting.class.getName());
-	private static final Pattern ScriptEngineExpression = Pattern.compile("^\\$\\{(\\w+)\\{(.*)\\}\\}$", Pattern.DOTALL);
+	private static final Logger logger                              = LoggerFactory.getLogger(Scripting.class.getName());
+	private static final Pattern ScriptEngineExpression             = Pattern.compile("^\\$\\{(\\w+)\\{(.*)\\}\\}$", Pattern.DOTALL);
+	private static final ContextFactory contextFactory              = new ContextFactory();
+	private static final int optimizationLevel                      = Services.parseInt(StructrApp.getConfigurationValue(Services.APPLICATION_SCRIPT_OPTIMIZATION_LEVEL), 0);
+	private static final FixedSizeCache<String, Script> scriptCache = new FixedSizeCache<>(Services.parseInt(StructrApp.getConfigurationValue(Services.APPLICATION_SCRIPT_CACHE_SIZE), 1000));
+	private static final AtomicLong scriptCacheHits                 = new AtomicLong();
+	private static final AtomicLong scriptCacheMisses               = new AtomicLong();
+	private static final AtomicLong compileNanos                    = new AtomicLong();
+	private static final AtomicLong maxCompileNanos                 = new AtomicLong();
+	private static volatile Scriptable sharedScope                  = null;
+
+	static {
+
+		Statistics.register("scriptCache", Scripting::getScriptCacheStatistics);
+	}
 
 	public static String replaceVariables(final ActionContext actionContext, final GraphObject entity, final Object rawValue) throws FrameworkException {
 
@@ -218,21 +240,15 @@ public class Scripting {
 
 		final String entityName        = entity != null ? entity.getProperty(AbstractNode.name) : null;
 		final String entityDescription = entity != null ? ( StringUtils.isNotBlank(entityName) ? "\"" + entityName + "\":" : "" ) + entity.getUuid() : "anonymous";
-		final Context scriptingContext = new ContextFactory().enterContext();
+		final Context scriptingContext = enterContext();
 
 		try {
 
-			// Set version to JavaScript1.2 so that we get object-literal style
-			// printing instead of "[object Object]"
-			scriptingContext.setLanguageVersion(Context.VERSION_1_2);
-
-			// Initialize the standard objects (Object, Function, etc.)
-			// This must be done before scripts can be executed.
-			Scriptable scope = scriptingContext.initStandardObjects();
-
-			// set optimization level to interpreter mode to avoid
-			// class loading / PermGen space bug in Rhino
-			//scriptingContext.setOptimizationLevel(-1);
+			// extend the shared standard objects with a per-call scope so that
+			// variables defined by the script do not leak into other calls
+			final Scriptable scope = scriptingContext.newObject(getSharedScope());
+			scope.setPrototype(getSharedScope());
+			scope.setParentScope(null);
 
 			final StructrScriptable scriptable = new StructrScriptable(actionContext, entity, scriptingContext);
 			scriptable.setParentScope(scope);
@@ -243,9 +259,7 @@ public class Scripting {
 			// clear output buffer
 			actionContext.clear();
 
-			final String sourceLocation = methodName + " [" + entityDescription + "], line ";
-
-			Object extractedValue = scriptingContext.evaluateString(scope, embedInFunction(actionContext, script), sourceLocation, 1, null);
+			Object extractedValue = compileOrGetCached(scriptingContext, embedInFunction(actionContext, script), methodName).exec(scriptingContext, scope);
 
 			if (scriptable.hasException()) {
 				throw scriptable.getException();
@@ -272,10 +286,16 @@ public class Scripting {
 			// just throw the FrameworkException so we dont lose the information contained
 			throw fex;
 
+		} catch (final RhinoException rex) {
+
+			// compiled scripts are shared between entities, so the entity is added to the error location here
+			logger.warn("Error in {} [{}]", methodName, entityDescription, rex);
+			throw new FrameworkException(422, rex.details() + " (" + methodName + " [" + entityDescription + "], line #" + rex.lineNumber() + ")");
+
 		} catch (final Throwable t) {
 
 			// if any other kind of Throwable is encountered throw a new FrameworkException and be done with it
-			logger.warn("", t);
+			logger.warn("Error in {} [{}]", methodName, entityDescription, t);
 			throw new FrameworkException(422, t.getMessage());
 
 		} finally {
@@ -285,6 +305,101 @@ public class Scripting {
 
 	}
 
+	/**
+	 * Returns statistics about the compiled script cache.
+	 *
+	 * @return a map with cache size, hits, misses and compilation times
+	 */
+	public static Map<String, Object> getScriptCacheStatistics() {
+
+		final Map<String, Object> data = new LinkedHashMap<>();
+		final long hits                = scriptCacheHits.get();
+		final long misses              = scriptCacheMisses.get();
+		final long total               = hits + misses;
+
+		data.put("size",              scriptCache.size());
+		data.put("hits",              hits);
+		data.put("misses",            misses);
+		data.put("hitRate",           total > 0 ? (double)hits / (double)total : 0.0);
+		data.put("compileTime",       compileNanos.get() / 1000000L);
+		data.put("maxCompileTime",    maxCompileNanos.get() / 1000000L);
+		data.put("optimizationLevel", optimizationLevel);
+
+		return data;
+	}
+
+	// ----- private methods -----
+	private static Context enterContext() {
+
+		final Context scriptingContext = contextFactory.enterContext();
+
+		// Set version to JavaScript1.2 so that we get object-literal style
+		// printing instead of "[object Object]"
+		scriptingContext.setLanguageVersion(Context.VERSION_1_2);
+		scriptingContext.setOptimizationLevel(optimizationLevel);
+
+		return scriptingContext;
+	}
+
+	private static Scriptable getSharedScope() {
+
+		if (sharedScope == null) {
+
+			synchronized (Scripting.class) {
+
+				if (sharedScope == null) {
+
+					final Context scriptingContext = enterContext();
+					try {
+
+						// Initialize the standard objects (Object, Function, etc.)
+						// once and seal them so they can be shared by all threads.
+						sharedScope = scriptingContext.initStandardObjects(null, true);
+
+					} finally {
+
+						Context.exit();
+					}
+				}
+			}
+		}
+
+		return sharedScope;
+	}
+
+	/**
+	 * Returns the compiled script for the given source. Scripts are cached
+	 * by method name and source only, so the same method compiles once for
+	 * all entities it runs on.
+	 */
+	private static Script compileOrGetCached(final Context scriptingContext, final String source, final String methodName) {
+
+		final String cacheKey = methodName + ":" + source;
+		Script compiled       = scriptCache.get(cacheKey);
+
+		if (compiled != null) {
+
+			scriptCacheHits.incrementAndGet();
+
+		} else {
+
+			scriptCacheMisses.incrementAndGet();
+
+			final long t0 = System.nanoTime();
+
+			compiled = scriptingContext.compileString(source, methodName + ", line ", 1, null);
+
+			final long duration = System.nanoTime() - t0;
+
+			compileNanos.addAndGet(duration);
+			maxCompileNanos.accumulateAndGet(duration, Math::max);
+
+			scriptCache.put(cacheKey, compiled);
+		}
+
+		return compiled;
+	}
+
 	private static String embedInFunction(final ActionContext actionContext, final String source) {
 
 		final StringBuilder buf = new StringBuilder();
@@ -19,7 +19,9 @@
 package org.structr.module;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
@@ -37,14 +39,20 @@ import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.structr.agent.Agent;
+import org.structr.api.module.ModuleIndexProcessor;
 import org.structr.api.service.Service;
 import org.structr.common.DefaultFactoryDefinition;
 import org.structr.common.FactoryDefinition;
@@ -988,36 +996,92 @@ public class JarConfigurationProvider implements ConfigurationProvider {
 	// ----- private methods -----
 	private void scanResources() {
 
-		Set<String> resourcePaths = getResourcesToScan();
-		for (String resourcePath : resourcePaths) {
+		final long t0                        = System.currentTimeMillis();
+		final Set<String> resourcePaths      = getResourcesToScan();
+		final long t1                        = System.currentTimeMillis();
+		final List<StructrModuleInfo> infos  = loadResources(resourcePaths);
+		final long t2                        = System.currentTimeMillis();
+		int indexed                          = 0;
+		int classes                          = 0;
 
-			scanResource(resourcePath);
+		// importing stays sequential, class initialization and module
+		// activation depend on the order of the resources
+		for (final StructrModuleInfo module : infos) {
+
+			try {
+
+				importResource(module);
+
+			} catch (IOException ioex) {
+
+				logger.warn("Error loading module {}: {}", new Object[]{module.getModulePath(), ioex.getMessage()});
+			}
+
+			if (module.isIndexed()) {
+				indexed++;
+			}
+
+			classes += module.getClasses().size();
 		}
 
-		logger.info("{} JARs scanned", resourcePaths.size());
+		final long t3 = System.currentTimeMillis();
 
+		logger.info("{} JARs scanned", resourcePaths.size());
+		logger.info("Class path scan took {} ms: {} ms to find resources, {} ms to list {} classes ({} of {} resources from module index), {} ms to load classes", new Object[] { t3 - t0, t1 - t0, t2 - t1, classes, indexed, infos.size(), t3 - t2 });
 	}
 
-	private void scanResource(final String resourceName) {
+	/**
+	 * Lists the classes of all the given resources in parallel, and
+	 * returns the module infos in the order of the resources.
+	 *
+	 * @param resourcePaths
+	 * @return the list of module infos
+	 */
+	private List<StructrModuleInfo> loadResources(final Set<String> resourcePaths) {
+
+		final List<StructrModuleInfo> infos = new ArrayList<>();
+		final int threads                   = Math.max(1, Math.min(resourcePaths.size(), Runtime.getRuntime().availableProcessors()));
+		final ExecutorService executor      = Executors.newFixedThreadPool(threads);
+		final Map<String, Future<StructrModuleInfo>> futures = new LinkedHashMap<>();
 
 		try {
 
-			final StructrModuleInfo module = loadResource(resourceName);
-			if (module != null) {
+			for (final String resourcePath : resourcePaths) {
 
-				importResource(module);
+				futures.put(resourcePath, executor.submit(() -> loadResource(resourcePath)));
+			}
 
-			} else {
+			for (final Entry<String, Future<StructrModuleInfo>> entry : futures.entrySet()) {
 
-				logger.warn("Module was null!");
-			}
+				try {
+
+					final StructrModuleInfo module = entry.getValue().get();
+					if (module != null) {
+
+						infos.add(module);
+
+					} else {
+
+						logger.warn("Module was null!");
+					}
+
+				} catch (ExecutionException ex) {
+
+					logger.warn("Error loading module {}: {}", new Object[]{entry.getKey(), ex.getCause().getMessage()});
 
-		} catch (IOException ioex) {
+				} catch (InterruptedException iex) {
+
+					Thread.currentThread().interrupt();
+					break;
+				}
+			}
 
-			logger.warn("Error loading module {}: {}", new Object[]{resourceName, ioex.getMessage()});
+		} finally {
 
+			executor.shutdownNow();
 		}
 
+		return infos;
 	}
 
 	private void importResource(StructrModuleInfo module) throws IOException {
@@ -1094,51 +1158,140 @@ public class JarConfigurationProvider implements ConfigurationProvider {
 
 		// create module
 		final StructrModuleInfo ret   = new StructrModuleInfo(resource);
-		final Set<String> classes = ret.getClasses();
+		final Set<String> classes     = new LinkedHashSet<>();
+		Set<String> index             = null;
 
 		if (resource.endsWith(".jar") || resource.endsWith(".war")) {
 
-			final ZipFile zipFile = new ZipFile(new File(resource), ZipFile.OPEN_READ);
+			try (final ZipFile zipFile = new ZipFile(new File(resource), ZipFile.OPEN_READ)) {
+
+				// conventions that might be useful here:
+				// ignore entries beginning with meta-inf/
+				// handle entries beginning with images/ as IMAGE
+				// handle entries beginning with pages/ as PAGES
+				// handle entries ending with .jar as libraries, to be deployed to WEB-INF/lib
+				// handle other entries as potential page and/or entity classes
+				// .. to be extended
+				// (entries that end with "/" are directories)
+
+				for (final Enumeration<? extends ZipEntry> entries = zipFile.entries(); entries.hasMoreElements();) {
+
+					final ZipEntry entry = entries.nextElement();
+					final String entryName = entry.getName();
+
+					if (entryName.endsWith(".class")) {
 
-			// conventions that might be useful here:
-			// ignore entries beginning with meta-inf/
-			// handle entries beginning with images/ as IMAGE
-			// handle entries beginning with pages/ as PAGES
-			// handle entries ending with .jar as libraries, to be deployed to WEB-INF/lib
-			// handle other entries as potential page and/or entity classes
-			// .. to be extended
-			// (entries that end with "/" are directories)
+						String fileEntry = entry.getName().replaceAll("[/]+", ".");
 
-			for (final Enumeration<? extends ZipEntry> entries = zipFile.entries(); entries.hasMoreElements();) {
+						// add class entry to Module
+						classes.add(fileEntry.substring(0, fileEntry.length() - 6));
 
-				final ZipEntry entry = entries.nextElement();
-				final String entryName = entry.getName();
+					}
 
-				if (entryName.endsWith(".class")) {
+				}
 
-					String fileEntry = entry.getName().replaceAll("[/]+", ".");
+				final ZipEntry indexEntry = zipFile.getEntry(ModuleIndexProcessor.INDEX_RESOURCE);
+				if (indexEntry != null && isModuleIndexEnabled()) {
 
-					// add class entry to Module
-					classes.add(fileEntry.substring(0, fileEntry.length() - 6));
+					try (final InputStream is = zipFile.getInputStream(indexEntry)) {
 
+						index = readModuleIndex(resource, is, classes);
+					}
 				}
+			}
+
+		} else if (resource.endsWith(classesDir) || resource.endsWith(testClassesDir)) {
 
+			final File dir       = new File(resource);
+			final File indexFile = new File(dir, ModuleIndexProcessor.INDEX_RESOURCE);
+
+			addClassesRecursively(dir, resource.endsWith(classesDir) ? classesDir : testClassesDir, classes);
+
+			if (indexFile.exists() && isModuleIndexEnabled()) {
+
+				try (final InputStream is = new FileInputStream(indexFile)) {
+
+					index = readModuleIndex(resource, is, classes);
+				}
 			}
+		}
 
-			zipFile.close();
+		if (index != null) {
 
-		} else if (resource.endsWith(classesDir)) {
+			// keep the order of the resource, classes are initialized in this order
+			for (final String name : classes) {
 
-			addClassesRecursively(new File(resource), classesDir, classes);
+				if (index.contains(name)) {
+					ret.getClasses().add(name);
+				}
+			}
 
-		} else if (resource.endsWith(testClassesDir)) {
+			ret.setIndexed(true);
+
+		} else {
 
-			addClassesRecursively(new File(resource), testClassesDir, classes);
+			ret.getClasses().addAll(classes);
 		}
 
 		return ret;
 	}
 
+	/**
+	 * Reads the module index that was written by the {@link ModuleIndexProcessor}
+	 * at build time. The index is only used if it covers all the classes
+	 * of the resource, an index from a partial compilation run is ignored.
+	 *
+	 * @param resource the name of the resource
+	 * @param is the input stream of the index
+	 * @param classes the classes that were found in the resource
+	 *
+	 * @return the classes from the index, or null if the index cannot be used
+	 *
+	 * @throws IOException
+	 */
+	private Set<String> readModuleIndex(final String resource, final InputStream is, final Set<String> classes) throws IOException {
+
+		final Set<String> index = new LinkedHashSet<>();
+		int expectedCount       = -1;
+
+		for (final String line : IOUtils.readLines(is, "utf-8")) {
+
+			final String[] parts = line.split("\t");
+			if (parts.length == 2) {
+
+				if (ModuleIndexProcessor.CLASS_COUNT.equals(parts[0])) {
+
+					expectedCount = Integer.parseInt(parts[1]);
+
+				} else {
+
+					index.add(parts[1]);
+				}
+			}
+		}
+
+		// anonymous and local classes are not known to the processor
+		int actualCount = 0;
+		for (final String name : classes) {
+
+			if (!name.endsWith("package-info") && !name.matches(".*\\$[0-9].*")) {
+				actualCount++;
+			}
+		}
+
+		if (expectedCount != actualCount) {
+
+			logger.info("Module index of {} is outdated ({} of {} classes), scanning all classes.", new Object[] { resource, expectedCount, actualCount });
+			return null;
+		}
+
+		return index;
+	}
+
+	private boolean isModuleIndexEnabled() {
+		return Services.parseBoolean(Services.getInstance().getConfigurationValue(Services.APPLICATION_MODULE_INDEX_ENABLED), true);
+	}
+
 	private void addClassesRecursively(File dir, String prefix, Set<String> classes) {
 
 		if (dir == null) {
@@ -1158,7 +1311,7 @@ public class JarConfigurationProvider implements ConfigurationProvider {
 
 				addClassesRecursively(file, prefix, classes);
 
-			} else {
+			} else if (file.getName().endsWith(".class")) {
 
 				try {
 
@@ -32,6 +32,7 @@ public class StructrModuleInfo {
 	private final Set<String> resources  = new LinkedHashSet<>();
 	private final Set<String> libraries  = new LinkedHashSet<>();
 	private String modulePath            = null;
+	private boolean indexed              = false;
 
 	public StructrModuleInfo(String modulePath) {
 		this.modulePath = modulePath;
@@ -56,4 +57,18 @@ public class StructrModuleInfo {
 	public Set<String> getLibraries() {
 		return(libraries);
 	}
+
+	/**
+	 * Indicates whether the classes of this module were read from its
+	 * module index instead of being listed from the module's contents.
+	 *
+	 * @return whether the module index was used
+	 */
+	public boolean isIndexed() {
+		return indexed;
+	}
+
+	public void setIndexed(final boolean indexed) {
+		this.indexed = indexed;
+	}
 }
@@ -33,6 +33,7 @@ import java.util.Map.Entry;
 import java.util.Properties;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -68,6 +69,7 @@ public class SchemaService implements Service {
 	private static final AtomicBoolean compiling                  = new AtomicBoolean(false);
 	private static final AtomicBoolean updating                   = new AtomicBoolean(false);
 	private static final Map<String, String> builtinTypeMap       = new LinkedHashMap<>();
+	private static final AtomicLong schemaVersion                 = new AtomicLong(0L);
 
 	@Override
 	public void injectArguments(final Command command) {
@@ -89,6 +91,17 @@ public class SchemaService implements Service {
 		builtinTypeMap.put(type, fqcn);
 	}
 
+	/**
+	 * Returns a number that changes whenever the schema was reloaded, so
+	 * that caches outside of the core module can detect that types and
+	 * views may have changed.
+	 *
+	 * @return the current schema version
+	 */
+	public static long getSchemaVersion() {
+		return schemaVersion.get();
+	}
+
 	public static boolean reloadSchema(final ErrorBuffer errorBuffer) {
 
 		final ConfigurationProvider config = StructrApp.getConfiguration();
@@ -180,6 +193,9 @@ public class SchemaService implements Service {
 						// inject views in configuration provider
 						config.registerDynamicViews(dynamicViews);
 
+						// invalidate caches that depend on types and views
+						schemaVersion.incrementAndGet();
+
 						tx.success();
 					}
 
@@ -20,19 +20,25 @@ package org.structr.schema.compiler;
 
 import java.io.IOException;
 import java.security.SecureClassLoader;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import javax.tools.FileObject;
 import javax.tools.ForwardingJavaFileManager;
 import javax.tools.JavaFileObject;
 import javax.tools.JavaFileObject.Kind;
 import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import org.apache.commons.lang3.StringUtils;
+import org.structr.module.JarConfigurationProvider;
 
 /**
  *
  *
  */
-public class ClassFileManager extends ForwardingJavaFileManager {
+public class ClassFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
 
 	/**
 	 * Instance of JavaClassObject that will store the compiled byte code of
@@ -40,6 +46,13 @@ public class ClassFileManager extends ForwardingJavaFileManager {
 	 */
 	private final Map<String, JavaClassObject> objects = new LinkedHashMap<>();
 
+	/**
+	 * Compiled dynamic classes that the compiler reads instead of their
+	 * source, and the source class of each class written by the compiler.
+	 */
+	private final Map<String, JavaClassObject> inputs  = new LinkedHashMap<>();
+	private final Map<String, String> sources          = new LinkedHashMap<>();
+
 	/**
 	 * Will initialize the manager with the specified standard java file
 	 * manager
@@ -50,6 +63,78 @@ public class ClassFileManager extends ForwardingJavaFileManager {
 		super(standardManager);
 	}
 
+	/**
+	 * Adds the byte code of a class, making it available to the class
+	 * loaders of this manager and to the compiler.
+	 *
+	 * @param name the full name of the class
+	 * @param bytes the byte code
+	 * @throws IOException
+	 */
+	public void addClass(final String name, final byte[] bytes) throws IOException {
+
+		final JavaClassObject obj = new JavaClassObject(name, bytes);
+
+		objects.put(name, obj);
+		inputs.put(name, obj);
+	}
+
+	/**
+	 * Returns the byte code of all classes written by the compiler, grouped
+	 * by the name of the source class they were compiled from.
+	 *
+	 * @return a map of source class name to class name to byte code
+	 */
+	public Map<String, Map<String, byte[]>> getCompiledClasses() {
+
+		final Map<String, Map<String, byte[]>> result = new LinkedHashMap<>();
+
+		for (final Map.Entry<String, String> entry : sources.entrySet()) {
+
+			final String name = entry.getKey();
+			Map<String, byte[]> classes = result.get(entry.getValue());
+
+			if (classes == null) {
+
+				classes = new LinkedHashMap<>();
+				result.put(entry.getValue(), classes);
+			}
+
+			classes.put(name, objects.get(name).getBytes());
+		}
+
+		return result;
+	}
+
+	@Override
+	public Iterable<JavaFileObject> list(final Location location, final String packageName, final Set<Kind> kinds, final boolean recurse) throws IOException {
+
+		final Iterable<JavaFileObject> files = super.list(location, packageName, kinds, recurse);
+
+		if (StandardLocation.CLASS_PATH.equals(location) && kinds.contains(Kind.CLASS) && JarConfigurationProvider.DYNAMIC_TYPES_PACKAGE.equals(packageName) && !inputs.isEmpty()) {
+
+			final List<JavaFileObject> result = new ArrayList<>(inputs.values());
+
+			for (final JavaFileObject file : files) {
+				result.add(file);
+			}
+
+			return result;
+		}
+
+		return files;
+	}
+
+	@Override
+	public String inferBinaryName(final Location location, final JavaFileObject file) {
+
+		if (file instanceof JavaClassObject) {
+			return ((JavaClassObject)file).getBinaryName();
+		}
+
+		return super.inferBinaryName(location, file);
+	}
+
 	/**
 	 * Will be used by us to get the class loader for our compiled class. It
 	 * creates an anonymous class extending the SecureClassLoader which uses
@@ -94,7 +179,17 @@ public class ClassFileManager extends ForwardingJavaFileManager {
 		JavaClassObject obj = new JavaClassObject(className, kind);
 		
 		objects.put(className, obj);
-		
+
+		if (sibling instanceof CharSequenceJavaFileObject) {
+
+			sources.put(className, ((CharSequenceJavaFileObject)sibling).getClassName());
+
+		} else {
+
+			// nested classes belong to the source of their outer class
+			sources.put(className, StringUtils.substringAfterLast(StringUtils.substringBefore(className, "$"), "."));
+		}
+
 		return obj;
 	}
 }
\ No newline at end of file
@@ -18,8 +18,10 @@
  */
 package org.structr.schema.compiler;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
 import javax.tools.SimpleJavaFileObject;
@@ -38,6 +40,8 @@ public class JavaClassObject extends SimpleJavaFileObject {
 	protected final ByteArrayOutputStream bos =
 		new ByteArrayOutputStream();
 
+	private final String name;
+
 	/**
 	 * Registers the compiled class object under URI containing the class
 	 * full name
@@ -48,6 +52,31 @@ public class JavaClassObject extends SimpleJavaFileObject {
 	public JavaClassObject(String name, Kind kind) {
 		super(URI.create("string:///" + name.replace('.', '/')
 			+ kind.extension), kind);
+
+		this.name = name;
+	}
+
+	/**
+	 * Creates a class object from previously compiled byte code, so that
+	 * the compiler can read it instead of compiling the source again.
+	 *
+	 * @param name Full name of the class
+	 * @param bytes the byte code
+	 */
+	public JavaClassObject(final String name, final byte[] bytes) throws IOException {
+
+		this(name, Kind.CLASS);
+
+		bos.write(bytes);
+	}
+
+	/**
+	 * Returns the full name of the class
+	 *
+	 * @return the binary name
+	 */
+	public String getBinaryName() {
+		return name;
 	}
 
 	/**
@@ -69,4 +98,13 @@ public class JavaClassObject extends SimpleJavaFileObject {
 	public OutputStream openOutputStream() throws IOException {
 		return bos;
 	}
+
+	/**
+	 * Will provide the compiler with the byte code of a class that was
+	 * compiled before.
+	 */
+	@Override
+	public InputStream openInputStream() throws IOException {
+		return new ByteArrayInputStream(bos.toByteArray());
+	}
 }
\ No newline at end of file
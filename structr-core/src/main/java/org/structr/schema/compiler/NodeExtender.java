@@ -18,26 +18,38 @@
  */
 package org.structr.schema.compiler;
 
+import java.io.IOException;
 import java.io.StringWriter;
 import java.io.Writer;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
 import java.util.TreeMap;
-import java.util.stream.Collectors;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import javax.tools.Diagnostic;
 import javax.tools.Diagnostic.Kind;
 import javax.tools.DiagnosticListener;
 import javax.tools.JavaCompiler;
-import javax.tools.JavaFileManager;
 import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
 import javax.tools.ToolProvider;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.structr.api.util.Statistics;
 import org.structr.common.error.DiagnosticErrorToken;
 import org.structr.common.error.ErrorBuffer;
 import org.structr.core.Services;
@@ -47,25 +59,45 @@ import org.structr.core.graph.TransactionCommand;
 import org.structr.module.JarConfigurationProvider;
 
 /**
+ * Compiles the source code of dynamic types.
  *
+ * Only types whose source, or the source of a type they refer to or
+ * inherit from, has changed since the last compilation are passed to the
+ * compiler, all others are defined from their previous byte code. The
+ * byte code is also stored in an on-disk cache so that a restart does not
+ * need to compile anything if the schema is unchanged.
  *
  */
 public class NodeExtender {
 
-	private static final Logger logger   = LoggerFactory.getLogger(NodeExtender.class.getName());
+	private static final Logger logger      = LoggerFactory.getLogger(NodeExtender.class.getName());
+	private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z_$][A-Za-z0-9_$]*");
+	private static final Pattern SUPERCLASS = Pattern.compile("class\\s+[A-Za-z0-9_$]+\\s+extends\\s+([A-Za-z0-9_$.]+)");
 
-	private static final JavaCompiler compiler       = ToolProvider.getSystemJavaCompiler();
-	private static final JavaFileManager fileManager = new ClassFileManager(compiler.getStandardFileManager(null, null, null));
-	private static final ClassLoader classLoader     = fileManager.getClassLoader(null);
-	private static final Map<String, Class> classes  = new TreeMap<>();
+	private static final JavaCompiler compiler                   = ToolProvider.getSystemJavaCompiler();
+	private static final StandardJavaFileManager standardManager = compiler.getStandardFileManager(null, null, null);
+	private static final ClassFileManager fileManager            = new ClassFileManager(standardManager);
+	private static final ClassLoader classLoader                 = fileManager.getClassLoader(null);
+	private static final Map<String, Class> classes              = new TreeMap<>();
+	private static final Map<String, CompiledType> compiledTypes = new HashMap<>();
+	private static final Map<String, Object> statistics          = new LinkedHashMap<>();
+	private static SchemaClassCache cache                        = null;
 
-	private List<JavaFileObject> jfiles  = null;
-	private Set<String> fqcns            = null;
+	static {
+
+		Statistics.register("schemaCompilation", () -> {
+
+			synchronized (statistics) {
+				return new LinkedHashMap<>(statistics);
+			}
+		});
+	}
+
+	private Map<String, String> sources = null;
 
 	public NodeExtender() {
 
-		jfiles      = new ArrayList<>();
-		fqcns       = new LinkedHashSet<>();
+		sources = new LinkedHashMap<>();
 	}
 
 	public static ClassLoader getClassLoader() {
@@ -84,10 +116,7 @@ public class NodeExtender {
 
 		if (className != null && content != null) {
 
-			final String packageName = JarConfigurationProvider.DYNAMIC_TYPES_PACKAGE;
-
-			jfiles.add(new CharSequenceJavaFileObject(className, content));
-			fqcns.add(packageName.concat(".".concat(className)));
+			sources.put(className, content);
 
 			if ("true".equals(Services.getInstance().getConfigurationValue("NodeExtender.log"))) {
 
@@ -99,20 +128,111 @@ public class NodeExtender {
 
 	public synchronized Map<String, Class> compile(final ErrorBuffer errorBuffer) throws ClassNotFoundException {
 
-		final Writer errorWriter     = new StringWriter();
+		final String packageName     = JarConfigurationProvider.DYNAMIC_TYPES_PACKAGE;
 		final List<Class> newClasses = new LinkedList<>();
+		final long start             = System.currentTimeMillis();
+
+		if (!sources.isEmpty()) {
+
+			final Map<String, CompiledType> types = new LinkedHashMap<>();
+			final Map<String, String> keys        = getKeys();
+			final SchemaClassCache classCache     = getCache();
+			final Set<String> changed             = new LinkedHashSet<>();
+			int cached                            = 0;
+
+			// reuse byte code of unchanged types
+			for (final Entry<String, String> entry : keys.entrySet()) {
+
+				final String className  = entry.getKey();
+				final String key        = entry.getValue();
+				final CompiledType type = compiledTypes.get(className);
+
+				if (type != null && key.equals(type.key)) {
+
+					types.put(className, type);
+
+				} else {
+
+					final Map<String, byte[]> bytes = classCache != null ? classCache.get(className, key) : null;
+					if (bytes != null) {
+
+						types.put(className, new CompiledType(key, bytes));
+						cached++;
+
+					} else {
+
+						changed.add(className);
+					}
+				}
+			}
+
+			boolean success = true;
+
+			if (!changed.isEmpty()) {
+
+				logger.debug("Compiling {} of {} dynamic entities...", changed.size(), sources.size());
+
+				Map<String, CompiledType> compiled = null;
+
+				if (changed.size() < sources.size()) {
+
+					compiled = compile(changed, types, keys, new ErrorBuffer());
+					if (compiled == null) {
+
+						// compile everything to report errors in the context of the full schema
+						logger.info("Incremental compilation failed, compiling all {} dynamic entities.", sources.size());
+
+						types.clear();
+						changed.addAll(sources.keySet());
+					}
+				}
 
-		if (!jfiles.isEmpty()) {
+				if (compiled == null) {
+					compiled = compile(sources.keySet(), types, keys, errorBuffer);
+				}
+
+				if (compiled != null) {
+
+					types.putAll(compiled);
+
+					if (classCache != null) {
+
+						for (final Entry<String, CompiledType> entry : compiled.entrySet()) {
+							classCache.put(entry.getKey(), entry.getValue().key, entry.getValue().classes);
+						}
+					}
+
+				} else {
+
+					success = false;
+				}
+			}
+
+			if (success) {
+
+				try {
+
+					for (final CompiledType type : types.values()) {
+
+						for (final Entry<String, byte[]> entry : type.classes.entrySet()) {
+							fileManager.addClass(entry.getKey(), entry.getValue());
+						}
+					}
 
-			logger.debug("Compiling {} dynamic entities...", jfiles.size());
+				} catch (IOException ioex) {
 
-			Boolean success = compiler.getTask(errorWriter, fileManager, new Listener(errorBuffer), null, null, jfiles).call();
+					logger.warn("Unable to define dynamic entities: {}", ioex.getMessage());
+					success = false;
+				}
+			}
 
 			if (success) {
 
 				final ClassLoader loader = fileManager.getClassLoader(null);
 
-				for (final String fqcn : fqcns) {
+				for (final String className : sources.keySet()) {
+
+					final String fqcn = packageName.concat(".".concat(className));
 
 					try {
 
@@ -141,7 +261,26 @@ public class NodeExtender {
 						classes.put(newType.getName(), newType);
 					}
 
-					logger.info("Successfully compiled {} dynamic entities: {}", new Object[] { jfiles.size(), jfiles.stream().map(f -> f.getName().replaceFirst("/", "")).collect(Collectors.joining(", ")) });
+					compiledTypes.clear();
+					compiledTypes.putAll(types);
+
+					synchronized (statistics) {
+
+						statistics.put("types",    sources.size());
+						statistics.put("compiled", changed.size());
+						statistics.put("cached",   cached);
+						statistics.put("reused",   sources.size() - changed.size() - cached);
+						statistics.put("duration", System.currentTimeMillis() - start);
+					}
+
+					if (changed.isEmpty()) {
+
+						logger.info("Successfully loaded {} dynamic entities ({} from cache)", sources.size(), cached);
+
+					} else {
+
+						logger.info("Successfully compiled {} of {} dynamic entities ({} from cache): {}", new Object[] { changed.size(), sources.size(), cached, String.join(", ", changed) });
+					}
 
 					for (final StructrTransactionListener listener : TransactionCommand.getTransactionListeners()) {
 						listener.simpleBroadcast();
@@ -156,6 +295,144 @@ public class NodeExtender {
 		return classes;
 	}
 
+	// ----- private methods -----
+	/**
+	 * Compiles the given types, reading all other types from their byte
+	 * code, and returns the byte code of the compiled types or null if the
+	 * compilation failed.
+	 */
+	private Map<String, CompiledType> compile(final Set<String> classNames, final Map<String, CompiledType> types, final Map<String, String> keys, final ErrorBuffer errorBuffer) {
+
+		final ClassFileManager manager    = new ClassFileManager(standardManager);
+		final List<JavaFileObject> jfiles = new ArrayList<>();
+		final Writer errorWriter          = new StringWriter();
+
+		for (final String className : classNames) {
+			jfiles.add(new CharSequenceJavaFileObject(className, sources.get(className)));
+		}
+
+		try {
+
+			for (final CompiledType type : types.values()) {
+
+				for (final Entry<String, byte[]> entry : type.classes.entrySet()) {
+					manager.addClass(entry.getKey(), entry.getValue());
+				}
+			}
+
+			// annotation processors from the class path must not run on dynamic types
+			if (compiler.getTask(errorWriter, manager, new Listener(errorBuffer), Arrays.asList("-proc:none"), null, jfiles).call()) {
+
+				final Map<String, CompiledType> compiled = new LinkedHashMap<>();
+
+				for (final Entry<String, Map<String, byte[]>> entry : manager.getCompiledClasses().entrySet()) {
+
+					final String className = entry.getKey();
+
+					compiled.put(className, new CompiledType(keys.get(className), entry.getValue()));
+				}
+
+				return compiled;
+			}
+
+		} catch (IOException ioex) {
+
+			logger.warn("Unable to compile dynamic entities: {}", ioex.getMessage());
+		}
+
+		return null;
+	}
+
+	/**
+	 * Returns a key for each source that changes when the source itself,
+	 * the source of a dynamic type it refers to or the source of any of its
+	 * dynamic supertypes changes.
+	 */
+	private Map<String, String> getKeys() {
+
+		final Map<String, String> hashes       = new HashMap<>();
+		final Map<String, String> superclasses = new HashMap<>();
+		final Map<String, String> keys         = new LinkedHashMap<>();
+		final String version                   = SchemaClassCache.getVersion();
+
+		for (final Entry<String, String> entry : sources.entrySet()) {
+
+			final String className = entry.getKey();
+			final String source    = entry.getValue();
+			final Matcher matcher  = SUPERCLASS.matcher(source);
+
+			hashes.put(className, DigestUtils.sha1Hex(source));
+
+			if (matcher.find()) {
+				superclasses.put(className, StringUtils.substringAfterLast(".".concat(matcher.group(1)), "."));
+			}
+		}
+
+		for (final Entry<String, String> entry : sources.entrySet()) {
+
+			final String className       = entry.getKey();
+			final Set<String> references = new TreeSet<>();
+			final Matcher matcher        = IDENTIFIER.matcher(entry.getValue());
+			final StringBuilder buf      = new StringBuilder(version);
+
+			while (matcher.find()) {
+
+				final String identifier = matcher.group();
+				if (hashes.containsKey(identifier) && !className.equals(identifier)) {
+
+					references.add(identifier);
+				}
+			}
+
+			// add supertypes
+			final Set<String> supertypes = new HashSet<>();
+			String superclass            = superclasses.get(className);
+
+			while (superclass != null && hashes.containsKey(superclass) && supertypes.add(superclass)) {
+
+				references.add(superclass);
+				superclass = superclasses.get(superclass);
+			}
+
+			buf.append(hashes.get(className));
+
+			for (final String reference : references) {
+
+				buf.append(reference);
+				buf.append(hashes.get(reference));
+			}
+
+			keys.put(className, DigestUtils.sha1Hex(buf.toString()));
+		}
+
+		return keys;
+	}
+
+	private static synchronized SchemaClassCache getCache() {
+
+		if (cache == null && Services.parseBoolean(Services.getInstance().getConfigurationValue(Services.APPLICATION_SCHEMA_CACHE_ENABLED), true)) {
+
+			final String basePath = Services.getInstance().getConfigurationValue(Services.BASE_PATH, "");
+
+			cache = new SchemaClassCache(Paths.get(basePath, "schema-cache"));
+		}
+
+		return cache;
+	}
+
+	// ----- nested classes -----
+	private static class CompiledType {
+
+		private Map<String, byte[]> classes = null;
+		private String key                  = null;
+
+		public CompiledType(final String key, final Map<String, byte[]> classes) {
+
+			this.key     = key;
+			this.classes = classes;
+		}
+	}
+
 	private static class Listener implements DiagnosticListener<JavaFileObject> {
 
 		private ErrorBuffer errorBuffer = null;
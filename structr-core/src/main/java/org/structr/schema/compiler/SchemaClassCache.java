@@ -0,0 +1,219 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.schema.compiler;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * On-disk cache for the byte code of dynamic types.
+ *
+ * Entries are stored per class name and source key in a directory whose
+ * name is derived from the Java version and the class path, so that a
+ * different Structr version or module set never sees byte code that was
+ * compiled against other classes.
+ */
+public class SchemaClassCache {
+
+	private static final Logger logger  = LoggerFactory.getLogger(SchemaClassCache.class.getName());
+	private static String version       = null;
+
+	private Path directory = null;
+
+	public SchemaClassCache(final Path baseDirectory) {
+
+		try {
+
+			directory = baseDirectory.resolve(getVersion());
+
+			Files.createDirectories(directory);
+
+			// remove entries of other versions
+			try (final DirectoryStream<Path> stream = Files.newDirectoryStream(baseDirectory)) {
+
+				for (final Path path : stream) {
+
+					if (!path.equals(directory)) {
+
+						FileUtils.deleteQuietly(path.toFile());
+					}
+				}
+			}
+
+		} catch (IOException ioex) {
+
+			logger.warn("Unable to initialize schema class cache in {}: {}", baseDirectory, ioex.getMessage());
+			directory = null;
+		}
+	}
+
+	/**
+	 * Returns the cached byte code for the given class and key, or null.
+	 *
+	 * @param className the simple name of the source class
+	 * @param key the key of the source
+	 * @return a map of class name to byte code, or null
+	 */
+	public Map<String, byte[]> get(final String className, final String key) {
+
+		if (directory != null) {
+
+			final Path path = getPath(className, key);
+			if (Files.exists(path)) {
+
+				try (final DataInputStream in = new DataInputStream(Files.newInputStream(path))) {
+
+					final Map<String, byte[]> classes = new LinkedHashMap<>();
+					final int count                   = in.readInt();
+
+					for (int i=0; i<count; i++) {
+
+						final String name  = in.readUTF();
+						final byte[] bytes = new byte[in.readInt()];
+
+						in.readFully(bytes);
+
+						classes.put(name, bytes);
+					}
+
+					return classes;
+
+				} catch (IOException ioex) {
+
+					logger.warn("Unable to read cached class {}: {}", className, ioex.getMessage());
+				}
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Stores the byte code for the given class and key, replacing entries
+	 * for older keys of the same class.
+	 *
+	 * @param className the simple name of the source class
+	 * @param key the key of the source
+	 * @param classes a map of class name to byte code
+	 */
+	public void put(final String className, final String key, final Map<String, byte[]> classes) {
+
+		if (directory != null) {
+
+			final Path path = getPath(className, key);
+			final Path tmp  = directory.resolve(className + "-" + key + ".tmp");
+
+			try {
+
+				try (final DataOutputStream out = new DataOutputStream(Files.newOutputStream(tmp))) {
+
+					out.writeInt(classes.size());
+
+					for (final Entry<String, byte[]> entry : classes.entrySet()) {
+
+						out.writeUTF(entry.getKey());
+						out.writeInt(entry.getValue().length);
+						out.write(entry.getValue());
+					}
+				}
+
+				Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+
+				try (final DirectoryStream<Path> stream = Files.newDirectoryStream(directory, className + "-*.class")) {
+
+					for (final Path other : stream) {
+
+						if (!other.equals(path)) {
+							Files.deleteIfExists(other);
+						}
+					}
+				}
+
+			} catch (IOException ioex) {
+
+				logger.warn("Unable to write cached class {}: {}", className, ioex.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Returns a string that identifies the environment in which the byte
+	 * code was compiled.
+	 *
+	 * @return the version
+	 */
+	public static synchronized String getVersion() {
+
+		if (version == null) {
+
+			final StringBuilder buf = new StringBuilder();
+
+			buf.append(System.getProperty("java.version"));
+
+			for (final String entry : System.getProperty("java.class.path", "").split(File.pathSeparator)) {
+
+				final File file = new File(entry);
+
+				buf.append(entry);
+				buf.append(file.length());
+				buf.append(getLastModified(file));
+			}
+
+			version = DigestUtils.sha1Hex(buf.toString());
+		}
+
+		return version;
+	}
+
+	// ----- private methods -----
+	private Path getPath(final String className, final String key) {
+		return directory.resolve(className + "-" + key + ".class");
+	}
+
+	private static long getLastModified(final File file) {
+
+		long lastModified = file.lastModified();
+
+		if (file.isDirectory()) {
+
+			final File[] children = file.listFiles();
+			if (children != null) {
+
+				for (final File child : children) {
+					lastModified = Math.max(lastModified, getLastModified(child));
+				}
+			}
+		}
+
+		return lastModified;
+	}
+}
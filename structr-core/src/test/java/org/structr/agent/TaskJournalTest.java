@@ -0,0 +1,113 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.agent;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.structr.common.StructrTest;
+import org.structr.core.entity.TestOne;
+import org.structr.core.graph.Tx;
+
+/**
+ *
+ *
+ */
+public class TaskJournalTest extends StructrTest {
+
+	private static final Logger logger = LoggerFactory.getLogger(TaskJournalTest.class);
+
+	@Test
+	public void testRestoreOpenTasks() {
+
+		final Path path = Paths.get(basePath, "test.journal");
+
+		try {
+
+			final List<TestOne> nodes = createTestNodes(TestOne.class, 3);
+			final TaskJournal journal = new TaskJournal(path);
+
+			assertEquals("Invalid test prerequisite", 0, journal.open().size());
+
+			try (final Tx tx = app.tx()) {
+
+				final TestTask first = new TestTask(nodes.get(0));
+
+				first.addNode(nodes.get(1));
+				first.setPriority(5);
+
+				journal.add(1L, first);
+				journal.add(2L, new TestTask(nodes.get(1)));
+				journal.add(3L, new TestTask(nodes.get(2)));
+
+				tx.success();
+			}
+
+			journal.done(2L);
+			journal.close();
+
+			final TaskJournal reopened            = new TaskJournal(path);
+			final List<TaskJournal.Entry> entries = reopened.open();
+
+			assertEquals("Task journal should contain two open tasks", 2, entries.size());
+			assertEquals("Task journal should be compacted on open", 2, Files.readAllLines(path, StandardCharsets.UTF_8).size());
+
+			try (final Tx tx = app.tx()) {
+
+				final Task first = entries.get(0).restore(app);
+				final Task third = entries.get(1).restore(app);
+
+				assertNotNull("Task could not be restored", first);
+				assertNotNull("Task could not be restored", third);
+
+				assertEquals("Invalid restored task id", 1L, entries.get(0).getId());
+				assertEquals("Invalid restored task id", 3L, entries.get(1).getId());
+				assertEquals("Invalid restored task type", TestTask.class, first.getClass());
+				assertEquals("Invalid restored priority", 5, first.priority());
+				assertEquals("Invalid restored nodes", nodes.subList(0, 2), first.getNodes());
+				assertEquals("Invalid restored nodes", nodes.subList(2, 3), third.getNodes());
+
+				tx.success();
+			}
+
+			reopened.close();
+
+		} catch (Throwable t) {
+
+			logger.warn("", t);
+			fail("Unexpected exception.");
+		}
+	}
+
+	// ----- nested classes -----
+	public static class TestTask extends AbstractTask<TestOne> {
+
+		public TestTask(final TestOne node) {
+			super("TestTask", null, node);
+		}
+	}
+}
@@ -0,0 +1,104 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.common;
+
+import java.util.Map;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Tests invalidation and eviction of the {@link AccessPathCache}.
+ */
+public class AccessPathCacheTest extends StructrTest {
+
+	@Test
+	public void testInvalidation() {
+
+		final AccessPathCache cache           = new AccessPathCache(100);
+		final PermissionResolutionMask mask1  = new PermissionResolutionMask();
+		final PermissionResolutionMask mask2  = new PermissionResolutionMask();
+
+		cache.putMask("a", mask1);
+		cache.addUuid("a", "node1");
+		cache.addRelType("a", "OWNS");
+
+		cache.putMask("b", mask2);
+		cache.addUuid("b", "node2");
+		cache.addRelType("b", "OWNS");
+
+		assertSame(mask1, cache.getMask("a"));
+		assertSame(mask2, cache.getMask("b"));
+
+		cache.invalidateUuid("node1");
+
+		assertNull("Entry was not invalidated", cache.getMask("a"));
+		assertNotNull("Unrelated entry was invalidated", cache.getMask("b"));
+
+		cache.invalidateRelType("OWNS");
+
+		assertNull("Entry was not invalidated", cache.getMask("b"));
+
+		final Map<String, Object> statistics = cache.getCacheStatistics();
+
+		assertEquals(0,  statistics.get("size"));
+		assertEquals(0,  statistics.get("indexedIds"));
+		assertEquals(0,  statistics.get("indexedTypes"));
+		assertEquals(2L, statistics.get("invalidations"));
+	}
+
+	@Test
+	public void testBookkeepingStaysBounded() {
+
+		final AccessPathCache cache = new AccessPathCache(10);
+
+		for (int i=0; i<10000; i++) {
+
+			final String key = "key" + i;
+
+			cache.putMask(key, new PermissionResolutionMask());
+			cache.addUuid(key, "node" + i);
+			cache.addUuid(key, "shared");
+			cache.addRelType(key, "REL" + (i % 3));
+
+			// invalidate every other entry right away, the rest is evicted
+			if (i % 2 == 0) {
+				cache.invalidateUuid("node" + i);
+			}
+		}
+
+		final Map<String, Object> statistics = cache.getCacheStatistics();
+
+		assertTrue("Invalid cache size", (Integer)statistics.get("size") <= 10);
+		assertTrue("Evicted entries were not removed from the index", (Integer)statistics.get("indexedIds") <= 11);
+		assertTrue("Evicted entries were not removed from the index", (Integer)statistics.get("indexedTypes") <= 3);
+		assertTrue("No entries were invalidated", (Long)statistics.get("invalidations") > 0);
+		assertTrue("No entries were evicted", (Long)statistics.get("evictions") > 0);
+
+		// invalidating the shared node removes all remaining entries
+		cache.invalidateUuid("shared");
+
+		assertEquals(0, cache.getCacheStatistics().get("size"));
+		assertEquals(0, cache.getCacheStatistics().get("indexedIds"));
+		assertEquals(0, cache.getCacheStatistics().get("indexedTypes"));
+	}
+}
@@ -22,6 +22,7 @@ import java.io.IOException;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import org.apache.commons.lang3.StringUtils;
 import static org.junit.Assert.assertEquals;
@@ -34,6 +35,8 @@ import org.slf4j.LoggerFactory;
 import org.structr.api.NotFoundException;
 import org.structr.api.NotInTransactionException;
 import org.structr.api.graph.RelationshipType;
+import org.structr.api.util.Iterables;
+import org.structr.api.util.Statistics;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.GraphObject;
 import org.structr.core.Result;
@@ -65,6 +68,7 @@ import org.structr.core.entity.TestTwo;
 import org.structr.core.entity.TestUser;
 import org.structr.core.entity.relationship.NodeHasLocation;
 import org.structr.core.graph.NodeAttribute;
+import org.structr.core.graph.NodeFactory;
 import org.structr.core.graph.NodeInterface;
 import org.structr.core.graph.Tx;
 import org.structr.core.property.PropertyKey;
@@ -1465,7 +1469,55 @@ public class BasicTest extends StructrTest {
 		}
 	}
 
+	@Test
+	public void testRelationshipPrefetch() {
+
+		try (final Tx tx = app.tx()) {
+
+			for (int i=0; i<5; i++) {
+
+				final TestOne testOne = createTestNode(TestOne.class);
+				createTestNode(TestTwo.class, new NodeAttribute<>(TestTwo.testOne, testOne));
+			}
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+			logger.warn("", fex);
+			fail("Unexpected exception.");
+		}
+
+		try (final Tx tx = app.tx()) {
+
+			final List<TestOne> testOnes = app.nodeQuery(TestOne.class).getAsList();
+			final long nodesBefore       = getPrefetchedNodeCount();
+
+			NodeFactory.prefetchRelationships(testOnes);
+
+			assertEquals("Relationships of all nodes should be prefetched", nodesBefore + 5, getPrefetchedNodeCount());
+
+			for (final TestOne testOne : testOnes) {
+
+				final OneTwoOneToOne rel = testOne.getOutgoingRelationship(OneTwoOneToOne.class);
+
+				assertNotNull("Prefetched relationship is missing", rel);
+				assertEquals("Prefetched relationship has wrong target node", TestTwo.class, rel.getTargetNode().getClass());
+				assertEquals("Prefetched node has wrong number of incoming relationships", 0, Iterables.count(testOne.getIncomingRelationships()));
+			}
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+			logger.warn("", fex);
+			fail("Unexpected exception.");
+		}
+	}
+
 	// ----- private methods -----
+	private long getPrefetchedNodeCount() {
+		return (Long)((Map<String, Object>)Statistics.getStatistics().get("prefetch")).get("nodes");
+	}
+
 	private AbstractRelationship cascadeRel(final Class type1, final Class type2, final int cascadeDeleteFlag) throws FrameworkException {
 
 		try (final Tx tx = app.tx()) {
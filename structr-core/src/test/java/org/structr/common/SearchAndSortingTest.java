@@ -1026,6 +1026,66 @@ public class SearchAndSortingTest extends StructrTest {
 
 	}
 
+	@Test
+	public void test08PagingInDatabase() {
+
+		try {
+
+			final List<TestOne> nodes = this.createTestNodes(TestOne.class, 25);
+			final int offset          = 10;
+
+			Collections.shuffle(nodes, new Random(System.nanoTime()));
+
+			try (final Tx tx = app.tx()) {
+
+				int i = offset;
+
+				for (NodeInterface node : nodes) {
+					node.setProperty(AbstractNode.name, "TestOne-" + i++);
+				}
+
+				tx.success();
+			}
+
+			try (final Tx tx = app.tx()) {
+
+				final int pageSize = 10;
+
+				for (int page = 1; page <= 4; page++) {
+
+					final Result result = app.nodeQuery(TestOne.class).sort(AbstractNode.name).page(page).pageSize(pageSize).getResult();
+					final int expected  = Math.max(0, Math.min(pageSize, 25 - (page - 1) * pageSize));
+
+					assertEquals("Invalid raw result count for page " + page, 25, (int) result.getRawResultCount());
+					assertEquals("Invalid result size for page " + page, expected, result.size());
+
+					for (int j = 0; j < result.size(); j++) {
+
+						final String expectedName = "TestOne-" + (offset + (page - 1) * pageSize + j);
+
+						assertEquals("Invalid sort order for page " + page, expectedName, result.get(j).getProperty(AbstractNode.name));
+					}
+				}
+
+				// descending order is applied before skipping
+				final Result result = app.nodeQuery(TestOne.class).sort(AbstractNode.name).order(true).page(2).pageSize(10).getResult();
+
+				assertEquals(10, result.size());
+				assertEquals("TestOne-24", result.get(0).getProperty(AbstractNode.name));
+				assertEquals("TestOne-15", result.get(9).getProperty(AbstractNode.name));
+
+				tx.success();
+			}
+
+		} catch (FrameworkException ex) {
+
+			logger.error(ex.toString());
+			fail("Unexpected exception");
+
+		}
+
+	}
+
 	@Test
 	public void test01SearchSingleNodeByName() {
 
@@ -25,7 +25,9 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import static junit.framework.TestCase.assertEquals;
@@ -42,12 +44,20 @@ import org.structr.api.util.Iterables;
 import org.structr.common.StructrTest;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.Result;
+import org.structr.core.entity.AbstractNode;
 import org.structr.core.entity.Group;
+import org.structr.core.entity.SchemaMethod;
+import org.structr.core.entity.SchemaNode;
+import org.structr.core.entity.SchemaProperty;
+import org.structr.core.entity.SixOneManyToMany;
 import org.structr.core.entity.TestEleven;
 import org.structr.core.entity.TestOne;
+import org.structr.core.entity.TestSix;
 import org.structr.core.entity.TestTwo;
 import org.structr.core.graph.BulkCreateLabelsCommand;
 import org.structr.core.graph.BulkSetNodePropertiesCommand;
+import org.structr.core.graph.BulkSetUuidCommand;
+import org.structr.core.graph.NodeAttribute;
 import org.structr.core.graph.SyncCommand;
 import org.structr.core.graph.Tx;
 
@@ -166,6 +176,110 @@ public class MaintenanceTest extends StructrTest {
 		}
 	}
 
+	@Test
+	public void testSyncCommandParallelExportImport() {
+
+		try {
+
+			try (final Tx tx = app.tx()) {
+
+				for (int i=0; i<20; i++) {
+
+					final TestSix six = app.create(TestSix.class, "six" + i);
+					final List<TestOne> ones = new LinkedList<>();
+
+					for (int j=0; j<5; j++) {
+
+						final TestOne one = app.create(TestOne.class, "one" + i + "-" + j);
+
+						one.setProperty(TestOne.anInt, i * j);
+						one.setProperty(TestOne.aLong, -1234567890123L * i);
+						one.setProperty(TestOne.aDouble, i / 7.0);
+						one.setProperty(TestOne.aString, "Grüße " + i);
+						one.setProperty(TestOne.aBoolean, j % 2 == 0);
+
+						ones.add(one);
+					}
+
+					six.setProperty(TestSix.manyToManyTestOnes, ones);
+				}
+
+				tx.success();
+			}
+
+			// test export with multiple writer threads
+			app.command(SyncCommand.class).execute(toMap("mode", "export", "file", EXPORT_FILENAME, "threads", 4));
+
+			final Path exportFile = Paths.get(EXPORT_FILENAME);
+
+			assertTrue("Export file doesn't exist!", Files.exists(exportFile));
+
+			cleanDatabase();
+
+			// test import with multiple threads and a batch size that does not divide the number of objects
+			final Map<String, Object> importParameters = toMap("mode", "import", "file", EXPORT_FILENAME, "batchSize", 7L);
+			importParameters.put("threads", 4);
+
+			app.command(SyncCommand.class).execute(importParameters);
+
+			try (final Tx tx = app.tx()) {
+
+				assertEquals(20,  app.nodeQuery(TestSix.class).getResult().size());
+				assertEquals(100, app.nodeQuery(TestOne.class).getResult().size());
+				assertEquals(100, app.relationshipQuery(SixOneManyToMany.class).getResult().size());
+
+				final TestOne one = app.nodeQuery(TestOne.class).andName("one3-4").getFirst();
+
+				assertEquals(12,                           (int)one.getProperty(TestOne.anInt));
+				assertEquals(-3703703670369L,              (long)one.getProperty(TestOne.aLong));
+				assertEquals(3 / 7.0,                      one.getProperty(TestOne.aDouble));
+				assertEquals("Grüße 3",                    one.getProperty(TestOne.aString));
+				assertEquals(Boolean.TRUE,                 one.getProperty(TestOne.aBoolean));
+				assertEquals(1,                            one.getProperty(TestOne.manyToManyTestSixs).size());
+				assertEquals("six3",                       one.getProperty(TestOne.manyToManyTestSixs).get(0).getName());
+			}
+
+			// clean-up after test
+			Files.delete(exportFile);
+
+		} catch (Exception ex) {
+			logger.warn("", ex);
+			fail("Unexpected exception.");
+		}
+	}
+
+	@Test
+	public void testSyncCommandLegacyFormat() {
+
+		try {
+			// create test nodes
+			createTestNodes(TestOne.class, 100);
+
+			// test export
+			app.command(SyncCommand.class).execute(toMap("mode", "export", "file", EXPORT_FILENAME, "format", "legacy"));
+
+			final Path exportFile = Paths.get(EXPORT_FILENAME);
+
+			assertTrue("Export file doesn't exist!", Files.exists(exportFile));
+
+			cleanDatabase();
+
+			// test import
+			app.command(SyncCommand.class).execute(toMap("mode", "import", "file", EXPORT_FILENAME));
+
+			try (final Tx tx = app.tx()) {
+				assertEquals(100, app.nodeQuery(TestOne.class).getResult().size());
+			}
+
+			// clean-up after test
+			Files.delete(exportFile);
+
+		} catch (Exception ex) {
+			logger.warn("", ex);
+			fail("Unexpected exception.");
+		}
+	}
+
 	@Test
 	public void testSyncCommandInheritance() {
 
@@ -250,6 +364,50 @@ public class MaintenanceTest extends StructrTest {
 		}
 	}
 
+	@Test
+	public void testSyncCommandMergeExistingSchema() {
+
+		try {
+
+			try (final Tx tx = app.tx()) {
+
+				final SchemaNode type = createTestNode(SchemaNode.class, "MergeTest");
+
+				type.setProperty(SchemaNode.schemaProperties, toList(createTestNode(SchemaProperty.class, new NodeAttribute(AbstractNode.name, "testString"), new NodeAttribute(SchemaProperty.propertyType, "String"))));
+				type.setProperty(SchemaNode.schemaMethods,    toList(createTestNode(SchemaMethod.class, new NodeAttribute(AbstractNode.name, "doTest"), new NodeAttribute(SchemaMethod.source, "{ return 1; }"))));
+
+				tx.success();
+			}
+
+			app.command(SyncCommand.class).execute(toMap("mode", "export", "file", EXPORT_FILENAME));
+
+			final Path exportFile = Paths.get(EXPORT_FILENAME);
+
+			assertTrue("Export file doesn't exist!", Files.exists(exportFile));
+
+			// import into the same database, the existing type must be merged with the imported one
+			app.command(SyncCommand.class).execute(toMap("mode", "import", "file", EXPORT_FILENAME, "batchSize", 1L));
+
+			try (final Tx tx = app.tx()) {
+
+				final List<SchemaNode> types = app.nodeQuery(SchemaNode.class).andName("MergeTest").getAsList();
+
+				assertEquals(1, types.size());
+				assertEquals(1, types.get(0).getProperty(SchemaNode.schemaProperties).size());
+				assertEquals(1, types.get(0).getProperty(SchemaNode.schemaMethods).size());
+				assertEquals(1, app.nodeQuery(SchemaProperty.class).andName("testString").getAsList().size());
+				assertEquals(1, app.nodeQuery(SchemaMethod.class).andName("doTest").getAsList().size());
+			}
+
+			// clean-up after test
+			Files.delete(exportFile);
+
+		} catch (Exception ex) {
+			logger.warn("", ex);
+			fail("Unexpected exception.");
+		}
+	}
+
 	@Test
 	public void testBulkCreateLabelsCommand() {
 
@@ -327,6 +485,61 @@ public class MaintenanceTest extends StructrTest {
 
 	}
 
+	@Test
+	public void testParallelBulkSetUuidCommand() {
+
+		try {
+
+			final DatabaseService graphDb = app.getDatabaseService();
+
+			// intentionally create raw Neo4j transaction and create nodes without UUID in there
+			try (Transaction tx = graphDb.beginTx()) {
+
+				for (int i=0; i<2500; i++) {
+
+					final Node test = graphDb.createNode(Collections.EMPTY_SET, Collections.EMPTY_MAP);
+
+					test.setProperty("type", "Group");
+				}
+
+				tx.success();
+			}
+
+			// process id ranges of 1000 nodes in four threads
+			app.command(BulkSetUuidCommand.class).execute(toMap("allNodes", true, "threads", 4));
+
+			try (final Tx tx = app.tx()) {
+
+				final Set<Object> uuids = new HashSet<>();
+				int count               = 0;
+
+				for (final Node node : graphDb.getAllNodes()) {
+
+					assertTrue("Node without UUID found", node.hasProperty("id"));
+
+					if ("Group".equals(node.getProperty("type"))) {
+
+						uuids.add(node.getProperty("id"));
+						count++;
+					}
+				}
+
+				assertEquals("Invalid number of nodes", 2500, count);
+				assertEquals("Duplicate UUIDs found", 2500, uuids.size());
+
+				// nodes should now have labels and be visible to Structr
+				assertEquals(2500, app.nodeQuery(Group.class).getResult().size());
+
+				tx.success();
+			}
+
+		} catch (FrameworkException fex) {
+
+			logger.warn("", fex);
+			fail("Unexpected exception.");
+		}
+	}
+
 	/*
 	 * This test will fail with the new Neo4j 3.0 Bolt interface, because
 	 * there is no separation between a (Lucene-based) index and the
@@ -61,6 +61,7 @@ import org.structr.core.entity.TestTwo;
 import org.structr.core.entity.TestUser;
 import org.structr.core.function.DateFormatFunction;
 import org.structr.core.function.FindFunction;
+import org.structr.core.function.Functions;
 import org.structr.core.function.NumberFormatFunction;
 import org.structr.core.function.ParseDateFunction;
 import org.structr.core.function.RoundFunction;
@@ -2088,4 +2089,60 @@ public class ScriptingTest extends StructrTest {
                 }
 
 	}
+
+	@Test
+	public void testCompiledScriptCache() {
+
+		try (final Tx tx = app.tx()) {
+
+			final ActionContext actionContext = new ActionContext(securityContext);
+			final TestOne context             = app.create(TestOne.class);
+			final long hits                   = (Long)Scripting.getScriptCacheStatistics().get("hits");
+
+			assertEquals("Invalid script result", "1", Scripting.replaceVariables(actionContext, context, "${{ counter = (typeof counter === 'undefined' ? 0 : counter) + 1; Structr.print('' + counter); }}"));
+
+			// variables must not leak from one evaluation of a cached script into the next
+			assertEquals("Invalid cached script result", "1", Scripting.replaceVariables(actionContext, context, "${{ counter = (typeof counter === 'undefined' ? 0 : counter) + 1; Structr.print('' + counter); }}"));
+
+			assertEquals("Compiled script was not reused", hits + 1, Scripting.getScriptCacheStatistics().get("hits"));
+
+			// the same script must be reused for other entities as well
+			final TestOne other = app.create(TestOne.class);
+
+			assertEquals("Invalid cached script result", "1", Scripting.replaceVariables(actionContext, other, "${{ counter = (typeof counter === 'undefined' ? 0 : counter) + 1; Structr.print('' + counter); }}"));
+			assertEquals("Compiled script was not reused for another entity", hits + 2, Scripting.getScriptCacheStatistics().get("hits"));
+
+			tx.success();
+
+		} catch(FrameworkException fex) {
+
+			logger.warn("", fex);
+			fail("Unexpected exception.");
+		}
+	}
+
+	@Test
+	public void testParsedExpressionCache() {
+
+		try (final Tx tx = app.tx()) {
+
+			final ActionContext actionContext = new ActionContext(securityContext);
+			final TestOne testOne1            = app.create(TestOne.class, "one");
+			final TestOne testOne2            = app.create(TestOne.class, "two");
+			final long hits                   = (Long)Functions.getExpressionCacheStatistics().get("hits");
+
+			// the same cached expression must yield the value of the current entity
+			assertEquals("Invalid expression result", "ONE", Scripting.replaceVariables(actionContext, testOne1, "${upper(this.name)}"));
+			assertEquals("Invalid cached expression result", "TWO", Scripting.replaceVariables(actionContext, testOne2, "${upper(this.name)}"));
+
+			assertEquals("Parsed expression was not reused", hits + 1, Functions.getExpressionCacheStatistics().get("hits"));
+
+			tx.success();
+
+		} catch(FrameworkException fex) {
+
+			logger.warn("", fex);
+			fail("Unexpected exception.");
+		}
+	}
 }
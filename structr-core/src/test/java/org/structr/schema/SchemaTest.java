@@ -32,6 +32,7 @@ import static org.junit.Assert.fail;
 import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.structr.api.util.Statistics;
 import org.structr.common.StructrTest;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.app.StructrApp;
@@ -43,6 +44,7 @@ import org.structr.core.entity.SchemaRelationshipNode;
 import org.structr.core.entity.SchemaView;
 import org.structr.core.graph.NodeAttribute;
 import org.structr.core.graph.Tx;
+import org.structr.core.property.StringProperty;
 import org.structr.schema.export.StructrSchema;
 import org.structr.schema.json.InvalidSchemaException;
 import org.structr.schema.json.JsonObjectType;
@@ -396,6 +398,63 @@ public class SchemaTest extends StructrTest {
 
 	}
 
+	@Test
+	public void test07IncrementalCompilation() {
+
+		try (final Tx tx = app.tx()) {
+
+			app.create(SchemaNode.class, new NodeAttribute(SchemaNode.name, "Alpha"), new NodeAttribute(new StringProperty("_name"), "String"));
+			app.create(SchemaNode.class, new NodeAttribute(SchemaNode.name, "Beta"),  new NodeAttribute(new StringProperty("_name"), "String"));
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			logger.warn("", fex);
+			fail("Unexpected exception.");
+		}
+
+		try (final Tx tx = app.tx()) {
+
+			final SchemaNode beta = app.nodeQuery(SchemaNode.class).andName("Beta").getFirst();
+
+			beta.setProperty(new StringProperty("_description"), "String");
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			logger.warn("", fex);
+			fail("Unexpected exception.");
+		}
+
+		final Map<String, Object> statistics = (Map<String, Object>)Statistics.getStatistics().get("schemaCompilation");
+		final int types                      = (Integer)statistics.get("types");
+		final int compiled                   = (Integer)statistics.get("compiled");
+
+		assertTrue("Unchanged types should not be compiled again", compiled > 0 && compiled < types);
+
+		final Class alpha = StructrApp.getConfiguration().getNodeEntityClass("Alpha");
+		final Class beta  = StructrApp.getConfiguration().getNodeEntityClass("Beta");
+
+		assertNotNull("Unchanged type should still be available", alpha);
+		assertNotNull("Modified type should be available", beta);
+		assertNotNull("Modified type should have the new property", StructrApp.getConfiguration().getPropertyKeyForJSONName(beta, "description", false));
+
+		try (final Tx tx = app.tx()) {
+
+			app.create(alpha, "alpha");
+			app.create(beta,  "beta");
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			logger.warn("", fex);
+			fail("Unexpected exception.");
+		}
+	}
+
 	@Test
 	public void test00DeleteSchemaRelationshipInView() {
 
@@ -18,6 +18,7 @@
  */
 package org.structr.api;
 
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
@@ -42,12 +43,77 @@ public interface DatabaseService {
 
 	Node createNode(final Set<String> labels, final Map<String, Object> properties);
 
+	/**
+	 * Creates one node with the given labels for each of the given
+	 * property maps in a single round-trip.
+	 *
+	 * @param labels the labels of the new nodes
+	 * @param properties the properties of the new nodes
+	 *
+	 * @return the new nodes, in the order of the given property maps
+	 */
+	List<Node> createNodes(final Set<String> labels, final List<Map<String, Object>> properties);
+
+	/**
+	 * Creates relationships of the given type between the nodes with
+	 * the given ids in a single round-trip. The three lists must have
+	 * the same size, the n-th relationship is created between the n-th
+	 * start and end node, and gets the n-th property map.
+	 *
+	 * @param relationshipType the type of the new relationships
+	 * @param startNodeIds the ids of the start nodes
+	 * @param endNodeIds the ids of the end nodes
+	 * @param properties the properties of the new relationships
+	 *
+	 * @return the new relationships, in the order of the given lists
+	 */
+	List<Relationship> createRelationships(final String relationshipType, final List<Long> startNodeIds, final List<Long> endNodeIds, final List<Map<String, Object>> properties);
+
 	Node getNodeById(final long id);
 	Relationship getRelationshipById(final long id);
 
 	Iterable<Node> getAllNodes();
 	Iterable<Relationship> getAllRelationships();
 
+	// ----- id ranges -----
+	/**
+	 * Returns the highest id of all nodes in the database, or -1 if
+	 * the database contains no nodes.
+	 *
+	 * @return the highest node id
+	 */
+	long getHighestNodeId();
+
+	/**
+	 * Returns the highest id of all relationships in the database, or
+	 * -1 if the database contains no relationships.
+	 *
+	 * @return the highest relationship id
+	 */
+	long getHighestRelationshipId();
+
+	/**
+	 * Returns the nodes with ids in the given range, which allows
+	 * callers to partition the node id space.
+	 *
+	 * @param fromId the first id of the range (inclusive)
+	 * @param toId the last id of the range (exclusive)
+	 *
+	 * @return the nodes with ids in the given range
+	 */
+	Iterable<Node> getNodesInRange(final long fromId, final long toId);
+
+	/**
+	 * Returns the relationships with ids in the given range, which
+	 * allows callers to partition the relationship id space.
+	 *
+	 * @param fromId the first id of the range (inclusive)
+	 * @param toId the last id of the range (exclusive)
+	 *
+	 * @return the relationships with ids in the given range
+	 */
+	Iterable<Relationship> getRelationshipsInRange(final long fromId, final long toId);
+
 	GraphProperties getGlobalProperties();
 
 
@@ -60,4 +126,14 @@ public interface DatabaseService {
 	NativeResult execute(final String nativeQuery);
 
 	void invalidateQueryCache();
+
+	// ----- prefetching -----
+	/**
+	 * Loads the relationships of all the given nodes with a single
+	 * round-trip and caches them, so that subsequent calls to
+	 * getRelationships() on these nodes do not hit the database.
+	 *
+	 * @param nodeIds the ids of the nodes to prefetch
+	 */
+	void prefetchRelationships(final Iterable<Long> nodeIds);
 }
@@ -33,6 +33,10 @@ public interface Structr {
 	public static final String RELATIONSHIP_CACHE_SIZE       = "database.cache.relationship.size";
 	public static final String NODE_CACHE_SIZE               = "database.cache.node.size";
 	public static final String QUERY_CACHE_SIZE              = "database.cache.query.size";
+	public static final String WRITE_BUFFER_ENABLED          = "database.writebuffer.enabled";
+	public static final String WRITE_BUFFER_SIZE             = "database.writebuffer.size";
+	public static final String PREFETCH_BATCH_SIZE           = "database.prefetch.batchsize";
+	public static final String PREFETCH_MAX_DEGREE           = "database.prefetch.maxdegree";
 
 	public static final String LOG_CYPHER_DEBUG              = "log.cypher.debug";
 
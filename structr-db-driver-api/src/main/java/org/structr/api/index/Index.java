@@ -31,4 +31,27 @@ public interface Index<T> {
 	void remove(final T t, final String key);
 
 	Iterable<T> query(final QueryPredicate predicate);
+
+	/**
+	 * Returns a single page of the result of the given predicate. Skipping
+	 * and limiting is done by the database where possible, so the caller
+	 * must not apply the same paging again.
+	 *
+	 * @param predicate the query predicate
+	 * @param pageSize the number of elements per page
+	 * @param page the (1-based) page number
+	 *
+	 * @return the given page of the result
+	 */
+	Iterable<T> query(final QueryPredicate predicate, final int pageSize, final int page);
+
+	/**
+	 * Returns the total number of elements matching the given predicate,
+	 * without fetching the elements themselves.
+	 *
+	 * @param predicate the query predicate
+	 *
+	 * @return the number of matching elements
+	 */
+	long count(final QueryPredicate predicate);
 }
@@ -0,0 +1,258 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.api.module;
+
+import com.sun.source.tree.BlockTree;
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.util.Trees;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+/**
+ * Annotation processor that writes the module index of a Structr module
+ * at build time.
+ *
+ * The index lists all classes that the configuration provider needs to
+ * load on startup: entity types, relationship types, services, agents,
+ * modules, and classes with a static initializer block, which Structr
+ * classes use to register themselves (maintenance commands, websocket
+ * commands etc.). It also records the total number of classes that were
+ * compiled, so an index that was written by a partial compilation run
+ * can be detected and ignored at runtime. The entries are sorted by name
+ * so that the index is reproducible, the configuration provider loads
+ * the indexed classes in the order of the resource, not in index order.
+ *
+ * The processor is registered as a service and runs automatically in
+ * every module that has this module on its compile class path. It does
+ * not write an index when the Structr core types are not visible or
+ * when the compiler does not provide access to the syntax trees.
+ */
+public class ModuleIndexProcessor extends AbstractProcessor {
+
+	public static final String INDEX_RESOURCE = "META-INF/structr/module.index";
+	public static final String CLASS_COUNT    = "classes";
+
+	public static final String KIND_NODE         = "node";
+	public static final String KIND_RELATIONSHIP = "relationship";
+	public static final String KIND_SERVICE      = "service";
+	public static final String KIND_AGENT        = "agent";
+	public static final String KIND_MODULE       = "module";
+	public static final String KIND_INITIALIZER  = "initializer";
+
+	private final Map<String, String> index = new TreeMap<>();
+	private TypeMirror nodeType             = null;
+	private TypeMirror relationshipType     = null;
+	private TypeMirror serviceType          = null;
+	private TypeMirror agentType            = null;
+	private TypeMirror moduleType           = null;
+	private Trees trees                     = null;
+	private int classCount                  = 0;
+
+	@Override
+	public synchronized void init(final ProcessingEnvironment processingEnv) {
+
+		super.init(processingEnv);
+
+		nodeType         = resolve("org.structr.core.graph.NodeInterface");
+		relationshipType = resolve("org.structr.core.entity.AbstractRelationship");
+		serviceType      = resolve("org.structr.api.service.Service");
+		agentType        = resolve("org.structr.agent.Agent");
+		moduleType       = resolve("org.structr.module.StructrModule");
+
+		try {
+
+			trees = Trees.instance(processingEnv);
+
+		} catch (Throwable t) {
+
+			// not running in javac, static initializers cannot be detected
+			processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE, "Syntax trees not available, no Structr module index will be written.");
+		}
+	}
+
+	@Override
+	public Set<String> getSupportedAnnotationTypes() {
+		return Collections.singleton("*");
+	}
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(final Set<? extends TypeElement> annotations, final RoundEnvironment roundEnv) {
+
+		if (nodeType == null || trees == null) {
+			return false;
+		}
+
+		if (roundEnv.processingOver()) {
+
+			writeIndex();
+
+		} else {
+
+			for (final Element element : roundEnv.getRootElements()) {
+
+				if (element instanceof TypeElement) {
+
+					addType((TypeElement)element);
+				}
+			}
+		}
+
+		// never claim any annotations
+		return false;
+	}
+
+	// ----- private methods -----
+	private void addType(final TypeElement type) {
+
+		final String kind = getKind(type);
+		if (kind != null) {
+
+			index.put(processingEnv.getElementUtils().getBinaryName(type).toString(), kind);
+		}
+
+		classCount++;
+
+		for (final Element enclosed : type.getEnclosedElements()) {
+
+			if (enclosed instanceof TypeElement) {
+
+				addType((TypeElement)enclosed);
+			}
+		}
+	}
+
+	private String getKind(final TypeElement type) {
+
+		final boolean isAbstract = type.getModifiers().contains(Modifier.ABSTRACT);
+
+		if (isSubtype(type, nodeType)) {
+			return KIND_NODE;
+		}
+
+		if (!isAbstract) {
+
+			if (isSubtype(type, relationshipType)) {
+				return KIND_RELATIONSHIP;
+			}
+
+			if (isSubtype(type, serviceType)) {
+				return KIND_SERVICE;
+			}
+
+			if (isSubtype(type, agentType)) {
+				return KIND_AGENT;
+			}
+
+			if (isSubtype(type, moduleType)) {
+				return KIND_MODULE;
+			}
+		}
+
+		if (hasStaticInitializer(type)) {
+			return KIND_INITIALIZER;
+		}
+
+		return null;
+	}
+
+	private boolean isSubtype(final TypeElement type, final TypeMirror superType) {
+
+		if (superType == null) {
+			return false;
+		}
+
+		final Types types = processingEnv.getTypeUtils();
+
+		return types.isAssignable(types.erasure(type.asType()), superType);
+	}
+
+	private boolean hasStaticInitializer(final TypeElement type) {
+
+		final Tree tree = trees.getTree(type);
+		if (tree instanceof ClassTree) {
+
+			for (final Tree member : ((ClassTree)tree).getMembers()) {
+
+				if (member instanceof BlockTree && ((BlockTree)member).isStatic()) {
+					return true;
+				}
+			}
+		}
+
+		return false;
+	}
+
+	private TypeMirror resolve(final String name) {
+
+		final Elements elements = processingEnv.getElementUtils();
+		final TypeElement type  = elements.getTypeElement(name);
+
+		if (type != null) {
+
+			return processingEnv.getTypeUtils().erasure(type.asType());
+		}
+
+		return null;
+	}
+
+	private void writeIndex() {
+
+		try {
+
+			final FileObject file = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", INDEX_RESOURCE);
+			try (final Writer writer = file.openWriter()) {
+
+				writer.append(CLASS_COUNT).append("\t").append(Integer.toString(classCount)).append("\n");
+
+				for (final Entry<String, String> entry : index.entrySet()) {
+
+					writer.append(entry.getValue()).append("\t").append(entry.getKey()).append("\n");
+				}
+			}
+
+		} catch (IOException ioex) {
+
+			processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, "Unable to write Structr module index: " + ioex.getMessage());
+		}
+	}
+}
@@ -18,9 +18,13 @@
  */
 package org.structr.api.util;
 
-import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import org.apache.commons.collections4.map.LRUMap;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A map-like storage structure with a fixed maximum size that
@@ -28,57 +32,205 @@ import org.apache.commons.collections4.map.LRUMap;
  * a new entry causes the map to exceed the specified maximum
  * size.
  *
+ * Entries are stored in a ConcurrentHashMap, so reads do not lock.
+ * Recency is approximated with the CLOCK algorithm: entries are
+ * evicted in insertion order, unless they have been read since
+ * the last time the eviction pointer passed them. Values that
+ * implement {@link Cachable} are notified when they are evicted.
+ *
  * @param <K>
  * @param <V>
  */
 public class FixedSizeCache<K, V> {
 
-	private Map<K, V> cache  = null;
+	private final Map<K, Entry<K, V>> cache  = new ConcurrentHashMap<>();
+	private final Queue<Entry<K, V>> clock   = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger staleEntries = new AtomicInteger();
+	private final AtomicLong hits            = new AtomicLong();
+	private final AtomicLong misses          = new AtomicLong();
+	private final AtomicLong evictions       = new AtomicLong();
+	private final int maxSize;
 
 	public FixedSizeCache(final int maxSize) {
-		this.cache   = Collections.synchronizedMap(new InvalidatingLRUMap<>(maxSize));
+		this.maxSize = Math.max(1, maxSize);
 	}
 
-	public synchronized void put(final K key, final V value) {
-		cache.put(key, value);
+	/**
+	 * Creates a new cache and registers its statistics under the given
+	 * name.
+	 *
+	 * @param name
+	 * @param maxSize
+	 */
+	public FixedSizeCache(final String name, final int maxSize) {
+
+		this(maxSize);
+
+		Statistics.register(name, this::getStatistics);
 	}
 
-	public synchronized V get(final K key) {
-		return cache.get(key);
+	public void put(final K key, final V value) {
+
+		// ConcurrentHashMap does not support null keys
+		if (key == null) {
+			return;
+		}
+
+		final Entry<K, V> existing = cache.get(key);
+		if (existing != null) {
+
+			existing.value    = value;
+			existing.accessed = true;
+			return;
+		}
+
+		final Entry<K, V> entry    = new Entry<>(key, value);
+		final Entry<K, V> previous = cache.putIfAbsent(key, entry);
+
+		if (previous != null) {
+
+			previous.value    = value;
+			previous.accessed = true;
+
+		} else {
+
+			clock.add(entry);
+			evict();
+		}
 	}
 
-	public synchronized void remove(final K key) {
-		cache.remove(key);
+	public V get(final K key) {
+
+		final Entry<K, V> entry = key != null ? cache.get(key) : null;
+		if (entry != null) {
+
+			// avoid writing to shared memory on every read
+			if (!entry.accessed) {
+				entry.accessed = true;
+			}
+
+			hits.incrementAndGet();
+
+			return entry.value;
+		}
+
+		misses.incrementAndGet();
+
+		return null;
 	}
 
-	public synchronized void clear() {
+	public V remove(final K key) {
+
+		final Entry<K, V> entry = key != null ? cache.remove(key) : null;
+		if (entry != null) {
+
+			entry.removed = true;
+
+			// purge removed entries from the clock queue from time to time
+			if (staleEntries.incrementAndGet() > maxSize) {
+
+				staleEntries.set(0);
+				clock.removeIf(e -> e.removed);
+			}
+
+			return entry.value;
+		}
+
+		return null;
+	}
+
+	public void clear() {
+
 		cache.clear();
+		clock.clear();
+		staleEntries.set(0);
 	}
 
-	public synchronized int size() {
+	public int size() {
 		return cache.size();
 	}
 
-	public synchronized boolean isEmpty() {
+	public boolean isEmpty() {
 		return cache.isEmpty();
 	}
 
-	private static class InvalidatingLRUMap<K, V> extends LRUMap<K, V> {
+	/**
+	 * Returns the size of the cache and the number of hits, misses and
+	 * evictions since its creation.
+	 *
+	 * @return a map of statistics
+	 */
+	public Map<String, Object> getStatistics() {
+
+		final Map<String, Object> data = new LinkedHashMap<>();
+		final long hitCount            = hits.get();
+		final long missCount           = misses.get();
+		final long total               = hitCount + missCount;
+
+		data.put("size",      cache.size());
+		data.put("maxSize",   maxSize);
+		data.put("hits",      hitCount);
+		data.put("misses",    missCount);
+		data.put("hitRate",   total > 0 ? (double)hitCount / (double)total : 0.0);
+		data.put("evictions", evictions.get());
+
+		return data;
+	}
 
-		public InvalidatingLRUMap(final int maxSize) {
-			super(maxSize, true);
-		}
+	// ----- package methods -----
+	int getQueueSize() {
+		return clock.size();
+	}
 
-		@Override
-		protected boolean removeLRU(final LinkEntry<K, V> entry) {
+	// ----- private methods -----
+	private void evict() {
 
-			final V value = entry.getValue();
-			if (value != null && value instanceof Cachable) {
+		// limit the number of second chances so that concurrent readers
+		// cannot keep the eviction loop running indefinitely
+		int secondChances = maxSize;
+
+		while (cache.size() > maxSize) {
+
+			final Entry<K, V> candidate = clock.poll();
+			if (candidate == null) {
+				break;
+			}
 
-				((Cachable)value).invalidate();
+			if (candidate.removed) {
+				continue;
 			}
 
-			return true;
+			if (candidate.accessed && secondChances-- > 0) {
+
+				candidate.accessed = false;
+				clock.add(candidate);
+
+			} else if (cache.remove(candidate.key, candidate)) {
+
+				candidate.removed = true;
+				evictions.incrementAndGet();
+
+				final V value = candidate.value;
+				if (value != null && value instanceof Cachable) {
+
+					((Cachable)value).invalidate();
+				}
+			}
+		}
+	}
+
+	// ----- nested classes -----
+	private static class Entry<K, V> {
+
+		private volatile boolean accessed = false;
+		private volatile boolean removed  = false;
+		private volatile V value          = null;
+		private final K key;
+
+		public Entry(final K key, final V value) {
+
+			this.key   = key;
+			this.value = value;
 		}
 	}
 }
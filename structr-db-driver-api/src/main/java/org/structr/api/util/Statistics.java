@@ -0,0 +1,76 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.api.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Supplier;
+
+/**
+ * A global registry for runtime statistics. Components register a
+ * named supplier that is asked for its current values whenever the
+ * statistics are requested, so registering has no runtime cost.
+ */
+public class Statistics {
+
+	private static final Map<String, Supplier<Map<String, Object>>> sources = new ConcurrentSkipListMap<>();
+
+	/**
+	 * Registers a source of statistics under the given name, replacing
+	 * any source that was registered under the same name before.
+	 *
+	 * @param name
+	 * @param source
+	 */
+	public static void register(final String name, final Supplier<Map<String, Object>> source) {
+		sources.put(name, source);
+	}
+
+	public static void unregister(final String name) {
+		sources.remove(name);
+	}
+
+	/**
+	 * Returns the current values of all registered sources, ordered
+	 * by name.
+	 *
+	 * @return a map of statistics per source
+	 */
+	public static Map<String, Object> getStatistics() {
+
+		final Map<String, Object> statistics = new LinkedHashMap<>();
+
+		for (final Entry<String, Supplier<Map<String, Object>>> entry : sources.entrySet()) {
+
+			try {
+
+				statistics.put(entry.getKey(), entry.getValue().get());
+
+			} catch (Throwable t) {
+
+				// a failing source must not prevent reporting of the others
+				statistics.put(entry.getKey(), t.getMessage());
+			}
+		}
+
+		return statistics;
+	}
+}
@@ -0,0 +1,114 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.api.module;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Compiles a set of sources with the {@link ModuleIndexProcessor} and
+ * checks the resulting module index.
+ */
+public class ModuleIndexProcessorTest {
+
+	@Test
+	public void testModuleIndex() throws IOException {
+
+		final File outputDir = compile(
+			source("org.structr.core.graph.NodeInterface", "package org.structr.core.graph; public interface NodeInterface {}"),
+			source("test.TestNode",    "package test; public class TestNode implements org.structr.core.graph.NodeInterface {}"),
+			source("test.Registering", "package test; public class Registering { static { System.getProperty(\"x\"); } }"),
+			source("test.Plain",       "package test; public class Plain { private Runnable r = new Runnable() { public void run() {} }; }"),
+			source("test.Outer",       "package test; public class Outer { public static class Inner { static { System.getProperty(\"x\"); } } }")
+		);
+
+		final File indexFile = new File(outputDir, ModuleIndexProcessor.INDEX_RESOURCE);
+
+		Assert.assertTrue("Module index was not written", indexFile.exists());
+
+		final List<String> lines = Files.readAllLines(indexFile.toPath(), StandardCharsets.UTF_8);
+
+		// anonymous classes are not counted
+		Assert.assertEquals("Invalid class count", ModuleIndexProcessor.CLASS_COUNT + "\t6", lines.get(0));
+
+		Assert.assertTrue("Entity type missing", lines.contains(ModuleIndexProcessor.KIND_NODE + "\ttest.TestNode"));
+		Assert.assertTrue("Static initializer missing", lines.contains(ModuleIndexProcessor.KIND_INITIALIZER + "\ttest.Registering"));
+		Assert.assertTrue("Nested class must be listed with its binary name", lines.contains(ModuleIndexProcessor.KIND_INITIALIZER + "\ttest.Outer$Inner"));
+
+		for (final String line : lines) {
+
+			Assert.assertFalse("Class without static initializer must not be indexed", line.endsWith("\ttest.Plain"));
+			Assert.assertFalse("Class without static initializer must not be indexed", line.endsWith("\ttest.Outer"));
+		}
+	}
+
+	@Test
+	public void testNoIndexWithoutStructrCore() throws IOException {
+
+		final File outputDir = compile(
+			source("test.Registering", "package test; public class Registering { static { System.getProperty(\"x\"); } }")
+		);
+
+		Assert.assertFalse("Module index must only be written for Structr modules", new File(outputDir, ModuleIndexProcessor.INDEX_RESOURCE).exists());
+	}
+
+	// ----- private methods -----
+	private File compile(final JavaFileObject... sources) throws IOException {
+
+		final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		final File outputDir        = Files.createTempDirectory("structr-module-index").toFile();
+		final List<String> options  = new LinkedList<>();
+
+		Assert.assertNotNull("No system Java compiler available", compiler);
+
+		options.add("-d");
+		options.add(outputDir.getAbsolutePath());
+
+		final JavaCompiler.CompilationTask task = compiler.getTask(null, null, null, options, null, Arrays.asList(sources));
+
+		task.setProcessors(Arrays.asList(new ModuleIndexProcessor()));
+
+		Assert.assertTrue("Compilation failed", task.call());
+
+		return outputDir;
+	}
+
+	private JavaFileObject source(final String name, final String code) {
+
+		return new SimpleJavaFileObject(URI.create("string:///" + name.replace('.', '/') + JavaFileObject.Kind.SOURCE.extension), JavaFileObject.Kind.SOURCE) {
+
+			@Override
+			public CharSequence getCharContent(final boolean ignoreEncodingErrors) {
+				return code;
+			}
+		};
+	}
+}
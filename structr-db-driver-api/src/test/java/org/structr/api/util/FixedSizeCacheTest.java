@@ -18,6 +18,9 @@
  */
 package org.structr.api.util;
 
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.Assert;
 
 /**
@@ -56,4 +59,96 @@ public class FixedSizeCacheTest {
 		}
 
 	}
+
+	@org.junit.Test
+	public void testRecentlyUsedEntriesAreKept() {
+
+		final FixedSizeCache<Long, Long> test = new FixedSizeCache<>(10);
+
+		for (int i=0; i<10; i++) {
+
+			final Long value = Long.valueOf(i);
+			test.put(value, value);
+		}
+
+		// access the eldest entry so it survives the next insertion
+		Assert.assertEquals("Invalid FixedSizeCache contents", Long.valueOf(0), test.get(0L));
+
+		test.put(10L, 10L);
+
+		Assert.assertEquals("Invalid FixedSizeCache size", 10, test.size());
+		Assert.assertEquals("Recently used entry was evicted", Long.valueOf(0), test.get(0L));
+		Assert.assertNull("Least recently used entry was not evicted", test.get(1L));
+	}
+
+	@org.junit.Test
+	public void testConcurrentAccess() throws InterruptedException {
+
+		final FixedSizeCache<Integer, TestCachable> test = new FixedSizeCache<>(1000);
+		final AtomicInteger invalidated                   = new AtomicInteger();
+		final int threadCount                             = 16;
+		final int count                                   = 10000;
+		final List<Thread> threads                        = new LinkedList<>();
+
+		for (int t=0; t<threadCount; t++) {
+
+			final int offset = t * count;
+			final Thread thread = new Thread(() -> {
+
+				for (int i=0; i<count; i++) {
+
+					test.put(offset + i, new TestCachable(invalidated));
+
+					// read some of the recent entries again
+					test.get(offset + i / 2);
+				}
+			});
+
+			threads.add(thread);
+			thread.start();
+		}
+
+		for (final Thread thread : threads) {
+			thread.join();
+		}
+
+		final int size = test.size();
+
+		Assert.assertTrue("Invalid FixedSizeCache size", size <= 1000);
+		Assert.assertEquals("Evicted entries were not invalidated", threadCount * count - size, invalidated.get());
+		Assert.assertEquals("Invalid eviction count", (long)(threadCount * count - size), test.getStatistics().get("evictions"));
+	}
+
+	@org.junit.Test
+	public void testRemovedEntriesArePurged() {
+
+		final FixedSizeCache<Long, Long> test = new FixedSizeCache<>(10);
+
+		// insert and remove far more entries than the cache can hold, without ever exceeding its size
+		for (int i=0; i<10000; i++) {
+
+			final Long value = Long.valueOf(i);
+
+			test.put(value, value);
+			test.remove(value);
+		}
+
+		Assert.assertEquals("Invalid FixedSizeCache size", 0, test.size());
+		Assert.assertTrue("Removed entries were not purged from the eviction queue", test.getQueueSize() <= 20);
+	}
+
+	// ----- nested classes -----
+	private static class TestCachable implements Cachable {
+
+		private final AtomicInteger counter;
+
+		public TestCachable(final AtomicInteger counter) {
+			this.counter = counter;
+		}
+
+		@Override
+		public void invalidate() {
+			counter.incrementAndGet();
+		}
+	}
 }
@@ -0,0 +1,365 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.text;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.structr.common.fulltext.Indexable;
+import org.structr.core.Services;
+import org.structr.core.app.StructrApp;
+import org.structr.core.graph.Tx;
+
+/**
+ * The last stage of the fulltext indexing pipeline. A single thread takes
+ * the extracted documents from a bounded queue and stores the extracted
+ * content and the indexed words of as many documents as are waiting, up to
+ * the configured batch size, in one transaction.
+ *
+ * Extraction workers block when the queue is full, so a slow database
+ * limits the number of extracted documents held in memory. Each document
+ * is completed when its transaction was committed or finally failed.
+ *
+ * The writer thread runs as long as at least one indexing agent uses it,
+ * see {@link #acquire()} and {@link #release()}. When the last agent is
+ * stopped, the documents that are still queued are written before the
+ * thread exits.
+ */
+class FulltextIndexWriter implements Runnable {
+
+	private static final Logger logger                 = LoggerFactory.getLogger(FulltextIndexWriter.class.getName());
+	private static final PipelineStage stage           = new PipelineStage();
+	private static final AtomicLong batches            = new AtomicLong();
+	private static final Document STOP                 = new Document(null, null, null, new String[0], 0);
+	private static final long shutdownTimeout          = 30_000L;
+	private static FulltextIndexWriter instance        = null;
+	private static int users                           = 0;
+
+	private final BlockingQueue<Document> queue;
+	private final BatchWriter batchWriter;
+	private final int batchSize;
+	private final int batchWords;
+	private Thread thread                              = null;
+
+	FulltextIndexWriter(final int batchSize, final int batchWords, final BatchWriter batchWriter) {
+
+		this.batchSize   = Math.max(1, batchSize);
+		this.batchWords  = Math.max(1, batchWords);
+		this.batchWriter = batchWriter;
+		this.queue       = new ArrayBlockingQueue<>(this.batchSize * 2);
+	}
+
+	/**
+	 * Returns the writer and starts its thread if necessary. Every call
+	 * must be matched by a call to {@link #release()}.
+	 *
+	 * @return the writer
+	 */
+	public static synchronized FulltextIndexWriter acquire() {
+
+		if (instance == null) {
+
+			final int batchSize  = Services.parseInt(StructrApp.getConfigurationValue(Services.APPLICATION_FILESYSTEM_INDEXING_BATCH), 100);
+			final int batchWords = Services.parseInt(StructrApp.getConfigurationValue(Services.APPLICATION_FILESYSTEM_INDEXING_WORDS), 250_000);
+
+			instance = new FulltextIndexWriter(batchSize, batchWords, FulltextIndexWriter::writeBatch);
+			instance.start();
+		}
+
+		users++;
+
+		return instance;
+	}
+
+	/**
+	 * Stops the writer thread after the last user released it. Documents
+	 * that are still queued are written first.
+	 */
+	public static synchronized void release() {
+
+		if (users > 0 && --users == 0 && instance != null) {
+
+			instance.stop();
+			instance = null;
+		}
+	}
+
+	public static synchronized Map<String, Object> getStatistics() {
+
+		final Map<String, Object> data = stage.getStatistics();
+		final long count               = batches.get();
+
+		data.put("queued",       instance != null ? instance.queue.size() : 0);
+		data.put("batches",      count);
+		data.put("avgBatchSize", count > 0 ? (double)((Long)data.get("documents") + (Long)data.get("failed")) / count : 0.0);
+
+		return data;
+	}
+
+	/**
+	 * Hands an extracted document over to the writer thread, waiting
+	 * for free space in the queue if necessary.
+	 *
+	 * @param document the document
+	 * @throws InterruptedException
+	 */
+	public void submit(final Document document) throws InterruptedException {
+		queue.put(document);
+	}
+
+	void start() {
+
+		thread = new Thread(this, "FulltextIndexWriter");
+
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	void stop() {
+
+		try {
+
+			// all documents queued before the marker are written
+			queue.put(STOP);
+
+			thread.join(shutdownTimeout);
+
+			if (thread.isAlive()) {
+				logger.warn("Fulltext index writer did not finish within {} ms", shutdownTimeout);
+			}
+
+		} catch (InterruptedException iex) {
+
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public void run() {
+
+		final List<Document> batch = new ArrayList<>(batchSize);
+		boolean stopped            = false;
+
+		while (!stopped) {
+
+			try {
+
+				final Document first = queue.take();
+				if (first == STOP) {
+					break;
+				}
+
+				int words = addToBatch(batch, first);
+
+				// collect whatever else is waiting, without waiting for more
+				while (batch.size() < batchSize && words < batchWords) {
+
+					final Document next = queue.poll();
+					if (next == null) {
+						break;
+					}
+
+					if (next == STOP) {
+
+						stopped = true;
+						break;
+					}
+
+					words += addToBatch(batch, next);
+				}
+
+				write(batch, words);
+
+			} catch (InterruptedException iex) {
+
+				break;
+
+			} catch (Throwable t) {
+
+				logger.warn("Unexpected error in fulltext index writer", t);
+
+			} finally {
+
+				// release waiting workers even if the batch was not written
+				for (final Document document : batch) {
+					document.complete(false);
+				}
+
+				batch.clear();
+			}
+		}
+	}
+
+	// ----- private methods -----
+	private int addToBatch(final List<Document> batch, final Document document) {
+
+		batch.add(document);
+
+		return document.words.length;
+	}
+
+	private void write(final List<Document> batch, final int words) {
+
+		final long startTime = stage.start();
+
+		try {
+
+			batchWriter.write(batch);
+
+			stage.done(startTime, batch.size(), words);
+			batches.incrementAndGet();
+
+			for (final Document document : batch) {
+				document.complete(true);
+			}
+
+			logger.debug("Indexed {} documents with {} words in one transaction", batch.size(), words);
+
+		} catch (Throwable t) {
+
+			logger.debug("Writing batch of {} documents failed, writing them one by one", batch.size(), t);
+
+			// a single broken document must not prevent indexing of the others
+			for (final Document document : batch) {
+
+				final long singleStartTime = stage.start();
+
+				try {
+
+					batchWriter.write(Collections.singletonList(document));
+
+					stage.done(singleStartTime, 1, document.words.length);
+					document.complete(true);
+
+				} catch (Throwable t2) {
+
+					stage.failed(singleStartTime);
+					document.complete(false);
+
+					logger.warn("Indexing of {} failed", document.fileName, t2);
+				}
+
+				batches.incrementAndGet();
+			}
+		}
+	}
+
+	private static void writeBatch(final List<Document> batch) throws Exception {
+
+		try (final Tx tx = StructrApp.getInstance().tx()) {
+
+			for (final Document document : batch) {
+
+				final Indexable file = document.file;
+
+				// don't modify access time when indexing is finished
+				file.getSecurityContext().preventModificationOfAccessTime();
+
+				// store raw extracted text and indexed words, the latter is
+				// an indexed property, so setting it updates the index too
+				file.setProperty(Indexable.extractedContent, document.rawText);
+				file.setProperty(Indexable.indexedWords, document.words);
+			}
+
+			tx.success();
+		}
+
+		for (final Document document : batch) {
+			logger.info("Indexing of {} finished, {} words extracted", document.fileName, document.wordCount);
+		}
+	}
+
+	// ----- nested classes -----
+	/**
+	 * Stores a batch of documents, the default implementation writes them
+	 * to the database in a single transaction.
+	 */
+	interface BatchWriter {
+
+		void write(final List<Document> batch) throws Exception;
+	}
+
+	/**
+	 * The result of the extraction and tokenization stages for a single file.
+	 */
+	static class Document {
+
+		private final CompletableFuture<Boolean> done = new CompletableFuture<>();
+		private final Indexable file;
+		private final String fileName;
+		private final String rawText;
+		private final String[] words;
+		private final int wordCount;
+
+		public Document(final Indexable file, final String fileName, final String rawText, final String[] words, final int wordCount) {
+
+			this.file      = file;
+			this.fileName  = fileName;
+			this.rawText   = rawText;
+			this.words     = words;
+			this.wordCount = wordCount;
+		}
+
+		public String getFileName() {
+			return fileName;
+		}
+
+		/**
+		 * Waits until the document was written or finally failed.
+		 *
+		 * @return whether the document was written
+		 * @throws InterruptedException
+		 */
+		public boolean await() throws InterruptedException {
+
+			try {
+
+				return done.get();
+
+			} catch (ExecutionException ex) {
+
+				return false;
+			}
+		}
+
+		/**
+		 * Registers a callback that is run with the result when the
+		 * document was written or finally failed. The callback is run
+		 * immediately if the document is already done.
+		 *
+		 * @param callback
+		 */
+		public void onComplete(final Consumer<Boolean> callback) {
+			done.thenAccept(callback);
+		}
+
+		private void complete(final boolean success) {
+			done.complete(success);
+		}
+	}
+}
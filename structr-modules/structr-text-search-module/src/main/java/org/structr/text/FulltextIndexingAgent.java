@@ -21,18 +21,19 @@ package org.structr.text;
 import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.tika.detect.DefaultDetector;
-import org.apache.tika.detect.Detector;
 import org.apache.tika.io.IOUtils;
 import org.apache.tika.metadata.Metadata;
 import org.apache.tika.mime.MediaType;
@@ -46,37 +47,71 @@ import org.slf4j.LoggerFactory;
 import org.structr.agent.Agent;
 import org.structr.agent.ReturnValue;
 import org.structr.agent.Task;
-import org.structr.api.graph.Node;
-import org.structr.api.index.Index;
+import org.structr.api.util.Statistics;
 import org.structr.common.fulltext.Indexable;
-import org.structr.core.Services;
 import org.structr.core.app.StructrApp;
 import org.structr.core.entity.Person;
 import org.structr.core.entity.Principal;
 import static org.structr.core.graph.NodeInterface.owner;
-import org.structr.core.graph.NodeService;
 import org.structr.core.graph.Tx;
 
 /**
+ * Extracts and tokenizes the content of files and hands the results over
+ * to the {@link FulltextIndexWriter}.
  *
+ * The agents of this type form the bounded pool of extraction workers, its
+ * size can be set with FulltextIndexingAgent.workers. All workers share a
+ * single configured parser, which is thread-safe.
+ *
+ * A task is only finished, and removed from the task journal, when the
+ * index writer has committed the results of all of its files. The writer
+ * thread is stopped and drained when the last agent shuts down.
  *
  */
 public class FulltextIndexingAgent extends Agent<Indexable> {
 
 	private static final Logger logger = LoggerFactory.getLogger(FulltextIndexingAgent.class.getName());
 	private static final Map<String, Set<String>> languageStopwordMap = new LinkedHashMap<>();
+	private static final PipelineStage extraction                     = new PipelineStage();
+	private static final PipelineStage tokenization                   = new PipelineStage();
+	private static final AutoDetectParser parser                      = createParser();
 	public static final String TASK_NAME                              = "FulltextIndexing";
 
+	private FulltextIndexWriter writer                                = null;
+
 	@Override
 	public ReturnValue processTask(final Task<Indexable> task) throws Throwable {
 
 		if (TASK_NAME.equals(task.getType())) {
 
+			// the task is finished when the writer has committed all of its documents,
+			// the worker doesn't wait for that so the writer can form larger batches
+			final Runnable taskDone     = deferTaskDone();
+			final AtomicInteger pending = new AtomicInteger(1);
+
 			for (final Indexable file : task.getNodes()) {
 
-				doIndexing(file);
+				final FulltextIndexWriter.Document document = doIndexing(file);
+				if (document != null) {
+
+					pending.incrementAndGet();
+
+					document.onComplete(success -> {
+
+						if (!success) {
+							logger.debug("Indexing of {} was not stored", document.getFileName());
+						}
+
+						if (pending.decrementAndGet() == 0) {
+							taskDone.run();
+						}
+					});
+				}
 			}
 
+			if (pending.decrementAndGet() == 0) {
+				taskDone.run();
+			}
 
 			return ReturnValue.Success;
 		}
@@ -94,148 +129,152 @@ public class FulltextIndexingAgent extends Agent<Indexable> {
 		return false;
 	}
 
-	// ----- private methods -----
-	private void doIndexing(final Indexable file) {
+	public static Map<String, Object> getStatistics() {
 
-		boolean parsingSuccessful         = false;
-		InputStream inputStream           = null;
-		String fileName                   = "unknown file";
+		final Map<String, Object> data = new LinkedHashMap<>();
 
-		try {
+		data.put("extraction",   extraction.getStatistics());
+		data.put("tokenization", tokenization.getStatistics());
+		data.put("indexing",     FulltextIndexWriter.getStatistics());
 
-			try (final Tx tx = StructrApp.getInstance().tx()) {
+		return data;
+	}
 
-				inputStream = file.getInputStream();
-				fileName = file.getName();
+	@Override
+	protected void beforeShutdown() {
 
-				tx.success();
-			}
+		if (writer != null) {
 
-			if (inputStream != null) {
+			FulltextIndexWriter.release();
+			writer = null;
+		}
+	}
 
-				final FulltextTokenizer tokenizer = new FulltextTokenizer(fileName);
+	// ----- private methods -----
+	private FulltextIndexWriter.Document doIndexing(final Indexable file) throws InterruptedException {
 
-				try (final InputStream is = inputStream) {
+		final List<String> additionalText = new ArrayList<>();
+		InputStream inputStream           = null;
+		String fileName                   = "unknown file";
 
-					Detector detector = new DefaultDetector(MimeTypes.getDefaultMimeTypes());
-					final AutoDetectParser parser = new AutoDetectParser(detector);
+		try (final Tx tx = StructrApp.getInstance().tx()) {
 
-					final Map<MediaType, Parser> customParsers = new HashMap<>();
-					customParsers.put(MediaType.application("pdf"), new PDFParser());
-					parser.setParsers(customParsers);
+			inputStream = file.getInputStream();
+			fileName    = file.getName();
 
-					final Metadata metadata = new Metadata();
+			// collect name and owner information to be tokenized along with the content
+			additionalText.add(fileName);
 
-					parser.parse(is, new BodyContentHandler(tokenizer), metadata);
-					parsingSuccessful = true;
+			final Principal _owner = file.getProperty(owner);
+			if (_owner != null) {
 
-					logger.info(String.join(", ", metadata.names()));
-				}
+				additionalText.add(_owner.getName());
+				additionalText.add(_owner.getProperty(Person.eMail));
+				additionalText.add(_owner.getProperty(Person.twitterName));
+			}
 
-				// only do indexing when parsing was successful
-				if (parsingSuccessful) {
+			tx.success();
 
-					try (Tx tx = StructrApp.getInstance().tx()) {
+		} catch (Throwable t) {
 
-						// don't modify access time when indexing is finished
-						file.getSecurityContext().preventModificationOfAccessTime();
+			logger.warn("Unable to read {}", fileName, t);
+			return null;
+		}
 
-						// save raw extracted text
-						file.setProperty(Indexable.extractedContent, tokenizer.getRawText());
+		if (inputStream == null) {
+			return null;
+		}
 
-						// tokenize name
-						tokenizer.write(getName());
+		final FulltextTokenizer tokenizer = new FulltextTokenizer(fileName);
 
-						// tokenize owner name
-						final Principal _owner = file.getProperty(owner);
-						if (_owner != null) {
+		// stage 1: extraction, the tokenizer receives the text while it is parsed
+		long startTime = extraction.start();
 
-							final String ownerName = _owner.getName();
-							if (ownerName != null) {
+		try (final InputStream is = inputStream) {
 
-								tokenizer.write(ownerName);
-							}
+			final Metadata metadata = new Metadata();
 
-							final String eMail = _owner.getProperty(Person.eMail);
-							if (eMail != null) {
+			parser.parse(is, new BodyContentHandler(tokenizer), metadata);
 
-								tokenizer.write(eMail);
-							}
+			extraction.done(startTime, 1, tokenizer.getWordCount());
 
-							final String twitterName = _owner.getProperty(Person.twitterName);
-							if (twitterName != null) {
+			logger.debug(String.join(", ", metadata.names()));
 
-								tokenizer.write(twitterName);
-							}
-						}
+		} catch (Throwable t) {
 
-						tx.success();
-					}
+			extraction.failed(startTime);
 
-					// index document excluding stop words
-					final NodeService nodeService       = Services.getInstance().getService(NodeService.class);
-					final Index<Node> fulltextIndex     = nodeService.getNodeIndex();
-					final Set<String> stopWords         = languageStopwordMap.get(tokenizer.getLanguage());
-					final String indexKeyName           = Indexable.indexedWords.jsonName();
-					final Iterator<String> wordIterator = tokenizer.getWords().iterator();
-					final Node node                     = file.getNode();
-					final Set<String> indexedWords      = new TreeSet<>();
+			logger.warn("Indexing of {} failed", fileName, t);
+			return null;
+		}
 
-					logger.info("Indexing {}..", fileName);
+		// stage 2: tokenization of name and owner, language detection and stop word removal
+		final String rawText;
+		final String[] words;
 
-					while (wordIterator.hasNext()) {
+		startTime = tokenization.start();
 
-						try (Tx tx = StructrApp.getInstance().tx()) {
+		try {
 
-							// remove node from index (in case of previous indexing runs)
-							fulltextIndex.remove(node, indexKeyName);
+			rawText = tokenizer.getRawText();
 
-							while (wordIterator.hasNext()) {
+			for (final String text : additionalText) {
 
-								// strip double quotes
-								final String word = StringUtils.strip(wordIterator.next(), "\"");
+				if (text != null) {
 
-								if (!stopWords.contains(word)) {
+					tokenizer.write(text);
+					tokenizer.flush();
+				}
+			}
 
-									indexedWords.add(word);
-									fulltextIndex.add(node, indexKeyName, word, String.class);
+			tokenizer.close();
 
-//									if (indexedWords > 1000) {
-//										indexedWords = 0;
-//										break;
-//									}
-								}
-							}
+			final Set<String> stopWords = languageStopwordMap.getOrDefault(tokenizer.getLanguage(), Collections.emptySet());
 
-							tx.success();
-						}
-					}
+			words = tokenizer.getWords().stream()
+				.map(word -> StringUtils.strip(word, "\""))
+				.filter(word -> StringUtils.isNotEmpty(word) && !stopWords.contains(word))
+				.distinct()
+				.sorted()
+				.toArray(String[]::new);
 
-					// store indexed words separately
-					try (Tx tx = StructrApp.getInstance().tx()) {
+			tokenization.done(startTime, 1, words.length);
 
-						// don't modify access time when indexing is finished
-						file.getSecurityContext().preventModificationOfAccessTime();
+		} catch (Throwable t) {
 
-						// store indexed words
-						file.setProperty(Indexable.indexedWords, (String[]) indexedWords.toArray(new String[indexedWords.size()]));
+			tokenization.failed(startTime);
 
-						tx.success();
-					}
+			logger.warn("Indexing of {} failed", fileName, t);
+			return null;
+		}
 
-					logger.info("Indexing of {} finished, {} words extracted", new Object[] { fileName, tokenizer.getWordCount() } );
+		if (writer == null) {
+			writer = FulltextIndexWriter.acquire();
+		}
 
-				}
-			}
+		// stage 3: batched index writer
+		final FulltextIndexWriter.Document document = new FulltextIndexWriter.Document(file, fileName, rawText, words, tokenizer.getWordCount());
 
-		} catch (final Throwable t) {
+		writer.submit(document);
 
-			logger.warn("Indexing of {} failed", fileName, t);
-		}
+		return document;
+	}
+
+	private static AutoDetectParser createParser() {
+
+		final AutoDetectParser autoDetectParser = new AutoDetectParser(new DefaultDetector(MimeTypes.getDefaultMimeTypes()));
+		final Map<MediaType, Parser> customParsers = new HashMap<>();
+
+		customParsers.put(MediaType.application("pdf"), new PDFParser());
+		autoDetectParser.setParsers(customParsers);
+
+		return autoDetectParser;
 	}
 
 	static {
 
+		Statistics.register("fulltextIndexing", FulltextIndexingAgent::getStatistics);
+
 		try (final ZipInputStream zis = new ZipInputStream(new BufferedInputStream(FulltextIndexingAgent.class.getResourceAsStream("/stopwords/stop-words.zip")))) {
 
 			for (ZipEntry entry = zis.getNextEntry(); entry != null; entry = zis.getNextEntry()) {
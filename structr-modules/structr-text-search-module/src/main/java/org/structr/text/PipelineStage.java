@@ -0,0 +1,76 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.text;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Throughput counters of a single stage of the fulltext indexing pipeline.
+ */
+class PipelineStage {
+
+	private final AtomicLong documents = new AtomicLong();
+	private final AtomicLong failed    = new AtomicLong();
+	private final AtomicLong words     = new AtomicLong();
+	private final AtomicLong busy      = new AtomicLong();
+	private final AtomicLong first     = new AtomicLong();
+
+	public long start() {
+
+		final long now = System.nanoTime();
+
+		first.compareAndSet(0L, now);
+
+		return now;
+	}
+
+	public void done(final long startTime, final int documentCount, final int wordCount) {
+
+		busy.addAndGet(System.nanoTime() - startTime);
+		documents.addAndGet(documentCount);
+		words.addAndGet(wordCount);
+	}
+
+	public void failed(final long startTime) {
+
+		busy.addAndGet(System.nanoTime() - startTime);
+		failed.incrementAndGet();
+	}
+
+	public Map<String, Object> getStatistics() {
+
+		final Map<String, Object> data = new LinkedHashMap<>();
+		final long count               = documents.get();
+		final long done                = count + failed.get();
+		final long startTime           = first.get();
+		final double seconds           = startTime > 0L ? Math.max(1.0, (System.nanoTime() - startTime) / 1_000_000_000.0) : 1.0;
+
+		data.put("documents",          count);
+		data.put("failed",             failed.get());
+		data.put("words",              words.get());
+		data.put("avgExecutionMs",     done > 0 ? TimeUnit.NANOSECONDS.toMillis(busy.get() / done) : 0L);
+		data.put("documentsPerSecond", count / seconds);
+		data.put("wordsPerSecond",     words.get() / seconds);
+
+		return data;
+	}
+}
@@ -0,0 +1,275 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.text;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Tests the batching of the fulltext index writer with a batch writer
+ * that records the batches instead of writing them to the database.
+ */
+public class FulltextIndexWriterTest {
+
+	@Test
+	public void testBatching() throws Exception {
+
+		final List<List<String>> batches = Collections.synchronizedList(new ArrayList<>());
+		final CountDownLatch entered     = new CountDownLatch(1);
+		final CountDownLatch proceed     = new CountDownLatch(1);
+		final FulltextIndexWriter writer = new FulltextIndexWriter(10, 1000, batch -> {
+
+			batches.add(names(batch));
+
+			// hold the first batch back until the other documents are queued
+			entered.countDown();
+			proceed.await(10, TimeUnit.SECONDS);
+		});
+
+		writer.start();
+
+		try {
+
+			final FulltextIndexWriter.Document first = document("first");
+
+			writer.submit(first);
+
+			assertTrue(entered.await(10, TimeUnit.SECONDS));
+
+			final List<FulltextIndexWriter.Document> documents = new ArrayList<>();
+
+			for (int i=0; i<15; i++) {
+
+				final FulltextIndexWriter.Document document = document("doc" + i);
+
+				documents.add(document);
+				writer.submit(document);
+			}
+
+			proceed.countDown();
+
+			assertTrue(first.await());
+
+			for (final FulltextIndexWriter.Document document : documents) {
+				assertTrue(document.await());
+			}
+
+			// the waiting documents are written in batches of at most 10
+			assertEquals(3, batches.size());
+			assertEquals(Arrays.asList("first"), batches.get(0));
+			assertEquals(10, batches.get(1).size());
+			assertEquals(5, batches.get(2).size());
+
+		} finally {
+
+			writer.stop();
+		}
+	}
+
+	@Test
+	public void testPerDocumentFallback() throws Exception {
+
+		final List<List<String>> batches = Collections.synchronizedList(new ArrayList<>());
+		final CountDownLatch entered     = new CountDownLatch(1);
+		final CountDownLatch proceed     = new CountDownLatch(1);
+		final FulltextIndexWriter writer = new FulltextIndexWriter(10, 1000, batch -> {
+
+			final List<String> names = names(batch);
+
+			batches.add(names);
+
+			if (names.contains("first")) {
+
+				entered.countDown();
+				proceed.await(10, TimeUnit.SECONDS);
+			}
+
+			if (names.contains("broken")) {
+				throw new IllegalStateException("broken document");
+			}
+		});
+
+		writer.start();
+
+		try {
+
+			writer.submit(document("first"));
+
+			assertTrue(entered.await(10, TimeUnit.SECONDS));
+
+			final FulltextIndexWriter.Document a      = document("a");
+			final FulltextIndexWriter.Document broken = document("broken");
+			final FulltextIndexWriter.Document c      = document("c");
+
+			writer.submit(a);
+			writer.submit(broken);
+			writer.submit(c);
+
+			proceed.countDown();
+
+			// a broken document fails on its own, the others are written
+			assertTrue(a.await());
+			assertFalse(broken.await());
+			assertTrue(c.await());
+
+			assertEquals(Arrays.asList("a", "broken", "c"), batches.get(1));
+			assertEquals(Arrays.asList("a"),      batches.get(2));
+			assertEquals(Arrays.asList("broken"), batches.get(3));
+			assertEquals(Arrays.asList("c"),      batches.get(4));
+
+		} finally {
+
+			writer.stop();
+		}
+	}
+
+	@Test
+	public void testStopDrainsQueue() throws Exception {
+
+		final List<List<String>> batches = Collections.synchronizedList(new ArrayList<>());
+		final FulltextIndexWriter writer = new FulltextIndexWriter(10, 1000, batch -> batches.add(names(batch)));
+		final List<FulltextIndexWriter.Document> documents = new ArrayList<>();
+
+		writer.start();
+
+		for (int i=0; i<5; i++) {
+
+			final FulltextIndexWriter.Document document = document("doc" + i);
+
+			documents.add(document);
+			writer.submit(document);
+		}
+
+		writer.stop();
+
+		// all documents queued before the shutdown are written
+		for (final FulltextIndexWriter.Document document : documents) {
+			assertTrue(document.await());
+		}
+	}
+
+	@Test
+	public void testBatchingWithConcurrentWorkers() throws Exception {
+
+		final List<List<String>> batches = Collections.synchronizedList(new ArrayList<>());
+		final int workerCount            = 4;
+		final int documentsPerWorker     = 25;
+		final CountDownLatch submitted   = new CountDownLatch(workerCount);
+		final CountDownLatch completed   = new CountDownLatch(workerCount * documentsPerWorker);
+		final AtomicInteger failed       = new AtomicInteger();
+		final FulltextIndexWriter writer = new FulltextIndexWriter(50, 100000, batch -> {
+
+			batches.add(names(batch));
+
+			// hold the first batch back until all workers have submitted their documents
+			submitted.await(10, TimeUnit.SECONDS);
+		});
+
+		writer.start();
+
+		try {
+
+			final List<Thread> workers = new ArrayList<>();
+
+			for (int w=0; w<workerCount; w++) {
+
+				final int worker    = w;
+				final Thread thread = new Thread(() -> {
+
+					try {
+
+						// workers submit without waiting for their documents to be written
+						for (int i=0; i<documentsPerWorker; i++) {
+
+							final FulltextIndexWriter.Document document = document("worker" + worker + "-doc" + i);
+
+							document.onComplete(success -> {
+
+								if (!success) {
+									failed.incrementAndGet();
+								}
+
+								completed.countDown();
+							});
+
+							writer.submit(document);
+						}
+
+					} catch (InterruptedException iex) {
+
+						Thread.currentThread().interrupt();
+					}
+
+					submitted.countDown();
+				});
+
+				workers.add(thread);
+				thread.start();
+			}
+
+			for (final Thread thread : workers) {
+				thread.join(10000);
+			}
+
+			assertTrue("Not all documents were completed", completed.await(10, TimeUnit.SECONDS));
+			assertEquals(0, failed.get());
+
+			int documentCount = 0;
+			int maxBatchSize  = 0;
+
+			for (final List<String> batch : batches) {
+
+				documentCount += batch.size();
+				maxBatchSize   = Math.max(maxBatchSize, batch.size());
+			}
+
+			assertEquals(workerCount * documentsPerWorker, documentCount);
+			assertTrue("No batch larger than the number of workers was formed", maxBatchSize > workerCount);
+
+		} finally {
+
+			writer.stop();
+		}
+	}
+
+	// ----- private methods -----
+	private FulltextIndexWriter.Document document(final String name) {
+		return new FulltextIndexWriter.Document(null, name, name, new String[] { name }, 1);
+	}
+
+	private List<String> names(final List<FulltextIndexWriter.Document> batch) {
+
+		final List<String> names = new ArrayList<>();
+
+		for (final FulltextIndexWriter.Document document : batch) {
+			names.add(document.getFileName());
+		}
+
+		return names;
+	}
+}
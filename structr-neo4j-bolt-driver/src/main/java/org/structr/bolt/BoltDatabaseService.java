@@ -25,15 +25,18 @@ import java.io.IOException;
 import java.io.Reader;
 import java.io.Writer;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import org.neo4j.driver.v1.AuthTokens;
 import org.neo4j.driver.v1.Config;
 import org.neo4j.driver.v1.Driver;
@@ -56,6 +59,7 @@ import org.structr.api.graph.Relationship;
 import org.structr.api.graph.RelationshipType;
 import org.structr.api.index.Index;
 import org.structr.api.util.Iterables;
+import org.structr.api.util.Statistics;
 import org.structr.bolt.index.CypherNodeIndex;
 import org.structr.bolt.index.CypherRelationshipIndex;
 import org.structr.bolt.mapper.NodeNodeMapper;
@@ -72,15 +76,24 @@ public class BoltDatabaseService implements DatabaseService, GraphProperties {
 	private static final Map<String, RelationshipType> relTypeCache   = new ConcurrentHashMap<>();
 	private static final Map<String, Label> labelCache                = new ConcurrentHashMap<>();
 	private static final ThreadLocal<SessionTransaction> sessions     = new ThreadLocal<>();
+	private final AtomicLong bufferedWriteCount                       = new AtomicLong();
+	private final AtomicLong flushStatementCount                      = new AtomicLong();
+	private final AtomicLong prefetchQueryCount                       = new AtomicLong();
+	private final AtomicLong prefetchNodeCount                        = new AtomicLong();
+	private final AtomicLong prefetchRelationshipCount                = new AtomicLong();
 	private Properties globalGraphProperties                          = null;
 	private CypherRelationshipIndex relationshipIndex                 = null;
 	private CypherNodeIndex nodeIndex                                 = null;
 	private GraphDatabaseService graphDb                              = null;
 	private boolean debugLogging                                      = false;
 	private boolean needsIndexRebuild                                 = false;
+	private boolean writeBufferEnabled                                = true;
 	private String databasePath                                       = null;
 	private Driver driver                                             = null;
 	private int queryCacheSize                                        = 1000;
+	private int writeBufferSize                                       = 1000;
+	private int prefetchBatchSize                                     = 1000;
+	private int prefetchMaxDegree                                     = 100;
 
 	@Override
 	public void initialize(final Properties configuration) {
@@ -140,11 +153,28 @@ public class BoltDatabaseService implements DatabaseService, GraphProperties {
 
 		RelationshipWrapper.initialize(relCacheSize);
 		logger.info("Relationship cache size set to {}", relCacheSize);
+
+		this.writeBufferEnabled = "true".equalsIgnoreCase(configuration.getProperty(Structr.WRITE_BUFFER_ENABLED, "true"));
+		this.writeBufferSize    = Integer.valueOf(configuration.getProperty(Structr.WRITE_BUFFER_SIZE, "1000"));
+
+		if (writeBufferEnabled) {
+			logger.info("Write buffer enabled, size set to {}", writeBufferSize);
+		}
+
+		this.prefetchBatchSize  = Integer.valueOf(configuration.getProperty(Structr.PREFETCH_BATCH_SIZE, "1000"));
+		this.prefetchMaxDegree  = Integer.valueOf(configuration.getProperty(Structr.PREFETCH_MAX_DEGREE, "100"));
+
+		Statistics.register("writeBuffer", this::getWriteBufferStatistics);
+		Statistics.register("prefetch",    this::getPrefetchStatistics);
 	}
 
 	@Override
 	public void shutdown() {
 
+		if (writeBufferEnabled) {
+			logger.info("Write buffer coalesced {} writes into {} statements, {} statements saved", getBufferedWriteCount(), getFlushStatementCount(), getSavedStatementCount());
+		}
+
 		RelationshipWrapper.clearCache();
 		NodeWrapper.clearCache();
 
@@ -199,7 +229,71 @@ public class BoltDatabaseService implements DatabaseService, GraphProperties {
 		// make properties available to Cypher statement
 		map.put("properties", properties);
 
-		return NodeWrapper.newInstance(this, getCurrentTransaction().getNode(buf.toString(), map));
+		final SessionTransaction tx = getCurrentTransaction();
+		final NodeWrapper node      = NodeWrapper.newInstance(this, tx.getNode(buf.toString(), map));
+
+		tx.labelsModified(labels);
+
+		return node;
+	}
+
+	@Override
+	public List<Node> createNodes(final Set<String> labels, final List<Map<String, Object>> properties) {
+
+		final StringBuilder buf       = new StringBuilder("UNWIND {properties} AS properties CREATE (n");
+		final Map<String, Object> map = new HashMap<>();
+		final List<Node> nodes        = new ArrayList<>(properties.size());
+
+		for (final String label : labels) {
+
+			buf.append(":");
+			buf.append(label);
+		}
+
+		buf.append(") SET n = properties RETURN n");
+
+		// make properties available to Cypher statement
+		map.put("properties", properties);
+
+		final SessionTransaction tx = getCurrentTransaction();
+
+		for (final org.neo4j.driver.v1.types.Node node : tx.getNodes(buf.toString(), map)) {
+			nodes.add(NodeWrapper.newInstance(this, node));
+		}
+
+		tx.labelsModified(labels);
+
+		return nodes;
+	}
+
+	@Override
+	public List<Relationship> createRelationships(final String relationshipType, final List<Long> startNodeIds, final List<Long> endNodeIds, final List<Map<String, Object>> properties) {
+
+		final List<Map<String, Object>> rows = new ArrayList<>(properties.size());
+		final List<Relationship> rels        = new ArrayList<>(properties.size());
+		final Map<String, Object> map        = new HashMap<>();
+
+		for (int i=0; i<properties.size(); i++) {
+
+			final Map<String, Object> row = new HashMap<>();
+
+			row.put("start",      startNodeIds.get(i));
+			row.put("end",        endNodeIds.get(i));
+			row.put("properties", properties.get(i));
+
+			rows.add(row);
+		}
+
+		map.put("rows", rows);
+
+		final SessionTransaction tx = getCurrentTransaction();
+		final String statement      = "UNWIND {rows} AS row MATCH (n), (m) WHERE ID(n) = row.start AND ID(m) = row.end CREATE (n)-[r:" + relationshipType + "]->(m) SET r = row.properties RETURN r";
+
+		for (final org.neo4j.driver.v1.types.Relationship rel : tx.getRelationships(statement, map)) {
+			rels.add(RelationshipWrapper.newInstance(this, rel));
+		}
+
+		return rels;
 	}
 
 	@Override
@@ -236,7 +330,36 @@ public class BoltDatabaseService implements DatabaseService, GraphProperties {
 		final RelationshipRelationshipMapper mapper = new RelationshipRelationshipMapper(this);
 		final SessionTransaction tx                 = getCurrentTransaction();
 
-		return Iterables.map(mapper, tx.getRelationships("MATCH ()-[r]-() RETURN r", Collections.emptyMap()));
+		return Iterables.map(mapper, tx.getRelationships("MATCH ()-[r]->() RETURN r", Collections.emptyMap()));
+	}
+
+	@Override
+	public long getHighestNodeId() {
+		return getHighestId("MATCH (n) RETURN max(id(n))");
+	}
+
+	@Override
+	public long getHighestRelationshipId() {
+		return getHighestId("MATCH ()-[r]->() RETURN max(id(r))");
+	}
+
+	@Override
+	public Iterable<Node> getNodesInRange(final long fromId, final long toId) {
+
+		final SessionTransaction tx = getCurrentTransaction();
+		final NodeNodeMapper mapper = new NodeNodeMapper(this);
+
+		// a list of ids allows the database to seek by id instead of scanning all nodes
+		return Iterables.map(mapper, tx.getNodes("MATCH (n) WHERE id(n) IN {ids} RETURN n", getIdRangeParameters(fromId, toId)));
+	}
+
+	@Override
+	public Iterable<Relationship> getRelationshipsInRange(final long fromId, final long toId) {
+
+		final RelationshipRelationshipMapper mapper = new RelationshipRelationshipMapper(this);
+		final SessionTransaction tx                 = getCurrentTransaction();
+
+		return Iterables.map(mapper, tx.getRelationships("MATCH ()-[r]->() WHERE id(r) IN {ids} RETURN r", getIdRangeParameters(fromId, toId)));
 	}
 
 	@Override
@@ -286,6 +409,54 @@ public class BoltDatabaseService implements DatabaseService, GraphProperties {
 		}
 	}
 
+	/**
+	 * Invalidates the cached query results that depend on the given
+	 * node labels or property keys. Only node queries are cached.
+	 *
+	 * @param labels
+	 * @param keys
+	 */
+	public void invalidateQueryCache(final Set<String> labels, final Set<String> keys) {
+
+		if (nodeIndex != null) {
+			nodeIndex.invalidateCache(labels, keys);
+		}
+	}
+
+	@Override
+	public void prefetchRelationships(final Iterable<Long> nodeIds) {
+
+		final List<Long> batch = new LinkedList<>();
+
+		for (final Long id : nodeIds) {
+
+			batch.add(id);
+
+			if (batch.size() >= prefetchBatchSize) {
+
+				prefetchBatch(batch);
+				batch.clear();
+			}
+		}
+
+		if (!batch.isEmpty()) {
+			prefetchBatch(batch);
+		}
+	}
+
+	public Map<String, Object> getPrefetchStatistics() {
+
+		final Map<String, Object> data = new LinkedHashMap<>();
+
+		data.put("batchSize",     prefetchBatchSize);
+		data.put("maxDegree",     prefetchMaxDegree);
+		data.put("queries",       prefetchQueryCount.get());
+		data.put("nodes",         prefetchNodeCount.get());
+		data.put("relationships", prefetchRelationshipCount.get());
+
+		return data;
+	}
+
 	public SessionTransaction getCurrentTransaction() {
 
 		final SessionTransaction tx = sessions.get();
@@ -301,6 +472,45 @@ public class BoltDatabaseService implements DatabaseService, GraphProperties {
 		return debugLogging;
 	}
 
+	public boolean isWriteBufferEnabled() {
+		return writeBufferEnabled;
+	}
+
+	public int getWriteBufferSize() {
+		return writeBufferSize;
+	}
+
+	public void writesFlushed(final int writes, final int statements) {
+
+		bufferedWriteCount.addAndGet(writes);
+		flushStatementCount.addAndGet(statements);
+	}
+
+	public long getBufferedWriteCount() {
+		return bufferedWriteCount.get();
+	}
+
+	public long getFlushStatementCount() {
+		return flushStatementCount.get();
+	}
+
+	public long getSavedStatementCount() {
+		return bufferedWriteCount.get() - flushStatementCount.get();
+	}
+
+	public Map<String, Object> getWriteBufferStatistics() {
+
+		final Map<String, Object> data = new LinkedHashMap<>();
+
+		data.put("enabled",         writeBufferEnabled);
+		data.put("size",            writeBufferSize);
+		data.put("bufferedWrites",  getBufferedWriteCount());
+		data.put("flushStatements", getFlushStatementCount());
+		data.put("savedStatements", getSavedStatementCount());
+
+		return data;
+	}
+
 	// ----- interface GraphProperties -----
 	@Override
 	public void setProperty(final String name, final Object value) {
@@ -372,6 +582,42 @@ public class BoltDatabaseService implements DatabaseService, GraphProperties {
 	}
 
 	// ----- private methods -----
+	private long getHighestId(final String statement) {
+
+		final Object value = getCurrentTransaction().getObject(statement, Collections.emptyMap());
+		if (value instanceof Number) {
+
+			return ((Number)value).longValue();
+		}
+
+		return -1L;
+	}
+
+	private Map<String, Object> getIdRangeParameters(final long fromId, final long toId) {
+
+		final Map<String, Object> map = new HashMap<>();
+		final List<Long> ids          = new ArrayList<>();
+
+		for (long id = fromId; id < toId; id++) {
+			ids.add(id);
+		}
+
+		map.put("ids", ids);
+
+		return map;
+	}
+
+	private void prefetchBatch(final List<Long> ids) {
+
+		final int count = NodeWrapper.prefetchRelationships(this, ids, prefetchMaxDegree);
+		if (count >= 0) {
+
+			prefetchQueryCount.incrementAndGet();
+			prefetchNodeCount.addAndGet(ids.size());
+			prefetchRelationshipCount.addAndGet(count);
+		}
+	}
+
 	private Properties getProperties() {
 
 		if (globalGraphProperties == null) {
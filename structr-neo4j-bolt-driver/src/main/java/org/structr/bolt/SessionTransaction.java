@@ -18,11 +18,20 @@
  */
 package org.structr.bolt;
 
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import org.neo4j.driver.v1.Record;
 import org.neo4j.driver.v1.Session;
 import org.neo4j.driver.v1.StatementResult;
@@ -49,12 +58,23 @@ import org.structr.bolt.wrapper.StatementResultWrapper;
  */
 public class SessionTransaction implements org.structr.api.Transaction {
 
-	private final Set<EntityWrapper> modifiedEntities = new HashSet<>();
-	private BoltDatabaseService db                    = null;
-	private Session session                           = null;
-	private Transaction tx                            = null;
-	private boolean closed                            = false;
-	private boolean success                           = false;
+	private static final Pattern WRITE_CLAUSES  = Pattern.compile("\\b(MERGE|SET|DELETE|REMOVE|CALL|LOAD)\\b", Pattern.CASE_INSENSITIVE);
+	private static final Pattern CREATE_CLAUSE  = Pattern.compile("\\bCREATE\\b", Pattern.CASE_INSENSITIVE);
+	private static final Pattern NODE_LABELS    = Pattern.compile("\\(\\s*\\w*\\s*((:\\s*`?\\w+`?\\s*)+)");
+
+	private final Map<String, Map<Long, Map<String, Object>>> pendingProperties = new LinkedHashMap<>();
+	private final Map<String, Set<Long>> pendingLabels                          = new LinkedHashMap<>();
+	private final Map<String, Set<Long>> lockedEntities                         = new HashMap<>();
+	private final Set<EntityWrapper> modifiedEntities                           = new HashSet<>();
+	private final Set<String> modifiedLabels                                    = new HashSet<>();
+	private final Set<String> modifiedKeys                                      = new HashSet<>();
+	private BoltDatabaseService db                                              = null;
+	private Session session                                                     = null;
+	private Transaction tx                                                      = null;
+	private boolean closed                                                      = false;
+	private boolean success                                                     = false;
+	private boolean modifiedAll                                                 = false;
+	private int pendingWrites                                                   = 0;
 
 	public SessionTransaction(final BoltDatabaseService db, final Session session) {
 
@@ -80,6 +100,25 @@ public class SessionTransaction implements org.structr.api.Transaction {
 	@Override
 	public void close() {
 
+		RuntimeException flushException = null;
+
+		if (success) {
+
+			try {
+
+				// write pending changes before committing
+				flush();
+
+			} catch (RuntimeException rex) {
+
+				// roll back and report the error after closing the transaction
+				flushException = rex;
+				success        = false;
+
+				tx.failure();
+			}
+		}
+
 		if (!success) {
 
 			// We need to invalidate all existing references because we cannot
@@ -90,10 +129,15 @@ public class SessionTransaction implements org.structr.api.Transaction {
 
 		} else {
 
-			if (!modifiedEntities.isEmpty()) {
+			if (modifiedAll) {
 
-				// data was written, invalidate query cache
+				// unknown data was written by a native query
 				db.invalidateQueryCache();
+
+			} else if (!modifiedLabels.isEmpty() || !modifiedKeys.isEmpty()) {
+
+				// data was written, invalidate dependent query results
+				db.invalidateQueryCache(modifiedLabels, modifiedKeys);
 			}
 
 			// Invalidate all nodes that are modified in this transaction
@@ -124,6 +168,10 @@ public class SessionTransaction implements org.structr.api.Transaction {
 				session.close();
 			}
 		}
+
+		if (flushException != null) {
+			throw flushException;
+		}
 	}
 
 	public boolean isClosed() {
@@ -156,6 +204,7 @@ public class SessionTransaction implements org.structr.api.Transaction {
 
 		try {
 
+			flush();
 			logQuery(statement, map);
 
 			return tx.run(statement, map).next().get(0).asLong();
@@ -172,6 +221,7 @@ public class SessionTransaction implements org.structr.api.Transaction {
 
 		try {
 
+			flush();
 			logQuery(statement, map);
 
 			final StatementResult result = tx.run(statement, map);
@@ -194,6 +244,7 @@ public class SessionTransaction implements org.structr.api.Transaction {
 
 		try {
 
+			flush();
 			logQuery(statement, map);
 
 			return tx.run(statement, map).next().get(0).asEntity();
@@ -210,6 +261,7 @@ public class SessionTransaction implements org.structr.api.Transaction {
 
 		try {
 
+			flush();
 			logQuery(statement, map);
 
 			return tx.run(statement, map).next().get(0).asNode();
@@ -226,6 +278,7 @@ public class SessionTransaction implements org.structr.api.Transaction {
 
 		try {
 
+			flush();
 			logQuery(statement, map);
 
 			return tx.run(statement, map).next().get(0).asRelationship();
@@ -242,6 +295,7 @@ public class SessionTransaction implements org.structr.api.Transaction {
 
 		try {
 
+			flush();
 			logQuery(statement, map);
 
 			return Iterables.map(new RecordNodeMapper(), new StatementIterable(tx.run(statement, map)));
@@ -258,6 +312,7 @@ public class SessionTransaction implements org.structr.api.Transaction {
 
 		try {
 
+			flush();
 			logQuery(statement, map);
 
 			return Iterables.map(new RecordRelationshipMapper(), new StatementIterable(tx.run(statement, map)));
@@ -274,6 +329,7 @@ public class SessionTransaction implements org.structr.api.Transaction {
 
 		try {
 
+			flush();
 			logQuery(statement, map);
 
 			return Iterables.map(new RecordLongMapper(), new StatementIterable(tx.run(statement, map)));
@@ -286,10 +342,28 @@ public class SessionTransaction implements org.structr.api.Transaction {
 		}
 	}
 
+	public Iterable<Record> getRecords(final String statement, final Map<String, Object> map) {
+
+		try {
+
+			flush();
+			logQuery(statement, map);
+
+			return new StatementIterable(tx.run(statement, map));
+
+		} catch (TransientException tex) {
+			closed = true;
+			throw new RetryException(tex);
+		} catch (NoSuchRecordException nex) {
+			throw new NotFoundException(nex);
+		}
+	}
+
 	public Iterable<String> getStrings(final String statement, final Map<String, Object> map) {
 
 		try {
 
+			flush();
 			logQuery(statement, map);
 
 			final StatementResult result = tx.run(statement, map);
@@ -310,7 +384,9 @@ public class SessionTransaction implements org.structr.api.Transaction {
 
 		try {
 
+			flush();
 			logQuery(statement, map);
+			nativeStatement(statement);
 
 			return new StatementResultWrapper(db, tx.run(statement, map));
 
@@ -326,6 +402,7 @@ public class SessionTransaction implements org.structr.api.Transaction {
 
 		try {
 
+			flush();
 			logQuery(statement, map);
 
 			tx.run(statement, map).consume();
@@ -338,6 +415,145 @@ public class SessionTransaction implements org.structr.api.Transaction {
 		}
 	}
 
+	/**
+	 * Sets the given properties on the entity with the given ID. If the
+	 * write buffer is enabled, the properties are coalesced with other
+	 * pending writes and sent to the database in a batched statement when
+	 * the next read happens or when the transaction is committed.
+	 *
+	 * The first write to an entity is always executed immediately, so that
+	 * the database write lock on the entity is acquired at the same time as
+	 * without the buffer. Transaction isolation relies on this lock, since
+	 * entity wrappers are shared between threads.
+	 *
+	 * @param queryPrefix the MATCH clause of the entity, binding "n"
+	 * @param id the database ID of the entity
+	 * @param properties the properties to set, null values remove a property
+	 */
+	public void setProperties(final String queryPrefix, final long id, final Map<String, Object> properties) {
+
+		if (db.isWriteBufferEnabled() && !lock(queryPrefix, id)) {
+
+			Map<Long, Map<String, Object>> rows = pendingProperties.get(queryPrefix);
+			if (rows == null) {
+
+				rows = new LinkedHashMap<>();
+				pendingProperties.put(queryPrefix, rows);
+			}
+
+			Map<String, Object> row = rows.get(id);
+			if (row == null) {
+
+				row = new HashMap<>();
+				rows.put(id, row);
+			}
+
+			row.putAll(properties);
+
+			buffered();
+
+		} else {
+
+			final Map<String, Object> map = new HashMap<>();
+
+			map.put("id", id);
+			map.put("properties", properties);
+
+			set(queryPrefix + " WHERE ID(n) = {id} SET n += {properties}", map);
+		}
+	}
+
+	/**
+	 * Adds the given label to the node with the given ID, using the write
+	 * buffer if enabled and the node is already locked in this transaction.
+	 *
+	 * @param id the database ID of the node
+	 * @param label the label name
+	 */
+	public void addLabel(final long id, final String label) {
+
+		if (db.isWriteBufferEnabled() && !lock("MATCH (n)", id)) {
+
+			Set<Long> ids = pendingLabels.get(label);
+			if (ids == null) {
+
+				ids = new LinkedHashSet<>();
+				pendingLabels.put(label, ids);
+			}
+
+			ids.add(id);
+
+			buffered();
+
+		} else {
+
+			final Map<String, Object> map = new HashMap<>();
+
+			map.put("id", id);
+
+			set("MATCH (n) WHERE ID(n) = {id} SET n :" + label, map);
+		}
+	}
+
+	/**
+	 * Sends all pending buffered writes to the database. This method is
+	 * called before every statement that is executed in this transaction,
+	 * so that reads always see the buffered changes.
+	 */
+	public void flush() {
+
+		if (pendingWrites == 0) {
+			return;
+		}
+
+		final int writes = pendingWrites;
+		int statements   = 0;
+
+		// reset state first so that a failing statement does not cause repeated flushes
+		pendingWrites = 0;
+
+		try {
+
+			for (final Entry<String, Set<Long>> entry : pendingLabels.entrySet()) {
+
+				final Map<String, Object> map = new HashMap<>();
+
+				map.put("ids", new LinkedList<>(entry.getValue()));
+
+				execute("UNWIND {ids} AS id MATCH (n) WHERE ID(n) = id SET n :" + entry.getKey(), map);
+				statements++;
+			}
+
+			for (final Entry<String, Map<Long, Map<String, Object>>> entry : pendingProperties.entrySet()) {
+
+				final List<Map<String, Object>> rows = new LinkedList<>();
+				final Map<String, Object> map        = new HashMap<>();
+
+				for (final Entry<Long, Map<String, Object>> row : entry.getValue().entrySet()) {
+
+					final Map<String, Object> data = new HashMap<>();
+
+					data.put("id", row.getKey());
+					data.put("properties", row.getValue());
+
+					rows.add(data);
+				}
+
+				map.put("rows", rows);
+
+				execute("UNWIND {rows} AS row " + entry.getKey() + " WHERE ID(n) = row.id SET n += row.properties", map);
+				statements++;
+			}
+
+		} finally {
+
+			pendingProperties.clear();
+			pendingLabels.clear();
+
+			db.writesFlushed(writes, statements);
+		}
+	}
+
 	public void logQuery(final String statement) {
 
 		logQuery(statement, null);
@@ -363,11 +579,144 @@ public class SessionTransaction implements org.structr.api.Transaction {
 	}
 
 	public void modified(final EntityWrapper wrapper) {
+		modifiedEntities.add(wrapper);
+	}
 
-		// data was written, invalidate query cache
-		db.invalidateQueryCache();
+	/**
+	 * Registers a modification of the given property keys of a node.
+	 *
+	 * @param wrapper
+	 * @param keys
+	 */
+	public void modified(final EntityWrapper wrapper, final Collection<String> keys) {
 
 		modifiedEntities.add(wrapper);
+		modifiedKeys.addAll(keys);
+	}
+
+	/**
+	 * Registers the creation or deletion of nodes with the given labels,
+	 * or the addition or removal of the given labels.
+	 *
+	 * @param labels
+	 */
+	public void labelsModified(final Iterable<String> labels) {
+
+		for (final String label : labels) {
+			modifiedLabels.add(label);
+		}
+	}
+
+	/**
+	 * Indicates whether this transaction has modified nodes with one of
+	 * the given labels or one of the given property keys. An empty list
+	 * of labels matches any label.
+	 *
+	 * @param labels
+	 * @param keys
+	 * @param anyKey whether a modification of any key should match
+	 * @return whether this transaction has modified any of the given labels or keys
+	 */
+	public boolean hasModified(final Collection<String> labels, final Collection<String> keys, final boolean anyKey) {
+
+		if (modifiedAll) {
+			return true;
+		}
+
+		if (!modifiedLabels.isEmpty()) {
+
+			if (labels.isEmpty() || !Collections.disjoint(labels, modifiedLabels)) {
+				return true;
+			}
+		}
+
+		if (!modifiedKeys.isEmpty()) {
+
+			if (anyKey || !Collections.disjoint(keys, modifiedKeys)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	// ----- private methods -----
+	/**
+	 * Registers the modifications of a native statement. The labels of
+	 * statements that only create nodes are taken from the patterns after
+	 * the CREATE clause, all other writes are unknown to the query cache.
+	 */
+	private void nativeStatement(final String statement) {
+
+		final Matcher create = CREATE_CLAUSE.matcher(statement);
+
+		if (WRITE_CLAUSES.matcher(statement).find()) {
+
+			modifiedAll = true;
+
+		} else if (create.find()) {
+
+			final Matcher matcher = NODE_LABELS.matcher(statement.substring(create.start()));
+			boolean found         = false;
+
+			while (matcher.find()) {
+
+				for (final String label : matcher.group(1).split(":")) {
+
+					final String trimmed = label.replace("`", "").trim();
+					if (!trimmed.isEmpty()) {
+
+						modifiedLabels.add(trimmed);
+						found = true;
+					}
+				}
+			}
+
+			// unlabeled nodes
+			if (!found) {
+				modifiedAll = true;
+			}
+		}
+	}
+
+	/**
+	 * Registers a write to the given entity in this transaction.
+	 *
+	 * @return true if this is the first write, which must not be buffered
+	 */
+	private boolean lock(final String queryPrefix, final long id) {
+
+		Set<Long> ids = lockedEntities.get(queryPrefix);
+		if (ids == null) {
+
+			ids = new HashSet<>();
+			lockedEntities.put(queryPrefix, ids);
+		}
+
+		return ids.add(id);
+	}
+
+	private void buffered() {
+
+		if (++pendingWrites >= db.getWriteBufferSize()) {
+			flush();
+		}
+	}
+
+	private void execute(final String statement, final Map<String, Object> map) {
+
+		try {
+
+			logQuery(statement, map);
+
+			tx.run(statement, map).consume();
+
+		} catch (TransientException tex) {
+			closed = true;
+			throw new RetryException(tex);
+		} catch (NoSuchRecordException nex) {
+			throw new NotFoundException(nex);
+		}
 	}
 
 	private class StatementIterable implements Iterable<Record> {
@@ -20,12 +20,19 @@ package org.structr.bolt.index;
 
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.structr.api.QueryResult;
@@ -43,8 +50,10 @@ import org.structr.api.search.SpatialQuery;
 import org.structr.api.search.TypeConverter;
 import org.structr.api.search.TypeQuery;
 import org.structr.api.search.UuidQuery;
+import org.structr.api.util.Cachable;
 import org.structr.api.util.FixedSizeCache;
 import org.structr.api.util.Iterables;
+import org.structr.api.util.Statistics;
 import org.structr.bolt.*;
 import org.structr.bolt.index.converter.BooleanTypeConverter;
 import org.structr.bolt.index.converter.DateTypeConverter;
@@ -99,13 +108,22 @@ public abstract class AbstractCypherIndex<T extends PropertyContainer> implement
 		CONVERTERS.put(Double.class,  new DoubleTypeConverter());
 	}
 
+	private static final String ANY = "*";
+
+	private final Map<String, Set<Integer>> labelDependencies = new ConcurrentHashMap<>();
+	private final Map<String, Set<Integer>> keyDependencies   = new ConcurrentHashMap<>();
+	private final Map<String, TypeStatistics> typeStatistics  = new ConcurrentHashMap<>();
+	private final AtomicLong generation                       = new AtomicLong();
+
 	protected final FixedSizeCache<Integer, CachedQueryResult> queryCache;
 	protected final BoltDatabaseService db;
 
 	public AbstractCypherIndex(final BoltDatabaseService db, final int queryCacheSize) {
 
-		this.queryCache = new FixedSizeCache<>(queryCacheSize);
+		this.queryCache = new FixedSizeCache<>("queryCache." + getClass().getSimpleName(), queryCacheSize);
 		this.db         = db;
+
+		Statistics.register("queryCacheTypes." + getClass().getSimpleName(), this::getTypeStatistics);
 	}
 
 	public abstract QueryResult<T> getResult(final CypherQuery query);
@@ -140,6 +158,196 @@ public abstract class AbstractCypherIndex<T extends PropertyContainer> implement
 
 	@Override
 	public Iterable<T> query(final QueryPredicate predicate) {
+		return getResult(createCypherQuery(predicate));
+	}
+
+	@Override
+	public Iterable<T> query(final QueryPredicate predicate, final int pageSize, final int page) {
+
+		final CypherQuery query = createCypherQuery(predicate);
+
+		if (query.isPageable()) {
+
+			query.page(pageSize, page);
+
+			return getResult(query);
+		}
+
+		// fallback: page in memory
+		final List<T> list = Iterables.toList(getResult(query));
+		final int size     = list.size();
+		final int from     = (int)Math.min(size, (long)(page - 1) * (long)pageSize);
+		final int to       = (int)Math.min(size, (long)from + (long)pageSize);
+
+		return list.subList(from, to);
+	}
+
+	@Override
+	public long count(final QueryPredicate predicate) {
+
+		final CypherQuery query = createCypherQuery(predicate);
+
+		if (query.isPageable()) {
+
+			return db.getCurrentTransaction().getLong(query.getCountStatement(), query.getParameters());
+		}
+
+		return Iterables.count(getResult(query));
+	}
+
+	public void invalidateCache() {
+
+		generation.incrementAndGet();
+
+		if (!queryCache.isEmpty()) {
+
+			queryCache.clear();
+		}
+
+		labelDependencies.clear();
+		keyDependencies.clear();
+	}
+
+	/**
+	 * Removes only those cached query results that depend on one of the
+	 * given type labels or property keys.
+	 *
+	 * @param labels the labels of nodes that were created, deleted or relabeled
+	 * @param keys the property keys that were modified
+	 */
+	public void invalidateCache(final Set<String> labels, final Set<String> keys) {
+
+		final Set<Integer> hashCodes = new HashSet<>();
+
+		// block results that are currently computed from being cached
+		generation.incrementAndGet();
+
+		if (!labels.isEmpty()) {
+
+			collect(hashCodes, labelDependencies, ANY);
+
+			for (final String label : labels) {
+				collect(hashCodes, labelDependencies, label);
+			}
+		}
+
+		if (!keys.isEmpty()) {
+
+			collect(hashCodes, keyDependencies, ANY);
+
+			for (final String key : keys) {
+				collect(hashCodes, keyDependencies, key);
+			}
+		}
+
+		for (final Integer hashCode : hashCodes) {
+
+			final CachedQueryResult result = queryCache.remove(hashCode);
+			if (result != null) {
+
+				result.removeDependencies();
+
+				for (final String label : result.labels) {
+					getTypeStatistics(label).invalidations.incrementAndGet();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns hit, miss and invalidation counts per type label.
+	 *
+	 * @return a map of statistics per type label
+	 */
+	public Map<String, Object> getTypeStatistics() {
+
+		final Map<String, Object> data = new LinkedHashMap<>();
+
+		for (final Entry<String, TypeStatistics> entry : new TreeMap<>(typeStatistics).entrySet()) {
+
+			data.put(entry.getKey(), entry.getValue().toMap());
+		}
+
+		return data;
+	}
+
+	// ----- protected methods -----
+	/**
+	 * Returns the cached result of the given query, or null if there is
+	 * none. Queries that depend on data the current transaction has
+	 * modified are never served from the cache.
+	 *
+	 * @param query
+	 * @param tx
+	 * @return the cached result or null
+	 */
+	protected CachedQueryResult getCachedResult(final CypherQuery query, final SessionTransaction tx) {
+
+		final List<String> labels = getDependentLabels(query);
+
+		if (tx.hasModified(query.getTypeLabels(), query.getPropertyKeys(), query.hasExpressions())) {
+			return null;
+		}
+
+		final CachedQueryResult result = queryCache.get(query.getHashCode());
+
+		for (final String label : labels) {
+
+			final TypeStatistics statistics = getTypeStatistics(label);
+
+			if (result != null) {
+
+				statistics.hits.incrementAndGet();
+
+			} else {
+
+				statistics.misses.incrementAndGet();
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Stores the result of the given query in the cache, unless the current
+	 * transaction has modified data the query depends on, or the cache was
+	 * invalidated since the given generation.
+	 *
+	 * @param query
+	 * @param tx
+	 * @param result
+	 * @param startGeneration the cache generation before the query was executed
+	 */
+	protected void cacheResult(final CypherQuery query, final SessionTransaction tx, final CachedQueryResult result, final long startGeneration) {
+
+		final List<String> labels = getDependentLabels(query);
+		final Set<String> keys    = query.getPropertyKeys();
+
+		if (result.isEmpty() || startGeneration != generation.get() || tx.hasModified(query.getTypeLabels(), keys, query.hasExpressions())) {
+			return;
+		}
+
+		result.hashCode = query.getHashCode();
+		result.labels   = labels;
+		result.keys     = query.hasExpressions() ? Collections.singleton(ANY) : keys;
+
+		result.addDependencies();
+
+		queryCache.put(result.hashCode, result);
+
+		// remove the result again if an invalidation happened in the meantime
+		if (startGeneration != generation.get()) {
+
+			queryCache.remove(result.hashCode);
+			result.removeDependencies();
+		}
+	}
+
+	protected long getCacheGeneration() {
+		return generation.get();
+	}
+
+	protected CypherQuery createCypherQuery(final QueryPredicate predicate) {
 
 		final CypherQuery query = new CypherQuery(this);
 
@@ -151,17 +359,48 @@ public abstract class AbstractCypherIndex<T extends PropertyContainer> implement
 			query.sort(predicate.getSortType(), sortKey, predicate.sortDescending());
 		}
 
-		return getResult(query);
+		return query;
 	}
 
-	public void invalidateCache() {
+	// ----- private methods -----
+	private List<String> getDependentLabels(final CypherQuery query) {
 
-		if (!queryCache.isEmpty()) {
+		final List<String> labels = query.getTypeLabels();
+		if (labels.isEmpty()) {
 
-			queryCache.clear();
+			return Collections.singletonList(ANY);
+		}
+
+		return labels;
+	}
+
+	private TypeStatistics getTypeStatistics(final String label) {
+		return typeStatistics.computeIfAbsent(label, k -> new TypeStatistics());
+	}
+
+	private void collect(final Set<Integer> hashCodes, final Map<String, Set<Integer>> dependencies, final String key) {
+
+		final Set<Integer> dependent = dependencies.remove(key);
+		if (dependent != null) {
+
+			hashCodes.addAll(dependent);
 		}
 	}
 
+	private void addDependency(final Map<String, Set<Integer>> dependencies, final String key, final Integer hashCode) {
+		dependencies.computeIfAbsent(key, k -> Collections.newSetFromMap(new ConcurrentHashMap<>())).add(hashCode);
+	}
+
+	private void removeDependency(final Map<String, Set<Integer>> dependencies, final String key, final Integer hashCode) {
+
+		dependencies.computeIfPresent(key, (k, hashCodes) -> {
+
+			hashCodes.remove(hashCode);
+
+			return hashCodes.isEmpty() ? null : hashCodes;
+		});
+	}
+
 	// ----- interface QueryFactory -----
 	@Override
 	public boolean createQuery(final QueryFactory parent, final QueryPredicate predicate, final CypherQuery query, final boolean isFirst) {
@@ -184,9 +423,12 @@ public abstract class AbstractCypherIndex<T extends PropertyContainer> implement
 	}
 
 	// ----- nested classes -----
-	protected class CachedQueryResult implements QueryResult<T> {
+	protected class CachedQueryResult implements QueryResult<T>, Cachable {
 
-		private Collection<T> result = null;
+		private Collection<T> result          = null;
+		private Collection<String> labels     = Collections.emptyList();
+		private Collection<String> keys       = Collections.emptyList();
+		private Integer hashCode              = null;
 
 		public CachedQueryResult(final Iterable<T> source) {
 
@@ -213,5 +455,52 @@ public abstract class AbstractCypherIndex<T extends PropertyContainer> implement
 		public boolean isEmpty() {
 			return result.isEmpty();
 		}
+
+		@Override
+		public void invalidate() {
+
+			// evicted from the query cache
+			removeDependencies();
+		}
+
+		private void addDependencies() {
+
+			for (final String label : labels) {
+				addDependency(labelDependencies, label, hashCode);
+			}
+
+			for (final String key : keys) {
+				addDependency(keyDependencies, key, hashCode);
+			}
+		}
+
+		private void removeDependencies() {
+
+			for (final String label : labels) {
+				removeDependency(labelDependencies, label, hashCode);
+			}
+
+			for (final String key : keys) {
+				removeDependency(keyDependencies, key, hashCode);
+			}
+		}
+	}
+
+	private static class TypeStatistics {
+
+		private final AtomicLong hits          = new AtomicLong();
+		private final AtomicLong misses        = new AtomicLong();
+		private final AtomicLong invalidations = new AtomicLong();
+
+		public Map<String, Object> toMap() {
+
+			final Map<String, Object> data = new LinkedHashMap<>();
+
+			data.put("hits",          hits.get());
+			data.put("misses",        misses.get());
+			data.put("invalidations", invalidations.get());
+
+			return data;
+		}
 	}
 }
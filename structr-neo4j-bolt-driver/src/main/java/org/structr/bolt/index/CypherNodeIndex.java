@@ -52,20 +52,18 @@ public class CypherNodeIndex extends AbstractCypherIndex<Node> {
 	@Override
 	public QueryResult<Node> getResult(final CypherQuery query) {
 
-		final int queryHashCode  = query.getHashCode();
-		CachedQueryResult result = queryCache.get(queryHashCode);
+		final SessionTransaction tx = db.getCurrentTransaction();
+		CachedQueryResult result    = getCachedResult(query, tx);
 
 		if (result == null) {
 
-			final SessionTransaction tx = db.getCurrentTransaction();
+			final long generation       = getCacheGeneration();
 			final NodeNodeMapper mapper = new NodeNodeMapper(db);
 			final Iterable<Node> mapped = Iterables.map(mapper, tx.getNodes(query.getStatement(), query.getParameters()));
 
 			result = new CachedQueryResult(mapped);
-			if (!result.isEmpty()) {
 
-				queryCache.put(queryHashCode, result);
-			}
+			cacheResult(query, tx, result, generation);
 		}
 
 		return result;
@@ -20,10 +20,12 @@ package org.structr.bolt.index;
 
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import org.structr.api.search.SortType;
 
 /**
@@ -33,6 +35,7 @@ public class CypherQuery {
 
 	private final Map<String, Object> parameters = new HashMap<>();
 	private final List<String> typeLabels        = new LinkedList<>();
+	private final Set<String> propertyKeys       = new LinkedHashSet<>();
 	private final StringBuilder buffer           = new StringBuilder();
 	private String sourceTypeLabel               = null;
 	private String targetTypeLabel               = null;
@@ -40,7 +43,10 @@ public class CypherQuery {
 	private boolean sortDescending               = false;
 	private SortType sortType                    = null;
 	private String sortKey                       = null;
+	private int pageSize                         = Integer.MAX_VALUE;
+	private int page                             = 1;
 	private int count                            = 0;
+	private boolean hasExpressions               = false;
 
 	public CypherQuery(final AbstractCypherIndex<?> index) {
 		this.index = index;
@@ -58,7 +64,10 @@ public class CypherQuery {
 		hashCode += 27 * typeLabels.hashCode();
 		hashCode += 37 * getStatement().hashCode();
 		hashCode += 47 * deepHashCode(parameters);
-		hashCode += 57 * sortKey.hashCode();
+
+		if (sortKey != null) {
+			hashCode += 57 * sortKey.hashCode();
+		}
 
 		if (sortDescending) {
 			hashCode += 1;
@@ -147,13 +156,87 @@ public class CypherQuery {
 			}
 		}
 
+		if (isPaged()) {
+
+			buf.append(" SKIP ");
+			buf.append(getSkip());
+			buf.append(" LIMIT ");
+			buf.append(pageSize);
+		}
+
+		return buf.toString();
+	}
+
+	/**
+	 * Returns a statement that counts the elements matched by this query
+	 * without fetching them. Only valid for queries that are pageable.
+	 *
+	 * @return the count statement
+	 */
+	public String getCountStatement() {
+
+		final StringBuilder buf = new StringBuilder();
+
+		buf.append(index.getQueryPrefix(typeLabels.isEmpty() ? null : typeLabels.get(0), sourceTypeLabel, targetTypeLabel));
+
+		if (buffer.length() > 0) {
+			buf.append(" WHERE ");
+			buf.append(buffer);
+		}
+
+		buf.append(" RETURN COUNT(DISTINCT n)");
+
 		return buf.toString();
 	}
 
+	/**
+	 * Indicates whether SKIP and LIMIT can be applied to the statement of
+	 * this query. UNION queries (more than one type label) cannot be paged
+	 * as a whole, because ORDER BY, SKIP and LIMIT would only apply to the
+	 * last part of the UNION.
+	 *
+	 * @return whether this query can be paged by the database
+	 */
+	public boolean isPageable() {
+		return typeLabels.size() <= 1;
+	}
+
 	public Map<String, Object> getParameters() {
 		return parameters;
 	}
 
+	public List<String> getTypeLabels() {
+		return typeLabels;
+	}
+
+	/**
+	 * Returns the property keys the result of this query depends on,
+	 * i.e. all keys used in the WHERE clause and the sort key.
+	 *
+	 * @return the property keys
+	 */
+	public Set<String> getPropertyKeys() {
+
+		final Set<String> keys = new LinkedHashSet<>(propertyKeys);
+
+		if (sortKey != null) {
+			keys.add(sortKey);
+		}
+
+		return keys;
+	}
+
+	/**
+	 * Indicates whether this query contains conditions on expressions
+	 * other than plain properties (e.g. spatial functions), so that
+	 * its result can depend on any property key.
+	 *
+	 * @return whether the query contains non-property conditions
+	 */
+	public boolean hasExpressions() {
+		return hasExpressions;
+	}
+
 	public void beginGroup() {
 		buffer.append("(");
 	}
@@ -192,6 +275,15 @@ public class CypherQuery {
 
 	public void addSimpleParameter(final String key, final String operator, final Object value, final boolean isProperty) {
 
+		if (isProperty) {
+
+			propertyKeys.add(key);
+
+		} else {
+
+			hasExpressions = true;
+		}
+
 		if (value != null) {
 
 			final String paramKey = "param" + count++;
@@ -237,6 +329,8 @@ public class CypherQuery {
 
 	public void addListParameter(final String key, final String operator, final Object value) {
 
+		propertyKeys.add(key);
+
 		if (value != null) {
 
 			final String paramKey = "param" + count++;
@@ -266,6 +360,8 @@ public class CypherQuery {
 		final String paramKey1 = "param" + count++;
 		final String paramKey2 = "param" + count++;
 
+		propertyKeys.add(key);
+
 		buffer.append("(n.`");
 		buffer.append(key);
 		buffer.append("` ");
@@ -293,6 +389,20 @@ public class CypherQuery {
 		this.sortKey        = sortKey;
 	}
 
+	public void page(final int pageSize, final int page) {
+
+		this.pageSize = pageSize;
+		this.page     = page;
+	}
+
+	public int getPageSize() {
+		return pageSize;
+	}
+
+	public int getPage() {
+		return page;
+	}
+
 	public void setSourceType(final String sourceTypeLabel) {
 		this.sourceTypeLabel = sourceTypeLabel;
 	}
@@ -301,6 +411,14 @@ public class CypherQuery {
 		this.targetTypeLabel = targetTypeLabel;
 	}
 
+	private boolean isPaged() {
+		return pageSize < Integer.MAX_VALUE && page > 0 && isPageable();
+	}
+
+	private long getSkip() {
+		return (long)(page - 1) * (long)pageSize;
+	}
+
 	private int deepHashCode(final Map<String, Object> map) {
 
 		final StringBuilder buf = new StringBuilder();
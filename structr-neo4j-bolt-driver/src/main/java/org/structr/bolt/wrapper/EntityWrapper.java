@@ -19,6 +19,7 @@
 package org.structr.bolt.wrapper;
 
 import java.lang.reflect.Array;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -54,6 +55,17 @@ public abstract class EntityWrapper<T extends Entity> implements PropertyContain
 
 	protected abstract String getQueryPrefix();
 
+	/**
+	 * Registers a modification of the given keys with the transaction.
+	 * Subclasses can override this method to track the modified keys.
+	 *
+	 * @param tx
+	 * @param keys
+	 */
+	protected void modified(final SessionTransaction tx, final Collection<String> keys) {
+		tx.modified(this);
+	}
+
 	@Override
 	public long getId() {
 		return id;
@@ -119,18 +131,16 @@ public abstract class EntityWrapper<T extends Entity> implements PropertyContain
 
 		final SessionTransaction tx   = db.getCurrentTransaction();
 		final Map<String, Object> map = new HashMap<>();
-		final String query            = getQueryPrefix() + " WHERE ID(n) = {id} SET n.`" + key + "` = {value}";
 
-		map.put("id", id);
-		map.put("value", value);
+		map.put(key, value);
 
 		// update entity handle
-		tx.set(query, map);
+		tx.setProperties(getQueryPrefix(), id, map);
 
 		// update data
 		update(key, value);
 
-		tx.modified(this);
+		modified(tx, map.keySet());
 	}
 
 	@Override
@@ -139,20 +149,14 @@ public abstract class EntityWrapper<T extends Entity> implements PropertyContain
 		assertNotStale();
 
 		final SessionTransaction tx   = db.getCurrentTransaction();
-		final Map<String, Object> map = new HashMap<>(values);
-		final String query            = getQueryPrefix() + " WHERE ID(n) = {id} SET n += {properties}";
-
-		// overwrite a potential "id" property
-		map.put("id", id);
-		map.put("properties", values);
 
 		// execute query
-		tx.set(query, map);
+		tx.setProperties(getQueryPrefix(), id, values);
 
 		// update data
 		update(values);
 
-		tx.modified(this);
+		modified(tx, values.keySet());
 	}
 
 	@Override
@@ -162,17 +166,16 @@ public abstract class EntityWrapper<T extends Entity> implements PropertyContain
 
 		final SessionTransaction tx   = db.getCurrentTransaction();
 		final Map<String, Object> map = new HashMap<>();
-		final String query            = getQueryPrefix() + " WHERE ID(n) = {id} SET n.`" + key + "` = Null";
 
-		map.put("id", id);
+		map.put(key, null);
 
 		// execute query
-		tx.set(query, map);
+		tx.setProperties(getQueryPrefix(), id, map);
 
 		// remove key from data
 		data.remove(key);
 
-		tx.modified(this);
+		modified(tx, map.keySet());
 	}
 
 	@Override
@@ -18,10 +18,17 @@
  */
 package org.structr.bolt.wrapper;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import org.neo4j.driver.v1.Record;
+import org.neo4j.driver.v1.Value;
 import org.structr.api.graph.Direction;
 import org.structr.api.graph.Label;
 import org.structr.api.graph.Node;
@@ -38,7 +45,7 @@ import org.structr.bolt.mapper.RelationshipRelationshipMapper;
  */
 public class NodeWrapper extends EntityWrapper<org.neo4j.driver.v1.types.Node> implements Node {
 
-	private final Map<String, Map<String, List<Relationship>>> relationshipCache = new HashMap<>();
+	private final Map<String, Map<String, List<Relationship>>> relationshipCache = new ConcurrentHashMap<>();
 	private static FixedSizeCache<Long, NodeWrapper> nodeCache                   = null;
 
 	private NodeWrapper(final BoltDatabaseService db, final org.neo4j.driver.v1.types.Node node) {
@@ -46,7 +53,7 @@ public class NodeWrapper extends EntityWrapper<org.neo4j.driver.v1.types.Node> i
 	}
 
 	public static void initialize(final int cacheSize) {
-		nodeCache = new FixedSizeCache<>(cacheSize);
+		nodeCache = new FixedSizeCache<>("nodeCache", cacheSize);
 	}
 
 	@Override
@@ -54,6 +61,11 @@ public class NodeWrapper extends EntityWrapper<org.neo4j.driver.v1.types.Node> i
 		return "MATCH (n)";
 	}
 
+	@Override
+	protected void modified(final SessionTransaction tx, final Collection<String> keys) {
+		tx.modified(this, keys);
+	}
+
 	@Override
 	public void invalidate() {
 		relationshipCache.clear();
@@ -105,12 +117,10 @@ public class NodeWrapper extends EntityWrapper<org.neo4j.driver.v1.types.Node> i
 
 		assertNotStale();
 
-		final SessionTransaction tx   = db.getCurrentTransaction();
-		final Map<String, Object> map = new HashMap<>();
-
-		map.put("id", id);
+		final SessionTransaction tx = db.getCurrentTransaction();
 
-		tx.set("MATCH (n) WHERE ID(n) = {id} SET n :" + label.name(), map);
+		tx.addLabel(id, label.name());
+		tx.labelsModified(Collections.singleton(label.name()));
 		tx.modified(this);
 	}
 
@@ -125,6 +135,7 @@ public class NodeWrapper extends EntityWrapper<org.neo4j.driver.v1.types.Node> i
 		map.put("id", id);
 
 		tx.set("MATCH (n) WHERE ID(n) = {id} REMOVE n:" + label.name(), map);
+		tx.labelsModified(Collections.singleton(label.name()));
 		tx.modified(this);
 	}
 
@@ -179,6 +190,10 @@ public class NodeWrapper extends EntityWrapper<org.neo4j.driver.v1.types.Node> i
 		final RelationshipRelationshipMapper mapper = new RelationshipRelationshipMapper(db);
 		List<Relationship> list                     = getList(direction, null);
 
+		if (list == null) {
+			list = deriveList(direction, null);
+		}
+
 		if (list == null) {
 
 			final SessionTransaction tx   = db.getCurrentTransaction();
@@ -186,7 +201,8 @@ public class NodeWrapper extends EntityWrapper<org.neo4j.driver.v1.types.Node> i
 
 			map.put("id", id);
 
-			switch (direction) {
+			// a null direction means both directions, like the "*" key of the relationship cache
+			switch (direction != null ? direction : Direction.BOTH) {
 
 				case BOTH:
 					return getRelationships();
@@ -215,6 +231,10 @@ public class NodeWrapper extends EntityWrapper<org.neo4j.driver.v1.types.Node> i
 		final RelationshipRelationshipMapper mapper = new RelationshipRelationshipMapper(db);
 		List<Relationship> list                     = getList(direction, relationshipType);
 
+		if (list == null) {
+			list = deriveList(direction, relationshipType);
+		}
+
 		if (list == null) {
 
 			final SessionTransaction tx   = db.getCurrentTransaction();
@@ -222,7 +242,7 @@ public class NodeWrapper extends EntityWrapper<org.neo4j.driver.v1.types.Node> i
 
 			map.put("id", id);
 
-			switch (direction) {
+			switch (direction != null ? direction : Direction.BOTH) {
 
 				case BOTH:
 					list = Iterables.toList(Iterables.map(mapper, tx.getRelationships("MATCH (n)-[r:" + relationshipType.name() + "]-() WHERE ID(n) = {id} RETURN r", map)));
@@ -246,6 +266,16 @@ public class NodeWrapper extends EntityWrapper<org.neo4j.driver.v1.types.Node> i
 	@Override
 	public void delete() {
 
+		assertNotStale();
+
+		final SessionTransaction tx   = db.getCurrentTransaction();
+		final Map<String, Object> map = new HashMap<>();
+
+		map.put("id", id);
+
+		// cached query results for any of the labels of this node are affected
+		tx.labelsModified(tx.getStrings("MATCH (n) WHERE ID(n) = {id} RETURN LABELS(n)", map));
+
 		super.delete();
 		nodeCache.remove(id);
 	}
@@ -290,19 +320,128 @@ public class NodeWrapper extends EntityWrapper<org.neo4j.driver.v1.types.Node> i
 		}
 	}
 
+	/**
+	 * Loads the relationships of the given nodes and their neighbours
+	 * with a single query and stores them in the relationship caches of
+	 * the nodes. Nodes that are not in the node cache, whose relationships
+	 * are already cached or that have more than maxDegree relationships
+	 * are skipped.
+	 *
+	 * @param db
+	 * @param ids
+	 * @param maxDegree
+	 *
+	 * @return the number of relationships loaded, or -1 if no query was necessary
+	 */
+	public static int prefetchRelationships(final BoltDatabaseService db, final Collection<Long> ids, final int maxDegree) {
+
+		final Map<Long, NodeWrapper> wrappers = new LinkedHashMap<>();
+
+		for (final Long id : ids) {
+
+			final NodeWrapper wrapper = nodeCache.get(id);
+			if (wrapper != null && !wrapper.stale && !wrapper.hasList(null, null)) {
+
+				wrappers.put(id, wrapper);
+			}
+		}
+
+		if (wrappers.isEmpty()) {
+			return -1;
+		}
+
+		final Map<Long, Map<Long, Relationship>> result = new LinkedHashMap<>();
+		final SessionTransaction tx                      = db.getCurrentTransaction();
+		final Map<String, Object> map                    = new HashMap<>();
+		int count                                        = 0;
+
+		map.put("ids",       new LinkedList<>(wrappers.keySet()));
+		map.put("maxDegree", maxDegree);
+
+		// nodes without relationships yield a single row with r = null
+		for (final Record record : tx.getRecords("UNWIND {ids} AS id MATCH (n) WHERE ID(n) = id WITH id, n WHERE size((n)--()) <= {maxDegree} OPTIONAL MATCH (n)-[r]-(m) RETURN id, r, m", map)) {
+
+			final Map<Long, Relationship> rels = result.computeIfAbsent(record.get("id").asLong(), k -> new LinkedHashMap<>());
+			final Value rel                    = record.get("r");
+
+			if (!rel.isNull()) {
+
+				// make the other node available as well
+				newInstance(db, record.get("m").asNode());
+
+				rels.put(rel.asRelationship().id(), RelationshipWrapper.newInstance(db, rel.asRelationship()));
+			}
+		}
+
+		for (final Entry<Long, Map<Long, Relationship>> entry : result.entrySet()) {
+
+			final List<Relationship> list = new LinkedList<>(entry.getValue().values());
+
+			wrappers.get(entry.getKey()).setList(null, null, list);
+			count += list.size();
+		}
+
+		return count;
+	}
+
 	// ----- private methods -----
 	private Map<String, List<Relationship>> getCache(final Direction direction) {
 
-		final String key              = direction != null ? direction.name() : "*";
-		Map<String, List<Relationship>> cache = relationshipCache.get(key);
+		final String key = direction != null ? direction.name() : "*";
+
+		return relationshipCache.computeIfAbsent(key, k -> new ConcurrentHashMap<>());
+	}
+
+	private boolean hasList(final Direction direction, final RelationshipType relType) {
+
+		final Map<String, List<Relationship>> cache = relationshipCache.get(direction != null ? direction.name() : "*");
+
+		return cache != null && cache.containsKey(relType != null ? relType.name() : "*");
+	}
+
+	/**
+	 * Creates the list for the given direction and type from the cached
+	 * list of all relationships of this node, if available, and caches it.
+	 */
+	private List<Relationship> deriveList(final Direction direction, final RelationshipType relType) {
+
+		final List<Relationship> all = getList(null, null);
+		if (all != null) {
+
+			final List<Relationship> list = new LinkedList<>();
+
+			for (final Relationship rel : all) {
+
+				final RelationshipWrapper wrapper = (RelationshipWrapper)rel;
+
+				if (relType != null && !relType.name().equals(wrapper.getTypeName())) {
+					continue;
+				}
+
+				switch (direction != null ? direction : Direction.BOTH) {
+
+					case OUTGOING:
+						if (wrapper.getSourceNodeId() != id) {
+							continue;
+						}
+						break;
+
+					case INCOMING:
+						if (wrapper.getTargetNodeId() != id) {
+							continue;
+						}
+						break;
+				}
+
+				list.add(rel);
+			}
 
-		if (cache == null) {
+			setList(direction, relType, list);
 
-			cache = new HashMap<>();
-			relationshipCache.put(key, cache);
+			return list;
 		}
 
-		return cache;
+		return null;
 	}
 
 	private List<Relationship> getList(final Direction direction, final RelationshipType relType) {
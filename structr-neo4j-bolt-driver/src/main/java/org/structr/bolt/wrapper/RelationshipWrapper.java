@@ -49,7 +49,7 @@ public class RelationshipWrapper extends EntityWrapper<org.neo4j.driver.v1.types
 	}
 
 	public static void initialize(final int cacheSize) {
-		relationshipCache = new FixedSizeCache<>(cacheSize);
+		relationshipCache = new FixedSizeCache<>("relationshipCache", cacheSize);
 	}
 
 	@Override
@@ -114,6 +114,18 @@ public class RelationshipWrapper extends EntityWrapper<org.neo4j.driver.v1.types
 		return db.forName(RelationshipType.class, type);
 	}
 
+	public long getSourceNodeId() {
+		return sourceNodeId;
+	}
+
+	public long getTargetNodeId() {
+		return targetNodeId;
+	}
+
+	public String getTypeName() {
+		return type;
+	}
+
 	@Override
 	public void delete() {
 
@@ -0,0 +1,200 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.bolt;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.structr.api.NativeResult;
+import org.structr.api.Transaction;
+import org.structr.api.config.Structr;
+import org.structr.api.graph.Node;
+
+public class SessionTransactionTest {
+
+	private static final Logger logger = LoggerFactory.getLogger(SessionTransactionTest.class.getName());
+
+	@Test
+	public void testBufferedWrites() {
+
+		final BoltDatabaseService s = createDatabaseService("5");
+		final List<Long> ids        = new LinkedList<>();
+
+		// create new nodes
+		try (final Transaction tx = s.beginTx()) {
+
+			for (int i=0; i<20; i++) {
+
+				final Node node = s.createNode(Collections.EMPTY_SET, Collections.EMPTY_MAP);
+
+				ids.add(node.getId());
+			}
+
+			tx.success();
+		}
+
+		// the first write to each node is executed immediately, the others are buffered
+		try (final Transaction tx = s.beginTx()) {
+
+			for (final long id : ids) {
+
+				final Node node = s.getNodeById(id);
+
+				node.setProperty("name", "first");
+				node.setProperty("name", "second");
+				node.setProperty("count", id);
+			}
+
+			// reads see the buffered writes
+			Assert.assertEquals("Buffered writes not flushed before read", 20L, countNodes(s, "second"));
+
+			tx.success();
+		}
+
+		Assert.assertTrue("Writes were not buffered", s.getBufferedWriteCount() >= 40);
+		Assert.assertTrue("Buffered writes were not coalesced", s.getFlushStatementCount() < s.getBufferedWriteCount());
+
+		// check committed values
+		try (final Transaction tx = s.beginTx()) {
+
+			for (final long id : ids) {
+
+				final Map<String, Object> map = new HashMap<>();
+
+				map.put("id", id);
+
+				try (final NativeResult result = s.execute("MATCH (n) WHERE ID(n) = {id} RETURN n.name AS name, n.count AS count", map)) {
+
+					final Map<String, Object> row = result.next();
+
+					Assert.assertEquals("Invalid buffered write result", "second", row.get("name"));
+					Assert.assertEquals("Invalid buffered write result", id, ((Number)row.get("count")).longValue());
+				}
+			}
+
+			tx.success();
+		}
+
+		// buffered writes of a transaction that is not committed are discarded
+		try (final Transaction tx = s.beginTx()) {
+
+			for (final long id : ids) {
+
+				final Node node = s.getNodeById(id);
+
+				node.setProperty("name", "third");
+				node.setProperty("name", "fail");
+			}
+		}
+
+		try (final Transaction tx = s.beginTx()) {
+
+			Assert.assertEquals("Buffered writes of a failed transaction were committed", 0L, countNodes(s, "fail"));
+			Assert.assertEquals("Invalid property value after rollback", 20L, countNodes(s, "second"));
+
+			tx.success();
+		}
+
+		s.shutdown();
+	}
+
+	@Test
+	public void testDisabledWriteBuffer() {
+
+		final BoltDatabaseService unbuffered = new BoltDatabaseService();
+		final Properties config              = createConfig();
+		long id                              = 0L;
+
+		config.setProperty(Structr.WRITE_BUFFER_ENABLED, "false");
+
+		unbuffered.initialize(config);
+
+		try (final Transaction tx = unbuffered.beginTx()) {
+
+			final Node node = unbuffered.createNode(Collections.EMPTY_SET, Collections.EMPTY_MAP);
+
+			node.setProperty("name", "first");
+			node.setProperty("name", "second");
+
+			id = node.getId();
+
+			tx.success();
+		}
+
+		try (final Transaction tx = unbuffered.beginTx()) {
+
+			Assert.assertEquals("Invalid property value", "second", unbuffered.getNodeById(id).getProperty("name"));
+
+			tx.success();
+		}
+
+		Assert.assertEquals("Writes were buffered although the buffer is disabled", 0L, unbuffered.getBufferedWriteCount());
+
+		unbuffered.shutdown();
+	}
+
+	// ----- private methods -----
+	private BoltDatabaseService createDatabaseService(final String bufferSize) {
+
+		final BoltDatabaseService s = new BoltDatabaseService();
+		final Properties config     = createConfig();
+
+		config.setProperty(Structr.WRITE_BUFFER_SIZE, bufferSize);
+
+		s.initialize(config);
+
+		return s;
+	}
+
+	private Properties createConfig() {
+
+		final Properties config = new Properties();
+
+		try {
+			config.put(Structr.DATABASE_PATH, Files.createTempDirectory("structr-test").toFile().getAbsolutePath());
+		} catch (IOException ioex) {
+			logger.warn("", ioex);
+		}
+
+		config.setProperty(Structr.DATABASE_CONNECTION_URL, Structr.TEST_DATABASE_URL);
+
+		return config;
+	}
+
+	private long countNodes(final BoltDatabaseService s, final String name) {
+
+		final Map<String, Object> map = new HashMap<>();
+
+		map.put("name", name);
+
+		try (final NativeResult result = s.execute("MATCH (n) WHERE n.name = {name} RETURN COUNT(n) AS count", map)) {
+
+			return ((Number)result.next().get("count")).longValue();
+		}
+	}
+}
@@ -167,14 +167,16 @@ public class AuthHelper {
 	}
 
 	/**
-	 * Find a {@link Principal} for the given session id
+	 * Find a {@link Principal} for the given session id, using the
+	 * in-memory {@link SessionIndex} and querying the database only
+	 * for unknown session ids.
 	 *
 	 * @param sessionId
 	 * @return principal
 	 */
 	public static Principal getPrincipalForSessionId(final String sessionId) {
 
-		return getPrincipalForCredential(Principal.sessionIds, new String[]{ sessionId });
+		return SessionIndex.getInstance().getPrincipal(sessionId);
 
 	}
 
@@ -203,6 +205,7 @@ public class AuthHelper {
 		final HttpSession session = request.getSession(false);
 
 		SessionHelper.clearSession(session.getId());
+		SessionIndex.getInstance().remove(session.getId());
 
 		SessionHelper.invalidateSession(session);
 
@@ -111,6 +111,11 @@ public class SessionHelper {
 	 */
 	public static void clearSession(final String sessionId) {
 
+		// no principal can have this sessionId
+		if (SessionIndex.getInstance().isUnknown(sessionId)) {
+			return;
+		}
+
 		final App app = StructrApp.getInstance();
 		final Query<Principal> query = app.nodeQuery(Principal.class).and(Principal.sessionIds, new String[]{sessionId});
 
@@ -0,0 +1,331 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.rest.auth;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.servlet.http.HttpSessionEvent;
+import javax.servlet.http.HttpSessionListener;
+import org.apache.commons.lang3.ArrayUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.structr.api.util.FixedSizeCache;
+import org.structr.api.util.Statistics;
+import org.structr.common.SecurityContext;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.GraphObject;
+import org.structr.core.Services;
+import org.structr.core.StructrTransactionListener;
+import org.structr.core.TransactionSource;
+import org.structr.core.app.StructrApp;
+import org.structr.core.entity.Principal;
+import org.structr.core.graph.ModificationEvent;
+import org.structr.core.graph.NodeInterface;
+import org.structr.core.graph.TransactionCommand;
+import org.structr.core.property.PropertyMap;
+
+/**
+ * In-memory index from session ids to the principals they belong to.
+ *
+ * The index is maintained by a transaction listener on the sessionIds
+ * property of all principals and follows the lifecycle of the sessions
+ * in Jetty's session manager. Every hit is verified against the current
+ * sessionIds of the principal, so a stale entry can only ever cause a
+ * fallback to the database query.
+ */
+public class SessionIndex implements StructrTransactionListener, HttpSessionListener {
+
+	private static final Logger logger          = LoggerFactory.getLogger(SessionIndex.class.getName());
+	private static final SessionIndex instance  = new SessionIndex();
+
+	private final Map<String, String> principals        = new ConcurrentHashMap<>();
+	private final Map<String, Set<String>> sessionIds   = new ConcurrentHashMap<>();
+	private final AtomicLong generation                 = new AtomicLong();
+	private final AtomicLong hits                       = new AtomicLong();
+	private final AtomicLong unknownHits                = new AtomicLong();
+	private final AtomicLong misses                     = new AtomicLong();
+	private FixedSizeCache<String, Long> unknown        = null;
+
+	private SessionIndex() {
+		this.unknown = new FixedSizeCache<>(Services.parseInt(StructrApp.getConfigurationValue(Services.APPLICATION_SESSION_CACHE_SIZE), 10000));
+	}
+
+	public static SessionIndex getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Registers the index as a transaction listener so that it follows
+	 * all modifications of the sessionIds of principals.
+	 */
+	public static void initialize() {
+
+		TransactionCommand.registerTransactionListener(instance);
+		Statistics.register("sessionIndex", instance::getStatistics);
+	}
+
+	/**
+	 * Returns the principal for the given session id, using the graph
+	 * query only if the session id is not in the index yet.
+	 *
+	 * @param sessionId
+	 * @return the principal or null
+	 */
+	public Principal getPrincipal(final String sessionId) {
+
+		if (sessionId == null) {
+			return AuthHelper.getPrincipalForCredential(Principal.sessionIds, new String[]{ sessionId });
+		}
+
+		final String uuid = principals.get(sessionId);
+		if (uuid != null) {
+
+			final Principal principal = getPrincipalByUuid(uuid);
+			if (principal != null && ArrayUtils.contains(principal.getProperty(Principal.sessionIds), sessionId)) {
+
+				hits.incrementAndGet();
+				return principal;
+			}
+
+			// entry is stale
+			remove(sessionId);
+
+		} else if (unknown.get(sessionId) != null) {
+
+			unknownHits.incrementAndGet();
+			return null;
+		}
+
+		misses.incrementAndGet();
+
+		// the result of the query must not be cached as unknown if
+		// sessionIds were modified while the query was running
+		final long startGeneration = generation.get();
+		final Principal principal  = AuthHelper.getPrincipalForCredential(Principal.sessionIds, new String[]{ sessionId });
+
+		if (principal != null) {
+
+			put(sessionId, principal.getUuid());
+
+		} else if (startGeneration == generation.get()) {
+
+			unknown.put(sessionId, startGeneration);
+		}
+
+		return principal;
+	}
+
+	/**
+	 * Indicates whether the given session id is known to belong to
+	 * no principal at all.
+	 *
+	 * @param sessionId
+	 * @return whether the session id is known to be unused
+	 */
+	public boolean isUnknown(final String sessionId) {
+		return sessionId != null && unknown.get(sessionId) != null;
+	}
+
+	public void remove(final String sessionId) {
+
+		if (sessionId != null) {
+
+			final String uuid = principals.remove(sessionId);
+			if (uuid != null) {
+
+				sessionIds.computeIfPresent(uuid, (k, set) -> {
+
+					set.remove(sessionId);
+
+					return set.isEmpty() ? null : set;
+				});
+			}
+
+			unknown.remove(sessionId);
+		}
+	}
+
+	public void clear() {
+
+		generation.incrementAndGet();
+
+		principals.clear();
+		sessionIds.clear();
+		unknown.clear();
+	}
+
+	public Map<String, Object> getStatistics() {
+
+		final Map<String, Object> data = new LinkedHashMap<>();
+
+		data.put("size",        principals.size());
+		data.put("unknown",     unknown.size());
+		data.put("hits",        hits.get());
+		data.put("unknownHits", unknownHits.get());
+		data.put("misses",      misses.get());
+
+		return data;
+	}
+
+	// ----- interface StructrTransactionListener -----
+	@Override
+	public void beforeCommit(final SecurityContext securityContext, final Collection<ModificationEvent> modificationEvents, final TransactionSource source) throws FrameworkException {
+
+		// prevent concurrent lookups from caching session ids as unknown
+		// that are about to be committed
+		for (final ModificationEvent event : modificationEvents) {
+
+			if (affectsSessionIds(event)) {
+
+				generation.incrementAndGet();
+
+				for (final String sessionId : getSessionIds(event.getNewProperties(), event.getModifiedProperties())) {
+					unknown.remove(sessionId);
+				}
+			}
+		}
+	}
+
+	@Override
+	public void afterCommit(final SecurityContext securityContext, final Collection<ModificationEvent> modificationEvents, final TransactionSource source) {
+
+		for (final ModificationEvent event : modificationEvents) {
+
+			if (affectsSessionIds(event)) {
+
+				generation.incrementAndGet();
+
+				final String uuid = event.getUuid();
+
+				// remove all entries of this principal
+				final Set<String> previous = sessionIds.remove(uuid);
+				if (previous != null) {
+
+					for (final String sessionId : previous) {
+						principals.remove(sessionId, uuid);
+					}
+				}
+
+				if (!event.isDeleted()) {
+
+					// re-index the current session ids
+					for (final String sessionId : getSessionIds(event.getNewProperties(), event.getModifiedProperties())) {
+
+						unknown.remove(sessionId);
+						put(sessionId, uuid);
+					}
+				}
+			}
+		}
+	}
+
+	@Override
+	public void simpleBroadcast() {
+	}
+
+	// ----- interface HttpSessionListener -----
+	@Override
+	public void sessionCreated(final HttpSessionEvent se) {
+	}
+
+	@Override
+	public void sessionDestroyed(final HttpSessionEvent se) {
+		remove(se.getSession().getId());
+	}
+
+	// ----- private methods -----
+	private void put(final String sessionId, final String uuid) {
+
+		principals.put(sessionId, uuid);
+		sessionIds.computeIfAbsent(uuid, k -> ConcurrentHashMap.newKeySet()).add(sessionId);
+	}
+
+	private Principal getPrincipalByUuid(final String uuid) {
+
+		try {
+
+			final NodeInterface node = StructrApp.getInstance().getNodeById(uuid);
+			if (node instanceof Principal) {
+
+				return (Principal)node;
+			}
+
+		} catch (FrameworkException fex) {
+			logger.warn("Unable to fetch principal {}: {}", uuid, fex.getMessage());
+		}
+
+		return null;
+	}
+
+	private boolean affectsSessionIds(final ModificationEvent event) {
+
+		if (event.isNode()) {
+
+			final GraphObject obj = event.getGraphObject();
+			if (obj instanceof Principal) {
+
+				return event.isDeleted() || event.getNewProperties().containsKey(Principal.sessionIds) || event.getModifiedProperties().containsKey(Principal.sessionIds);
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Returns the most recent value of the sessionIds property from the
+	 * given property maps. The first modification of a property in a
+	 * transaction is recorded in the map of modified properties, all
+	 * subsequent ones in the map of new properties.
+	 */
+	private Set<String> getSessionIds(final PropertyMap newProperties, final PropertyMap modifiedProperties) {
+
+		String[] value = null;
+
+		if (newProperties.containsKey(Principal.sessionIds)) {
+
+			value = newProperties.get(Principal.sessionIds);
+
+		} else if (modifiedProperties.containsKey(Principal.sessionIds)) {
+
+			value = modifiedProperties.get(Principal.sessionIds);
+		}
+
+		if (value != null) {
+
+			final Set<String> result = new LinkedHashSet<>();
+
+			for (final String sessionId : value) {
+
+				if (sessionId != null) {
+					result.add(sessionId);
+				}
+			}
+
+			return result;
+		}
+
+		return Collections.emptySet();
+	}
+}
@@ -0,0 +1,191 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.rest.logging;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Append-only dictionary that maps the subject, object and action
+ * strings of log events to integer ids. Id 0 represents null.
+ */
+class LogDictionary implements AutoCloseable {
+
+	private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+	private final DataOutputStream out;
+	private volatile String[] values       = new String[1024];
+	private volatile int size              = 0;
+
+	public LogDictionary(final Path file) throws IOException {
+
+		if (Files.exists(file)) {
+
+			long validLength = 0L;
+
+			try (final DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+
+				while (true) {
+
+					final String value = read(in);
+					if (value == null) {
+						break;
+					}
+
+					add(value);
+
+					validLength += 4 + value.getBytes(StandardCharsets.UTF_8).length;
+				}
+			}
+
+			// remove an incomplete entry at the end of the file
+			if (Files.size(file) > validLength) {
+
+				try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+					channel.truncate(validLength);
+				}
+			}
+		}
+
+		this.out = new DataOutputStream(Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND));
+	}
+
+	/**
+	 * Returns the id of the given value, adding it to the dictionary if
+	 * it does not exist yet.
+	 */
+	public int getOrCreateId(final String value) throws IOException {
+
+		if (value == null) {
+			return 0;
+		}
+
+		final Integer id = ids.get(value);
+		if (id != null) {
+
+			return id;
+		}
+
+		synchronized (this) {
+
+			final Integer existingId = ids.get(value);
+			if (existingId != null) {
+
+				return existingId;
+			}
+
+			final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+
+			// persist the value before any event can reference it
+			out.writeInt(bytes.length);
+			out.write(bytes);
+			out.flush();
+
+			return add(value);
+		}
+	}
+
+	/**
+	 * Returns the id of the given value, 0 for null, or -1 if the value
+	 * is not in the dictionary.
+	 */
+	public int getId(final String value) {
+
+		if (value == null) {
+			return 0;
+		}
+
+		final Integer id = ids.get(value);
+		if (id != null) {
+
+			return id;
+		}
+
+		return -1;
+	}
+
+	public String getValue(final int id) {
+
+		// read the size first, values are stored before the size is published
+		final int currentSize = size;
+
+		if (id <= 0 || id > currentSize) {
+			return null;
+		}
+
+		return values[id - 1];
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		out.close();
+	}
+
+	// ----- private methods -----
+	private int add(final String value) {
+
+		if (size == values.length) {
+			values = Arrays.copyOf(values, size * 2);
+		}
+
+		values[size] = value;
+
+		// publish the value
+		size = size + 1;
+
+		ids.put(value, size);
+
+		return size;
+	}
+
+	private String read(final DataInputStream in) throws IOException {
+
+		final int length;
+
+		try {
+
+			length = in.readInt();
+
+		} catch (EOFException eof) {
+			return null;
+		}
+
+		final byte[] bytes = new byte[length];
+
+		try {
+
+			in.readFully(bytes);
+
+		} catch (EOFException eof) {
+			return null;
+		}
+
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,109 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.rest.logging;
+
+import java.io.IOException;
+import java.util.Date;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.structr.core.GraphObjectMap;
+import org.structr.rest.logging.entity.LogEvent;
+
+/**
+ * A single event of the {@link LogEventStore}. The message is only read
+ * from the segment when it is requested.
+ */
+public class LogEventRecord {
+
+	private static final Logger logger = LoggerFactory.getLogger(LogEventRecord.class.getName());
+
+	private final LogSegment segment;
+	private final String subjectId;
+	private final String objectId;
+	private final String action;
+	private final long timestamp;
+	private final int index;
+	private boolean messageLoaded      = false;
+	private String message             = null;
+
+	LogEventRecord(final LogSegment segment, final int index, final long timestamp, final String subjectId, final String objectId, final String action) {
+
+		this.segment   = segment;
+		this.index     = index;
+		this.timestamp = timestamp;
+		this.subjectId = subjectId;
+		this.objectId  = objectId;
+		this.action    = action;
+	}
+
+	LogEventRecord(final long timestamp, final String subjectId, final String objectId, final String action, final String message) {
+
+		this(null, -1, timestamp, subjectId, objectId, action);
+
+		this.message       = message;
+		this.messageLoaded = true;
+	}
+
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	public String getSubjectId() {
+		return subjectId;
+	}
+
+	public String getObjectId() {
+		return objectId;
+	}
+
+	public String getAction() {
+		return action;
+	}
+
+	public String getMessage() {
+
+		if (!messageLoaded) {
+
+			try {
+
+				message = segment.getMessage(index);
+
+			} catch (IOException ioex) {
+				logger.warn("Unable to read message of log event: {}", ioex.getMessage());
+			}
+
+			messageLoaded = true;
+		}
+
+		return message;
+	}
+
+	public GraphObjectMap toGraphObjectMap() {
+
+		final GraphObjectMap map = new GraphObjectMap();
+
+		map.put(LogEvent.actionProperty,    action);
+		map.put(LogEvent.messageProperty,   getMessage());
+		map.put(LogEvent.timestampProperty, new Date(timestamp));
+		map.put(LogEvent.subjectProperty,   subjectId);
+		map.put(LogEvent.objectProperty,    objectId);
+
+		return map;
+	}
+}
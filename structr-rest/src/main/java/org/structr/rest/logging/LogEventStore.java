@@ -0,0 +1,465 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.rest.logging;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.Services;
+import org.structr.core.app.StructrApp;
+
+/**
+ * Append-only, time-partitioned store for log events.
+ *
+ * Events are written to memory-mapped segment files, one set of segments
+ * per day. Subject, object and action are stored as ids of a dictionary,
+ * so filters compare integers, and queries skip all segments whose
+ * timestamp range does not overlap the requested range. Query results
+ * are streamed, so callers can aggregate arbitrarily many events in
+ * constant memory.
+ *
+ * Segments of previous runs are read-only, new events are always written
+ * to new segments. Only the headers of all segments are kept in memory,
+ * the columns of at most {@link #MAX_MAPPED_SEGMENTS} sealed segments are
+ * mapped at a time, the least recently used ones are released.
+ */
+public class LogEventStore implements AutoCloseable {
+
+	private static final Logger logger                  = LoggerFactory.getLogger(LogEventStore.class.getName());
+	private static final String DICTIONARY_FILE         = "dictionary.dat";
+	private static final int SEGMENT_CAPACITY           = 65536;
+	private static final int MAX_OPEN_SEGMENTS          = 8;
+	static final int MAX_MAPPED_SEGMENTS                = 32;
+	private static LogEventStore instance               = null;
+
+	private final List<LogSegment> segments             = new CopyOnWriteArrayList<>();
+	private final Map<Long, LogSegment> openSegments    = new LinkedHashMap<>(16, 0.75f, true);
+	private final Map<LogSegment, Boolean> mapped       = new LinkedHashMap<>(16, 0.75f, true);
+	private final LogDictionary dictionary;
+	private final Path directory;
+	private int nextSequence                            = 0;
+
+	public LogEventStore(final Path directory) throws IOException {
+
+		this.directory  = directory;
+
+		Files.createDirectories(directory);
+
+		this.dictionary = new LogDictionary(directory.resolve(DICTIONARY_FILE));
+
+		final List<Path> files = new ArrayList<>();
+
+		try (final DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+
+			for (final Path file : stream) {
+
+				if (LogSegment.isSegmentFile(file)) {
+					files.add(file);
+				}
+			}
+		}
+
+		Collections.sort(files, Comparator.comparing(Path::getFileName));
+
+		for (final Path file : files) {
+
+			try {
+
+				final LogSegment segment = LogSegment.open(file);
+				final String name        = segment.getName();
+
+				segment.setMapListener(this::touch);
+				segments.add(segment);
+
+				nextSequence = Math.max(nextSequence, Integer.parseInt(name.substring(name.indexOf('-') + 1)) + 1);
+
+			} catch (IOException | RuntimeException ex) {
+				logger.warn("Unable to open log segment {}: {}", file, ex.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Returns the store in the configured directory, opening it if
+	 * necessary.
+	 */
+	public static synchronized LogEventStore getInstance() throws FrameworkException {
+
+		final Path path = getConfiguredPath();
+
+		if (instance != null && !instance.directory.equals(path)) {
+
+			try {
+
+				instance.close();
+
+			} catch (IOException ioex) {
+				logger.warn("Unable to close log event store: {}", ioex.getMessage());
+			}
+
+			instance = null;
+		}
+
+		if (instance == null) {
+
+			try {
+
+				instance = new LogEventStore(path);
+
+			} catch (IOException ioex) {
+				throw new FrameworkException(500, "Unable to open log event store: " + ioex.getMessage());
+			}
+		}
+
+		return instance;
+	}
+
+	public LogEventRecord append(final long timestamp, final String subjectId, final String objectId, final String action, final String message) throws FrameworkException {
+
+		try {
+
+			final int subject = dictionary.getOrCreateId(subjectId);
+			final int object  = dictionary.getOrCreateId(objectId);
+			final int act     = dictionary.getOrCreateId(action);
+
+			synchronized (this) {
+
+				getSegment(timestamp).append(timestamp, subject, object, act, message);
+			}
+
+			return new LogEventRecord(timestamp, subjectId, objectId, action, message);
+
+		} catch (IOException ioex) {
+			throw new FrameworkException(500, "Unable to store log event: " + ioex.getMessage());
+		}
+	}
+
+	/**
+	 * Returns the events that match the given values and whose timestamp
+	 * is in the given range. A null value matches all events.
+	 *
+	 * @param subjectId the subject of the events, or null
+	 * @param objectId the object of the events, or null
+	 * @param action the action of the events, or null
+	 * @param from the start of the range (inclusive)
+	 * @param to the end of the range (inclusive)
+	 *
+	 * @return the matching events, in the order in which they were stored
+	 */
+	public Iterable<LogEventRecord> query(final String subjectId, final String objectId, final String action, final long from, final long to) {
+
+		final int subject = dictionary.getId(subjectId);
+		final int object  = dictionary.getId(objectId);
+		final int act     = dictionary.getId(action);
+
+		// values that are not in the dictionary cannot match
+		if (subject < 0 || object < 0 || act < 0) {
+			return Collections.emptyList();
+		}
+
+		final List<LogSegment> snapshot = new ArrayList<>(segments);
+
+		return () -> new QueryIterator(snapshot, subjectId != null ? subject : -1, objectId != null ? object : -1, action != null ? act : -1, from, to);
+	}
+
+	public synchronized void flush() throws IOException {
+
+		for (final LogSegment segment : openSegments.values()) {
+			segment.force();
+		}
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+
+		for (final LogSegment segment : segments) {
+			segment.close();
+		}
+
+		segments.clear();
+		openSegments.clear();
+
+		synchronized (mapped) {
+			mapped.clear();
+		}
+
+		dictionary.close();
+	}
+
+	/**
+	 * Returns the number of segments whose columns are currently mapped.
+	 *
+	 * @return the number of mapped segments
+	 */
+	int getMappedSegmentCount() {
+
+		int count = 0;
+
+		for (final LogSegment segment : segments) {
+
+			if (segment.isMapped()) {
+				count++;
+			}
+		}
+
+		return count;
+	}
+
+	// ----- private methods -----
+	private LogSegment getSegment(final long timestamp) throws IOException {
+
+		final long day     = getDay(timestamp);
+		LogSegment segment = openSegments.get(day);
+
+		if (segment == null || segment.isFull()) {
+
+			if (segment != null) {
+				segment.seal();
+			}
+
+			segment = LogSegment.create(directory, String.format("%08d-%06d", day, nextSequence++), day, SEGMENT_CAPACITY);
+
+			segment.setMapListener(this::touch);
+			segments.add(segment);
+			openSegments.put(day, segment);
+
+			// limit the number of segments that are open for appends
+			if (openSegments.size() > MAX_OPEN_SEGMENTS) {
+
+				final Iterator<LogSegment> it = openSegments.values().iterator();
+				final LogSegment eldest       = it.next();
+
+				eldest.seal();
+				it.remove();
+			}
+
+			touch(segment);
+		}
+
+		return segment;
+	}
+
+	/**
+	 * Marks the given segment as recently used and releases the mappings
+	 * of the least recently used sealed segments if there are too many.
+	 */
+	private void touch(final LogSegment segment) {
+
+		synchronized (mapped) {
+
+			mapped.put(segment, Boolean.TRUE);
+
+			final Iterator<LogSegment> it = mapped.keySet().iterator();
+
+			while (mapped.size() > MAX_MAPPED_SEGMENTS && it.hasNext()) {
+
+				final LogSegment eldest = it.next();
+
+				// segments that accept appends stay mapped
+				if (eldest.isSealed()) {
+
+					try {
+
+						eldest.release();
+
+					} catch (IOException ioex) {
+						logger.warn("Unable to release log segment {}: {}", eldest.getName(), ioex.getMessage());
+					}
+
+					it.remove();
+				}
+			}
+		}
+	}
+
+	private static long getDay(final long timestamp) {
+
+		final LocalDate date = Instant.ofEpochMilli(timestamp).atZone(ZoneOffset.UTC).toLocalDate();
+
+		return date.getYear() * 10000L + date.getMonthValue() * 100L + date.getDayOfMonth();
+	}
+
+	private static Path getConfiguredPath() {
+
+		final String path = StructrApp.getConfigurationValue(Services.LOG_EVENTS_PATH);
+		if (path != null) {
+
+			return Paths.get(path).toAbsolutePath();
+		}
+
+		return Paths.get(StructrApp.getConfigurationValue(Services.BASE_PATH, "."), "logs", "events").toAbsolutePath();
+	}
+
+	// ----- nested classes -----
+	private class QueryIterator implements Iterator<LogEventRecord> {
+
+		private final List<LogSegment> segments;
+		private final int subject;
+		private final int object;
+		private final int action;
+		private final long from;
+		private final long to;
+		private LogEventRecord next = null;
+		private LogSegment segment  = null;
+		private int segmentIndex    = 0;
+		private int index           = 0;
+		private int count           = 0;
+
+		public QueryIterator(final List<LogSegment> segments, final int subject, final int object, final int action, final long from, final long to) {
+
+			this.segments = segments;
+			this.subject  = subject;
+			this.object   = object;
+			this.action   = action;
+			this.from     = from;
+			this.to       = to;
+		}
+
+		@Override
+		public boolean hasNext() {
+
+			if (next == null) {
+				next = findNext();
+			}
+
+			return next != null;
+		}
+
+		@Override
+		public LogEventRecord next() {
+
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+
+			final LogEventRecord result = next;
+			next = null;
+
+			return result;
+		}
+
+		private LogEventRecord findNext() {
+
+			while (true) {
+
+				if (segment == null || index >= count) {
+
+					segment = nextSegment();
+					if (segment == null) {
+
+						return null;
+					}
+
+					index = 0;
+					count = segment.getCount();
+				}
+
+				try {
+
+					final LogEventRecord record = findNextInSegment();
+					if (record != null) {
+
+						return record;
+					}
+
+				} catch (IOException ioex) {
+
+					logger.warn("Unable to read log segment {}: {}", segment.getName(), ioex.getMessage());
+
+					// skip the rest of the segment
+					index = count;
+				}
+			}
+		}
+
+		private LogEventRecord findNextInSegment() throws IOException {
+
+			for (; index < count; index++) {
+
+				final long timestamp = segment.getTimestamp(index);
+
+				if (timestamp < from || timestamp > to) {
+					continue;
+				}
+
+				if (action >= 0 && segment.getAction(index) != action) {
+					continue;
+				}
+
+				if (subject >= 0 && segment.getSubject(index) != subject) {
+					continue;
+				}
+
+				if (object >= 0 && segment.getObject(index) != object) {
+					continue;
+				}
+
+				final LogEventRecord record = new LogEventRecord(
+					segment,
+					index,
+					timestamp,
+					dictionary.getValue(segment.getSubject(index)),
+					dictionary.getValue(segment.getObject(index)),
+					dictionary.getValue(segment.getAction(index))
+				);
+
+				index++;
+
+				return record;
+			}
+
+			return null;
+		}
+
+		private LogSegment nextSegment() {
+
+			while (segmentIndex < segments.size()) {
+
+				final LogSegment candidate = segments.get(segmentIndex++);
+
+				// skip segments outside of the requested range, without mapping them
+				if (candidate.overlaps(from, to)) {
+
+					touch(candidate);
+
+					return candidate;
+				}
+			}
+
+			return null;
+		}
+	}
+}
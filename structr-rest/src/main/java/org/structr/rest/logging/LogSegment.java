@@ -0,0 +1,399 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.rest.logging;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+/**
+ * A memory-mapped segment file of the log event store.
+ *
+ * A segment stores a fixed number of events column by column, so a
+ * query only touches the columns it filters on. The header contains
+ * the number of events and their minimum and maximum timestamp, which
+ * allows queries to skip whole segments. Messages are appended to a
+ * separate file, the segment stores their offset and length.
+ *
+ * Only the header values are kept in memory permanently. The columns are
+ * mapped when they are accessed and stay mapped until the segment is
+ * released, no file channel is kept open for the mapping. The message
+ * file is kept open while the segment accepts appends, sealed segments
+ * open it for reading when a message is requested.
+ *
+ * <pre>
+ * header    = magic(int) version(int) capacity(int) count(int) min(long) max(long)
+ * columns   = timestamp(long){capacity} subject(int){capacity} object(int){capacity}
+ *             action(int){capacity} messageOffset(long){capacity} messageLength(int){capacity}
+ * </pre>
+ */
+class LogSegment implements AutoCloseable {
+
+	private static final int MAGIC          = 0x534C4F47;
+	private static final int VERSION        = 1;
+	private static final int HEADER_SIZE    = 64;
+	private static final int RECORD_SIZE    = 32;
+	private static final int COUNT_OFFSET   = 12;
+	private static final int MIN_OFFSET     = 16;
+	private static final int MAX_OFFSET     = 24;
+
+	private volatile MappedByteBuffer buffer = null;
+	private Consumer<LogSegment> mapListener = null;
+	private FileChannel messages             = null;
+	private final Path file;
+	private final Path messageFile;
+	private final String name;
+	private final int capacity;
+	private final long day;
+	private volatile int count               = 0;
+	private volatile long minTimestamp       = Long.MAX_VALUE;
+	private volatile long maxTimestamp       = Long.MIN_VALUE;
+	private long messageSize                 = 0L;
+	private volatile boolean sealed          = false;
+
+	private LogSegment(final Path file, final String name, final long day, final int capacity, final boolean create) throws IOException {
+
+		this.file        = file;
+		this.messageFile = file.resolveSibling(name + ".msg");
+		this.name        = name;
+		this.day         = day;
+
+		if (create) {
+
+			this.capacity = capacity;
+
+			try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+
+				// the mapping stays valid after the channel is closed
+				this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long)RECORD_SIZE * capacity);
+			}
+
+			buffer.putInt(0, MAGIC);
+			buffer.putInt(4, VERSION);
+			buffer.putInt(8, capacity);
+			buffer.putInt(COUNT_OFFSET, 0);
+			buffer.putLong(MIN_OFFSET, Long.MAX_VALUE);
+			buffer.putLong(MAX_OFFSET, Long.MIN_VALUE);
+
+			this.messages    = FileChannel.open(messageFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			this.messageSize = messages.size();
+
+		} else {
+
+			final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+
+			try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+				channel.read(header, 0);
+			}
+
+			if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+				throw new IOException("Invalid log segment " + file);
+			}
+
+			this.capacity     = header.getInt(8);
+			this.count        = header.getInt(COUNT_OFFSET);
+			this.minTimestamp = header.getLong(MIN_OFFSET);
+			this.maxTimestamp = header.getLong(MAX_OFFSET);
+			this.sealed       = true;
+		}
+	}
+
+	public static LogSegment create(final Path dir, final String name, final long day, final int capacity) throws IOException {
+		return new LogSegment(dir.resolve(name + ".seg"), name, day, capacity, true);
+	}
+
+	/**
+	 * Reads the header of an existing segment. The segment is read-only
+	 * and its columns are not mapped before they are accessed.
+	 */
+	public static LogSegment open(final Path file) throws IOException {
+
+		final String fileName = file.getFileName().toString();
+		final String name     = fileName.substring(0, fileName.length() - 4);
+
+		return new LogSegment(file, name, Long.parseLong(name.substring(0, name.indexOf('-'))), 0, false);
+	}
+
+	/**
+	 * Appends an event. The caller must make sure that there is space
+	 * left in this segment and that appends are not concurrent.
+	 */
+	public void append(final long timestamp, final int subject, final int object, final int action, final String message) throws IOException {
+
+		if (sealed) {
+			throw new IOException("Log segment " + name + " is sealed");
+		}
+
+		final MappedByteBuffer columns = buffer;
+		final int index                = count;
+		final long messageOffset       = messageSize;
+		int messageLength              = -1;
+
+		if (message != null) {
+
+			final ByteBuffer bytes = ByteBuffer.wrap(message.getBytes(StandardCharsets.UTF_8));
+
+			messageLength = bytes.remaining();
+
+			synchronized (this) {
+
+				while (bytes.hasRemaining()) {
+					messages.write(bytes, messageSize + bytes.position());
+				}
+			}
+
+			messageSize += messageLength;
+		}
+
+		columns.putLong(timestampPosition(index), timestamp);
+		columns.putInt(subjectPosition(index),    subject);
+		columns.putInt(objectPosition(index),     object);
+		columns.putInt(actionPosition(index),     action);
+		columns.putLong(messageOffsetPosition(index), messageOffset);
+		columns.putInt(messageLengthPosition(index),  messageLength);
+
+		if (timestamp < minTimestamp) {
+
+			minTimestamp = timestamp;
+			columns.putLong(MIN_OFFSET, timestamp);
+		}
+
+		if (timestamp > maxTimestamp) {
+
+			maxTimestamp = timestamp;
+			columns.putLong(MAX_OFFSET, timestamp);
+		}
+
+		// publish the event after its data has been written
+		columns.putInt(COUNT_OFFSET, index + 1);
+		count = index + 1;
+	}
+
+	public boolean isFull() {
+		return count >= capacity;
+	}
+
+	public boolean overlaps(final long from, final long to) {
+		return count > 0 && minTimestamp <= to && maxTimestamp >= from;
+	}
+
+	/**
+	 * Stops appends to this segment, writes its content to disk and
+	 * closes the message file.
+	 */
+	public synchronized void seal() throws IOException {
+
+		if (!sealed) {
+
+			force();
+
+			sealed = true;
+
+			if (messages != null) {
+
+				messages.close();
+				messages = null;
+			}
+		}
+	}
+
+	/**
+	 * Sets the callback that is run after the columns of this segment
+	 * were mapped again.
+	 *
+	 * @param mapListener
+	 */
+	public void setMapListener(final Consumer<LogSegment> mapListener) {
+		this.mapListener = mapListener;
+	}
+
+	public boolean isSealed() {
+		return sealed;
+	}
+
+	public boolean isMapped() {
+		return buffer != null;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public long getDay() {
+		return day;
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	public long getTimestamp(final int index) throws IOException {
+		return columns().getLong(timestampPosition(index));
+	}
+
+	public int getSubject(final int index) throws IOException {
+		return columns().getInt(subjectPosition(index));
+	}
+
+	public int getObject(final int index) throws IOException {
+		return columns().getInt(objectPosition(index));
+	}
+
+	public int getAction(final int index) throws IOException {
+		return columns().getInt(actionPosition(index));
+	}
+
+	public String getMessage(final int index) throws IOException {
+
+		final MappedByteBuffer columns = columns();
+		final int length               = columns.getInt(messageLengthPosition(index));
+
+		if (length < 0) {
+
+			return null;
+		}
+
+		final ByteBuffer bytes = ByteBuffer.allocate(length);
+		final long offset      = columns.getLong(messageOffsetPosition(index));
+
+		synchronized (this) {
+
+			if (messages == null) {
+				messages = FileChannel.open(messageFile, StandardOpenOption.READ);
+			}
+
+			while (bytes.hasRemaining()) {
+
+				if (messages.read(bytes, offset + bytes.position()) < 0) {
+					throw new IOException("Unexpected end of message file of log segment " + name);
+				}
+			}
+		}
+
+		return new String(bytes.array(), StandardCharsets.UTF_8);
+	}
+
+	public synchronized void force() throws IOException {
+
+		final MappedByteBuffer columns = buffer;
+
+		if (columns != null && !columns.isReadOnly()) {
+			columns.force();
+		}
+
+		if (messages != null && !sealed) {
+			messages.force(false);
+		}
+	}
+
+	/**
+	 * Drops the mapping and closes the message file of a sealed segment.
+	 * Both are opened again when the segment is accessed the next time.
+	 * Readers that still use the old mapping are not affected.
+	 */
+	public synchronized void release() throws IOException {
+
+		if (sealed) {
+
+			buffer = null;
+
+			if (messages != null) {
+
+				messages.close();
+				messages = null;
+			}
+		}
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+
+		seal();
+		release();
+	}
+
+	public static boolean isSegmentFile(final Path file) {
+		return file.getFileName().toString().endsWith(".seg") && Files.isRegularFile(file);
+	}
+
+	// ----- private methods -----
+	private MappedByteBuffer columns() throws IOException {
+
+		final MappedByteBuffer columns = buffer;
+		if (columns != null) {
+
+			return columns;
+		}
+
+		final MappedByteBuffer mapped = map();
+
+		// notify the listener outside of the lock of this segment
+		final Consumer<LogSegment> listener = mapListener;
+		if (listener != null) {
+
+			listener.accept(this);
+		}
+
+		return mapped;
+	}
+
+	private synchronized MappedByteBuffer map() throws IOException {
+
+		if (buffer == null) {
+
+			try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+
+				// the mapping stays valid after the channel is closed
+				buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE + (long)RECORD_SIZE * capacity);
+			}
+		}
+
+		return buffer;
+	}
+
+	private int timestampPosition(final int index) {
+		return HEADER_SIZE + index * 8;
+	}
+
+	private int subjectPosition(final int index) {
+		return HEADER_SIZE + capacity * 8 + index * 4;
+	}
+
+	private int objectPosition(final int index) {
+		return HEADER_SIZE + capacity * 12 + index * 4;
+	}
+
+	private int actionPosition(final int index) {
+		return HEADER_SIZE + capacity * 16 + index * 4;
+	}
+
+	private int messageOffsetPosition(final int index) {
+		return HEADER_SIZE + capacity * 20 + index * 8;
+	}
+
+	private int messageLengthPosition(final int index) {
+		return HEADER_SIZE + capacity * 28 + index * 4;
+	}
+}
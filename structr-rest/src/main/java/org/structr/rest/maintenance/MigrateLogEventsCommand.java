@@ -0,0 +1,101 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.rest.maintenance;
+
+import java.util.Iterator;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.structr.common.SecurityContext;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.app.App;
+import org.structr.core.app.StructrApp;
+import org.structr.core.graph.BulkGraphOperation;
+import org.structr.core.graph.MaintenanceCommand;
+import org.structr.core.graph.NodeServiceCommand;
+import org.structr.core.graph.Tx;
+import org.structr.rest.logging.LogEventStore;
+import org.structr.rest.logging.entity.LogEvent;
+import org.structr.rest.resource.MaintenanceParameterResource;
+
+/**
+ * Moves existing LogEvent nodes into the {@link LogEventStore}.
+ *
+ * The nodes are kept unless the "delete" attribute is set to true, so
+ * they can be removed separately once the migrated events were checked.
+ * Events of a transaction that fails are already in the store, so running
+ * the command again after a failure, or without deleting the nodes, can
+ * create duplicate events.
+ */
+public class MigrateLogEventsCommand extends NodeServiceCommand implements MaintenanceCommand {
+
+	private static final Logger logger = LoggerFactory.getLogger(MigrateLogEventsCommand.class.getName());
+
+	static {
+
+		MaintenanceParameterResource.registerMaintenanceCommand("migrateLogEvents", MigrateLogEventsCommand.class);
+	}
+
+	@Override
+	public void execute(final Map<String, Object> attributes) throws FrameworkException {
+
+		final boolean delete      = Boolean.TRUE.equals(attributes.get("delete")) || "true".equals(attributes.get("delete"));
+		final LogEventStore store = LogEventStore.getInstance();
+		final App app             = StructrApp.getInstance(securityContext);
+		final Iterator<LogEvent> iterator;
+
+		try (final Tx tx = app.tx()) {
+
+			// migrate in chronological order, so the events of a day end up in few segments
+			iterator = app.nodeQuery(LogEvent.class).sort(LogEvent.timestampProperty).getAsList().iterator();
+
+			tx.success();
+		}
+
+		final long count = bulkGraphOperation(securityContext, iterator, 1000, "MigrateLogEvents", new BulkGraphOperation<LogEvent>() {
+
+			@Override
+			public void handleGraphObject(final SecurityContext securityContext, final LogEvent event) throws FrameworkException {
+
+				store.append(event.getTimestamp(), event.getSubjectId(), event.getObjectId(), event.getAction(), event.getMessage());
+
+				if (delete) {
+					app.delete(event);
+				}
+			}
+
+			@Override
+			public void handleThrowable(final SecurityContext securityContext, final Throwable t, final LogEvent event) {
+				logger.warn("Unable to migrate log event {}: {}", event.getUuid(), t.getMessage());
+			}
+
+			@Override
+			public void handleTransactionFailure(final SecurityContext securityContext, final Throwable t) {
+				logger.warn("Unable to migrate log events: {}", t.getMessage());
+			}
+		});
+
+		logger.info("Migrated {} log events", count);
+	}
+
+	@Override
+	public boolean requiresEnclosingTransaction() {
+		return false;
+	}
+}
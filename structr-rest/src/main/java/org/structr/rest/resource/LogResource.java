@@ -57,19 +57,18 @@ import org.structr.core.GraphObject;
 import org.structr.core.GraphObjectMap;
 import org.structr.core.Result;
 import org.structr.core.Services;
-import org.structr.core.app.App;
 import org.structr.core.app.StructrApp;
-import org.structr.core.graph.Tx;
+import org.structr.core.graph.NodeInterface;
 import org.structr.core.property.GenericProperty;
 import org.structr.core.property.ISO8601DateProperty;
 import org.structr.core.property.IntProperty;
 import org.structr.core.property.Property;
 import org.structr.core.property.PropertyKey;
-import org.structr.core.property.PropertyMap;
 import org.structr.core.property.StringProperty;
 import org.structr.rest.RestMethodResult;
 import org.structr.rest.exception.IllegalMethodException;
-import org.structr.rest.logging.entity.LogEvent;
+import org.structr.rest.logging.LogEventRecord;
+import org.structr.rest.logging.LogEventStore;
 
 /**
  *
@@ -99,6 +98,8 @@ public class LogResource extends Resource {
 
 	public static final String LOG_RESOURCE_URI                 = "log";
 
+	private final Map<String, Boolean> readableIds              = new HashMap<>();
+
 	@Override
 	public Resource tryCombineWith(Resource next) throws FrameworkException {
 		return null;
@@ -149,53 +150,32 @@ public class LogResource extends Resource {
 			final String objectId            = request.getParameter(objectProperty.jsonName());
 			final GraphObjectMap overviewMap = new GraphObjectMap();
 			final LogState logState          = new LogState(request);
+			final LogEventStore store        = LogEventStore.getInstance();
 
 			if (StringUtils.isNotEmpty(subjectId) && StringUtils.isNotEmpty(objectId)) {
 
-				processData(logState, StructrApp.getInstance(securityContext)
-					.nodeQuery(LogEvent.class)
-					.and(LogEvent.subjectProperty, subjectId)
-					.and(LogEvent.objectProperty, objectId)
-					.and(LogEvent.actionProperty, logState.logAction)
-					.andRange(LogEvent.timestampProperty, new Date(logState.beginTimestamp()), new Date(logState.endTimestamp()))
-					.getAsList()
-				);
+				processData(logState, store.query(subjectId, objectId, logState.logAction, logState.queryBegin(), logState.queryEnd()));
 
 			} else if (StringUtils.isNotEmpty(subjectId) && StringUtils.isEmpty(objectId)) {
 
-				processData(logState, StructrApp.getInstance(securityContext)
-					.nodeQuery(LogEvent.class)
-					.and(LogEvent.subjectProperty, subjectId)
-					.and(LogEvent.actionProperty, logState.logAction)
-					.andRange(LogEvent.timestampProperty, new Date(logState.beginTimestamp()), new Date(logState.endTimestamp()))
-					.getAsList()
-				);
+				processData(logState, store.query(subjectId, null, logState.logAction, logState.queryBegin(), logState.queryEnd()));
 
 			} else if (StringUtils.isEmpty(subjectId) && StringUtils.isNotEmpty(objectId)) {
 
 				logState.inverse(true);
 
-				processData(logState, StructrApp.getInstance(securityContext)
-					.nodeQuery(LogEvent.class)
-					.and(LogEvent.objectProperty, objectId)
-					.and(LogEvent.actionProperty, logState.logAction)
-					.andRange(LogEvent.timestampProperty, new Date(logState.beginTimestamp()), new Date(logState.endTimestamp()))
-					.getAsList()
-				);
+				processData(logState, store.query(null, objectId, logState.logAction, logState.queryBegin(), logState.queryEnd()));
 
 			} else if (logState.doActionQuery()) {
 
-				processData(logState);
+				processData(store, logState);
 
 			} else {
 
 				// create overview of existing logs
 				logState.overview(true);
 
-				processData(logState, StructrApp.getInstance(securityContext)
-					.nodeQuery(LogEvent.class)
-					.getAsList()
-				);
+				processData(logState, store.query(null, null, null, Long.MIN_VALUE, Long.MAX_VALUE));
 			}
 
 			if (logState.overview()) {
@@ -241,9 +221,11 @@ public class LogResource extends Resource {
 
 				final String filesPath = Services.getInstance().getConfigurationValue(Services.FILES_PATH);
 
-				try (final Context context  = new Context(1000)) {
+				try {
+
+					final int count = collectFilesAndStore(LogEventStore.getInstance(), new File(filesPath + SUBJECTS).toPath(), 0);
 
-					collectFilesAndStore(context, new File(filesPath + SUBJECTS).toPath(), 0);
+					logger.info("Stored {} log events", count);
 
 				} catch (FrameworkException fex) {
 					logger.warn("", fex);
@@ -259,27 +241,10 @@ public class LogResource extends Resource {
 
 			if (subjectId != null && objectId != null && action != null) {
 
-				final App app  = StructrApp.getInstance(securityContext);
-				LogEvent event = null;
-
-				try (final Tx tx = app.tx()) {
-
-					final PropertyMap properties = new PropertyMap();
-					properties.put(LogEvent.timestampProperty,           new Date());
-					properties.put(LogEvent.actionProperty,              action);
-					properties.put(LogEvent.subjectProperty,             subjectId);
-					properties.put(LogEvent.objectProperty,              objectId);
-					properties.put(LogEvent.messageProperty,             message);
-					properties.put(LogEvent.visibleToPublicUsers,        true);
-					properties.put(LogEvent.visibleToAuthenticatedUsers, true);
-
-					event = app.create(LogEvent.class, properties);
-
-					tx.success();
-				}
-
+				final LogEventRecord event    = LogEventStore.getInstance().append(System.currentTimeMillis(), subjectId, objectId, action, message);
 				final RestMethodResult result = new RestMethodResult(201);
-				result.addContent(event);
+
+				result.addContent(event.toGraphObjectMap());
 
 				return result;
 
@@ -338,7 +303,42 @@ public class LogResource extends Resource {
 	}
 
 	// ----- private methods -----
-	private void collectFilesAndStore(final Context context, final Path dir, final int level) throws FrameworkException {
+	/**
+	 * Log events are not graph objects, so they are not filtered by the
+	 * query. Admin users can see all events, other users only the events
+	 * whose subject or object is a node they are allowed to read.
+	 */
+	private boolean isReadable(final LogEventRecord event) throws FrameworkException {
+
+		if (securityContext.isSuperUser()) {
+			return true;
+		}
+
+		return isReadable(event.getSubjectId()) || isReadable(event.getObjectId());
+	}
+
+	private boolean isReadable(final String uuid) throws FrameworkException {
+
+		if (uuid == null) {
+			return false;
+		}
+
+		Boolean readable = readableIds.get(uuid);
+		if (readable == null) {
+
+			final NodeInterface node = StructrApp.getInstance().getNodeById(uuid);
+
+			readable = node != null && securityContext.isReadable(node, false, false);
+
+			readableIds.put(uuid, readable);
+		}
+
+		return readable;
+	}
+
+	private int collectFilesAndStore(final LogEventStore store, final Path dir, final int level) throws FrameworkException {
+
+		int count = 0;
 
 		if (level == 1) {
 			logger.info("Path {}", dir);
@@ -350,14 +350,11 @@ public class LogResource extends Resource {
 
 				if (Files.isDirectory(p)) {
 
-					collectFilesAndStore(context, p, level+1);
+					count += collectFilesAndStore(store, p, level+1);
 
 				} else {
 
-					context.update(storeLogEntry(p));
-
-					// update object count and commit
-					context.commit(true);
+					count += storeLogEntry(store, p);
 				}
 
 				Files.delete(p);
@@ -367,19 +364,20 @@ public class LogResource extends Resource {
 		} catch (IOException ioex) {
 			logger.warn("", ioex);
 		}
+
+		return count;
 	}
 
-	private void processData(final LogState state) throws FrameworkException {
+	private void processData(final LogEventStore store, final LogState state) throws FrameworkException {
 
 		if (state.doCorrelate()) {
 
 			// get the basic correlation set (pds_click in the test case)
-			final List<LogEvent> correlationResult = StructrApp.getInstance(securityContext)
-				.nodeQuery(LogEvent.class)
-				.and(LogEvent.actionProperty, state.correlationAction)
-				.getAsList();
+			for (final LogEventRecord entry : store.query(null, null, state.correlationAction, Long.MIN_VALUE, Long.MAX_VALUE)) {
 
-			for (final LogEvent entry : correlationResult) {
+				if (!isReadable(entry)) {
+					continue;
+				}
 
 				final String pathSubjectId = state.inverse() ? entry.getObjectId() : entry.getSubjectId();
 				final String pathObjectId  = state.inverse() ? entry.getSubjectId() : entry.getObjectId();
@@ -403,19 +401,18 @@ public class LogResource extends Resource {
 
 		logger.debug("No. of correlations: {}", state.getCorrelations().entrySet().size());
 
-		final List<LogEvent> result = StructrApp.getInstance(securityContext).nodeQuery(LogEvent.class)
-			.and(LogEvent.actionProperty, state.logAction)
-			.andRange(LogEvent.timestampProperty, new Date(state.beginTimestamp()), new Date(state.endTimestamp()))
-			.getAsList();
-
-		processData(state, result);
+		processData(state, store.query(null, null, state.logAction, state.queryBegin(), state.queryEnd()));
 	}
 
-	private void processData(final LogState state, final Iterable<LogEvent> result) throws FrameworkException {
+	private void processData(final LogState state, final Iterable<LogEventRecord> result) throws FrameworkException {
 
 		int count = 0;
 
-		for (final LogEvent event : result) {
+		for (final LogEventRecord event : result) {
+
+			if (!isReadable(event)) {
+				continue;
+			}
 
 			if ((++count % 100000) == 0) {
 				System.out.println(count);
@@ -453,6 +450,13 @@ public class LogResource extends Resource {
 				// passes filter? action present or matching?
 				if (state.passesFilter(entryMessage) && state.correlates(pathSubjectId, pathObjectId, entryMessage)) {
 
+					if (state.doAggregate()) {
+
+						// aggregate while streaming instead of collecting all entries
+						count(state, timestamp, entryMessage != null ? entryMessage : "");
+						continue;
+					}
+
 					final Map<String, Object> map = new HashMap<>();
 
 					map.put(subjectProperty.jsonName(), pathSubjectId);
@@ -467,9 +471,8 @@ public class LogResource extends Resource {
 		}
 	}
 
-	private int storeLogEntry(final Path path) throws IOException, FrameworkException {
+	private int storeLogEntry(final LogEventStore store, final Path path) throws IOException, FrameworkException {
 
-		final App app          = StructrApp.getInstance(securityContext);
 		final String fileName  = path.getFileName().toString();
 		int count              = 0;
 
@@ -490,17 +493,7 @@ public class LogResource extends Resource {
 				final String action          = part1;
 				final String message         = part2;
 
-				final PropertyMap properties = new PropertyMap();
-
-				properties.put(LogEvent.messageProperty,             message);
-				properties.put(LogEvent.actionProperty,              action);
-				properties.put(LogEvent.subjectProperty,             subjectId);
-				properties.put(LogEvent.objectProperty,              objectId);
-				properties.put(LogEvent.timestampProperty,           new Date(timestamp));
-				properties.put(LogEvent.visibleToPublicUsers,        true);
-				properties.put(LogEvent.visibleToAuthenticatedUsers, true);
-
-				app.create(LogEvent.class, properties);
+				store.append(timestamp, subjectId, objectId, action, message);
 
 				count++;
 			}
@@ -531,15 +524,12 @@ public class LogResource extends Resource {
 
 	private Result aggregate(final LogState state) throws FrameworkException {
 
-		// sort entries before aggregation
-		state.sortEntries();
-
 		final long startTimestamp                         = state.beginTimestamp();
 		final long endTimestamp                           = state.endTimestamp();
 		final GraphObjectMap result                       = new GraphObjectMap();
 		final long interval                               = findInterval(state.aggregate());
 		final long start                                  = alignDateOnFormat(state.aggregate(), startTimestamp);
-		final TreeMap<Long, Map<String, Object>> countMap = toAggregatedCountMap(state);
+		final TreeMap<Long, Map<String, Object>> countMap = state.counts();
 		final Set<String> countProperties                 = getCountProperties(countMap);
 
 		for (long current = start; current <= endTimestamp; current += interval) {
@@ -582,16 +572,13 @@ public class LogResource extends Resource {
 
 	private Result histogram(final LogState state) throws FrameworkException {
 
-		// sort entries before creating the histogram
-		state.sortEntries();
-
 		final String dateFormat = state.aggregate();
 		final long startTimestamp = state.beginTimestamp();
 		final long endTimestamp = state.endTimestamp();
 		final GraphObjectMap result = new GraphObjectMap();
 		final long interval = findInterval(dateFormat);
 		final long start = alignDateOnFormat(dateFormat, startTimestamp);
-		final TreeMap<Long, Map<String, Object>> countMap = toHistogramCountMap(state);
+		final TreeMap<Long, Map<String, Object>> countMap = state.counts();
 		final Set<String> countProperties = getCountProperties(countMap);
 
 		for (long current = start; current <= endTimestamp; current += interval) {
@@ -678,100 +665,81 @@ public class LogResource extends Resource {
 		return max;
 	}
 
-	private TreeMap<Long, Map<String, Object>> toAggregatedCountMap(final LogState state) throws FrameworkException {
+	/**
+	 * Adds a single event to the counts of its interval.
+	 */
+	private void count(final LogState state, final long timestamp, final String message) {
+
+		final Map<String, Object> obj = getBucket(state, timestamp);
 
-		final TreeMap<Long, Map<String, Object>> countMap = new TreeMap<>();
+		Integer count = (Integer) obj.get(totalProperty.jsonName());
+		if (count == null) {
+			count = 1;
+		} else {
+			count = count + 1;
+		}
+		obj.put(totalProperty.jsonName(), count);
 
-		for (final Map<String, Object> entry : state.entries()) {
+		if (state.doHistogram) {
 
-			final String message = (String) entry.get(messageProperty.jsonName());
-			final long timestamp = (Long) entry.get(timestampProperty.jsonName());
-			Map<String, Object> obj = countMap.get(timestamp);
+			final Matcher matcher = state.histogramMatcher();
 
-			if (obj == null) {
-				obj = new LinkedHashMap<>();
-			}
+			matcher.reset(message);
+			if (matcher.matches()) {
 
-			Integer count = (Integer) obj.get(totalProperty.jsonName());
-			if (count == null) {
-				count = 1;
-			} else {
-				count = count + 1;
+				increment(obj, matcher.group(1), getMultiplier(message, state));
 			}
-			obj.put(totalProperty.jsonName(), count);
+
+		} else {
 
 			// iterate over patterns
 			for (final Entry<String, Pattern> patternEntry : state.aggregationPatterns().entrySet()) {
 
 				if (patternEntry.getValue().matcher(message).matches()) {
 
-					final String key = patternEntry.getKey();
-
-					final int multiplier = getMultiplier(message, state);
-
-					Integer c = (Integer) obj.get(key);
-					if (c == null) {
-						c = multiplier;
-					} else {
-						c = c + multiplier;
-					}
-
-					obj.put(key, c);
+					increment(obj, patternEntry.getKey(), getMultiplier(message, state));
 				}
 			}
-
-			countMap.put(timestamp, obj);
 		}
-
-		return countMap;
 	}
 
-	private TreeMap<Long, Map<String, Object>> toHistogramCountMap(final LogState state) throws FrameworkException {
+	private void increment(final Map<String, Object> obj, final String key, final int multiplier) {
 
-		final Pattern pattern = Pattern.compile(state.histogram());
-		final Matcher matcher = pattern.matcher("");
-		final TreeMap<Long, Map<String, Object>> countMap = new TreeMap<>();
-
-		for (final Map<String, Object> entry : state.entries()) {
-
-			final String message = (String) entry.get(messageProperty.jsonName());
-			final long timestamp = (Long) entry.get(timestampProperty.jsonName());
-			Map<String, Object> obj = countMap.get(timestamp);
-
-			if (obj == null) {
-				obj = new LinkedHashMap<>();
-			}
+		Integer c = (Integer) obj.get(key);
+		if (c == null) {
+			c = multiplier;
+		} else {
+			c = c + multiplier;
+		}
 
-			Integer count = (Integer) obj.get(totalProperty.jsonName());
-			if (count == null) {
-				count = 1;
-			} else {
-				count = count + 1;
-			}
-			obj.put(totalProperty.jsonName(), count);
+		obj.put(key, c);
+	}
 
-			// iterate over patterns
-			matcher.reset(message);
-			if (matcher.matches()) {
+	/**
+	 * Returns the counts of the interval that contains the given timestamp.
+	 * Events mostly arrive in chronological order, so the boundaries of the
+	 * current interval are cached.
+	 */
+	private Map<String, Object> getBucket(final LogState state, final long timestamp) {
 
-				final String key = matcher.group(1);
+		if (state.interval == 0L) {
+			state.interval = findInterval(state.aggregate());
+		}
 
-				final int multiplier = getMultiplier(message, state);
+		if (timestamp < state.bucketStart || timestamp >= state.bucketEnd) {
 
-				Integer c = (Integer) obj.get(key);
-				if (c == null) {
-					c = multiplier;
-				} else {
-					c = c + multiplier;
-				}
+			state.bucketStart = alignDateOnFormat(state.aggregate(), timestamp);
+			state.bucketEnd   = Math.max(alignDateOnFormat(state.aggregate(), state.bucketStart + state.interval), state.bucketStart + 1);
+		}
 
-				obj.put(key, c);
-			}
+		Map<String, Object> obj = state.counts().get(state.bucketStart);
+		if (obj == null) {
 
-			countMap.put(timestamp, obj);
+			obj = new LinkedHashMap<>();
+			state.counts().put(state.bucketStart, obj);
 		}
 
-		return countMap;
+		return obj;
 	}
 
 	private int getMultiplier(final String message, final LogState state) {
@@ -780,7 +748,7 @@ public class LogResource extends Resource {
 
 		if (state.multiplier != null) {
 
-			final Matcher matcher = Pattern.compile(state.multiplier).matcher(message);
+			final Matcher matcher = state.multiplierPattern().matcher(message);
 
 			if (matcher.matches()) {
 				final String g = matcher.group(1);
@@ -861,7 +829,8 @@ public class LogResource extends Resource {
 
 		private final Map<String, Pattern> aggregationPatterns = new HashMap<>();
 		private final List<Map<String, Object>> entries        = new LinkedList<>();
-		private final Map<String, LinkedList<LogEvent>> correlations         = new ConcurrentHashMap<>();
+		private final Map<String, LinkedList<LogEventRecord>> correlations   = new ConcurrentHashMap<>();
+		private final TreeMap<Long, Map<String, Object>> counts = new TreeMap<>();
 		private final Map<String, Integer> actions             = new HashMap<>();
 
 		private long beginTimestamp                            = Long.MAX_VALUE;
@@ -880,6 +849,12 @@ public class LogResource extends Resource {
 		private Range range                                    = null;
 		private int actionCount                                = 0;
 		private boolean doCorrelate                            = false;
+		private boolean doHistogram                            = false;
+		private Matcher histogramMatcher                       = null;
+		private Pattern multiplierPattern                      = null;
+		private long interval                                  = 0L;
+		private long bucketStart                               = Long.MAX_VALUE;
+		private long bucketEnd                                 = Long.MIN_VALUE;
 
 		public LogState(final HttpServletRequest request) {
 
@@ -912,6 +887,7 @@ public class LogResource extends Resource {
 				doCorrelate = true;
 			}
 
+			this.doHistogram = StringUtils.isNotBlank(histogram);
 		}
 
 		public List<Map<String, Object>> entries() {
@@ -922,11 +898,11 @@ public class LogResource extends Resource {
 			entries.add(entry);
 		}
 
-		public void addCorrelationEntry(final String key, final LogEvent event) {
+		public void addCorrelationEntry(final String key, final LogEventRecord event) {
 
 			logger.debug("No. of correllation entry lists: {}, adding action: {} {}", new Object[]{correlations.keySet().size(), key, event.getMessage()});
 
-			LinkedList<LogEvent> existingEventList = correlations.get(key);
+			LinkedList<LogEventRecord> existingEventList = correlations.get(key);
 
 			if (existingEventList == null) {
 				existingEventList = new LinkedList<>();
@@ -937,10 +913,32 @@ public class LogResource extends Resource {
 			correlations.put(key, existingEventList);
 		}
 
-		public Map<String, LinkedList<LogEvent>> getCorrelations() {
+		public Map<String, LinkedList<LogEventRecord>> getCorrelations() {
 			return correlations;
 		}
 
+		public TreeMap<Long, Map<String, Object>> counts() {
+			return counts;
+		}
+
+		public Matcher histogramMatcher() {
+
+			if (histogramMatcher == null) {
+				histogramMatcher = Pattern.compile(histogram).matcher("");
+			}
+
+			return histogramMatcher;
+		}
+
+		public Pattern multiplierPattern() {
+
+			if (multiplierPattern == null) {
+				multiplierPattern = Pattern.compile(multiplier);
+			}
+
+			return multiplierPattern;
+		}
+
 		public Map<String, Integer> actions() {
 			return actions;
 		}
@@ -1004,6 +1002,18 @@ public class LogResource extends Resource {
 			return range != null ? range.end : endTimestamp;
 		}
 
+		/**
+		 * Returns the start of the requested range, or the smallest
+		 * possible timestamp if no range was requested.
+		 */
+		public long queryBegin() {
+			return range != null ? range.start : Long.MIN_VALUE;
+		}
+
+		public long queryEnd() {
+			return range != null ? range.end : Long.MAX_VALUE;
+		}
+
 		public void beginTimestamp(final long beginTimestamp) {
 			this.beginTimestamp = beginTimestamp;
 		}
@@ -1051,7 +1061,7 @@ public class LogResource extends Resource {
 
 			}
 
-			LinkedList<LogEvent> correlationEntries;
+			LinkedList<LogEventRecord> correlationEntries;
 
 			if (correlationOp != null && correlationPattern != null) {
 
@@ -1073,7 +1083,7 @@ public class LogResource extends Resource {
 
 							if (correlationEntries != null) {
 
-								for (LogEvent correlationEntry : correlationEntries) {
+								for (LogEventRecord correlationEntry : correlationEntries) {
 
 									if (correlationEntry.getSubjectId().equals(pathSubjectId)) {
 
@@ -1093,7 +1103,7 @@ public class LogResource extends Resource {
 
 							if (correlationEntries != null) {
 
-								for (LogEvent correlationEntry : correlationEntries) {
+								for (LogEventRecord correlationEntry : correlationEntries) {
 
 									if (correlationEntry.getObjectId().equals(pathObjectId)) {
 
@@ -1263,53 +1273,4 @@ public class LogResource extends Resource {
 			return timestamp1.compareTo(timestamp2);
 		}
 	}
-
-	private static class Context implements AutoCloseable {
-
-		private final App app   = StructrApp.getInstance();
-		private Tx tx           = null;
-		private int total       = 0;
-		private int count       = 0;
-		private int commitCount = 0;
-
-		public Context(final int commitCount) {
-
-			this.commitCount = commitCount;
-			this.tx          = app.tx(false, false, false);
-		}
-
-		public void commit(final boolean intermediate) throws FrameworkException {
-
-			if (count > commitCount) {
-
-				logger.info("Committing transaction after {} objects..", total);
-
-				tx.success();
-				tx.close();
-
-				if (intermediate) {
-
-					tx = app.tx(false, false, false);
-				}
-
-				count = 0;
-			}
-		}
-
-		public int getTotal() {
-			return total;
-		}
-
-		public void update(final int count) {
-			this.count += count;
-			this.total += count;
-		}
-
-		@Override
-		public void close() throws FrameworkException {
-
-			tx.success();
-			tx.close();
-		}
-	}
 }
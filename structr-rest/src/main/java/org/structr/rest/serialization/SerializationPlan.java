@@ -0,0 +1,289 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.rest.serialization;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.structr.api.util.Statistics;
+import org.structr.common.SecurityContext;
+import org.structr.common.View;
+import org.structr.core.GraphObject;
+import org.structr.core.app.StructrApp;
+import org.structr.core.entity.AbstractNode;
+import org.structr.core.entity.AbstractRelationship;
+import org.structr.core.property.PropertyKey;
+import org.structr.schema.SchemaService;
+
+/**
+ * The precomputed list of properties that {@link StreamingWriter} renders
+ * for the objects of a given type in a given view.
+ *
+ * A plan contains the ordered property keys, their JSON names, the keys
+ * to read the values from and whether a key has an input converter, so
+ * these don't need to be resolved again for every object of a result.
+ *
+ * Plans are cached for types whose property set depends on the type and
+ * the view only. The cache is cleared when the schema is reloaded.
+ */
+public class SerializationPlan {
+
+	private static final Map<PlanKey, SerializationPlan> cache = new ConcurrentHashMap<>();
+	private static final Map<Class, Boolean> cacheableTypes    = new ConcurrentHashMap<>();
+	private static final AtomicLong hits                       = new AtomicLong();
+	private static final AtomicLong misses                     = new AtomicLong();
+	private static final AtomicLong invalidations              = new AtomicLong();
+	private static volatile long schemaVersion                 = -1L;
+
+	static {
+
+		Statistics.register("serializationPlans", SerializationPlan::getStatistics);
+	}
+
+	private final PropertyKey[] keys;
+	private final PropertyKey[] localKeys;
+	private final String[] jsonNames;
+	private final boolean[] hasConverter;
+
+	private SerializationPlan(final SecurityContext securityContext, final Class type, final String propertyView, final Iterable<PropertyKey> propertyKeys) {
+
+		final List<PropertyKey> list = new ArrayList<>();
+
+		for (final PropertyKey key : propertyKeys) {
+			list.add(key);
+		}
+
+		final int size = list.size();
+
+		this.keys         = new PropertyKey[size];
+		this.localKeys    = new PropertyKey[size];
+		this.jsonNames    = new String[size];
+		this.hasConverter = new boolean[size];
+
+		for (int i=0; i<size; i++) {
+
+			final PropertyKey key = list.get(i);
+			PropertyKey localKey  = key;
+
+			// special handling for the internal _graph view: replace name with
+			// the name property from the ui view, in case it was overwritten
+			if (View.INTERNAL_GRAPH_VIEW.equals(propertyView) && AbstractNode.name.equals(key)) {
+
+				localKey = StructrApp.getConfiguration().getPropertyKeyForJSONName(type, AbstractNode.name.jsonName(), false);
+			}
+
+			keys[i]         = key;
+			localKeys[i]    = localKey;
+			jsonNames[i]    = key.jsonName();
+			hasConverter[i] = localKey.inputConverter(securityContext) != null;
+		}
+	}
+
+	/**
+	 * Returns the serialization plan for the given object. If the given
+	 * key set is not null, it is used instead of the property set of the
+	 * view, e.g. to render only id and name of nested objects.
+	 *
+	 * @param securityContext
+	 * @param source the object to serialize
+	 * @param propertyView
+	 * @param keySet a fixed set of keys, or null
+	 * @return the plan, or null if the object has no property keys
+	 */
+	public static SerializationPlan getPlan(final SecurityContext securityContext, final GraphObject source, final String propertyView, final Iterable<PropertyKey> keySet) {
+
+		final Class type = source.getClass();
+
+		if (!isCacheable(source)) {
+
+			final Iterable<PropertyKey> keys = keySet != null ? keySet : source.getPropertyKeys(propertyView);
+			if (keys != null) {
+
+				return new SerializationPlan(securityContext, type, propertyView, keys);
+			}
+
+			return null;
+		}
+
+		// the version is part of the key, so a plan that was built from the
+		// keys of an older schema can never be returned after a reload
+		final long version      = checkSchemaVersion();
+		final PlanKey planKey   = new PlanKey(version, type, propertyView, keySet);
+		SerializationPlan plan  = cache.get(planKey);
+
+		if (plan == null) {
+
+			final Iterable<PropertyKey> keys = keySet != null ? keySet : source.getPropertyKeys(propertyView);
+			if (keys == null) {
+
+				return null;
+			}
+
+			plan = new SerializationPlan(securityContext, type, propertyView, keys);
+
+			cache.put(planKey, plan);
+			misses.incrementAndGet();
+
+		} else {
+
+			hits.incrementAndGet();
+		}
+
+		return plan;
+	}
+
+	public static void invalidate() {
+
+		cache.clear();
+		cacheableTypes.clear();
+		invalidations.incrementAndGet();
+	}
+
+	/**
+	 * Returns the size of the cache and the number of hits, misses and
+	 * invalidations since startup.
+	 *
+	 * @return a map of statistics
+	 */
+	public static Map<String, Object> getStatistics() {
+
+		final Map<String, Object> data = new LinkedHashMap<>();
+
+		data.put("size",          cache.size());
+		data.put("hits",          hits.get());
+		data.put("misses",        misses.get());
+		data.put("invalidations", invalidations.get());
+
+		return data;
+	}
+
+	public int size() {
+		return keys.length;
+	}
+
+	public PropertyKey getKey(final int index) {
+		return keys[index];
+	}
+
+	public PropertyKey getLocalKey(final int index) {
+		return localKeys[index];
+	}
+
+	public String getJsonName(final int index) {
+		return jsonNames[index];
+	}
+
+	public boolean hasConverter(final int index) {
+		return hasConverter[index];
+	}
+
+	// ----- private methods -----
+	private static long checkSchemaVersion() {
+
+		final long currentVersion = SchemaService.getSchemaVersion();
+		if (currentVersion != schemaVersion) {
+
+			synchronized (cache) {
+
+				if (currentVersion != schemaVersion) {
+
+					invalidate();
+					schemaVersion = currentVersion;
+				}
+			}
+		}
+
+		return currentVersion;
+	}
+
+	/**
+	 * Plans can only be cached for types that use the property set of the
+	 * configuration provider, and only if the object has no custom view.
+	 */
+	private static boolean isCacheable(final GraphObject source) {
+
+		final SecurityContext securityContext = source.getSecurityContext();
+		if (securityContext != null && securityContext.hasCustomView()) {
+
+			return false;
+		}
+
+		final Class type = source.getClass();
+		Boolean value    = cacheableTypes.get(type);
+
+		if (value == null) {
+
+			try {
+
+				final Class declaringClass = type.getMethod("getPropertyKeys", String.class).getDeclaringClass();
+
+				value = AbstractNode.class.equals(declaringClass) || AbstractRelationship.class.equals(declaringClass);
+
+			} catch (NoSuchMethodException nsmex) {
+
+				value = false;
+			}
+
+			cacheableTypes.put(type, value);
+		}
+
+		return value;
+	}
+
+	// ----- nested classes -----
+	private static class PlanKey {
+
+		private final Iterable<PropertyKey> keySet;
+		private final String propertyView;
+		private final Class type;
+		private final long version;
+		private final int hashCode;
+
+		public PlanKey(final long version, final Class type, final String propertyView, final Iterable<PropertyKey> keySet) {
+
+			this.version      = version;
+			this.type         = type;
+			this.propertyView = propertyView;
+			this.keySet       = keySet;
+			this.hashCode     = 31 * (31 * (31 * Long.hashCode(version) + type.hashCode()) + Objects.hashCode(propertyView)) + System.identityHashCode(keySet);
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+
+			if (obj instanceof PlanKey) {
+
+				final PlanKey other = (PlanKey)obj;
+
+				return version == other.version && type.equals(other.type) && Objects.equals(propertyView, other.propertyView) && keySet == other.keySet;
+			}
+
+			return false;
+		}
+	}
+}
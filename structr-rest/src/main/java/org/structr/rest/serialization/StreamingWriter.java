@@ -22,29 +22,32 @@ import java.io.IOException;
 import java.io.Writer;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
-import org.eclipse.jetty.util.ConcurrentHashSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.structr.common.PermissionResolutionMask;
 import org.structr.common.PropertyView;
 import org.structr.common.QueryRange;
 import org.structr.common.SecurityContext;
-import org.structr.common.View;
 import org.structr.core.GraphObject;
 import org.structr.core.Result;
 import org.structr.core.Services;
 import org.structr.core.Value;
-import org.structr.core.app.StructrApp;
 import org.structr.core.converter.PropertyConverter;
 import org.structr.core.entity.AbstractNode;
+import org.structr.core.graph.NodeFactory;
+import org.structr.core.graph.NodeInterface;
 import org.structr.core.property.PropertyKey;
 import org.structr.core.property.PropertyMap;
 
@@ -69,11 +72,11 @@ public abstract class StreamingWriter {
 		structrGraph.add(AbstractNode.name);
 	}
 
-	private final Map<String, Serializer> serializerCache = new LinkedHashMap<>();
+	private final Map<Class, Serializer> serializerCache  = new HashMap<>();
 	private final Map<String, Serializer> serializers     = new LinkedHashMap<>();
 	private final Serializer<GraphObject> root            = new RootSerializer();
 	private final Set<String> nonSerializerClasses        = new LinkedHashSet<>();
-	private final Set<Integer> visitedObjects             = new ConcurrentHashSet<>();
+	private final Set<Integer> visitedObjects             = new HashSet<>();
 	private final DecimalFormat decimalFormat             = new DecimalFormat("0.000000000", DecimalFormatSymbols.getInstance(Locale.ENGLISH));
 	private String resultKeyName                          = "result";
 	private boolean renderSerializationTime               = true;
@@ -258,6 +261,8 @@ public abstract class StreamingWriter {
 
 					writer.name(resultKeyName).beginArray();
 
+					prefetchRelationships(results, localPropertyView, 0);
+
 					// serialize list of results
 					for (GraphObject graphObject : results) {
 
@@ -326,10 +331,15 @@ public abstract class StreamingWriter {
 
 	private Serializer getSerializerForType(Class type) {
 
+		// types without a serializer are cached as well
+		if (serializerCache.containsKey(type)) {
+			return serializerCache.get(type);
+		}
+
 		Class localType       = type;
-		Serializer serializer = serializerCache.get(type.getName());
+		Serializer serializer = null;
 
-		if (serializer == null && !nonSerializerClasses.contains(type.getName())) {
+		if (!nonSerializerClasses.contains(type.getName())) {
 
 			do {
 				serializer = serializers.get(localType.getName());
@@ -352,14 +362,10 @@ public abstract class StreamingWriter {
 				localType = localType.getSuperclass();
 
 			} while (serializer == null && !localType.equals(Object.class));
-
-
-			// cache found serializer
-			if (serializer != null) {
-				serializerCache.put(type.getName(), serializer);
-			}
 		}
 
+		serializerCache.put(type, serializer);
+
 		return serializer;
 	}
 
@@ -376,6 +382,34 @@ public abstract class StreamingWriter {
 		}
 	}
 
+	/**
+	 * Loads the relationships of all nodes in the given collection in
+	 * one go if their properties will be rendered at the given depth,
+	 * instead of fetching them one node at a time while serializing.
+	 */
+	private void prefetchRelationships(final Iterable value, final String localPropertyView, final int depth) {
+
+		// only collections can be inspected without consuming them
+		if (value instanceof Collection && ((Collection)value).size() > 1 && depth <= outputNestingDepth) {
+
+			// nested objects in the Ui view only render id and name
+			if (compactNestedProperties && depth > 0 && PropertyView.Ui.equals(localPropertyView)) {
+				return;
+			}
+
+			final List<NodeInterface> nodes = new LinkedList<>();
+
+			for (final Object o : (Collection)value) {
+
+				if (o instanceof NodeInterface) {
+					nodes.add((NodeInterface)o);
+				}
+			}
+
+			NodeFactory.prefetchRelationships(nodes);
+		}
+	}
+
 	private void serializePrimitive(RestWriter writer, final Object value) throws IOException {
 
 		if (value != null) {
@@ -420,9 +454,13 @@ public abstract class StreamingWriter {
 		}
 
 		public void serializeProperty(RestWriter writer, PropertyKey key, Object value, String localPropertyView, int depth) {
+			serializeProperty(writer, key, value, localPropertyView, depth, true);
+		}
+
+		public void serializeProperty(RestWriter writer, PropertyKey key, Object value, String localPropertyView, int depth, boolean hasConverter) {
 
 			try {
-				PropertyConverter converter = key.inputConverter(writer.getSecurityContext());
+				PropertyConverter converter = hasConverter ? key.inputConverter(writer.getSecurityContext()) : null;
 
 				if (converter != null) {
 
@@ -460,7 +498,7 @@ public abstract class StreamingWriter {
 			int hashCode = -1;
 
 			// mark object as visited
-			if (source != null) {
+			if (reduceRedundancy && source != null) {
 
 				hashCode = source.hashCode();
 				visitedObjects.add(hashCode);
@@ -471,48 +509,38 @@ public abstract class StreamingWriter {
 			// prevent endless recursion by pruning at depth n
 			if (depth <= outputNestingDepth) {
 
+				// speciality for the Ui view: limit recursive rendering to (id, name)
+				final Iterable<PropertyKey> keySet = compactNestedProperties && depth > 0 && PropertyView.Ui.equals(localPropertyView) ? idNameOnly : null;
+
 				// property keys
-				Iterable<PropertyKey> keys = source.getPropertyKeys(localPropertyView);
-				if (keys != null) {
+				final SerializationPlan plan = SerializationPlan.getPlan(writer.getSecurityContext(), source, localPropertyView, keySet);
+				if (plan != null) {
 
 					final PermissionResolutionMask permissionResolutionMask = source.getPermissionResolutionMask();
+					final int size                                          = plan.size();
 
-					// speciality for the Ui view: limit recursive rendering to (id, name)
-					if (compactNestedProperties && depth > 0 && PropertyView.Ui.equals(localPropertyView)) {
-						keys = idNameOnly;
-					}
+					for (int i=0; i<size; i++) {
 
-					for (final PropertyKey key : keys) {
+						final PropertyKey key = plan.getKey(i);
 
 						if (permissionResolutionMask == null || permissionResolutionMask.allowsProperty(key)) {
 
-							final QueryRange range = writer.getSecurityContext().getRange(key.jsonName());
+							final QueryRange range = writer.getSecurityContext().getRange(plan.getJsonName(i));
 							if (range != null) {
 								// Reset count for each key
 								range.resetCount();
 							}
 
-							// special handling for the internal _graph view: replace name with
-							// the name property from the ui view, in case it was overwritten
-							PropertyKey localKey = key;
-
-							if (View.INTERNAL_GRAPH_VIEW.equals(localPropertyView)) {
-
-								if (AbstractNode.name.equals(localKey)) {
-
-									// replace key
-									localKey = StructrApp.getConfiguration().getPropertyKeyForJSONName(source.getClass(), AbstractNode.name.jsonName(), false);
-								}
-							}
-
+							// the key to read the value from, differs from key in the internal _graph view
+							final PropertyKey localKey = plan.getLocalKey(i);
 
 							final Object value = source.getProperty(localKey, range);
 							if (value != null) {
 
 								if (!(reduceRedundancy && visitedObjects.contains(value.hashCode()))) {
 
-									writer.name(key.jsonName());
-									serializeProperty(writer, localKey, value, localPropertyView, depth+1);
+									writer.name(plan.getJsonName(i));
+									serializeProperty(writer, localKey, value, localPropertyView, depth+1, plan.hasConverter(i));
 								}
 
 							} else {
@@ -527,7 +555,9 @@ public abstract class StreamingWriter {
 			writer.endObject(source);
 
 			// unmark (visiting only counts for children)
-			visitedObjects.remove(hashCode);
+			if (reduceRedundancy) {
+				visitedObjects.remove(hashCode);
+			}
 		}
 	}
 
@@ -541,6 +571,8 @@ public abstract class StreamingWriter {
 			// prevent endless recursion by pruning at depth n
 			if (depth <= outputNestingDepth) {
 
+				prefetchRelationships(value, localPropertyView, depth);
+
 				for (Object o : value) {
 
 					serializeRoot(writer, o, localPropertyView, depth);
@@ -72,6 +72,7 @@ import org.structr.core.Services;
 import org.structr.core.auth.SuperUserAuthenticator;
 import org.structr.rest.DefaultResourceProvider;
 import org.structr.rest.ResourceProvider;
+import org.structr.rest.auth.SessionIndex;
 import org.structr.rest.servlet.JsonRestServlet;
 import org.tuckey.web.filters.urlrewrite.UrlRewriteFilter;
 
@@ -291,6 +292,10 @@ public class HttpService implements RunnableService {
 			logger.warn("Could not set custom session manager with session store directory {}/sessions", baseDir);
 		}
 
+		// keep the session index in step with the session lifecycle
+		hashSessionManager.addEventListener(SessionIndex.getInstance());
+		SessionIndex.initialize();
+
 		servletContext.getSessionHandler().setSessionManager(hashSessionManager);
 
 		if (enableRewriteFilter) {
@@ -21,19 +21,27 @@ package org.structr.rest.servlet;
 import au.com.bytecode.opencsv.CSVParser;
 import com.google.gson.JsonParseException;
 import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonWriter;
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.Reader;
 import java.io.StringReader;
 import java.io.UnsupportedEncodingException;
 import java.io.Writer;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Pattern;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
@@ -77,6 +85,9 @@ public class CsvServlet extends HttpServlet implements HttpServiceServlet {
 	private static final String DELIMITER = ";";
 	private static final String REMOVE_LINE_BREAK_PARAM = "nolinebreaks";
 	private static final String WRITE_BOM = "bom";
+	private static final String BATCH_SIZE_PARAM = "batchSize";
+	private static final String THREADS_PARAM = "threads";
+	private static final int MAX_BATCH_RETRIES = 10;
 
 	//~--- fields ---------------------------------------------------------
 	private final Map<Pattern, Class<? extends Resource>> resourceMap = new LinkedHashMap<>();
@@ -293,8 +304,13 @@ public class CsvServlet extends HttpServlet implements HttpServiceServlet {
 			response.setCharacterEncoding("UTF-8");
 			response.setContentType("application/json; charset=utf-8");
 
+			// streaming import in batches if a batch size is given
+			final int batchSize = Services.parseInt(request.getParameter(BATCH_SIZE_PARAM), 0);
+			final int threads   = Math.max(1, Math.min(Services.parseInt(request.getParameter(THREADS_PARAM), 1), Runtime.getRuntime().availableProcessors()));
+
 			// get reader before initalizing security context
-			final String input = IOUtils.toString(request.getReader());
+			final BufferedReader reader = new BufferedReader(request.getReader());
+			final String input          = batchSize > 0 ? null : IOUtils.toString(reader);
 
 			// isolate request authentication in a transaction
 			try (final Tx tx = StructrApp.getInstance().tx()) {
@@ -315,6 +331,14 @@ public class CsvServlet extends HttpServlet implements HttpServiceServlet {
 					tx.success();
 				}
 
+				if (batchSize > 0) {
+
+					// no enclosing transaction, each batch is committed on its own
+					doStreamingPost(app, resource, reader, response, batchSize, threads);
+
+					return;
+				}
+
 				// isolate doPost
 				boolean retry = true;
 				while (retry) {
@@ -325,7 +349,7 @@ public class CsvServlet extends HttpServlet implements HttpServiceServlet {
 
 						try (final Tx tx = app.tx()) {
 
-							for (final JsonInput propertySet : cleanAndParseCSV(input)) {
+							for (final JsonInput propertySet : cleanAndParseCSV(new StringReader(input))) {
 
 								results.add(resource.doPost(convertPropertySetToMap(propertySet)));
 							}
@@ -340,7 +364,7 @@ public class CsvServlet extends HttpServlet implements HttpServiceServlet {
 
 						try {
 
-							for (final JsonInput propertySet : cleanAndParseCSV(input)) {
+							for (final JsonInput propertySet : cleanAndParseCSV(new StringReader(input))) {
 
 								results.add(resource.doPost(convertPropertySetToMap(propertySet)));
 							}
@@ -542,9 +566,9 @@ public class CsvServlet extends HttpServlet implements HttpServiceServlet {
 
 	}
 
-	private Iterable<JsonInput> cleanAndParseCSV(final String input) throws FrameworkException, IOException {
+	private Iterable<JsonInput> cleanAndParseCSV(final Reader input) throws FrameworkException, IOException {
 
-		final BufferedReader reader  = new BufferedReader(new StringReader(input));
+		final BufferedReader reader  = input instanceof BufferedReader ? (BufferedReader)input : new BufferedReader(input);
 		final String headerLine      = reader.readLine();
 		final CSVParser parser       = new CSVParser();
 		final String[] propertyNames = parser.parseLine(headerLine);
@@ -561,17 +585,20 @@ public class CsvServlet extends HttpServlet implements HttpServiceServlet {
 					@Override
 					public boolean hasNext() {
 
-						try {
+						// read ahead only if the current line was consumed, so
+						// hasNext() can be called any number of times per row
+						if (line == null) {
 
-							line = reader.readLine();
+							try {
 
-							return StringUtils.isNotBlank(line);
+								line = reader.readLine();
 
-						} catch (IOException ioex) {
-							logger.warn("", ioex);
+							} catch (IOException ioex) {
+								logger.warn("", ioex);
+							}
 						}
 
-						return false;
+						return StringUtils.isNotBlank(line);
 					}
 
 					@Override
@@ -579,7 +606,7 @@ public class CsvServlet extends HttpServlet implements HttpServiceServlet {
 
 						try {
 
-							if (StringUtils.isNotBlank(line)) {
+							if (hasNext()) {
 
 								final JsonInput jsonInput = new JsonInput();
 								final String[] columns    = parser.parseLine(line);
@@ -591,6 +618,8 @@ public class CsvServlet extends HttpServlet implements HttpServiceServlet {
 									jsonInput.add(key, columns[i]);
 								}
 
+								line = null;
+
 								return jsonInput;
 							}
 
@@ -611,6 +640,233 @@ public class CsvServlet extends HttpServlet implements HttpServiceServlet {
 		};
 	}
 
+	/**
+	 * Imports the rows of the given CSV input in batches of the given size,
+	 * each in its own transaction. Rows are parsed while they are read from
+	 * the request, so only the current batches are held in memory. The
+	 * result of each batch is written to the response as soon as it is
+	 * known, followed by a summary.
+	 *
+	 * With more than one thread, batches are handed over to a worker pool
+	 * and committed in parallel. This is only safe if the rows don't depend
+	 * on each other. At most two batches per thread are held in memory,
+	 * and batch results are written in input order.
+	 *
+	 * A batch that fails because of a conflict with another transaction is
+	 * retried. A batch that fails for other reasons is rolled back and
+	 * reported, and the import continues with the next batch. An error
+	 * that aborts the whole import is reported in the response as well,
+	 * because the status code has already been sent at that point.
+	 *
+	 * @param app
+	 * @param resource
+	 * @param input
+	 * @param response
+	 * @param batchSize the number of rows per transaction
+	 * @param threads the number of worker threads
+	 * @throws FrameworkException
+	 * @throws IOException
+	 */
+	private void doStreamingPost(final App app, final Resource resource, final Reader input, final HttpServletResponse response, final int batchSize, final int threads) throws FrameworkException, IOException {
+
+		final Iterator<JsonInput> rows           = cleanAndParseCSV(input).iterator();
+		final LinkedList<Future<BatchResult>> queue = new LinkedList<>();
+		final ExecutorService executor           = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+		final JsonWriter writer                  = new JsonWriter(response.getWriter());
+		final BatchResult total                  = new BatchResult(0, 0);
+		final long start                         = System.currentTimeMillis();
+		FrameworkException error                 = null;
+		long row                                 = 0;
+		int batch                                = 0;
+
+		response.setStatus(HttpServletResponse.SC_OK);
+
+		writer.setIndent("	");
+		writer.beginObject();
+		writer.name("batches");
+		writer.beginArray();
+
+		try {
+
+			while (rows.hasNext()) {
+
+				final List<Map<String, Object>> data = new ArrayList<>(batchSize);
+				final BatchResult result             = new BatchResult(batch++, row + 1);
+
+				while (data.size() < batchSize && rows.hasNext()) {
+
+					data.add(convertPropertySetToMap(rows.next()));
+				}
+
+				row += data.size();
+
+				final Callable<BatchResult> task = () -> importBatch(app, resource, data, result);
+
+				if (executor != null) {
+
+					queue.add(executor.submit(task));
+
+					// write finished batches in order, block if too many batches are pending
+					while (!queue.isEmpty() && (queue.peek().isDone() || queue.size() >= threads * 2)) {
+
+						writeBatchResult(writer, getBatchResult(queue.poll()), total);
+					}
+
+				} else {
+
+					writeBatchResult(writer, task.call(), total);
+				}
+			}
+
+			while (!queue.isEmpty()) {
+
+				writeBatchResult(writer, getBatchResult(queue.poll()), total);
+			}
+
+		} catch (FrameworkException fex) {
+
+			error = fex;
+
+		} catch (Throwable t) {
+
+			error = new FrameworkException(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, t.getMessage());
+
+		} finally {
+
+			if (executor != null) {
+				executor.shutdownNow();
+			}
+		}
+
+		writer.endArray();
+
+		// the status code and the first batches have already been sent, so
+		// an error that aborts the import can only be reported in the stream
+		if (error != null) {
+
+			logger.warn("CSV import aborted after {} rows: {}", row, error.getMessage());
+
+			writer.name("error");
+			gson.get().toJson(error, FrameworkException.class, writer);
+		}
+
+		writer.name("result");
+		writer.beginObject();
+		writer.name("batches").value(batch);
+		writer.name("rows").value(row);
+		writer.name("created").value(total.created);
+		writer.name("failed").value(total.failed);
+		writer.name("retries").value(total.retries);
+		writer.name("time").value(System.currentTimeMillis() - start);
+		writer.endObject();
+
+		writer.endObject();
+		writer.flush();
+
+		logger.info("CSV import: {} rows in {} batches, {} created, {} failed in {} ms", row, batch, total.created, total.failed, System.currentTimeMillis() - start);
+	}
+
+	private BatchResult importBatch(final App app, final Resource resource, final List<Map<String, Object>> data, final BatchResult result) {
+
+		boolean retry = true;
+
+		while (retry) {
+
+			retry = false;
+
+			try {
+
+				if (resource.createPostTransaction()) {
+
+					try (final Tx tx = app.tx()) {
+
+						for (final Map<String, Object> properties : data) {
+
+							resource.doPost(properties);
+						}
+
+						tx.success();
+					}
+
+				} else {
+
+					for (final Map<String, Object> properties : data) {
+
+						resource.doPost(properties);
+					}
+				}
+
+				result.created = data.size();
+
+			} catch (RetryException rex) {
+
+				if (result.retries++ < MAX_BATCH_RETRIES) {
+
+					retry = true;
+
+				} else {
+
+					result.failed = data.size();
+					result.error  = new FrameworkException(HttpServletResponse.SC_CONFLICT, rex.getMessage());
+				}
+
+			} catch (FrameworkException fex) {
+
+				result.failed = data.size();
+				result.error  = fex;
+
+			} catch (Throwable t) {
+
+				logger.warn("Exception in CSV import batch {}: {}", result.batch, t.getMessage());
+
+				result.failed = data.size();
+				result.error  = new FrameworkException(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, t.getMessage());
+			}
+		}
+
+		result.rows = data.size();
+
+		return result;
+	}
+
+	private BatchResult getBatchResult(final Future<BatchResult> future) throws FrameworkException, InterruptedException {
+
+		try {
+
+			return future.get();
+
+		} catch (ExecutionException ex) {
+
+			throw new FrameworkException(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, ex.getCause().getMessage());
+		}
+	}
+
+	private void writeBatchResult(final JsonWriter writer, final BatchResult result, final BatchResult total) throws IOException {
+
+		total.created += result.created;
+		total.failed  += result.failed;
+		total.retries += result.retries;
+
+		writer.beginObject();
+		writer.name("batch").value(result.batch);
+		writer.name("firstRow").value(result.firstRow);
+		writer.name("rows").value(result.rows);
+		writer.name("created").value(result.created);
+		writer.name("retries").value(result.retries);
+
+		if (result.error != null) {
+
+			writer.name("failed").value(result.failed);
+			writer.name("error");
+			gson.get().toJson(result.error, FrameworkException.class, writer);
+		}
+
+		writer.endObject();
+
+		// flush each batch so the client can follow the progress
+		writer.flush();
+	}
+
 	private Map<String, Object> convertPropertySetToMap(JsonInput propertySet) {
 
 		if (propertySet != null) {
@@ -620,6 +876,23 @@ public class CsvServlet extends HttpServlet implements HttpServiceServlet {
 		return new LinkedHashMap<>();
 	}
 	// <editor-fold defaultstate="collapsed" desc="nested classes">
+	private static class BatchResult {
+
+		private FrameworkException error = null;
+		private long firstRow            = 0;
+		private int batch                = 0;
+		private int rows                 = 0;
+		private long created             = 0;
+		private long failed              = 0;
+		private int retries              = 0;
+
+		public BatchResult(final int batch, final long firstRow) {
+
+			this.batch    = batch;
+			this.firstRow = firstRow;
+		}
+	}
+
 	private class ThreadLocalPropertyView extends ThreadLocal<String> implements Value<String> {
 
 		@Override
@@ -22,12 +22,17 @@ import com.jayway.restassured.RestAssured;
 import com.jayway.restassured.filter.log.ResponseLoggingFilter;
 import com.jayway.restassured.internal.RestAssuredResponseImpl;
 import static junit.framework.TestCase.assertEquals;
+import static org.hamcrest.Matchers.equalTo;
 import org.apache.commons.lang3.StringEscapeUtils;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.graph.Tx;
+import org.structr.rest.entity.TestOne;
 import org.structr.rest.service.HttpServiceServlet;
 import org.structr.rest.servlet.CsvServlet;
 
@@ -189,4 +194,52 @@ public class CsvTest extends StructrCsvTest {
 		assertEquals(expected, resultString);
 	}
 
+
+	/**
+	 * Test streaming CSV import in batches
+	 */
+	@Test
+	public void test03StreamingCsvImport() {
+
+		final StringBuilder csv = new StringBuilder("name,anInt\n");
+
+		for (int i=0; i<25; i++) {
+			csv.append("TestOne-").append(i).append(",").append(i).append("\n");
+		}
+
+		RestAssured
+
+			.given()
+				.contentType("text/csv; charset=UTF-8")
+				.body(csv.toString())
+				.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(400))
+				.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(500))
+			.expect()
+				.statusCode(200)
+				.body("batches.size()",     equalTo(3))
+				.body("batches[0].rows",    equalTo(10))
+				.body("batches[2].firstRow", equalTo(21))
+				.body("batches[2].rows",    equalTo(5))
+				.body("result.rows",        equalTo(25))
+				.body("result.created",     equalTo(25))
+				.body("result.failed",      equalTo(0))
+			.when()
+				.post("http://" + host + ":" + httpPort + csvUrl + "/test_one?batchSize=10&threads=2");
+
+		try (final Tx tx = app.tx()) {
+
+			assertEquals(25, app.nodeQuery(TestOne.class).getAsList().size());
+
+			// the rows at the batch boundaries must not be lost
+			assertNotNull(app.nodeQuery(TestOne.class).andName("TestOne-10").getFirst());
+			assertNotNull(app.nodeQuery(TestOne.class).andName("TestOne-20").getFirst());
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			logger.warn("", fex);
+			fail("Unexpected exception");
+		}
+	}
 }
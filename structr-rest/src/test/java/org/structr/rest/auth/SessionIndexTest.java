@@ -0,0 +1,149 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.rest.auth;
+
+import java.util.Map;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.entity.Principal;
+import org.structr.core.graph.NodeAttribute;
+import org.structr.core.graph.Tx;
+import org.structr.rest.common.StructrRestTest;
+import org.structr.rest.entity.TestUser;
+
+/**
+ *
+ *
+ */
+public class SessionIndexTest extends StructrRestTest {
+
+	private static final Logger logger = LoggerFactory.getLogger(SessionIndexTest.class.getName());
+
+	@Test
+	public void testSessionIndex() {
+
+		final SessionIndex index = SessionIndex.getInstance();
+		String uuid              = null;
+
+		index.clear();
+
+		try (final Tx tx = app.tx()) {
+
+			uuid = app.create(TestUser.class,
+				new NodeAttribute<>(TestUser.name, "tester"),
+				new NodeAttribute<>(Principal.sessionIds, new String[] { "session1" })
+			).getUuid();
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			logger.warn("", fex);
+			fail("Unexpected exception");
+		}
+
+		try (final Tx tx = app.tx()) {
+
+			final Map<String, Object> before = index.getStatistics();
+
+			// indexed by the transaction listener, no query needed
+			assertEquals("Invalid principal for session id", uuid, index.getPrincipal("session1").getUuid());
+			assertEquals("Session id lookup was not served from the index", getLong(before, "hits") + 1, getLong(index.getStatistics(), "hits"));
+			assertEquals("Session id lookup was not served from the index", getLong(before, "misses"), getLong(index.getStatistics(), "misses"));
+
+			// unknown session ids are queried once and remembered
+			assertNull("Invalid principal for unknown session id", index.getPrincipal("session2"));
+			assertNull("Invalid principal for unknown session id", index.getPrincipal("session2"));
+			assertTrue("Unknown session id was not remembered", index.isUnknown("session2"));
+			assertEquals("Unknown session id was queried twice", getLong(before, "misses") + 1, getLong(index.getStatistics(), "misses"));
+			assertEquals("Unknown session id was queried twice", getLong(before, "unknownHits") + 1, getLong(index.getStatistics(), "unknownHits"));
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			logger.warn("", fex);
+			fail("Unexpected exception");
+		}
+
+		// a session id that was unknown before is found after it was added to a principal
+		try (final Tx tx = app.tx()) {
+
+			app.get(TestUser.class, uuid).setProperty(Principal.sessionIds, new String[] { "session2" });
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			logger.warn("", fex);
+			fail("Unexpected exception");
+		}
+
+		try (final Tx tx = app.tx()) {
+
+			assertFalse("Session id still marked as unknown", index.isUnknown("session2"));
+			assertEquals("Invalid principal for new session id", uuid, index.getPrincipal("session2").getUuid());
+			assertNull("Removed session id still resolves to principal", index.getPrincipal("session1"));
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			logger.warn("", fex);
+			fail("Unexpected exception");
+		}
+
+		// deleting the principal removes its session ids
+		try (final Tx tx = app.tx()) {
+
+			app.delete(app.get(TestUser.class, uuid));
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			logger.warn("", fex);
+			fail("Unexpected exception");
+		}
+
+		try (final Tx tx = app.tx()) {
+
+			assertNull("Session id of deleted principal still resolves", index.getPrincipal("session2"));
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			logger.warn("", fex);
+			fail("Unexpected exception");
+		}
+	}
+
+	// ----- private methods -----
+	private long getLong(final Map<String, Object> statistics, final String key) {
+		return ((Number)statistics.get(key)).longValue();
+	}
+}
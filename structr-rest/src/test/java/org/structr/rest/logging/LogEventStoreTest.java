@@ -0,0 +1,103 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.rest.logging;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that the log event store keeps only a bounded number of segments
+ * mapped.
+ */
+public class LogEventStoreTest {
+
+	private static final long DAY = 24L * 60 * 60 * 1000;
+
+	private Path directory = null;
+
+	@Before
+	public void createDirectory() throws Exception {
+		directory = Files.createTempDirectory("structr-log-events");
+	}
+
+	@After
+	public void deleteDirectory() throws Exception {
+		FileUtils.deleteDirectory(directory.toFile());
+	}
+
+	@Test
+	public void testSegmentsAreMappedOnDemand() throws Exception {
+
+		final int days = LogEventStore.MAX_MAPPED_SEGMENTS + 8;
+
+		// one segment per day
+		try (final LogEventStore store = new LogEventStore(directory)) {
+
+			for (int i=0; i<days; i++) {
+				store.append(i * DAY, "subject", "object" + i, "VIEW", "message" + i);
+			}
+
+			assertTrue("Too many segments mapped", store.getMappedSegmentCount() <= LogEventStore.MAX_MAPPED_SEGMENTS);
+		}
+
+		try (final LogEventStore store = new LogEventStore(directory)) {
+
+			// reopening the store only reads the segment headers
+			assertEquals(0, store.getMappedSegmentCount());
+
+			// segments outside of the requested range are not mapped
+			assertEquals(1, toList(store.query(null, null, null, 0L, DAY - 1)).size());
+			assertEquals(1, store.getMappedSegmentCount());
+
+			final List<LogEventRecord> records = toList(store.query("subject", null, "VIEW", 0L, Long.MAX_VALUE));
+
+			assertEquals(days, records.size());
+			assertTrue("Too many segments mapped", store.getMappedSegmentCount() <= LogEventStore.MAX_MAPPED_SEGMENTS);
+
+			// messages of released segments can still be read
+			for (int i=0; i<days; i++) {
+
+				final LogEventRecord record = records.get(i);
+
+				assertEquals("object" + i,  record.getObjectId());
+				assertEquals("message" + i, record.getMessage());
+			}
+		}
+	}
+
+	// ----- private methods -----
+	private List<LogEventRecord> toList(final Iterable<LogEventRecord> iterable) {
+
+		final List<LogEventRecord> list = new ArrayList<>();
+
+		for (final LogEventRecord record : iterable) {
+			list.add(record);
+		}
+
+		return list;
+	}
+}
@@ -0,0 +1,163 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.rest.test;
+
+import com.jayway.restassured.RestAssured;
+import com.jayway.restassured.filter.log.ResponseLoggingFilter;
+import static org.hamcrest.Matchers.*;
+import org.junit.Test;
+import org.structr.rest.common.StructrRestTest;
+
+/**
+ *
+ *
+ */
+public class LogResourceTest extends StructrRestTest {
+
+	@Test
+	public void test01StoreAndQueryLogEvents() {
+
+		logEvent("subject1", "object1", "read",  "pages=3");
+		logEvent("subject1", "object1", "read",  "pages=5");
+		logEvent("subject1", "object2", "write", "pages=1");
+		logEvent("subject2", "object1", "read",  "pages=2");
+
+		// overview
+		RestAssured
+
+			.given()
+				.contentType("application/json; charset=UTF-8")
+				.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(500))
+
+			.expect()
+				.statusCode(200)
+
+				.body("result[0].entryCount", greaterThanOrEqualTo(4))
+
+			.when()
+				.get(concat("/log"));
+
+		// subject and object
+		RestAssured
+
+			.given()
+				.contentType("application/json; charset=UTF-8")
+				.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(500))
+
+			.expect()
+				.statusCode(200)
+
+				.body("result_count",     equalTo(2))
+				.body("result[0].message", equalTo("pages=3"))
+				.body("result[1].message", equalTo("pages=5"))
+
+			.when()
+				.get(concat("/log?subject=subject1&object=object1"));
+
+		// object only, subject and object are swapped in the result
+		RestAssured
+
+			.given()
+				.contentType("application/json; charset=UTF-8")
+				.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(500))
+
+			.expect()
+				.statusCode(200)
+
+				.body("result_count",     equalTo(3))
+				.body("result.object",    everyItem(isOneOf("subject1", "subject2")))
+
+			.when()
+				.get(concat("/log?object=object1"));
+
+		// unknown subject
+		RestAssured
+
+			.given()
+				.contentType("application/json; charset=UTF-8")
+				.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(500))
+
+			.expect()
+				.statusCode(200)
+
+				.body("result_count",     equalTo(0))
+
+			.when()
+				.get(concat("/log?subject=unknown"));
+	}
+
+	@Test
+	public void test02AggregateLogEvents() {
+
+		logEvent("subject3", "object3", "view",  "pages=3");
+		logEvent("subject3", "object4", "view",  "pages=5");
+		logEvent("subject4", "object3", "view",  "other");
+		logEvent("subject4", "object3", "print", "pages=1");
+
+		// all view events fall into the same year
+		RestAssured
+
+			.given()
+				.contentType("application/json; charset=UTF-8")
+				.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(500))
+
+			.expect()
+				.statusCode(200)
+
+				.body("result[0].values().total", contains(3))
+				.body("result[0].values().pages", contains(2))
+
+			.when()
+				.get(concat("/log?action=view&aggregate=yyyy&pages=pages=.*"));
+
+		// histogram with multiplier
+		RestAssured
+
+			.given()
+				.contentType("application/json; charset=UTF-8")
+				.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(500))
+
+			.expect()
+				.statusCode(200)
+
+				.body("result[0].values().total", contains(3))
+				.body("result[0].values().pages", contains(8))
+
+			.when()
+				.get(concat("/log?action=view&aggregate=yyyy&histogram=(pages)=.*&multiplier=pages=(.*)"));
+	}
+
+	// ----- private methods -----
+	private void logEvent(final String subject, final String object, final String action, final String message) {
+
+		RestAssured
+
+			.given()
+				.contentType("application/json; charset=UTF-8")
+				.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(422))
+				.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(500))
+				.body("{ subject: '" + subject + "', object: '" + object + "', action: '" + action + "', message: '" + message + "' }")
+
+			.expect()
+				.statusCode(201)
+
+			.when()
+				.post(concat("/log"));
+	}
+}
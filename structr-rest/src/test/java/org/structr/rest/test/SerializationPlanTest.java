@@ -0,0 +1,89 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.rest.test;
+
+import com.jayway.restassured.RestAssured;
+import com.jayway.restassured.filter.log.ResponseLoggingFilter;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.graph.Tx;
+import org.structr.rest.common.StructrRestTest;
+import org.structr.rest.entity.TestOne;
+import org.structr.rest.serialization.SerializationPlan;
+
+/**
+ * Serializes larger results through the cached serialization plans.
+ */
+public class SerializationPlanTest extends StructrRestTest {
+
+	private static final Logger logger = LoggerFactory.getLogger(SerializationPlanTest.class.getName());
+
+	@Test
+	public void test01SerializeLargeResult() {
+
+		try (final Tx tx = app.tx()) {
+
+			int i = 0;
+
+			for (final TestOne test : createTestNodes(TestOne.class, 500)) {
+
+				test.setProperty(TestOne.name,  "test" + i);
+				test.setProperty(TestOne.anInt, i++);
+			}
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			logger.warn("", fex);
+			fail("Unexpected exception");
+		}
+
+		final long hitsBefore = (Long)SerializationPlan.getStatistics().get("hits");
+
+		// serialize twice, the second request must render the same output from the cached plan
+		for (int i=0; i<2; i++) {
+
+			RestAssured
+
+				.given()
+					.contentType("application/json; charset=UTF-8")
+					.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(500))
+				.expect()
+					.statusCode(200)
+					.body("result_count",      equalTo(500))
+					.body("result",            hasSize(500))
+					.body("result[0]",         isEntity(TestOne.class))
+					.body("result[0].name",    equalTo("test0"))
+					.body("result[0].anInt",   equalTo(0))
+					.body("result[499].name",  equalTo("test499"))
+					.body("result[499].anInt", equalTo(499))
+					.body("result[499].aDate", nullValue())
+				.when()
+					.get("/test_one?sort=anInt&pageSize=1000");
+		}
+
+		assertTrue("Serialization plans were not reused", (Long)SerializationPlan.getStatistics().get("hits") > hitsBefore);
+	}
+}
@@ -0,0 +1,265 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.common;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.structr.api.util.Statistics;
+import org.structr.core.Services;
+import org.structr.core.app.StructrApp;
+
+/**
+ * Cache of open, read-only file channels for frequently downloaded files.
+ *
+ * Channels are reference-counted: a channel that is evicted while a
+ * download is still using it is closed when the last user releases it.
+ * Size and modification time of the file are checked on every lookup, so
+ * a file that was replaced on disk gets a new channel.
+ */
+public class FileChannelCache {
+
+	private static final Logger logger       = LoggerFactory.getLogger(FileChannelCache.class.getName());
+	private static FileChannelCache instance = null;
+
+	private final Map<Path, Entry> entries   = new LinkedHashMap<Path, Entry>(16, 0.75f, true) {
+
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry<Path, Entry> eldest) {
+
+			if (size() > maxSize) {
+
+				eldest.getValue().evict();
+				evictions.incrementAndGet();
+
+				return true;
+			}
+
+			return false;
+		}
+	};
+	private final AtomicLong hits            = new AtomicLong();
+	private final AtomicLong misses          = new AtomicLong();
+	private final AtomicLong evictions       = new AtomicLong();
+	private final int maxSize;
+
+	FileChannelCache(final int maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	public static synchronized FileChannelCache getInstance() {
+
+		if (instance == null) {
+
+			instance = new FileChannelCache(Services.parseInt(StructrApp.getConfigurationValue(Services.APPLICATION_FILESYSTEM_CHANNEL_CACHE_SIZE), 128));
+
+			Statistics.register("fileChannelCache", instance::getStatistics);
+		}
+
+		return instance;
+	}
+
+	/**
+	 * Returns an open channel for the given file. The caller must close
+	 * the returned handle when the channel is not needed any more.
+	 *
+	 * @param path the file on disk
+	 * @return a handle to an open channel
+	 * @throws IOException if the file cannot be opened
+	 */
+	public Handle acquire(final Path path) throws IOException {
+
+		final BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+		final long size                      = attributes.size();
+		final long lastModified              = attributes.lastModifiedTime().toMillis();
+
+		synchronized (this) {
+
+			final Entry existing = entries.get(path);
+			if (existing != null) {
+
+				if (existing.size == size && existing.lastModified == lastModified) {
+
+					hits.incrementAndGet();
+
+					return existing.acquire();
+				}
+
+				// file was modified, don't reuse the channel
+				entries.remove(path);
+				existing.evict();
+			}
+		}
+
+		misses.incrementAndGet();
+
+		final Entry entry = new Entry(FileChannel.open(path, StandardOpenOption.READ), size, lastModified);
+		final Handle handle = entry.acquire();
+
+		synchronized (this) {
+
+			final Entry previous = entries.put(path, entry);
+			if (previous != null && previous != entry) {
+
+				previous.evict();
+			}
+		}
+
+		return handle;
+	}
+
+	/**
+	 * Closes the cached channel of the given file, e.g. when the file
+	 * is deleted.
+	 *
+	 * @param path the file on disk
+	 */
+	public synchronized void invalidate(final Path path) {
+
+		final Entry entry = entries.remove(path);
+		if (entry != null) {
+
+			entry.evict();
+		}
+	}
+
+	public synchronized void clear() {
+
+		for (final Entry entry : entries.values()) {
+			entry.evict();
+		}
+
+		entries.clear();
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public Map<String, Object> getStatistics() {
+
+		final Map<String, Object> data = new LinkedHashMap<>();
+		final long hitCount            = hits.get();
+		final long total               = hitCount + misses.get();
+
+		data.put("size",      size());
+		data.put("maxSize",   maxSize);
+		data.put("hits",      hitCount);
+		data.put("misses",    misses.get());
+		data.put("hitRate",   total > 0 ? (double)hitCount / (double)total : 0.0);
+		data.put("evictions", evictions.get());
+
+		return data;
+	}
+
+	// ----- nested classes -----
+	/**
+	 * A reference to a cached channel, must be closed after use.
+	 */
+	public static class Handle implements AutoCloseable {
+
+		private final Entry entry;
+		private boolean closed = false;
+
+		private Handle(final Entry entry) {
+			this.entry = entry;
+		}
+
+		public FileChannel getChannel() {
+			return entry.channel;
+		}
+
+		/**
+		 * Returns the size of the file at the time it was opened.
+		 *
+		 * @return the size in bytes
+		 */
+		public long getSize() {
+			return entry.size;
+		}
+
+		@Override
+		public void close() {
+
+			if (!closed) {
+
+				closed = true;
+				entry.release();
+			}
+		}
+	}
+
+	private static class Entry {
+
+		private final FileChannel channel;
+		private final long lastModified;
+		private final long size;
+		private boolean evicted = false;
+		private int references  = 0;
+
+		public Entry(final FileChannel channel, final long size, final long lastModified) {
+
+			this.channel      = channel;
+			this.size         = size;
+			this.lastModified = lastModified;
+		}
+
+		public synchronized Handle acquire() {
+
+			references++;
+
+			return new Handle(this);
+		}
+
+		public synchronized void release() {
+
+			references--;
+			closeIfUnused();
+		}
+
+		public synchronized void evict() {
+
+			evicted = true;
+			closeIfUnused();
+		}
+
+		private void closeIfUnused() {
+
+			if (evicted && references <= 0) {
+
+				try {
+
+					channel.close();
+
+				} catch (IOException ioex) {
+
+					logger.debug("Unable to close file channel", ioex);
+				}
+			}
+		}
+	}
+}
@@ -18,16 +18,22 @@
  */
 package org.structr.web.common;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
-import java.util.UUID;
+import java.util.zip.CRC32;
 import javax.activation.MimetypesFileTypeMap;
 import net.sf.jmimemagic.Magic;
 import net.sf.jmimemagic.MagicException;
@@ -48,6 +54,7 @@ import org.structr.core.app.App;
 import org.structr.core.app.StructrApp;
 import org.structr.core.entity.AbstractNode;
 import org.structr.core.entity.LinkedTreeNode;
+import org.structr.core.graph.NodeServiceCommand;
 import org.structr.core.property.PropertyMap;
 import org.structr.util.Base64;
 import org.structr.web.entity.AbstractFile;
@@ -63,6 +70,8 @@ import org.structr.web.entity.Folder;
 public class FileHelper {
 
 	private static final String UNKNOWN_MIME_TYPE = "application/octet-stream";
+	private static final int BUFFER_SIZE          = 64 * 1024;
+	private static final int SNIFF_LENGTH         = 8 * 1024;
 	private static final Logger logger = LoggerFactory.getLogger(FileHelper.class.getName());
 	private static final MimetypesFileTypeMap mimeTypeMap = new MimetypesFileTypeMap(FileHelper.class.getResourceAsStream("/mime.types"));
 
@@ -133,9 +142,78 @@ public class FileHelper {
 	public static <T extends org.structr.web.entity.FileBase> T createFile(final SecurityContext securityContext, final InputStream fileStream, final String contentType, final Class<T> fileType, final String name)
 		throws FrameworkException, IOException {
 
-		final byte[] data = IOUtils.toByteArray(fileStream);
-		return createFile(securityContext, data, contentType, fileType, name);
+		final StoredFile storedFile = storeFile(fileStream);
 
+		try {
+
+			return createFile(securityContext, storedFile, contentType, fileType, name);
+
+		} catch (FrameworkException | IOException | RuntimeException ex) {
+
+			storedFile.delete();
+			throw ex;
+		}
+	}
+
+	/**
+	 * Create a new file node for data that was already written to the file
+	 * storage with {@link #storeFile(java.io.InputStream)}. The node gets
+	 * the UUID of the stored data, so it references the file on disk
+	 * without copying it.
+	 *
+	 * @param <T>
+	 * @param securityContext
+	 * @param storedFile
+	 * @param contentType if null, try to auto-detect content type
+	 * @param fileType defaults to File.class if null
+	 * @param name
+	 * @return file
+	 * @throws FrameworkException
+	 * @throws IOException
+	 */
+	public static <T extends org.structr.web.entity.FileBase> T createFile(final SecurityContext securityContext, final StoredFile storedFile, final String contentType, final Class<T> fileType, final String name)
+		throws FrameworkException, IOException {
+
+		final PropertyMap props = new PropertyMap();
+
+		props.put(GraphObject.id, storedFile.getUuid());
+		props.put(AbstractNode.name, name);
+		props.put(FileBase.contentType, contentType != null ? contentType : getContentMimeType(storedFile.getFile(), name, storedFile.getHead()));
+		props.put(FileBase.checksum, storedFile.getChecksum());
+		props.put(FileBase.size, storedFile.getSize());
+		props.put(FileBase.version, 1);
+
+		final Class type = fileType != null ? fileType : org.structr.dynamic.File.class;
+
+		return (T) StructrApp.getInstance(securityContext).create(type, props);
+	}
+
+	/**
+	 * Write the given stream to a new file in the file storage, computing
+	 * size and checksum in the same pass. The stream is copied in chunks,
+	 * so the memory used does not depend on the size of the data.
+	 *
+	 * The returned UUID must be used for the file node that references the
+	 * data, see {@link #createFile(org.structr.common.SecurityContext, org.structr.web.common.FileHelper.StoredFile, java.lang.String, java.lang.Class, java.lang.String)}.
+	 *
+	 * @param fileStream
+	 * @return the stored file
+	 * @throws IOException
+	 */
+	public static StoredFile storeFile(final InputStream fileStream) throws IOException {
+
+		final String uuid   = NodeServiceCommand.getNextUuid();
+		final File onDisk   = new java.io.File(getFilePath(FileBase.getDirectoryPath(uuid), "/", uuid));
+
+		try {
+
+			return writeStream(uuid, fileStream, onDisk);
+
+		} catch (IOException ioex) {
+
+			Files.deleteIfExists(onDisk.toPath());
+			throw ioex;
+		}
 	}
 
 	/**
@@ -210,14 +288,27 @@ public class FileHelper {
 	 * @throws IOException
 	 */
 	public static void setFileData(final FileBase file, final byte[] fileData, final String contentType) throws FrameworkException, IOException {
+		setFileData(file, new ByteArrayInputStream(fileData), contentType);
+	}
 
-		FileHelper.writeToFile(file, fileData);
+	/**
+	 * Write the given stream to the given file node and set checksum and
+	 * size, which are computed while the data is written.
+	 *
+	 * @param file
+	 * @param fileStream
+	 * @param contentType if null, try to auto-detect content type
+	 * @throws FrameworkException
+	 * @throws IOException
+	 */
+	public static void setFileData(final FileBase file, final InputStream fileStream, final String contentType) throws FrameworkException, IOException {
 
-		final PropertyMap map = new PropertyMap();
+		final StoredFile storedFile = writeStream(file.getUuid(), fileStream, prepareFileOnDisk(file));
+		final PropertyMap map       = new PropertyMap();
 
-		map.put(FileBase.contentType, contentType != null ? contentType : getContentMimeType(file));
-		map.put(FileBase.checksum, FileHelper.getChecksum(file));
-		map.put(FileBase.size, FileHelper.getSize(file));
+		map.put(FileBase.contentType, contentType != null ? contentType : getContentMimeType(storedFile.getFile(), file.getProperty(AbstractNode.name), storedFile.getHead()));
+		map.put(FileBase.checksum, storedFile.getChecksum());
+		map.put(FileBase.size, storedFile.getSize());
 		map.put(FileBase.version, 1);
 
 		file.setProperties(file.getSecurityContext(), map);
@@ -306,9 +397,75 @@ public class FileHelper {
 
 	}
 
+	/**
+	 * Data that was written to the file storage, together with the values
+	 * that were computed while writing it.
+	 */
+	public static class StoredFile {
+
+		private final String uuid;
+		private final File file;
+		private final long size;
+		private final long checksum;
+		private final byte[] head;
+
+		public StoredFile(final String uuid, final File file, final long size, final long checksum, final byte[] head) {
+
+			this.uuid     = uuid;
+			this.file     = file;
+			this.size     = size;
+			this.checksum = checksum;
+			this.head     = head;
+		}
+
+		public String getUuid() {
+			return uuid;
+		}
+
+		public File getFile() {
+			return file;
+		}
+
+		public long getSize() {
+			return size;
+		}
+
+		public long getChecksum() {
+			return checksum;
+		}
+
+		/**
+		 * Returns the first bytes of the data, for content type detection.
+		 *
+		 * @return the first bytes
+		 */
+		public byte[] getHead() {
+			return head;
+		}
+
+		/**
+		 * Removes the data from the file storage, for example when the
+		 * file node that should reference it could not be created.
+		 */
+		public void delete() {
+
+			try {
+
+				Files.deleteIfExists(file.toPath());
+
+			} catch (IOException ioex) {
+
+				logger.warn("Unable to delete {}: {}", file, ioex.getMessage());
+			}
+		}
+	}
+
 	/**
 	 * Write binary data to a file and reference the file on disk at the
-	 * given file node
+	 * given file node. The data is streamed into a temporary file next to
+	 * the target which replaces the existing content only after the stream
+	 * has been read completely, so a failed or aborted upload leaves the
+	 * existing file untouched.
 	 *
 	 * @param fileNode
 	 * @param inStream
@@ -317,8 +474,29 @@ public class FileHelper {
 	 */
 	public static void writeToFile(final org.structr.dynamic.File fileNode, final InputStream inStream) throws FrameworkException, IOException {
 
-		writeToFile(fileNode, IOUtils.toByteArray(inStream));
+		final String uuid     = fileNode.getUuid();
+		final File fileOnDisk = prepareFileOnDisk(fileNode);
+		final Path tempFile   = Files.createTempFile(fileOnDisk.getParentFile().toPath(), uuid, ".tmp");
+		final StoredFile storedFile;
+
+		try {
+
+			storedFile = writeStream(uuid, inStream, tempFile.toFile());
+
+			Files.move(tempFile, fileOnDisk.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+		} catch (IOException ioex) {
+
+			Files.deleteIfExists(tempFile);
+			throw ioex;
+		}
+
+		final PropertyMap map = new PropertyMap();
+
+		map.put(FileBase.checksum, storedFile.getChecksum());
+		map.put(FileBase.size, storedFile.getSize());
 
+		fileNode.setProperties(fileNode.getSecurityContext(), map);
 	}
 
 	/**
@@ -333,28 +511,8 @@ public class FileHelper {
 	 */
 	public static File writeToFile(final FileBase fileNode, final byte[] data) throws FrameworkException, IOException {
 
-		final PropertyMap properties = new PropertyMap();
-
-		String id = fileNode.getProperty(GraphObject.id);
-		if (id == null) {
-
-			final String newUuid = UUID.randomUUID().toString().replaceAll("[\\-]+", "");
-			id = newUuid;
-
-			fileNode.unlockSystemPropertiesOnce();
-			properties.put(GraphObject.id, newUuid);
-		}
-
-		properties.put(FileBase.relativeFilePath, FileBase.getDirectoryPath(id) + "/" + id);
-
-		fileNode.unlockSystemPropertiesOnce();
-		fileNode.setProperties(fileNode.getSecurityContext(), properties);
+		final java.io.File fileOnDisk = prepareFileOnDisk(fileNode);
 
-		final String filesPath = Services.getInstance().getConfigurationValue(Services.FILES_PATH);
-
-		java.io.File fileOnDisk = new java.io.File(filesPath + "/" + fileNode.getRelativeFilePath());
-
-		fileOnDisk.getParentFile().mkdirs();
 		FileUtils.writeByteArrayToFile(fileOnDisk, data);
 
 		return fileOnDisk;
@@ -392,6 +550,32 @@ public class FileHelper {
 	 */
 	public static String getContentMimeType(final java.io.File file, final String name) throws IOException {
 
+		final byte[] head = new byte[SNIFF_LENGTH];
+		int headLength    = 0;
+
+		if (file.exists()) {
+
+			try (final InputStream is = new java.io.FileInputStream(file)) {
+
+				headLength = Math.max(0, IOUtils.read(is, head));
+			}
+		}
+
+		return getContentMimeType(file, name, Arrays.copyOf(head, headLength));
+	}
+
+	/**
+	 * Return mime type of given file, using the given first bytes of the
+	 * file content instead of reading the file for magic number detection.
+	 *
+	 * @param file
+	 * @param name
+	 * @param head the first bytes of the file
+	 * @return content type
+	 * @throws java.io.IOException
+	 */
+	public static String getContentMimeType(final java.io.File file, final String name, final byte[] head) throws IOException {
+
 		String mimeType;
 
 		// try name first, if not null
@@ -411,7 +595,7 @@ public class FileHelper {
 
 		// fallback: jmimemagic
 		try {
-			final MagicMatch match = Magic.getMagicMatch(file, false, true);
+			final MagicMatch match = head.length > 0 ? Magic.getMagicMatch(head, true) : null;
 			if (match != null) {
 
 				return match.getMimeType();
@@ -678,4 +862,87 @@ public class FileHelper {
 	public static String getDateString() {
 		return new SimpleDateFormat("yyyy-MM-dd-HHmmss").format(new Date());
 	}
+
+	//~--- private methods ------------------------------------------------
+	/**
+	 * Assign an id and a relative file path to the given file node if
+	 * necessary, and create the parent directories of the file on disk.
+	 */
+	private static File prepareFileOnDisk(final FileBase fileNode) throws FrameworkException {
+
+		final PropertyMap properties = new PropertyMap();
+
+		String id = fileNode.getProperty(GraphObject.id);
+		if (id == null) {
+
+			final String newUuid = NodeServiceCommand.getNextUuid();
+			id = newUuid;
+
+			fileNode.unlockSystemPropertiesOnce();
+			properties.put(GraphObject.id, newUuid);
+		}
+
+		properties.put(FileBase.relativeFilePath, FileBase.getDirectoryPath(id) + "/" + id);
+
+		fileNode.unlockSystemPropertiesOnce();
+		fileNode.setProperties(fileNode.getSecurityContext(), properties);
+
+		final String filesPath = Services.getInstance().getConfigurationValue(Services.FILES_PATH);
+
+		java.io.File fileOnDisk = new java.io.File(filesPath + "/" + fileNode.getRelativeFilePath());
+
+		fileOnDisk.getParentFile().mkdirs();
+
+		return fileOnDisk;
+	}
+
+	/**
+	 * Copy the given stream into the given file through a file channel,
+	 * computing size and CRC32 checksum and keeping the first bytes for
+	 * content type detection in the same pass.
+	 */
+	private static StoredFile writeStream(final String uuid, final InputStream fileStream, final File fileOnDisk) throws IOException {
+
+		final byte[] buffer     = new byte[BUFFER_SIZE];
+		final ByteBuffer wrap   = ByteBuffer.wrap(buffer);
+		final byte[] head       = new byte[SNIFF_LENGTH];
+		final CRC32 crc         = new CRC32();
+		int headLength          = 0;
+		long size               = 0L;
+
+		fileOnDisk.getParentFile().mkdirs();
+
+		try (final FileChannel channel = FileChannel.open(fileOnDisk.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+
+			int count = fileStream.read(buffer);
+			while (count != -1) {
+
+				if (count > 0) {
+
+					crc.update(buffer, 0, count);
+
+					if (headLength < SNIFF_LENGTH) {
+
+						final int length = Math.min(count, SNIFF_LENGTH - headLength);
+
+						System.arraycopy(buffer, 0, head, headLength, length);
+						headLength += length;
+					}
+
+					wrap.clear();
+					wrap.limit(count);
+
+					while (wrap.hasRemaining()) {
+						channel.write(wrap);
+					}
+
+					size += count;
+				}
+
+				count = fileStream.read(buffer);
+			}
+		}
+
+		return new StoredFile(uuid, fileOnDisk, size, crc.getValue(), Arrays.copyOf(head, headLength));
+	}
 }
@@ -0,0 +1,562 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.common;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.servlet.http.HttpServletRequest;
+import org.apache.commons.lang3.StringUtils;
+import org.structr.api.util.Statistics;
+import org.structr.common.SecurityContext;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.GraphObject;
+import org.structr.core.Services;
+import org.structr.core.StructrTransactionListener;
+import org.structr.core.TransactionSource;
+import org.structr.core.app.StructrApp;
+import org.structr.core.entity.Localization;
+import org.structr.core.entity.Principal;
+import org.structr.core.entity.Relation;
+import org.structr.core.entity.SchemaReloadingNode;
+import org.structr.core.entity.Security;
+import org.structr.core.graph.ModificationEvent;
+import org.structr.core.graph.RelationshipInterface;
+import org.structr.core.graph.TransactionCommand;
+import org.structr.web.common.RenderContext.EditMode;
+import org.structr.web.entity.dom.DOMNode;
+
+/**
+ * Server-side cache for the rendered output of DOMNode subtrees.
+ *
+ * Only nodes with the fragmentCache flag set are cached, and only when
+ * rendered in EditMode.NONE. The cache key consists of the node, the
+ * edit mode, the locale, the user, the data objects in scope and the
+ * request parameters declared in fragmentCacheParameters.
+ *
+ * While a fragment is rendered, the render context records the UUIDs
+ * of all rendered nodes and data objects and the types of the objects
+ * returned by data sources. A transaction listener removes every entry
+ * that depends on a modified object or on one of the nodes of a modified
+ * relationship. Schema and localization changes clear the whole cache,
+ * as do changes of relationships that connect principals, f.e. grants,
+ * ownership and group membership, because they can change what a user
+ * is allowed to see in any fragment.
+ */
+public class FragmentCache implements StructrTransactionListener {
+
+	private static final FragmentCache instance = new FragmentCache();
+
+	private final int maxSize                            = Services.parseInt(StructrApp.getConfigurationValue(Services.APPLICATION_FRAGMENT_CACHE_SIZE), 1000);
+	private final Map<String, Entry> entries             = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry<String, Entry> eldest) {
+
+			if (size() > maxSize) {
+
+				unindex(eldest.getValue());
+				evictions.incrementAndGet();
+
+				return true;
+			}
+
+			return false;
+		}
+	};
+	private final Map<String, Set<String>> uuidIndex     = new LinkedHashMap<>();
+	private final Map<String, Set<String>> typeIndex     = new LinkedHashMap<>();
+	private final Set<String> listSourceKeys             = new HashSet<>();
+	private final Set<Capture> captures                  = ConcurrentHashMap.newKeySet();
+	private final AtomicLong hits                        = new AtomicLong();
+	private final AtomicLong misses                      = new AtomicLong();
+	private final AtomicLong evictions                   = new AtomicLong();
+	private final AtomicLong invalidations               = new AtomicLong();
+
+	private FragmentCache() {
+
+		TransactionCommand.registerTransactionListener(this);
+		Statistics.register("fragmentCache", this::getStatistics);
+	}
+
+	public static FragmentCache getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Indicates whether the given node can be served from the cache in
+	 * the given render context.
+	 *
+	 * @param node
+	 * @param renderContext
+	 * @return whether the node can be cached
+	 */
+	public static boolean isCacheable(final DOMNode node, final RenderContext renderContext) {
+
+		if (node.getProperty(DOMNode.fragmentCache)) {
+
+			final SecurityContext securityContext = renderContext.getSecurityContext();
+			final EditMode editMode               = renderContext.getEditMode(securityContext != null ? securityContext.getUser(false) : null);
+
+			return EditMode.NONE.equals(editMode);
+		}
+
+		return false;
+	}
+
+	/**
+	 * Renders the given node into the buffer of the render context,
+	 * either from the cache or by rendering the subtree and storing the
+	 * result.
+	 *
+	 * @param node
+	 * @param renderContext
+	 * @param depth
+	 * @throws FrameworkException
+	 */
+	public void render(final DOMNode node, final RenderContext renderContext, final int depth) throws FrameworkException {
+
+		final String key  = getKey(node, renderContext, depth);
+		final Entry entry = get(key);
+
+		if (entry != null) {
+
+			hits.incrementAndGet();
+
+			renderContext.getBuffer().append(entry.content);
+			renderContext.setInBody(entry.inBody);
+			renderContext.setAppLibRendered(entry.appLibRendered);
+
+			// enclosing fragments depend on everything this fragment depends on
+			for (final Capture capture : renderContext.getCaptures()) {
+
+				capture.uuids.addAll(entry.uuids);
+				capture.types.addAll(entry.types);
+				capture.listSource |= entry.listSource;
+			}
+
+			return;
+		}
+
+		misses.incrementAndGet();
+
+		final AsyncBuffer out            = renderContext.getBuffer();
+		final CaptureBuffer buffer       = new CaptureBuffer(out);
+		final Capture capture            = new Capture();
+
+		// the data objects in scope are part of the key, so their
+		// modification must invalidate the fragment as well
+		capture.addDependency(renderContext.getDetailsDataObject());
+		capture.addDependency(renderContext.getDataObject());
+
+		for (final GraphObject obj : renderContext.getDataObjects().values()) {
+			capture.addDependency(obj);
+		}
+
+		captures.add(capture);
+		renderContext.beginCapture(capture);
+		renderContext.setBuffer(buffer);
+
+		try {
+
+			node.renderNode(renderContext, depth);
+
+		} finally {
+
+			renderContext.setBuffer(out);
+			renderContext.endCapture(capture);
+			captures.remove(capture);
+		}
+
+		final String content = buffer.getContent();
+
+		// do not store output that was rendered from data modified in the meantime
+		if (!capture.invalid) {
+
+			put(key, new Entry(key, content, capture, renderContext.inBody(), renderContext.appLibRendered()));
+		}
+	}
+
+	public synchronized void clear() {
+
+		invalidations.addAndGet(entries.size());
+
+		entries.clear();
+		uuidIndex.clear();
+		typeIndex.clear();
+		listSourceKeys.clear();
+
+		for (final Capture capture : captures) {
+			capture.invalid = true;
+		}
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public Map<String, Object> getStatistics() {
+
+		final Map<String, Object> data = new LinkedHashMap<>();
+		final long hitCount            = hits.get();
+		final long total               = hitCount + misses.get();
+
+		data.put("size",          size());
+		data.put("maxSize",       maxSize);
+		data.put("hits",          hitCount);
+		data.put("misses",        misses.get());
+		data.put("hitRate",       total > 0 ? (double)hitCount / (double)total : 0.0);
+		data.put("evictions",     evictions.get());
+		data.put("invalidations", invalidations.get());
+
+		return data;
+	}
+
+	// ----- interface StructrTransactionListener -----
+	@Override
+	public void beforeCommit(final SecurityContext securityContext, final Collection<ModificationEvent> modificationEvents, final TransactionSource source) throws FrameworkException {
+		invalidate(modificationEvents);
+	}
+
+	@Override
+	public void afterCommit(final SecurityContext securityContext, final Collection<ModificationEvent> modificationEvents, final TransactionSource source) {
+
+		// fragments rendered while the transaction was committing may
+		// still contain the previous state
+		invalidate(modificationEvents);
+	}
+
+	@Override
+	public void simpleBroadcast() {
+	}
+
+	// ----- private methods -----
+	private synchronized Entry get(final String key) {
+		return entries.get(key);
+	}
+
+	private synchronized void put(final String key, final Entry entry) {
+
+		final Entry previous = entries.put(key, entry);
+		if (previous != null) {
+
+			unindex(previous);
+		}
+
+		for (final String uuid : entry.uuids) {
+			uuidIndex.computeIfAbsent(uuid, k -> new HashSet<>()).add(key);
+		}
+
+		for (final String type : entry.types) {
+			typeIndex.computeIfAbsent(type, k -> new HashSet<>()).add(key);
+		}
+
+		if (entry.listSource) {
+			listSourceKeys.add(key);
+		}
+	}
+
+	private void unindex(final Entry entry) {
+
+		for (final String uuid : entry.uuids) {
+			unindex(uuidIndex, uuid, entry.key);
+		}
+
+		for (final String type : entry.types) {
+			unindex(typeIndex, type, entry.key);
+		}
+
+		listSourceKeys.remove(entry.key);
+	}
+
+	private void unindex(final Map<String, Set<String>> index, final String value, final String key) {
+
+		final Set<String> keys = index.get(value);
+		if (keys != null) {
+
+			keys.remove(key);
+
+			if (keys.isEmpty()) {
+				index.remove(value);
+			}
+		}
+	}
+
+	private void invalidate(final Collection<ModificationEvent> modificationEvents) {
+
+		final Set<String> uuids = new HashSet<>();
+		final Set<String> types = new HashSet<>();
+		boolean nodeSetChanged  = false;
+
+		for (final ModificationEvent event : modificationEvents) {
+
+			final GraphObject obj = event.getGraphObject();
+			if (obj instanceof SchemaReloadingNode || obj instanceof Localization) {
+
+				clear();
+				return;
+			}
+
+			uuids.add(event.getUuid());
+
+			if (obj instanceof RelationshipInterface) {
+
+				final RelationshipInterface rel = (RelationshipInterface)obj;
+
+				if (affectsPermissions(rel)) {
+
+					clear();
+					return;
+				}
+
+				// fragments that render a node may depend on its relationships
+				addUuid(uuids, rel.getSourceNodeId());
+				addUuid(uuids, rel.getTargetNodeId());
+			}
+
+			if (event.isNode()) {
+
+				nodeSetChanged |= event.isCreated() || event.isDeleted();
+
+				if (obj != null) {
+
+					for (Class type = obj.getClass(); type != null && !Object.class.equals(type); type = type.getSuperclass()) {
+						types.add(type.getSimpleName());
+					}
+				}
+			}
+		}
+
+		synchronized (this) {
+
+			final Set<String> keys = new HashSet<>();
+
+			for (final String uuid : uuids) {
+				keys.addAll(uuidIndex.getOrDefault(uuid, Collections.emptySet()));
+			}
+
+			for (final String type : types) {
+				keys.addAll(typeIndex.getOrDefault(type, Collections.emptySet()));
+			}
+
+			if (nodeSetChanged) {
+				keys.addAll(listSourceKeys);
+			}
+
+			for (final String key : keys) {
+
+				final Entry entry = entries.remove(key);
+				if (entry != null) {
+
+					unindex(entry);
+					invalidations.incrementAndGet();
+				}
+			}
+		}
+
+		// mark fragments that are being rendered right now
+		for (final Capture capture : captures) {
+
+			if (capture.dependsOn(uuids, types, nodeSetChanged)) {
+				capture.invalid = true;
+			}
+		}
+	}
+
+	private boolean affectsPermissions(final RelationshipInterface rel) {
+
+		if (rel instanceof Security) {
+			return true;
+		}
+
+		if (rel instanceof Relation) {
+
+			final Relation relation = (Relation)rel;
+
+			return Principal.class.isAssignableFrom(relation.getSourceType()) || Principal.class.isAssignableFrom(relation.getTargetType());
+		}
+
+		return false;
+	}
+
+	private void addUuid(final Set<String> uuids, final String uuid) {
+
+		if (uuid != null) {
+			uuids.add(uuid);
+		}
+	}
+
+	private String getKey(final DOMNode node, final RenderContext renderContext, final int depth) {
+
+		final SecurityContext securityContext = renderContext.getSecurityContext();
+		final Principal user                  = securityContext != null ? securityContext.getUser(false) : null;
+		final StringBuilder buf               = new StringBuilder(node.getUuid());
+
+		buf.append("|").append(renderContext.getEditMode(user));
+		buf.append("|").append(renderContext.getLocale());
+		buf.append("|").append(depth);
+		buf.append("|").append(user != null ? user.getUuid() : null);
+		buf.append("|").append(renderContext.getPageId());
+		buf.append("|").append(renderContext.inBody());
+		buf.append("|").append(renderContext.appLibRendered());
+		buf.append("|").append(uuid(renderContext.getDetailsDataObject()));
+		buf.append("|").append(uuid(renderContext.getDataObject()));
+
+		for (final Map.Entry<String, GraphObject> data : renderContext.getDataObjects().entrySet()) {
+			buf.append("|").append(data.getKey()).append("=").append(uuid(data.getValue()));
+		}
+
+		final HttpServletRequest request = renderContext.getRequest();
+		final String parameters          = node.getProperty(DOMNode.fragmentCacheParameters);
+
+		if (request != null && StringUtils.isNotBlank(parameters)) {
+
+			for (final String name : parameters.split("[, ]+")) {
+
+				final String[] values = request.getParameterValues(name);
+				if (values != null) {
+
+					buf.append("|").append(name).append("=").append(StringUtils.join(values, ","));
+				}
+			}
+		}
+
+		return buf.toString();
+	}
+
+	private String uuid(final GraphObject obj) {
+		return obj != null ? obj.getUuid() : null;
+	}
+
+	// ----- nested classes -----
+	/**
+	 * The dependencies of a fragment that is currently being rendered.
+	 */
+	public static class Capture {
+
+		private final Set<String> uuids = ConcurrentHashMap.newKeySet();
+		private final Set<String> types = ConcurrentHashMap.newKeySet();
+		private volatile boolean listSource = false;
+		private volatile boolean invalid    = false;
+
+		public void addDependency(final GraphObject obj) {
+
+			if (obj != null) {
+				uuids.add(obj.getUuid());
+			}
+		}
+
+		public void addListSource(final List<GraphObject> data) {
+
+			for (final GraphObject obj : data) {
+
+				if (obj != null) {
+					types.add(obj.getClass().getSimpleName());
+				}
+			}
+
+			listSource = true;
+		}
+
+		private boolean dependsOn(final Set<String> modifiedUuids, final Set<String> modifiedTypes, final boolean nodeSetChanged) {
+
+			if (nodeSetChanged && listSource) {
+				return true;
+			}
+
+			return intersects(uuids, modifiedUuids) || intersects(types, modifiedTypes);
+		}
+
+		private boolean intersects(final Set<String> set, final Set<String> other) {
+
+			for (final String value : other) {
+
+				if (set.contains(value)) {
+					return true;
+				}
+			}
+
+			return false;
+		}
+	}
+
+	/**
+	 * Passes all output through to the enclosing buffer, so asynchronous
+	 * streaming continues while the output is recorded for the cache.
+	 */
+	private static class CaptureBuffer extends AsyncBuffer {
+
+		private final StringBuilder content = new StringBuilder();
+		private final AsyncBuffer out;
+
+		public CaptureBuffer(final AsyncBuffer out) {
+			this.out = out;
+		}
+
+		@Override
+		public AsyncBuffer append(final String s) {
+
+			if (s != null) {
+
+				content.append(s);
+				out.append(s);
+			}
+
+			return this;
+		}
+
+		@Override
+		public Queue<String> getQueue() {
+			return out.getQueue();
+		}
+
+		public String getContent() {
+			return content.toString();
+		}
+	}
+
+	private static class Entry {
+
+		private final String key;
+		private final String content;
+		private final Set<String> uuids;
+		private final Set<String> types;
+		private final boolean listSource;
+		private final boolean inBody;
+		private final boolean appLibRendered;
+
+		public Entry(final String key, final String content, final Capture capture, final boolean inBody, final boolean appLibRendered) {
+
+			this.key            = key;
+			this.content        = content;
+			this.uuids          = new HashSet<>(capture.uuids);
+			this.types          = new HashSet<>(capture.types);
+			this.listSource     = capture.listSource;
+			this.inBody         = inBody;
+			this.appLibRendered = appLibRendered;
+		}
+	}
+}
@@ -19,6 +19,8 @@
 package org.structr.web.common;
 
 import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Stack;
 import javax.servlet.http.HttpServletRequest;
@@ -51,6 +53,7 @@ public class RenderContext extends ActionContext {
 
 	private final Map<String, GraphObject> dataObjects = new LinkedHashMap<>();
 	private final Stack<SecurityContext> scStack       = new Stack<>();
+	private List<FragmentCache.Capture> captures       = new LinkedList<>();
 	private EditMode editMode                          = EditMode.NONE;
 	private AsyncBuffer buffer                         = new AsyncBuffer();
 	private int depth                                  = 0;
@@ -91,6 +94,7 @@ public class RenderContext extends ActionContext {
 		super(other);
 
 		this.dataObjects.putAll(other.dataObjects);
+		this.captures = other.captures;
 		this.editMode = other.editMode;
 		this.inBody = other.inBody;
 		this.appLibRendered = other.appLibRendered;
@@ -138,6 +142,7 @@ public class RenderContext extends ActionContext {
 
 	public void setDetailsDataObject(GraphObject detailsDataObject) {
 		this.detailsDataObject = detailsDataObject;
+		addDependency(detailsDataObject);
 	}
 
 	public GraphObject getDetailsDataObject() {
@@ -146,6 +151,7 @@ public class RenderContext extends ActionContext {
 
 	public void setDataObject(GraphObject currentDataObject) {
 		this.currentDataObject = currentDataObject;
+		addDependency(currentDataObject);
 	}
 
 	public GraphObject getDataObject() {
@@ -336,6 +342,53 @@ public class RenderContext extends ActionContext {
 		return dataObjects.containsKey(key);
 	}
 
+	public Map<String, GraphObject> getDataObjects() {
+		return dataObjects;
+	}
+
+	/**
+	 * Starts recording the dependencies of a cached fragment.
+	 *
+	 * @param capture
+	 */
+	public void beginCapture(final FragmentCache.Capture capture) {
+		captures.add(capture);
+	}
+
+	public void endCapture(final FragmentCache.Capture capture) {
+		captures.remove(capture);
+	}
+
+	public List<FragmentCache.Capture> getCaptures() {
+		return captures;
+	}
+
+	/**
+	 * Records the given object as a dependency of all fragments that are
+	 * currently being rendered for the fragment cache.
+	 *
+	 * @param obj
+	 */
+	public void addDependency(final GraphObject obj) {
+
+		for (final FragmentCache.Capture capture : captures) {
+			capture.addDependency(obj);
+		}
+	}
+
+	/**
+	 * Records the result of a data source as a dependency of all fragments
+	 * that are currently being rendered for the fragment cache.
+	 *
+	 * @param data
+	 */
+	public void addListSource(final List<GraphObject> data) {
+
+		for (final FragmentCache.Capture capture : captures) {
+			capture.addListSource(data);
+		}
+	}
+
 	public void setPage(final Page page) {
 		this.page = page;
 	}
@@ -0,0 +1,246 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.common;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+/**
+ * Render buffer for asynchronous streaming of rendered output.
+ *
+ * Output is collected into chunks of about chunkSize characters, each of
+ * which is encoded to UTF-8 once. The consumer is notified whenever a
+ * new chunk is available, and the producer blocks as long as more than
+ * maxQueuedBytes are waiting to be written, so rendering pauses when
+ * the client reads slowly. If the client doesn't accept any output for
+ * maxWaitMillis, the buffer is cancelled, so a stalled client can't keep
+ * the render thread and its transaction busy indefinitely.
+ */
+public class StreamingRenderBuffer extends AsyncBuffer {
+
+	private final Queue<byte[]> chunks  = new ArrayDeque<>();
+	private StringBuilder pending       = new StringBuilder();
+	private Runnable listener           = null;
+	private boolean finished            = false;
+	private boolean cancelled           = false;
+	private int queuedBytes             = 0;
+	private final int chunkSize;
+	private final int maxQueuedBytes;
+	private final long maxWaitMillis;
+
+	public StreamingRenderBuffer(final int chunkSize, final int maxQueuedBytes, final long maxWaitMillis) {
+
+		this.chunkSize      = chunkSize;
+		this.maxQueuedBytes = maxQueuedBytes;
+		this.maxWaitMillis  = maxWaitMillis;
+	}
+
+	/**
+	 * Sets the callback that is run (outside of any lock of this buffer)
+	 * whenever new output is available or the buffer is finished.
+	 *
+	 * @param listener
+	 */
+	public void setListener(final Runnable listener) {
+		this.listener = listener;
+	}
+
+	@Override
+	public AsyncBuffer append(final String s) {
+
+		if (s != null) {
+
+			boolean flushed = false;
+
+			synchronized (this) {
+
+				if (cancelled) {
+					return this;
+				}
+
+				pending.append(s);
+
+				if (pending.length() >= chunkSize) {
+
+					flush();
+					flushed = true;
+				}
+			}
+
+			if (flushed) {
+
+				notifyListener();
+				awaitCapacity();
+			}
+		}
+
+		return this;
+	}
+
+	/**
+	 * Signals that rendering is complete.
+	 */
+	public void finish() {
+
+		synchronized (this) {
+
+			flush();
+			finished = true;
+		}
+
+		notifyListener();
+	}
+
+	/**
+	 * Discards all pending output and releases a blocked producer, f.e.
+	 * because the client went away.
+	 */
+	public synchronized void cancel() {
+
+		cancelled = true;
+		queuedBytes = 0;
+
+		chunks.clear();
+		notifyAll();
+	}
+
+	/**
+	 * Returns the next chunk of encoded output, or null if no output is
+	 * available at the moment.
+	 *
+	 * @return the next chunk or null
+	 */
+	public synchronized byte[] poll() {
+
+		final byte[] chunk = chunks.poll();
+		if (chunk != null) {
+
+			queuedBytes -= chunk.length;
+			notifyAll();
+		}
+
+		return chunk;
+	}
+
+	/**
+	 * Indicates whether rendering is complete and all output has been
+	 * consumed.
+	 *
+	 * @return whether the buffer is done
+	 */
+	public synchronized boolean isDone() {
+		return (finished && chunks.isEmpty()) || cancelled;
+	}
+
+	/**
+	 * Indicates whether the output was discarded, f.e. because the client
+	 * went away or stopped reading.
+	 *
+	 * @return whether the buffer was cancelled
+	 */
+	public synchronized boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * Removes all output that was not consumed yet and returns it as a
+	 * queue of strings, so this buffer can be read like any other
+	 * {@link AsyncBuffer}. Output that was already consumed via poll() is
+	 * not contained in the queue.
+	 *
+	 * @return the remaining output
+	 */
+	@Override
+	public synchronized Queue<String> getQueue() {
+
+		flush();
+
+		final Queue<String> queue = new ArrayDeque<>(chunks.size());
+
+		for (final byte[] chunk : chunks) {
+			queue.add(new String(chunk, StandardCharsets.UTF_8));
+		}
+
+		chunks.clear();
+		queuedBytes = 0;
+
+		// release a producer that waits for capacity
+		notifyAll();
+
+		return queue;
+	}
+
+	// ----- private methods -----
+	private void flush() {
+
+		if (pending.length() > 0) {
+
+			final byte[] chunk = pending.toString().getBytes(StandardCharsets.UTF_8);
+
+			chunks.add(chunk);
+			queuedBytes += chunk.length;
+
+			pending = new StringBuilder(chunkSize);
+		}
+	}
+
+	private void notifyListener() {
+
+		final Runnable callback = listener;
+		if (callback != null) {
+
+			callback.run();
+		}
+	}
+
+	private synchronized void awaitCapacity() {
+
+		long deadline  = System.currentTimeMillis() + maxWaitMillis;
+		int lastQueued = queuedBytes;
+
+		while (listener != null && !cancelled && queuedBytes > maxQueuedBytes) {
+
+			// restart the timeout whenever the client made progress
+			if (queuedBytes < lastQueued) {
+
+				deadline   = System.currentTimeMillis() + maxWaitMillis;
+				lastQueued = queuedBytes;
+			}
+
+			final long remaining = deadline - System.currentTimeMillis();
+			if (remaining <= 0) {
+
+				// the client stopped reading, give up
+				cancel();
+				return;
+			}
+
+			try {
+
+				wait(remaining);
+
+			} catch (InterruptedException iex) {
+
+				Thread.currentThread().interrupt();
+				cancel();
+			}
+		}
+	}
+}
@@ -69,6 +69,7 @@ import org.structr.core.property.StartNodes;
 import org.structr.core.property.StringProperty;
 import org.structr.files.cmis.config.StructrFileActions;
 import org.structr.schema.action.JavaScriptSource;
+import org.structr.web.common.FileChannelCache;
 import org.structr.web.common.FileHelper;
 import org.structr.web.common.ImageHelper;
 import org.structr.web.entity.relation.Folders;
@@ -189,6 +190,7 @@ public class FileBase extends AbstractFile implements Indexable, Linkable, JavaS
 
 				if (toDelete.exists() && toDelete.isFile()) {
 
+					FileChannelCache.getInstance().invalidate(toDelete.toPath());
 					toDelete.delete();
 				}
 			}
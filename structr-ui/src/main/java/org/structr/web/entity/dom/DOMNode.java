@@ -54,6 +54,7 @@ import org.structr.core.entity.Principal;
 import org.structr.core.entity.Security;
 import org.structr.core.function.Functions;
 import org.structr.core.graph.ModificationQueue;
+import org.structr.core.graph.NodeFactory;
 import org.structr.core.graph.NodeInterface;
 import org.structr.core.notion.PropertyNotion;
 import org.structr.core.property.AbstractReadOnlyProperty;
@@ -72,6 +73,7 @@ import org.structr.core.property.StartNode;
 import org.structr.core.property.StringProperty;
 import org.structr.core.script.Scripting;
 import org.structr.web.common.AsyncBuffer;
+import org.structr.web.common.FragmentCache;
 import org.structr.web.common.GraphDataSource;
 import org.structr.web.common.RenderContext;
 import org.structr.web.common.RenderContext.EditMode;
@@ -178,6 +180,9 @@ public abstract class DOMNode extends LinkedTreeNode<DOMChildren, DOMSiblings, D
 	public static final Property<String> showConditions               = new StringProperty("showConditions").indexed();
 	public static final Property<String> hideConditions               = new StringProperty("hideConditions").indexed();
 
+	public static final Property<Boolean> fragmentCache               = new BooleanProperty("fragmentCache");
+	public static final Property<String> fragmentCacheParameters      = new StringProperty("fragmentCacheParameters");
+
 	public static final Property<DOMNode> parent                      = new StartNode<>("parent", DOMChildren.class);
 	public static final Property<String> parentId                     = new EntityIdProperty("parentId", parent);
 	public static final Property<List<DOMNode>> children              = new EndNodes<>("children", DOMChildren.class);
@@ -228,7 +233,8 @@ public abstract class DOMNode extends LinkedTreeNode<DOMChildren, DOMSiblings, D
 	}
 
 	public static final Property[] rawProps = new Property[] {
-		dataKey, restQuery, cypherQuery, xpathQuery, functionQuery, hideOnIndex, hideOnDetail, showForLocales, hideForLocales, showConditions, hideConditions
+		dataKey, restQuery, cypherQuery, xpathQuery, functionQuery, hideOnIndex, hideOnDetail, showForLocales, hideForLocales, showConditions, hideConditions,
+		fragmentCache, fragmentCacheParameters
 	};
 
 	// a simple cache for data-* properties
@@ -290,6 +296,27 @@ public abstract class DOMNode extends LinkedTreeNode<DOMChildren, DOMSiblings, D
 		return treeGetChildRelationships();
 	}
 
+	/**
+	 * Loads the relationships of all child nodes of the given child
+	 * relationships in one go, so that rendering the children does not
+	 * cost a database round-trip per child.
+	 *
+	 * @param rels
+	 */
+	public static void prefetchChildren(final List<DOMChildren> rels) {
+
+		if (rels.size() > 1) {
+
+			final List<NodeInterface> children = new LinkedList<>();
+
+			for (final DOMChildren rel : rels) {
+				children.add(rel.getTargetNode());
+			}
+
+			NodeFactory.prefetchRelationships(children);
+		}
+	}
+
 	public String getPositionPath() {
 
 		String path = "";
@@ -358,6 +385,9 @@ public abstract class DOMNode extends LinkedTreeNode<DOMChildren, DOMSiblings, D
 	@Override
 	public void render(final RenderContext renderContext, final int depth) throws FrameworkException {
 
+		// record this node as a dependency of enclosing cached fragments
+		renderContext.addDependency(this);
+
 		if (!securityContext.isVisible(this)) {
 			return;
 		}
@@ -373,7 +403,28 @@ public abstract class DOMNode extends LinkedTreeNode<DOMChildren, DOMSiblings, D
 			return;
 		}
 
-		final EditMode editMode = renderContext.getEditMode(securityContext.getUser(false));
+		if (FragmentCache.isCacheable(this, renderContext)) {
+
+			FragmentCache.getInstance().render(this, renderContext, depth);
+
+		} else {
+
+			renderNode(renderContext, depth);
+		}
+	}
+
+	/**
+	 * Render the node including data binding, bypassing the fragment cache.
+	 *
+	 * @param renderContext
+	 * @param depth
+	 * @throws FrameworkException
+	 */
+	public void renderNode(final RenderContext renderContext, final int depth) throws FrameworkException {
+
+		final GraphObject details = renderContext.getDetailsDataObject();
+		final boolean detailMode  = details != null;
+		final EditMode editMode   = renderContext.getEditMode(securityContext.getUser(false));
 
 		if (EditMode.RAW.equals(editMode) || EditMode.WIDGET.equals(editMode) || EditMode.DEPLOYMENT.equals(editMode)) {
 
@@ -392,6 +443,10 @@ public abstract class DOMNode extends LinkedTreeNode<DOMChildren, DOMSiblings, D
 				// fetch (optional) list of external data elements
 				final List<GraphObject> listData = checkListSources(securityContext, renderContext);
 
+				if (!listData.isEmpty() || hasListSource()) {
+					renderContext.addListSource(listData);
+				}
+
 				final PropertyKey propertyKey;
 
 				if (getProperty(renderDetails) && detailMode) {
@@ -958,6 +1013,20 @@ public abstract class DOMNode extends LinkedTreeNode<DOMChildren, DOMSiblings, D
 		return Collections.EMPTY_LIST;
 	}
 
+	/**
+	 * Indicates whether this node fetches its data from one of the query
+	 * based data sources.
+	 *
+	 * @return whether a query is set
+	 */
+	protected boolean hasListSource() {
+
+		return StringUtils.isNotBlank(getProperty(restQuery))
+			|| StringUtils.isNotBlank(getProperty(cypherQuery))
+			|| StringUtils.isNotBlank(getProperty(xpathQuery))
+			|| StringUtils.isNotBlank(getProperty(functionQuery));
+	}
+
 	/**
 	 * Increase version of the page.
 	 *
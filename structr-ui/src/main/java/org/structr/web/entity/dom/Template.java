@@ -93,6 +93,8 @@ public class Template extends Content {
 				}
 			}
 
+			prefetchChildren(rels);
+
 			for (final AbstractRelationship rel : rels) {
 
 				final DOMNode subNode = (DOMNode) rel.getTargetNode();
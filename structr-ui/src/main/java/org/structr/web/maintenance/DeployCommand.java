@@ -36,12 +36,17 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Pattern;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
@@ -49,6 +54,7 @@ import org.slf4j.LoggerFactory;
 import org.structr.common.GraphObjectComparator;
 import org.structr.common.SecurityContext;
 import org.structr.common.error.FrameworkException;
+import org.structr.core.Services;
 import org.structr.core.app.App;
 import org.structr.core.app.StructrApp;
 import org.structr.core.entity.AbstractNode;
@@ -184,189 +190,238 @@ public class DeployCommand extends NodeServiceCommand implements MaintenanceComm
 			throw new FrameworkException(422, "Source path " + path + " is not a directory.");
 		}
 
-		// apply configuration
-		final Path preDeployConf = source.resolve("pre-deploy.conf");
-		if (Files.exists(preDeployConf)) {
+		final int threads               = getDeploymentThreadCount(attributes);
+		final ExecutorService executor  = Executors.newFixedThreadPool(threads);
+		final Map<String, Long> timings = Collections.synchronizedMap(new LinkedHashMap<>());
+		final long start                = System.currentTimeMillis();
 
-			try (final Tx tx = StructrApp.getInstance().tx()) {
+		try {
 
-				info("Applying pre-deployment configuration from {}..", preDeployConf);
+			// apply configuration
+			final Path preDeployConf = source.resolve("pre-deploy.conf");
+			if (Files.exists(preDeployConf)) {
 
-				final String confSource = new String(Files.readAllBytes(preDeployConf), Charset.forName("utf-8"));
-				Scripting.evaluate(new ActionContext(SecurityContext.getSuperUserInstance()), null, confSource.trim(), "pre-deploy.conf");
+				runPhase("pre-deploy.conf", timings, () -> {
 
-				tx.success();
+					try (final Tx tx = StructrApp.getInstance().tx()) {
 
-			} catch (Throwable t) {
-				logger.warn("", t);
-			}
-		}
+						info("Applying pre-deployment configuration from {}..", preDeployConf);
 
-		// read grants.json
-		final Path grantsConf = source.resolve("security/grants.json");
-		if (Files.exists(grantsConf)) {
+						final String confSource = new String(Files.readAllBytes(preDeployConf), Charset.forName("utf-8"));
+						Scripting.evaluate(new ActionContext(SecurityContext.getSuperUserInstance()), null, confSource.trim(), "pre-deploy.conf");
 
-			info("Reading {}..", grantsConf);
-			importListData(ResourceAccess.class, readConfigList(grantsConf));
-		}
+						tx.success();
 
-		// read schema-methods.json
-		final Path schemaMethodsConf = source.resolve("schema-methods.json");
-		if (Files.exists(schemaMethodsConf)) {
+					} catch (Throwable t) {
+						logger.warn("", t);
+					}
+				});
+			}
 
-			info("Reading {}..", schemaMethodsConf);
-			importListData(SchemaMethod.class, readConfigList(schemaMethodsConf));
-		}
+			// read files.conf, pages.conf, components.conf and templates.conf
+			runPhase("configuration", timings, () -> {
 
-		// read mail-templates.json
-		final Path mailTemplatesConf = source.resolve("mail-templates.json");
-		if (Files.exists(mailTemplatesConf)) {
+				readConfigMap(source.resolve("files.json"), filesConf);
+				readConfigMap(source.resolve("pages.json"), pagesConf);
+				readConfigMap(source.resolve("components.json"), componentsConf);
+				readConfigMap(source.resolve("templates.json"), templatesConf);
+			});
 
-			info("Reading {}..", mailTemplatesConf);
-			importListData(MailTemplate.class, readConfigList(mailTemplatesConf));
-		}
+			// import schema, schema changes must be finished before anything else is imported
+			final Path schema = source.resolve("schema");
+			if (Files.exists(schema)) {
 
-		// read localizations.json
-		final Path localizationsConf = source.resolve("localizations.json");
-		if (Files.exists(localizationsConf)) {
+				runPhase("schema", timings, () -> {
 
-			info("Reading {}..", localizationsConf);
-			importListData(Localization.class, readConfigList(localizationsConf));
-		}
+					try {
 
-		// read files.conf
-		final Path filesConfFile = source.resolve("files.json");
-		if (Files.exists(filesConfFile)) {
+						info("Importing data from schema/ directory..");
+						Files.walkFileTree(schema, new SchemaImportVisitor(schema));
 
-			info("Reading {}..", filesConfFile);
-			filesConf.putAll(readConfigMap(filesConfFile));
-		}
+					} catch (IOException ioex) {
+						logger.warn("Exception while importing schema", ioex);
+					}
+				});
+			}
 
-		// read pages.conf
-		final Path pagesConfFile = source.resolve("pages.json");
-		if (Files.exists(pagesConfFile)) {
+			// read schema-methods.json
+			final Path schemaMethodsConf = source.resolve("schema-methods.json");
+			if (Files.exists(schemaMethodsConf)) {
 
-			info("Reading {}..", pagesConfFile);
-			pagesConf.putAll(readConfigMap(pagesConfFile));
-		}
+				runPhase("schema methods", timings, () -> {
 
-		// read components.conf
-		final Path componentsConfFile = source.resolve("components.json");
-		if (Files.exists(componentsConfFile)) {
+					info("Reading {}..", schemaMethodsConf);
+					importListData(SchemaMethod.class, readConfigList(schemaMethodsConf));
+				});
+			}
 
-			info("Reading {}..", componentsConfFile);
-			componentsConf.putAll(readConfigMap(componentsConfFile));
-		}
+			// parse page sources in the background, they are needed after the independent phases
+			final Path pages                     = source.resolve("pages");
+			final PageImportVisitor pageImporter = new PageImportVisitor(pages, pagesConf);
 
-		// read templates.conf
-		final Path templatesConfFile = source.resolve("templates.json");
-		if (Files.exists(templatesConfFile)) {
+			if (Files.exists(pages)) {
 
-			info("Reading {}..", templatesConfFile);
-			templatesConf.putAll(readConfigMap(templatesConfFile));
-		}
+				try {
 
-		// import schema
-		final Path schema = source.resolve("schema");
-		if (Files.exists(schema)) {
+					pageImporter.parsePages(executor);
 
-			try {
+				} catch (IOException ioex) {
+					logger.warn("Exception while parsing pages", ioex);
+				}
+			}
 
-				info("Importing data from schema/ directory..");
-				Files.walkFileTree(schema, new SchemaImportVisitor(schema));
+			// independent phases are executed concurrently
+			final Map<String, DeploymentPhase> phases = new LinkedHashMap<>();
 
-			} catch (IOException ioex) {
-				logger.warn("Exception while importing schema", ioex);
+			// read grants.json
+			final Path grantsConf = source.resolve("security/grants.json");
+			if (Files.exists(grantsConf)) {
+
+				phases.put("grants", () -> {
+
+					info("Reading {}..", grantsConf);
+					importListData(ResourceAccess.class, readConfigList(grantsConf));
+				});
 			}
-		}
 
-		// import files
-		final Path files = source.resolve("files");
-		if (Files.exists(files)) {
+			// read mail-templates.json
+			final Path mailTemplatesConf = source.resolve("mail-templates.json");
+			if (Files.exists(mailTemplatesConf)) {
 
-			try {
+				phases.put("mail templates", () -> {
 
-				info("Importing files...");
-				Files.walkFileTree(files, new FileImportVisitor(files, filesConf));
+					info("Reading {}..", mailTemplatesConf);
+					importListData(MailTemplate.class, readConfigList(mailTemplatesConf));
+				});
+			}
 
-			} catch (IOException ioex) {
-				logger.warn("Exception while importing files", ioex);
+			// read localizations.json
+			final Path localizationsConf = source.resolve("localizations.json");
+			if (Files.exists(localizationsConf)) {
+
+				phases.put("localizations", () -> {
+
+					info("Reading {}..", localizationsConf);
+					importListData(Localization.class, readConfigList(localizationsConf));
+				});
 			}
-		}
 
-		// remove all DOMNodes from the database (clean webapp for import)
-		try (final Tx tx = app.tx(true, true, false)) {
+			// import files
+			final Path files = source.resolve("files");
+			if (Files.exists(files)) {
+
+				phases.put("files", () -> {
+
+					try {
 
-			info("Removing pages, templates and components..");
-			for (final DOMNode node : app.nodeQuery(DOMNode.class)) {
+						info("Importing files...");
+						Files.walkFileTree(files, new FileImportVisitor(files, filesConf));
 
-				app.delete(node);
+					} catch (IOException ioex) {
+						logger.warn("Exception while importing files", ioex);
+					}
+				});
 			}
 
-			tx.success();
-		}
+			awaitPhases(submitPhases(executor, timings, phases));
 
-		// import templates, must be done before pages so the templates exist
-		final Path templates = source.resolve("templates");
-		if (Files.exists(templates)) {
+			runPhase("page parsing", timings, () -> {
 
-			try {
+				info("{} page sources parsed", pageImporter.awaitParsedPages());
+			});
 
-				info("Importing templates..");
-				Files.walkFileTree(templates, new TemplateImportVisitor(templatesConf));
+			// remove all DOMNodes from the database (clean webapp for import)
+			runPhase("cleanup", timings, () -> {
 
-			} catch (IOException ioex) {
-				logger.warn("Exception while importing templates", ioex);
+				try (final Tx tx = app.tx(true, true, false)) {
+
+					info("Removing pages, templates and components..");
+					for (final DOMNode node : app.nodeQuery(DOMNode.class)) {
+
+						app.delete(node);
+					}
+
+					tx.success();
+				}
+			});
+
+			// import templates, must be done before pages so the templates exist
+			final Path templates = source.resolve("templates");
+			if (Files.exists(templates)) {
+
+				runPhase("templates", timings, () -> {
+
+					try {
+
+						info("Importing templates..");
+						Files.walkFileTree(templates, new TemplateImportVisitor(templatesConf));
+
+					} catch (IOException ioex) {
+						logger.warn("Exception while importing templates", ioex);
+					}
+				});
 			}
-		}
 
-		// import components, must be done before pages so the shared components exist
-		final Path components = source.resolve("components");
-		if (Files.exists(components)) {
+			// import components, must be done before pages so the shared components exist
+			final Path components = source.resolve("components");
+			if (Files.exists(components)) {
 
-			try {
+				runPhase("components", timings, () -> {
 
-				info("Importing shared components..");
-				Files.walkFileTree(components, new ComponentImportVisitor(componentsConf));
+					try {
 
-			} catch (IOException ioex) {
-				logger.warn("Exception while importing shared components", ioex);
+						info("Importing shared components..");
+						Files.walkFileTree(components, new ComponentImportVisitor(componentsConf));
+
+					} catch (IOException ioex) {
+						logger.warn("Exception while importing shared components", ioex);
+					}
+				});
 			}
-		}
 
-		// import pages
-		final Path pages = source.resolve("pages");
-		if (Files.exists(pages)) {
+			// import pages
+			if (Files.exists(pages)) {
 
-			try {
+				runPhase("pages", timings, () -> {
 
-				info("Importing pages..");
-				Files.walkFileTree(pages, new PageImportVisitor(pages, pagesConf));
+					try {
 
-			} catch (IOException ioex) {
-				logger.warn("Exception while importing pages", ioex);
+						info("Importing pages..");
+						Files.walkFileTree(pages, pageImporter);
+
+					} catch (IOException ioex) {
+						logger.warn("Exception while importing pages", ioex);
+					}
+				});
 			}
-		}
 
-		// apply configuration
-		final Path postDeployConf = source.resolve("post-deploy.conf");
-		if (Files.exists(postDeployConf)) {
+			// apply configuration
+			final Path postDeployConf = source.resolve("post-deploy.conf");
+			if (Files.exists(postDeployConf)) {
+
+				runPhase("post-deploy.conf", timings, () -> {
 
-			try (final Tx tx = StructrApp.getInstance().tx()) {
+					try (final Tx tx = StructrApp.getInstance().tx()) {
 
-				info("Applying post-deployment configuration from {}..", postDeployConf);
+						info("Applying post-deployment configuration from {}..", postDeployConf);
 
-				final String confSource = new String(Files.readAllBytes(postDeployConf), Charset.forName("utf-8"));
-				Scripting.evaluate(new ActionContext(SecurityContext.getSuperUserInstance()), null, confSource.trim(), "post-deploy.conf");
+						final String confSource = new String(Files.readAllBytes(postDeployConf), Charset.forName("utf-8"));
+						Scripting.evaluate(new ActionContext(SecurityContext.getSuperUserInstance()), null, confSource.trim(), "post-deploy.conf");
 
-				tx.success();
+						tx.success();
 
-			} catch (Throwable t) {
-				logger.warn("", t);
+					} catch (Throwable t) {
+						logger.warn("", t);
+					}
+				});
 			}
+
+		} finally {
+
+			executor.shutdownNow();
 		}
 
-		info("Import from {} done.", source.toString());
+		info("Import from {} done in {} ms with {} threads, phases: {}", source.toString(), System.currentTimeMillis() - start, threads, timings);
 	}
 
 	private void doExport(final Map<String, Object> attributes) throws FrameworkException {
@@ -378,7 +433,11 @@ public class DeployCommand extends NodeServiceCommand implements MaintenanceComm
 			throw new FrameworkException(422, "Please provide target path for deployment export.");
 		}
 
-		final Path target  = Paths.get(path);
+		final Path target               = Paths.get(path);
+		final int threads               = getDeploymentThreadCount(attributes);
+		final ExecutorService executor  = Executors.newFixedThreadPool(threads);
+		final Map<String, Long> timings = Collections.synchronizedMap(new LinkedHashMap<>());
+		final long start                = System.currentTimeMillis();
 
 		try {
 
@@ -400,22 +459,124 @@ public class DeployCommand extends NodeServiceCommand implements MaintenanceComm
 			final Path mailTemplates  = target.resolve("mail-templates.json");
 			final Path localizations  = target.resolve("localizations.json");
 
-			exportFiles(files, filesConf);
-			exportPages(pages, pagesConf);
-			exportComponents(components, componentsConf);
-			exportTemplates(templates, templatesConf);
-			exportResourceAccessGrants(grants);
-			exportSchema(schemaJson);
-			exportSchemaMethods(schemaMethods);
-			exportMailTemplates(mailTemplates);
-			exportLocalizations(localizations);
+			// all export phases only read from the database, so they are independent
+			final Map<String, DeploymentPhase> phases = new LinkedHashMap<>();
+
+			phases.put("files",          () -> exportFiles(files, filesConf));
+			phases.put("templates",      () -> exportTemplates(templates, templatesConf));
+			phases.put("grants",         () -> exportResourceAccessGrants(grants));
+			phases.put("schema",         () -> exportSchema(schemaJson));
+			phases.put("schema methods", () -> exportSchemaMethods(schemaMethods));
+			phases.put("mail templates", () -> exportMailTemplates(mailTemplates));
+			phases.put("localizations",  () -> exportLocalizations(localizations));
+
+			final List<Future<Object>> futures = submitPhases(executor, timings, phases);
+
+			// pages and components are exported item by item in the same executor,
+			// the fan-out must happen here to not block a worker thread while waiting
+			runPhase("pages",      timings, () -> exportPages(executor, pages, pagesConf));
+			runPhase("components", timings, () -> exportComponents(executor, components, componentsConf));
+
+			awaitPhases(futures);
 
 			// config import order is "users, grants, pages, components, templates"
 			// data import order is "schema, files, templates, components, pages"
 
 		} catch (IOException ex) {
 			logger.warn("", ex);
+
+		} finally {
+
+			executor.shutdownNow();
 		}
+
+		info("Export to {} done in {} ms with {} threads, phases: {}", target.toString(), System.currentTimeMillis() - start, threads, timings);
+	}
+
+	/**
+	 * Executes the given deployment phase and records its duration.
+	 */
+	private void runPhase(final String name, final Map<String, Long> timings, final DeploymentPhase phase) throws FrameworkException {
+
+		final long start = System.currentTimeMillis();
+
+		try {
+
+			phase.run();
+
+		} finally {
+
+			final long duration = System.currentTimeMillis() - start;
+
+			timings.put(name, duration);
+			info("Deployment phase {} finished in {} ms", name, duration);
+		}
+	}
+
+	private List<Future<Object>> submitPhases(final ExecutorService executor, final Map<String, Long> timings, final Map<String, DeploymentPhase> phases) {
+
+		final List<Future<Object>> futures = new LinkedList<>();
+
+		for (final Entry<String, DeploymentPhase> entry : phases.entrySet()) {
+
+			futures.add(executor.submit(() -> {
+
+				runPhase(entry.getKey(), timings, entry.getValue());
+				return null;
+			}));
+		}
+
+		return futures;
+	}
+
+	/**
+	 * Waits for all given phases to finish. The first exception of a phase
+	 * is re-thrown after all phases are finished.
+	 */
+	private void awaitPhases(final List<Future<Object>> futures) throws FrameworkException {
+
+		FrameworkException exception = null;
+
+		for (final Future<Object> future : futures) {
+
+			try {
+
+				future.get();
+
+			} catch (ExecutionException ex) {
+
+				final Throwable cause = ex.getCause();
+
+				if (cause instanceof FrameworkException) {
+
+					if (exception == null) {
+						exception = (FrameworkException)cause;
+					}
+
+				} else {
+
+					logger.warn("Exception in deployment phase", cause);
+				}
+
+			} catch (InterruptedException iex) {
+
+				Thread.currentThread().interrupt();
+				throw new FrameworkException(500, "Deployment interrupted");
+			}
+		}
+
+		if (exception != null) {
+			throw exception;
+		}
+	}
+
+	private static int getDeploymentThreadCount(final Map<String, Object> attributes) {
+
+		if (attributes.containsKey("threads")) {
+			return getThreadCount(attributes);
+		}
+
+		return Math.max(1, Services.parseInt(StructrApp.getConfigurationValue(Services.APPLICATION_DEPLOYMENT_THREADS), Runtime.getRuntime().availableProcessors()));
 	}
 
 	private void exportFiles(final Path target, final Path configTarget) throws FrameworkException {
@@ -536,9 +697,10 @@ public class DeployCommand extends NodeServiceCommand implements MaintenanceComm
 		}
 	}
 
-	private void exportPages(final Path target, final Path configTarget) throws FrameworkException {
+	private void exportPages(final ExecutorService executor, final Path target, final Path configTarget) throws FrameworkException {
 
 		final Map<String, Object> pagesConfig = new TreeMap<>();
+		final List<String> uuids              = new LinkedList<>();
 		final App app                         = StructrApp.getInstance();
 
 		try (final Tx tx = app.tx()) {
@@ -547,52 +709,15 @@ public class DeployCommand extends NodeServiceCommand implements MaintenanceComm
 
 				if (!(page instanceof ShadowDocument)) {
 
-					final String content = page.getContent(RenderContext.EditMode.DEPLOYMENT);
-					if (content != null) {
-
-						final Map<String, Object> properties = new TreeMap<>();
-						final String name                    = page.getName();
-						final Path pageFile                  = target.resolve(name + ".html");
-						boolean doExport                     = true;
-
-						if (Files.exists(pageFile)) {
-
-							try {
-
-								final String existingContent = new String(Files.readAllBytes(pageFile), "utf-8");
-								if (existingContent.equals(content)) {
-
-									logger.info("Skipping export of page {}, no changes.", name);
-									doExport = false;
-								}
-
-							} catch (IOException ignore) {
-								logger.warn("", ignore);
-							}
-						}
-
-						pagesConfig.put(name, properties);
-						exportConfiguration(page, properties);
-
-						if (doExport) {
-
-							try (final OutputStreamWriter writer = new OutputStreamWriter(new FileOutputStream(pageFile.toFile()))) {
-
-								writer.write(content);
-								writer.flush();
-								writer.close();
-
-							} catch (IOException ioex) {
-								logger.warn("", ioex);
-							}
-						}
-					}
+					uuids.add(page.getUuid());
 				}
 			}
 
 			tx.success();
 		}
 
+		exportNodes(executor, Page.class, uuids, target, "page", pagesConfig);
+
 		try (final Writer fos = new OutputStreamWriter(new FileOutputStream(configTarget.toFile()))) {
 
 			getGson().toJson(pagesConfig, fos);
@@ -602,9 +727,10 @@ public class DeployCommand extends NodeServiceCommand implements MaintenanceComm
 		}
 	}
 
-	private void exportComponents(final Path target, final Path configTarget) throws FrameworkException {
+	private void exportComponents(final ExecutorService executor, final Path target, final Path configTarget) throws FrameworkException {
 
 		final Map<String, Object> configuration = new TreeMap<>();
+		final List<String> uuids                = new LinkedList<>();
 		final App app                           = StructrApp.getInstance();
 
 		try (final Tx tx = app.tx()) {
@@ -616,66 +742,151 @@ public class DeployCommand extends NodeServiceCommand implements MaintenanceComm
 
 					final boolean hasParent = node.getProperty(DOMNode.parent) != null;
 					final boolean inTrash   = node.inTrash();
-					boolean doExport        = true;
 
 					// skip nodes in trash and non-toplevel nodes
 					if (inTrash || hasParent) {
 						continue;
 					}
 
-					final String content = node.getContent(RenderContext.EditMode.DEPLOYMENT);
-					if (content != null) {
+					uuids.add(node.getUuid());
+				}
+			}
 
-						String name = node.getProperty(AbstractNode.name);
-						if (name == null) {
+			tx.success();
+		}
 
-							name = node.getUuid();
-						}
+		exportNodes(executor, DOMNode.class, uuids, target, "component", configuration);
 
-						final Map<String, Object> properties = new TreeMap<>();
-						final Path targetFile = target.resolve(name + ".html");
+		try (final Writer fos = new OutputStreamWriter(new FileOutputStream(configTarget.toFile()))) {
 
-						if (Files.exists(targetFile)) {
+			getGson().toJson(configuration, fos);
 
-							try {
-								final String existingContent = new String(Files.readAllBytes(targetFile), "utf-8");
-								if (existingContent.equals(content)) {
+		} catch (IOException ioex) {
+			logger.warn("", ioex);
+		}
+	}
 
-									logger.info("Skipping export of component {}, no changes.", name);
-									doExport = false;
-								}
+	/**
+	 * Exports the nodes with the given uuids in the given executor, each
+	 * in its own transaction. The configuration of the exported nodes is
+	 * added to the given map in the order of the uuids.
+	 */
+	private void exportNodes(final ExecutorService executor, final Class<? extends DOMNode> type, final List<String> uuids, final Path target, final String description, final Map<String, Object> configuration) throws FrameworkException {
 
-							} catch (IOException ignore) {}
-						}
+		final List<Future<Object[]>> futures = new LinkedList<>();
 
-						configuration.put(name, properties);
-						exportConfiguration(node, properties);
+		for (final String uuid : uuids) {
 
-						if (doExport) {
+			futures.add(executor.submit(() -> exportNode(type, uuid, target, description)));
+		}
 
-							try (final OutputStreamWriter writer = new OutputStreamWriter(new FileOutputStream(targetFile.toFile()))) {
+		FrameworkException exception = null;
 
-								writer.write(content);
-								writer.flush();
-								writer.close();
+		for (final Future<Object[]> future : futures) {
 
-							} catch (IOException ioex) {
-								logger.warn("", ioex);
-							}
-						}
+			try {
+
+				final Object[] result = future.get();
+				if (result != null) {
+
+					configuration.put((String)result[0], result[1]);
+				}
+
+			} catch (ExecutionException ex) {
+
+				final Throwable cause = ex.getCause();
+
+				if (cause instanceof FrameworkException) {
+
+					if (exception == null) {
+						exception = (FrameworkException)cause;
 					}
+
+				} else {
+
+					logger.warn("Exception while exporting " + description, cause);
 				}
+
+			} catch (InterruptedException iex) {
+
+				Thread.currentThread().interrupt();
+				throw new FrameworkException(500, "Deployment interrupted");
 			}
+		}
 
-			tx.success();
+		if (exception != null) {
+			throw exception;
 		}
+	}
 
-		try (final Writer fos = new OutputStreamWriter(new FileOutputStream(configTarget.toFile()))) {
+	/**
+	 * Exports the content of a single page or component.
+	 *
+	 * @return the name and the configuration of the node, or null if the
+	 * node has no content
+	 */
+	private Object[] exportNode(final Class<? extends DOMNode> type, final String uuid, final Path target, final String description) throws FrameworkException {
 
-			getGson().toJson(configuration, fos);
+		final App app = StructrApp.getInstance();
 
-		} catch (IOException ioex) {
-			logger.warn("", ioex);
+		try (final Tx tx = app.tx()) {
+
+			final DOMNode node = app.get(type, uuid);
+			Object[] result    = null;
+
+			if (node != null) {
+
+				final String content = node.getContent(RenderContext.EditMode.DEPLOYMENT);
+				if (content != null) {
+
+					String name = node.getProperty(AbstractNode.name);
+					if (name == null) {
+
+						name = node.getUuid();
+					}
+
+					final Map<String, Object> properties = new TreeMap<>();
+					final Path targetFile                = target.resolve(name + ".html");
+					boolean doExport                     = true;
+
+					if (Files.exists(targetFile)) {
+
+						try {
+
+							final String existingContent = new String(Files.readAllBytes(targetFile), "utf-8");
+							if (existingContent.equals(content)) {
+
+								logger.info("Skipping export of {} {}, no changes.", description, name);
+								doExport = false;
+							}
+
+						} catch (IOException ignore) {
+							logger.warn("", ignore);
+						}
+					}
+
+					exportConfiguration(node, properties);
+
+					if (doExport) {
+
+						try (final OutputStreamWriter writer = new OutputStreamWriter(new FileOutputStream(targetFile.toFile()))) {
+
+							writer.write(content);
+							writer.flush();
+							writer.close();
+
+						} catch (IOException ioex) {
+							logger.warn("", ioex);
+						}
+					}
+
+					result = new Object[] { name, properties };
+				}
+			}
+
+			tx.success();
+
+			return result;
 		}
 	}
 
@@ -994,6 +1205,15 @@ public class DeployCommand extends NodeServiceCommand implements MaintenanceComm
 		}
 	}
 
+	private void readConfigMap(final Path conf, final Map<String, Object> target) {
+
+		if (Files.exists(conf)) {
+
+			info("Reading {}..", conf);
+			target.putAll(readConfigMap(conf));
+		}
+	}
+
 	private List<Map<String, Object>> readConfigList(final Path pagesConf) {
 
 		try (final Reader reader = Files.newBufferedReader(pagesConf, Charset.forName("utf-8"))) {
@@ -1129,4 +1349,11 @@ public class DeployCommand extends NodeServiceCommand implements MaintenanceComm
 
 		return true;
 	}
+
+	// ----- nested classes -----
+	@FunctionalInterface
+	private interface DeploymentPhase {
+
+		void run() throws FrameworkException;
+	}
 }
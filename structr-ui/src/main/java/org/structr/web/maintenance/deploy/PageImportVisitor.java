@@ -24,8 +24,13 @@ import java.nio.file.FileVisitResult;
 import java.nio.file.FileVisitor;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -53,6 +58,7 @@ public class PageImportVisitor implements FileVisitor<Path> {
 	private static final Logger logger        = LoggerFactory.getLogger(PageImportVisitor.class.getName());
 	private static final String DoctypeString = "<!DOCTYPE";
 
+	private final Map<Path, Future<ParsedPage>> parsedPages = new ConcurrentHashMap<>();
 	private Map<String, Object> pagesConfiguration = null;
 	private SecurityContext securityContext        = null;
 	private Path basePath                          = null;
@@ -115,6 +121,65 @@ public class PageImportVisitor implements FileVisitor<Path> {
 		return FileVisitResult.CONTINUE;
 	}
 
+	/**
+	 * Reads and parses all HTML files below the base path in the given
+	 * executor. Parsing doesn't need the database, so it can be done in
+	 * parallel before the pages are created one by one.
+	 *
+	 * @param executor the executor to parse the files in
+	 * @throws IOException
+	 */
+	public void parsePages(final ExecutorService executor) throws IOException {
+
+		Files.walkFileTree(basePath, new SimpleFileVisitor<Path>() {
+
+			@Override
+			public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
+
+				final String fileName = file.getFileName().toString();
+
+				if (attrs.isRegularFile() && fileName.endsWith(".html")) {
+
+					parsedPages.put(file, executor.submit(() -> parsePage(file, fileName)));
+				}
+
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	/**
+	 * Waits until all files submitted in {@link #parsePages(ExecutorService)}
+	 * are parsed.
+	 *
+	 * @return the number of parsed files
+	 */
+	public int awaitParsedPages() {
+
+		int count = 0;
+
+		for (final Future<ParsedPage> future : parsedPages.values()) {
+
+			try {
+
+				future.get();
+				count++;
+
+			} catch (ExecutionException ex) {
+
+				// will be parsed (and reported) again when the page is created
+				logger.debug("Unable to parse page: {}", ex.getMessage());
+
+			} catch (InterruptedException iex) {
+
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+
+		return count;
+	}
+
 	// ----- private methods -----
 	private Page getExistingPage(final String name) throws FrameworkException {
 		return StructrApp.getInstance().nodeQuery(Page.class).andName(name).getFirst();
@@ -150,6 +215,17 @@ public class PageImportVisitor implements FileVisitor<Path> {
 		return null;
 	}
 
+	private Object getRawValue(final String name, final String key) {
+
+		final Object data = pagesConfiguration.get(name);
+		if (data != null && data instanceof Map) {
+
+			return ((Map<String, Object>)data).get(key);
+		}
+
+		return null;
+	}
+
 	private <T> T get(final PropertyMap src, final PropertyKey<T> key, final T defaultValue) {
 
 		if (src != null) {
@@ -178,9 +254,49 @@ public class PageImportVisitor implements FileVisitor<Path> {
 		}
 	}
 
+	private ParsedPage parsePage(final Path file, final String fileName) throws IOException, FrameworkException {
+
+		final String name            = StringUtils.substringBeforeLast(fileName, ".html");
+		final Object contentType     = getRawValue(name, "contentType");
+		final Object visibleToPublic = getRawValue(name, "visibleToPublicUsers");
+		final Object visibleToAuth   = getRawValue(name, "visibleToAuthenticatedUsers");
+
+		final String src         = new String(Files.readAllBytes(file),Charset.forName("UTF-8"));
+		final Importer importer  = new Importer(securityContext, src, null, name, visibleToPublic != null && Boolean.valueOf(visibleToPublic.toString()), visibleToAuth != null && Boolean.valueOf(visibleToAuth.toString()));
+
+		// Import documents starting with a <!DOCTYPE> definition are treated as
+		// HTML documents, all others as templates or shared components.
+		final boolean isDocument = StringUtils.startsWithIgnoreCase(src, DoctypeString) && (contentType == null || "text/html".equals(contentType));
+
+		// enable literal import of href attributes
+		importer.setIsDeployment(true);
+
+		return new ParsedPage(importer, isDocument, importer.parse(!isDocument));
+	}
+
+	private ParsedPage getParsedPage(final Path file, final String fileName) throws IOException, FrameworkException {
+
+		final Future<ParsedPage> future = parsedPages.remove(file);
+		if (future != null) {
+
+			try {
+
+				return future.get();
+
+			} catch (ExecutionException | InterruptedException ex) {
+
+				// fall back to parsing the file again
+				logger.debug("Unable to use parsed page {}, parsing again: {}", fileName, ex.getMessage());
+			}
+		}
+
+		return parsePage(file, fileName);
+	}
+
 	private void createPage(final Path file, final String fileName) throws IOException, FrameworkException {
 
-		final String name = StringUtils.substringBeforeLast(fileName, ".html");
+		final String name           = StringUtils.substringBeforeLast(fileName, ".html");
+		final ParsedPage parsedPage = getParsedPage(file, fileName);
 
 		try (final Tx tx = app.tx(true, false, false)) {
 
@@ -192,23 +308,14 @@ public class PageImportVisitor implements FileVisitor<Path> {
 				deletePage(app, name);
 			}
 
-			final String src         = new String(Files.readAllBytes(file),Charset.forName("UTF-8"));
-			final String contentType = get(properties, Page.contentType, "text/html");
+			final Importer importer = parsedPage.importer;
 
-			boolean visibleToPublic = get(properties, GraphObject.visibleToPublicUsers, false);
-			boolean visibleToAuth   = get(properties, GraphObject.visibleToAuthenticatedUsers, false);
-			final Importer importer = new Importer(securityContext, src, null, name, visibleToPublic, visibleToAuth);
-
-			// enable literal import of href attributes
-			importer.setIsDeployment(true);
-
-			if (StringUtils.startsWithIgnoreCase(src, DoctypeString) && "text/html".equals(contentType)) {
+			if (parsedPage.isDocument) {
 
 				// Import document starts with <!DOCTYPE> definition, so we treat it as an HTML
 				// document and use the Structr HTML importer.
 
-				final boolean parseOk = importer.parse();
-				if (parseOk) {
+				if (parsedPage.parseOk) {
 
 					logger.info("Importing page {} from {}..", new Object[] { name, fileName } );
 
@@ -232,8 +339,7 @@ public class PageImportVisitor implements FileVisitor<Path> {
 				// Import document does NOT start with a <!DOCTYPE> definition, so we assume a
 				// template or shared component that we need to parse.
 
-				final boolean parseOk = importer.parse(true);
-				if (parseOk) {
+				if (parsedPage.parseOk) {
 
 					logger.info("Importing page {} from {}..", new Object[] { name, fileName } );
 
@@ -301,4 +407,19 @@ public class PageImportVisitor implements FileVisitor<Path> {
 			}
 		}
 	}
+
+	// ----- nested classes -----
+	private static class ParsedPage {
+
+		private Importer importer  = null;
+		private boolean isDocument = false;
+		private boolean parseOk    = false;
+
+		public ParsedPage(final Importer importer, final boolean isDocument, final boolean parseOk) {
+
+			this.importer   = importer;
+			this.isDocument = isDocument;
+			this.parseOk    = parseOk;
+		}
+	}
 }
@@ -0,0 +1,366 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.servlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.apache.commons.lang3.StringUtils;
+import org.eclipse.jetty.server.HttpOutput;
+import org.structr.web.common.FileChannelCache;
+import org.structr.web.entity.FileBase;
+
+/**
+ * Sends the content of a file to the client, supporting single and
+ * multiple byte ranges, conditional requests with strong ETags derived
+ * from the checksum of the file, and If-Range.
+ *
+ * File content is sent from cached file channels. Larger sections are
+ * memory-mapped and handed over to Jetty as direct buffers, so they are
+ * written to the socket without being copied into the heap.
+ */
+public class FileSender {
+
+	private static final Pattern RANGE_PATTERN = Pattern.compile("\\s*(\\d*)\\s*-\\s*(\\d*)\\s*");
+	private static final int MAX_RANGES        = 32;
+	private static final int MAPPING_THRESHOLD = 32 * 1024;
+	private static final long MAX_MAPPING_SIZE = 64L * 1024 * 1024;
+
+	/**
+	 * Returns the strong entity tag of the given file, or null if the
+	 * file has no checksum.
+	 *
+	 * @param file
+	 * @return the entity tag
+	 */
+	public static String getETag(final FileBase file) {
+
+		final Long checksum = file.getChecksum();
+		final Long size     = file.getSize();
+
+		if (checksum != null && size != null) {
+
+			return "\"" + Long.toHexString(checksum) + "-" + Long.toHexString(size) + "\"";
+		}
+
+		return null;
+	}
+
+	/**
+	 * Indicates whether the If-None-Match header of the given request
+	 * matches the given entity tag.
+	 *
+	 * @param request
+	 * @param etag
+	 * @return whether the client has the current version already
+	 */
+	public static boolean matchesIfNoneMatch(final HttpServletRequest request, final String etag) {
+
+		final String ifNoneMatch = request.getHeader("If-None-Match");
+		if (ifNoneMatch != null && etag != null) {
+
+			for (final String candidate : ifNoneMatch.split(",")) {
+
+				final String value = StringUtils.removeStart(candidate.trim(), "W/");
+				if ("*".equals(value) || etag.equals(value)) {
+
+					return true;
+				}
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Sends the content of the given file, or the requested ranges of it.
+	 * Headers that don't depend on the range (content type, caching
+	 * headers and ETag) must be set by the caller.
+	 *
+	 * @param request
+	 * @param response
+	 * @param file
+	 * @param contentType
+	 * @param etag the entity tag of the file, or null
+	 * @return the status code of the response
+	 * @throws IOException
+	 */
+	public static int send(final HttpServletRequest request, final HttpServletResponse response, final FileBase file, final String contentType, final String etag) throws IOException {
+
+		final Path path = file.getPathOnDisk();
+		if (path == null || !Files.isRegularFile(path)) {
+
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return HttpServletResponse.SC_NOT_FOUND;
+		}
+
+		try (final FileChannelCache.Handle handle = FileChannelCache.getInstance().acquire(path)) {
+
+			final FileChannel channel = handle.getChannel();
+			final long length         = handle.getSize();
+			final String range        = request.getHeader("Range");
+
+			response.setHeader("Accept-Ranges", "bytes");
+
+			if (StringUtils.isNotBlank(range) && isRangeApplicable(request, response, etag)) {
+
+				final List<long[]> ranges = parseRanges(range, length);
+				if (ranges != null) {
+
+					if (ranges.isEmpty()) {
+
+						response.setHeader("Content-Range", "bytes */" + length);
+						response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+
+						return HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE;
+					}
+
+					if (ranges.size() == 1) {
+
+						final long[] single = ranges.get(0);
+
+						response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+						response.setHeader("Content-Range", "bytes " + single[0] + "-" + single[1] + "/" + length);
+						response.setContentLengthLong(single[1] - single[0] + 1);
+
+						write(response.getOutputStream(), channel, single[0], single[1] - single[0] + 1);
+
+					} else {
+
+						sendMultipleRanges(response, channel, ranges, contentType, length);
+					}
+
+					return HttpServletResponse.SC_PARTIAL_CONTENT;
+				}
+			}
+
+			response.setStatus(HttpServletResponse.SC_OK);
+			response.setContentLengthLong(length);
+
+			write(response.getOutputStream(), channel, 0, length);
+
+			return HttpServletResponse.SC_OK;
+		}
+	}
+
+	/**
+	 * Checks the If-Range header: ranges are only sent if the client's
+	 * copy is still current, otherwise the whole file is sent.
+	 */
+	static boolean isRangeApplicable(final HttpServletRequest request, final HttpServletResponse response, final String etag) {
+
+		final String ifRange = request.getHeader("If-Range");
+		if (ifRange == null) {
+
+			return true;
+		}
+
+		if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+
+			// weak entity tags must not be used in If-Range
+			return etag != null && etag.equals(ifRange.trim());
+		}
+
+		// HTTP date, compare with the Last-Modified header set by the caller
+		return ifRange.trim().equals(response.getHeader("Last-Modified"));
+	}
+
+	/**
+	 * Parses the value of a Range header into a sorted list of
+	 * non-overlapping [start, end] pairs.
+	 *
+	 * @return the ranges, an empty list if no range is satisfiable, or null
+	 * if the header is invalid or should be ignored
+	 */
+	static List<long[]> parseRanges(final String header, final long length) {
+
+		if (!header.startsWith("bytes=")) {
+			return null;
+		}
+
+		final List<long[]> ranges = new ArrayList<>();
+
+		for (final String spec : header.substring(6).split(",")) {
+
+			final Matcher matcher = RANGE_PATTERN.matcher(spec);
+			if (!matcher.matches()) {
+				return null;
+			}
+
+			final String startGroup = matcher.group(1);
+			final String endGroup   = matcher.group(2);
+			long start;
+			long end;
+
+			try {
+
+				if (startGroup.isEmpty()) {
+
+					if (endGroup.isEmpty()) {
+						return null;
+					}
+
+					// suffix range: the last n bytes
+					start = Math.max(0, length - Long.parseLong(endGroup));
+					end   = length - 1;
+
+				} else {
+
+					start = Long.parseLong(startGroup);
+					end   = endGroup.isEmpty() ? length - 1 : Math.min(Long.parseLong(endGroup), length - 1);
+
+					if (!endGroup.isEmpty() && Long.parseLong(endGroup) < start) {
+						return null;
+					}
+				}
+
+			} catch (NumberFormatException nfex) {
+				return null;
+			}
+
+			// unsatisfiable ranges are skipped
+			if (start < length && start <= end) {
+
+				ranges.add(new long[] { start, end });
+			}
+		}
+
+		// coalesce overlapping and adjacent ranges
+		Collections.sort(ranges, (a, b) -> Long.compare(a[0], b[0]));
+
+		final List<long[]> merged = new ArrayList<>();
+
+		for (final long[] range : ranges) {
+
+			final long[] last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+			if (last != null && range[0] <= last[1] + 1) {
+
+				last[1] = Math.max(last[1], range[1]);
+
+			} else {
+
+				merged.add(range);
+			}
+		}
+
+		// too many ranges, send the whole file instead
+		if (merged.size() > MAX_RANGES) {
+			return null;
+		}
+
+		return merged;
+	}
+
+	// ----- private methods -----
+	private static void sendMultipleRanges(final HttpServletResponse response, final FileChannel channel, final List<long[]> ranges, final String contentType, final long length) throws IOException {
+
+		final String boundary     = UUID.randomUUID().toString().replace("-", "");
+		final List<byte[]> heads  = new ArrayList<>();
+		final byte[] tail         = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+		long contentLength        = tail.length;
+
+		for (final long[] range : ranges) {
+
+			final String head = "\r\n--" + boundary + "\r\n"
+				+ "Content-Type: " + contentType + "\r\n"
+				+ "Content-Range: bytes " + range[0] + "-" + range[1] + "/" + length + "\r\n\r\n";
+
+			final byte[] bytes = head.getBytes(StandardCharsets.US_ASCII);
+
+			heads.add(bytes);
+			contentLength += bytes.length + range[1] - range[0] + 1;
+		}
+
+		response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+		response.setContentType("multipart/byteranges; boundary=" + boundary);
+		response.setContentLengthLong(contentLength);
+
+		final OutputStream out = response.getOutputStream();
+
+		for (int i=0; i<ranges.size(); i++) {
+
+			final long[] range = ranges.get(i);
+
+			out.write(heads.get(i));
+			write(out, channel, range[0], range[1] - range[0] + 1);
+		}
+
+		out.write(tail);
+	}
+
+	/**
+	 * Writes a section of the given channel. Larger sections are mapped
+	 * into memory and written directly if the output stream is Jetty's,
+	 * smaller ones are read into a heap buffer.
+	 */
+	private static void write(final OutputStream out, final FileChannel channel, final long start, final long count) throws IOException {
+
+		long position  = start;
+		long remaining = count;
+
+		if (out instanceof HttpOutput && count >= MAPPING_THRESHOLD) {
+
+			final HttpOutput httpOutput = (HttpOutput)out;
+
+			while (remaining > 0) {
+
+				final long size = Math.min(remaining, MAX_MAPPING_SIZE);
+
+				httpOutput.write(channel.map(FileChannel.MapMode.READ_ONLY, position, size));
+
+				position  += size;
+				remaining -= size;
+			}
+
+		} else {
+
+			final ByteBuffer buffer = ByteBuffer.allocate((int)Math.min(remaining, MAPPING_THRESHOLD));
+
+			while (remaining > 0) {
+
+				buffer.clear();
+				buffer.limit((int)Math.min(remaining, buffer.capacity()));
+
+				final int read = channel.read(buffer, position);
+				if (read < 0) {
+
+					// file was truncated while sending
+					throw new IOException("Unexpected end of file");
+				}
+
+				out.write(buffer.array(), 0, read);
+
+				position  += read;
+				remaining -= read;
+			}
+		}
+	}
+}
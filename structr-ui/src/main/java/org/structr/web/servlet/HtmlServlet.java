@@ -19,7 +19,6 @@
 package org.structr.web.servlet;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.charset.Charset;
 import java.text.DateFormat;
 import java.text.ParseException;
@@ -34,15 +33,18 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.Queue;
 import java.util.Set;
 import java.util.TimeZone;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.ServletException;
 import javax.servlet.ServletOutputStream;
 import javax.servlet.WriteListener;
@@ -55,6 +57,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.time.DateUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.structr.api.util.Statistics;
 import org.structr.common.AccessMode;
 import org.structr.common.GraphObjectComparator;
 import org.structr.common.PathHelper;
@@ -85,6 +88,7 @@ import org.structr.web.auth.UiAuthenticator;
 import org.structr.web.common.FileHelper;
 import org.structr.web.common.RenderContext;
 import org.structr.web.common.RenderContext.EditMode;
+import org.structr.web.common.StreamingRenderBuffer;
 import org.structr.web.common.StringRenderBuffer;
 import org.structr.web.entity.AbstractFile;
 import org.structr.web.entity.FileBase;
@@ -117,6 +121,10 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 
 	public static final String CUSTOM_RESPONSE_HEADERS      = "HtmlServlet.customResponseHeaders";
 	public static final String OBJECT_RESOLUTION_PROPERTIES = "HtmlServlet.resolveProperties";
+	public static final String RENDER_THREADS               = "HtmlServlet.renderThreads";
+	public static final String RENDER_QUEUE_SIZE            = "HtmlServlet.renderQueueSize";
+	public static final String RENDER_BUFFER_SIZE           = "HtmlServlet.renderBufferSize";
+	public static final String RENDER_WRITE_TIMEOUT         = "HtmlServlet.renderWriteTimeout";
 
 	private static final String defaultCustomResponseHeaders = "Strict-Transport-Security:max-age=60,"
 				+ "X-Content-Type-Options:nosniff,"
@@ -125,7 +133,19 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 	private static List<String> customResponseHeaders = Collections.EMPTY_LIST;
 
 	private static final ThreadLocalMatcher threadLocalUUIDMatcher = new ThreadLocalMatcher("[a-fA-F0-9]{32}");
-	private static final ExecutorService threadPool = Executors.newCachedThreadPool();
+	private static final int renderThreads                  = Services.parseInt(StructrApp.getConfigurationValue(RENDER_THREADS), Runtime.getRuntime().availableProcessors() * 2);
+	private static final int renderQueueSize                = Services.parseInt(StructrApp.getConfigurationValue(RENDER_QUEUE_SIZE), 100);
+	private static final int renderBufferSize               = Services.parseInt(StructrApp.getConfigurationValue(RENDER_BUFFER_SIZE), 262144);
+	private static final int renderWriteTimeout             = Services.parseInt(StructrApp.getConfigurationValue(RENDER_WRITE_TIMEOUT), 30000);
+	private static final int renderChunkSize                = 8192;
+	private static final ExecutorService renderExecutor     = Executors.newFixedThreadPool(renderThreads, new RenderThreadFactory());
+	private static final Semaphore renderPermits            = new Semaphore(renderThreads + renderQueueSize);
+	private static final AtomicLong rejectedRenderRequests  = new AtomicLong();
+
+	static {
+
+		Statistics.register("htmlRendering", HtmlServlet::getRenderStatistics);
+	}
 
 	private final StructrHttpServiceConfig config = new StructrHttpServiceConfig();
 	private final Set<String> possiblePropertyNamesForEntityResolving   = new LinkedHashSet<>();
@@ -169,6 +189,18 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 	public void destroy() {
 	}
 
+	public static Map<String, Object> getRenderStatistics() {
+
+		final Map<String, Object> data = new LinkedHashMap<>();
+
+		data.put("threads",   renderThreads);
+		data.put("queueSize", renderQueueSize);
+		data.put("inFlight",  renderThreads + renderQueueSize - renderPermits.availablePermits());
+		data.put("rejected",  rejectedRenderRequests.get());
+
+		return data;
+	}
+
 	@Override
 	protected void doGet(final HttpServletRequest request, final HttpServletResponse response) {
 
@@ -428,92 +460,79 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 						// async or not?
 						if (isAsync && !createsRawData) {
 
-							final AsyncContext async = request.startAsync();
-							final ServletOutputStream out = async.getResponse().getOutputStream();
-							final AtomicBoolean finished = new AtomicBoolean(false);
-							final DOMNode rootNode = rootElement;
-
-							threadPool.submit(new Runnable() {
-
-								@Override
-								public void run() {
+							// admission control: reject requests when all render workers are busy and the queue is full
+							if (!renderPermits.tryAcquire()) {
 
-									try (final Tx tx = app.tx()) {
+								rejectedRenderRequests.incrementAndGet();
 
-										//final long start = System.currentTimeMillis();
-										// render
-										rootNode.render(renderContext, 0);
-										finished.set(true);
+								response.setHeader("Retry-After", "1");
+								response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
 
-										//final long end = System.currentTimeMillis();
-										//System.out.println("Done in " + (end-start) + " ms");
-										tx.success();
-
-									} catch (Throwable t) {
-										logger.warn("", t);
-										final String errorMsg = t.getMessage();
-										try {
-											//response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
-											response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, errorMsg);
-											finished.set(true);
-										} catch (IOException ex) {
-											logger.warn("", ex);
-										}
-									}
-								}
-
-							});
+							} else {
 
-							// start output write listener
-							out.setWriteListener(new WriteListener() {
+								boolean submitted = false;
 
-								@Override
-								public void onWritePossible() throws IOException {
+								try {
 
-									try {
+									final AsyncContext async            = request.startAsync();
+									final ServletOutputStream out       = async.getResponse().getOutputStream();
+									final StreamingRenderBuffer buffer  = new StreamingRenderBuffer(renderChunkSize, renderBufferSize, renderWriteTimeout);
+									final RenderOutputWriter writer     = new RenderOutputWriter(async, out, buffer);
+									final DOMNode rootNode              = rootElement;
+									final String requestUri             = request.getRequestURI();
 
-										final Queue<String> queue = renderContext.getBuffer().getQueue();
-										while (out.isReady()) {
+									renderContext.setBuffer(buffer);
+									buffer.setListener(writer::drain);
+									async.addListener(writer);
 
-											String buffer = null;
+									// start output write listener
+									out.setWriteListener(writer);
 
-											synchronized (queue) {
-												buffer = queue.poll();
-											}
+									renderExecutor.submit(new Runnable() {
 
-											if (buffer != null) {
+										@Override
+										public void run() {
 
-												out.print(buffer);
+											try (final Tx tx = app.tx()) {
 
-											} else {
+												// render
+												rootNode.render(renderContext, 0);
+												tx.success();
 
-												if (finished.get()) {
-
-													async.complete();
+												if (buffer.isCancelled()) {
+													logger.info("Output of {} discarded, client did not accept any data for {} ms or went away", requestUri, renderWriteTimeout);
+												}
 
-													// don't overwrite 404 code from error page
-													if (response.getStatus() != HttpServletResponse.SC_NOT_FOUND) {
-														response.setStatus(HttpServletResponse.SC_OK);
-													}
+											} catch (Throwable t) {
 
-													// prevent this block from being called again
-													break;
+												logger.warn("", t);
+												final String errorMsg = t.getMessage();
+												try {
+													//response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+													response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, errorMsg);
+												} catch (IOException ex) {
+													logger.warn("", ex);
 												}
 
-												Thread.sleep(1);
+											} finally {
+
+												renderPermits.release();
+												buffer.finish();
 											}
 										}
+									});
 
-									} catch (Throwable t) {
-										logger.warn("", t);
-									}
-								}
+									submitted = true;
+
+								} finally {
 
-								@Override
-								public void onError(Throwable t) {
-									logger.warn("", t);
+									// the render task releases the permit when it is done, so
+									// it must only be released here if the task never started
+									if (!submitted) {
+										renderPermits.release();
+									}
 								}
-							});
+							}
 
 						} else {
 
@@ -1396,7 +1415,27 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 			callbackMap.put("requestedFileName", downloadAsFilename);
 		}
 
-		if (!EditMode.WIDGET.equals(edit) && notModifiedSince(request, response, file, false)) {
+		final String etag = FileSender.getETag(file);
+		if (etag != null) {
+
+			response.setHeader("ETag", etag);
+		}
+
+		boolean notModified = false;
+
+		if (!EditMode.WIDGET.equals(edit)) {
+
+			notModified = notModifiedSince(request, response, file, false);
+
+			// If-None-Match takes precedence over If-Modified-Since
+			if (etag != null && request.getHeader("If-None-Match") != null) {
+
+				notModified = FileSender.matchesIfNoneMatch(request, etag);
+				response.setStatus(notModified ? HttpServletResponse.SC_NOT_MODIFIED : HttpServletResponse.SC_OK);
+			}
+		}
+
+		if (notModified) {
 
 			out.flush();
 			out.close();
@@ -1419,84 +1458,29 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 
 			} else {
 
-				// 2b: stream file to response
-				final InputStream in = file.getInputStream();
-				final String contentType = file.getContentType();
+				// 2b: send file content (or the requested ranges) to response
+				final String contentType = file.getContentType() != null ? file.getContentType() : "application/octet-stream";
 
-				if (contentType != null) {
-
-					response.setContentType(contentType);
-
-				} else {
-
-					// Default
-					response.setContentType("application/octet-stream");
-				}
-
-				final String range = request.getHeader("Range");
+				response.setContentType(contentType);
 
 				try {
 
-					if (StringUtils.isNotEmpty(range)) {
+					callbackMap.put("statusCode", FileSender.send(request, response, file, contentType, etag));
 
-						final long len = file.getSize();
-						long start     = 0;
-						long end       = len - 1;
+				} catch (IOException ioex) {
 
-						final Matcher matcher = Pattern.compile("bytes=(?<start>\\d*)-(?<end>\\d*)").matcher(range);
-
-						if (matcher.matches()) {
-							String startGroup = matcher.group("start");
-							start = startGroup.isEmpty() ? start : Long.valueOf(startGroup);
-							start = Math.max(0, start);
-
-							String endGroup = matcher.group("end");
-							end = endGroup.isEmpty() ? end : Long.valueOf(endGroup);
-							end = end > len - 1 ? len - 1 : end;
-						}
-
-						long contentLength = end - start + 1;
-
-						// Tell the client that we support byte ranges
-						response.setHeader("Accept-Ranges", "bytes");
-						response.setHeader("Content-Range", String.format("bytes %s-%s/%s", start, end, len));
-						response.setHeader("Content-Length", String.format("%s", contentLength));
-
-						response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
-						callbackMap.put("statusCode", HttpServletResponse.SC_PARTIAL_CONTENT);
-
-						IOUtils.copyLarge(in, out, start, contentLength);
-
-					} else {
-
-						response.setStatus(HttpServletResponse.SC_OK);
-						callbackMap.put("statusCode", HttpServletResponse.SC_OK);
-
-						IOUtils.copyLarge(in, out);
-
-					}
-
-
-				} catch (Throwable t) {
+					// client aborted the download, e.g. when seeking in a video
+					logger.debug("Unable to send file {}: {}", file.getUuid(), ioex.getMessage());
 
 				} finally {
 
-					if (out != null) {
-
-						try {
-							// 3: output content
-							out.flush();
-							out.close();
-
-						} catch (Throwable t) {
-						}
-					}
+					try {
+						// 3: output content
+						out.flush();
+						out.close();
 
-					if (in != null) {
-						in.close();
+					} catch (Throwable t) {
 					}
-
-					response.setStatus(HttpServletResponse.SC_OK);
 				}
 			}
 		}
@@ -1727,6 +1711,108 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 	}
 
 	// ----- nested classes -----
+	/**
+	 * Writes the output of a {@link StreamingRenderBuffer} to the client
+	 * without blocking. It is woken by the buffer whenever new output is
+	 * available, and by the container whenever the client can accept
+	 * more data.
+	 */
+	private static class RenderOutputWriter implements WriteListener, AsyncListener {
+
+		private final AsyncContext async;
+		private final ServletOutputStream out;
+		private final StreamingRenderBuffer buffer;
+		private boolean completed = false;
+
+		public RenderOutputWriter(final AsyncContext async, final ServletOutputStream out, final StreamingRenderBuffer buffer) {
+
+			this.async  = async;
+			this.out    = out;
+			this.buffer = buffer;
+		}
+
+		public synchronized void drain() {
+
+			if (completed) {
+				return;
+			}
+
+			try {
+
+				while (out.isReady()) {
+
+					final byte[] chunk = buffer.poll();
+					if (chunk != null) {
+
+						out.write(chunk);
+
+					} else {
+
+						if (buffer.isDone()) {
+
+							completed = true;
+							async.complete();
+						}
+
+						// wait for the next chunk or for completion
+						return;
+					}
+				}
+
+			} catch (Throwable t) {
+
+				logger.warn("", t);
+				buffer.cancel();
+			}
+		}
+
+		// ----- interface WriteListener -----
+		@Override
+		public void onWritePossible() throws IOException {
+			drain();
+		}
+
+		@Override
+		public void onError(final Throwable t) {
+
+			logger.warn("", t);
+			buffer.cancel();
+		}
+
+		// ----- interface AsyncListener -----
+		@Override
+		public void onComplete(final AsyncEvent event) throws IOException {
+		}
+
+		@Override
+		public void onTimeout(final AsyncEvent event) throws IOException {
+			buffer.cancel();
+		}
+
+		@Override
+		public void onError(final AsyncEvent event) throws IOException {
+			buffer.cancel();
+		}
+
+		@Override
+		public void onStartAsync(final AsyncEvent event) throws IOException {
+		}
+	}
+
+	private static class RenderThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(final Runnable r) {
+
+			final Thread thread = new Thread(r, "HtmlRenderer-" + count.incrementAndGet());
+			thread.setDaemon(true);
+
+			return thread;
+		}
+	}
+
 	private enum AuthState {
 		NoBasicAuth, MustAuthenticate, Authenticated
 	}
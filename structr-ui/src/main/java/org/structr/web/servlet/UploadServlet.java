@@ -18,11 +18,9 @@
  */
 package org.structr.web.servlet;
 
-import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.HashMap;
-import java.util.Iterator;
-import java.util.List;
 import java.util.Map;
 import java.util.regex.Matcher;
 import javax.servlet.ServletException;
@@ -30,10 +28,12 @@ import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import org.apache.commons.fileupload.FileItem;
+import org.apache.commons.fileupload.FileItemIterator;
+import org.apache.commons.fileupload.FileItemStream;
+import org.apache.commons.fileupload.FileUploadBase;
 import org.apache.commons.fileupload.FileUploadException;
-import org.apache.commons.fileupload.disk.DiskFileItemFactory;
 import org.apache.commons.fileupload.servlet.ServletFileUpload;
+import org.apache.commons.fileupload.util.Streams;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.exception.ExceptionUtils;
@@ -66,6 +66,10 @@ import org.structr.web.entity.Folder;
 /**
  * Simple upload servlet.
  *
+ * Uploads are streamed: the multipart request is read part by part and
+ * file content is written directly to the file storage, so the memory
+ * used per upload does not depend on the size of the uploaded files.
+ *
  *
  */
 public class UploadServlet extends HttpServlet implements HttpServiceServlet {
@@ -75,13 +79,11 @@ public class UploadServlet extends HttpServlet implements HttpServiceServlet {
 	private static final String REDIRECT_AFTER_UPLOAD_PARAMETER    = "redirectOnSuccess";
 	private static final String APPEND_UUID_ON_REDIRECT            = "appendUuidOnRedirect";
 	private static final int MEGABYTE                              = 1024 * 1024;
-	private static final int MEMORY_THRESHOLD                      = 10 * MEGABYTE;  // above 10 MB, files are stored on disk
 	private static final String MAX_FILE_SIZE                      = "1000"; // unit is MB
 	private static final String MAX_REQUEST_SIZE                   = "1000"; // unit is MB
 
 	// non-static fields
 	private ServletFileUpload uploader = null;
-	private File filesDir = null;
 	private final StructrHttpServiceConfig config = new StructrHttpServiceConfig();
 
 	public UploadServlet() {
@@ -96,24 +98,8 @@ public class UploadServlet extends HttpServlet implements HttpServiceServlet {
 	@Override
 	public void init() {
 
-		try (final Tx tx = StructrApp.getInstance().tx()) {
-			DiskFileItemFactory fileFactory = new DiskFileItemFactory();
-			fileFactory.setSizeThreshold(MEMORY_THRESHOLD);
-
-			filesDir = new File(Services.getInstance().getConfigurationValue(Services.TMP_PATH)); // new File(Services.getInstance().getTmpPath());
-			if (!filesDir.exists()) {
-				filesDir.mkdir();
-			}
-
-			fileFactory.setRepository(filesDir);
-			uploader = new ServletFileUpload(fileFactory);
-
-			tx.success();
-
-		} catch (FrameworkException t) {
-
-			logger.warn("", t);
-		}
+		// no file item factory, items are read with the streaming API
+		uploader = new ServletFileUpload();
 	}
 
 	@Override
@@ -201,30 +187,30 @@ public class UploadServlet extends HttpServlet implements HttpServiceServlet {
 
 			response.setContentType("text/html");
 
-			List<FileItem> fileItemsList = uploader.parseRequest(request);
-			Iterator<FileItem> fileItemsIterator = fileItemsList.iterator();
-
-			final Map<String, Object> params = new HashMap<>();
+			final FileItemIterator fileItemsIterator = uploader.getItemIterator(request);
+			final Map<String, Object> params         = new HashMap<>();
 
+			// form fields must be sent before the file they apply to
 			while (fileItemsIterator.hasNext()) {
 
-				final FileItem item = fileItemsIterator.next();
+				final FileItemStream item = fileItemsIterator.next();
 
 				if (item.isFormField()) {
 
 					final String fieldName = item.getFieldName();
+					final String value     = Streams.asString(item.openStream(), "UTF-8");
 
 					if (REDIRECT_AFTER_UPLOAD_PARAMETER.equals(fieldName)) {
 
-						redirectUrl = item.getString();
+						redirectUrl = value;
 
 					} else if (APPEND_UUID_ON_REDIRECT.equals(fieldName)) {
 
-						appendUuidOnRedirect = "true".equalsIgnoreCase(item.getString());
+						appendUuidOnRedirect = "true".equalsIgnoreCase(value);
 
 					} else {
 
-						params.put(item.getFieldName(), item.getString());
+						params.put(fieldName, value);
 					}
 
 				} else {
@@ -270,17 +256,25 @@ public class UploadServlet extends HttpServlet implements HttpServiceServlet {
 						String uuid       = null;
 						boolean retry     = true;
 
+						// write the content to the file storage outside of the transaction,
+						// computing checksum, size and content type in the same pass
+						final FileHelper.StoredFile storedFile;
+
+						try (final InputStream is = item.openStream()) {
+
+							storedFile = FileHelper.storeFile(is);
+						}
+
 						while (retry) {
 
 							retry = false;
 
 							try (final Tx tx = StructrApp.getInstance().tx()) {
 
-								newFile = FileHelper.createFile(securityContext, IOUtils.toByteArray(item.getInputStream()), contentType, cls);
+								newFile = FileHelper.createFile(securityContext, storedFile, contentType, cls, PathHelper.getName(name));
 
 								final PropertyMap changedProperties = new PropertyMap();
 
-								changedProperties.put(AbstractNode.name, PathHelper.getName(name));
 								changedProperties.putAll(PropertyMap.inputTypeToJavaType(securityContext, cls, params));
 
 								final String defaultUploadFolderConfigValue = StructrApp.getConfigurationValue(Services.APPLICATION_DEFAULT_UPLOAD_FOLDER, null);
@@ -303,7 +297,14 @@ public class UploadServlet extends HttpServlet implements HttpServiceServlet {
 								tx.success();
 
 							} catch (RetryException rex) {
+
 								retry = true;
+
+							} catch (Throwable t) {
+
+								// the file node could not be created, remove its content
+								storedFile.delete();
+								throw t;
 							}
 						}
 
@@ -334,6 +335,11 @@ public class UploadServlet extends HttpServlet implements HttpServiceServlet {
 
 						}
 
+					} catch (FileUploadBase.FileUploadIOException fuex) {
+
+						// size limit exceeded while streaming, report like a parse error
+						throw fuex.getCause();
+
 					} catch (IOException ex) {
 						logger.warn("Could not upload file", ex);
 					}
@@ -405,12 +411,11 @@ public class UploadServlet extends HttpServlet implements HttpServiceServlet {
 			uploader.setFileSizeMax(MEGABYTE * Long.parseLong(StructrApp.getConfigurationValue("UploadServlet.maxFileSize", MAX_FILE_SIZE)));
 			uploader.setSizeMax(MEGABYTE * Long.parseLong(StructrApp.getConfigurationValue("UploadServlet.maxRequestSize", MAX_REQUEST_SIZE)));
 
-			List<FileItem> fileItemsList = uploader.parseRequest(request);
-			Iterator<FileItem> fileItemsIterator = fileItemsList.iterator();
+			final FileItemIterator fileItemsIterator = uploader.getItemIterator(request);
 
 			while (fileItemsIterator.hasNext()) {
 
-				final FileItem fileItem = fileItemsIterator.next();
+				final FileItemStream fileItem = fileItemsIterator.next();
 
 				try {
 
@@ -428,7 +433,11 @@ public class UploadServlet extends HttpServlet implements HttpServiceServlet {
 						final org.structr.dynamic.File file = (org.structr.dynamic.File) node;
 						if (file.isGranted(Permission.write, securityContext)) {
 
-							FileHelper.writeToFile(file, fileItem.getInputStream());
+							try (final InputStream is = fileItem.openStream()) {
+
+								FileHelper.writeToFile(file, is);
+							}
+
 							file.increaseVersion();
 
 							// upload trigger
@@ -442,14 +451,40 @@ public class UploadServlet extends HttpServlet implements HttpServiceServlet {
 						}
 					}
 
+				} catch (FileUploadBase.FileUploadIOException ex) {
+
+					logger.warn("Upload rejected, keeping existing file content: {}", ex.getMessage());
+
+					response.setStatus(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+					response.getOutputStream().write(("ERROR (413): " + ex.getMessage() + "\n").getBytes("UTF-8"));
+					return;
+
 				} catch (IOException ex) {
-					logger.warn("Could not write to file", ex);
+
+					logger.warn("Could not write to file, keeping existing file content", ex);
+
+					response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+					response.getOutputStream().write("ERROR (500): Could not write to file.\n".getBytes("UTF-8"));
+					return;
 				}
 
 			}
 
 			tx.success();
 
+		} catch (FileUploadBase.SizeException sex) {
+
+			logger.warn("Upload rejected, keeping existing file content: {}", sex.getMessage());
+
+			try {
+
+				response.setStatus(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+				response.getOutputStream().write(("ERROR (413): " + sex.getMessage() + "\n").getBytes("UTF-8"));
+
+			} catch (IOException ioex) {
+				logger.warn("Unable to write response", ioex);
+			}
+
 		} catch (FrameworkException | IOException | FileUploadException t) {
 
 			logger.error("Exception while processing request", t);
@@ -0,0 +1,227 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.websocket;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded outbound message queue of a single websocket client.
+ *
+ * Messages are written asynchronously, one at a time, so the thread that
+ * enqueues a message never waits for network I/O. When a client reads too
+ * slowly, a new broadcast message replaces a queued one with the same
+ * coalescing key, and if the queue is still full, the oldest broadcast
+ * message is dropped. Direct replies to the client are never dropped.
+ */
+public class OutboundMessageQueue implements WriteCallback {
+
+	private static final Logger logger          = LoggerFactory.getLogger(OutboundMessageQueue.class.getName());
+	private static final AtomicLong sent        = new AtomicLong();
+	private static final AtomicLong coalesced   = new AtomicLong();
+	private static final AtomicLong dropped     = new AtomicLong();
+	private static final AtomicLong failed      = new AtomicLong();
+
+	private final Deque<Entry> queue            = new ArrayDeque<>();
+	private final AtomicInteger wip             = new AtomicInteger();
+	private final Session session;
+	private final int maxSize;
+	private boolean sending                     = false;
+	private boolean closed                      = false;
+
+	public OutboundMessageQueue(final Session session, final int maxSize) {
+
+		this.session = session;
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Enqueues a message for asynchronous delivery.
+	 *
+	 * @param message the serialized message
+	 * @param coalesceKey key of messages that supersede each other, or null
+	 * @param droppable whether the message may be dropped when the client is too slow
+	 */
+	public void offer(final String message, final String coalesceKey, final boolean droppable) {
+
+		synchronized (this) {
+
+			if (closed) {
+				return;
+			}
+
+			// a newer message replaces a queued one with the same key
+			if (coalesceKey != null) {
+
+				for (final Entry entry : queue) {
+
+					if (coalesceKey.equals(entry.coalesceKey)) {
+
+						entry.message = message;
+						coalesced.incrementAndGet();
+
+						return;
+					}
+				}
+			}
+
+			if (queue.size() >= maxSize && !dropOldest() && droppable) {
+
+				dropped.incrementAndGet();
+				return;
+			}
+
+			queue.add(new Entry(message, droppable ? coalesceKey : null, droppable));
+		}
+
+		drain();
+	}
+
+	public synchronized boolean isClosed() {
+		return closed;
+	}
+
+	public synchronized int size() {
+		return queue.size();
+	}
+
+	public synchronized void close() {
+
+		closed = true;
+		queue.clear();
+	}
+
+	public static Map<String, Object> getStatistics() {
+
+		final Map<String, Object> data = new LinkedHashMap<>();
+
+		data.put("sent",      sent.get());
+		data.put("coalesced", coalesced.get());
+		data.put("dropped",   dropped.get());
+		data.put("failed",    failed.get());
+
+		return data;
+	}
+
+	// ----- interface WriteCallback -----
+	@Override
+	public void writeSuccess() {
+
+		sent.incrementAndGet();
+
+		synchronized (this) {
+			sending = false;
+		}
+
+		drain();
+	}
+
+	@Override
+	public void writeFailed(final Throwable t) {
+
+		failed.incrementAndGet();
+		close();
+
+		logger.debug("Error sending message to client.", t);
+	}
+
+	// ----- private methods -----
+	/**
+	 * Writes the next message if no write is in progress. The callback of
+	 * a write may be invoked synchronously from within sendString, so the
+	 * work-in-progress counter turns nested calls into iterations of the
+	 * outermost call instead of recursing.
+	 */
+	private void drain() {
+
+		if (wip.getAndIncrement() != 0) {
+			return;
+		}
+
+		do {
+
+			Entry next = null;
+
+			synchronized (this) {
+
+				if (!sending && !closed) {
+
+					next = queue.poll();
+					if (next != null) {
+
+						sending = true;
+					}
+				}
+			}
+
+			if (next != null) {
+
+				try {
+
+					session.getRemote().sendString(next.message, this);
+
+				} catch (Throwable t) {
+
+					writeFailed(t);
+				}
+			}
+
+		} while (wip.decrementAndGet() != 0);
+	}
+
+	private boolean dropOldest() {
+
+		for (final Iterator<Entry> it = queue.iterator(); it.hasNext();) {
+
+			if (it.next().droppable) {
+
+				it.remove();
+				dropped.incrementAndGet();
+
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	// ----- nested classes -----
+	private static class Entry {
+
+		private final String coalesceKey;
+		private final boolean droppable;
+		private String message;
+
+		public Entry(final String message, final String coalesceKey, final boolean droppable) {
+
+			this.message     = message;
+			this.coalesceKey = coalesceKey;
+			this.droppable   = droppable;
+		}
+	}
+}
@@ -61,6 +61,7 @@ public class StructrWebSocket implements WebSocketListener {
 
 	//~--- fields ---------------------------------------------------------
 	private Session session = null;
+	private OutboundMessageQueue outbound = null;
 	private Gson gson = null;
 	private HttpServletRequest request = null;
 	private SecurityContext securityContext = null;
@@ -92,7 +93,8 @@ public class StructrWebSocket implements WebSocketListener {
 
 		logger.debug("New connection with protocol {}", session.getProtocolVersion());
 
-		this.session = session;
+		this.session  = session;
+		this.outbound = new OutboundMessageQueue(session, Services.parseInt(StructrApp.getConfigurationValue(Services.WS_OUTBOUND_QUEUE_SIZE), 1000));
 
 		syncController.registerClient(this);
 
@@ -111,6 +113,10 @@ public class StructrWebSocket implements WebSocketListener {
 
 			this.session = null;
 
+			if (outbound != null) {
+				outbound.close();
+			}
+
 			syncController.unregisterClient(this);
 
 			// flush and close open uploads
@@ -316,7 +322,8 @@ public class StructrWebSocket implements WebSocketListener {
 				securityContext.clearCustomView();
 			}
 
-			session.getRemote().sendString(msg);
+			// replies are queued behind pending broadcasts and never dropped
+			outbound.offer(msg, null, false);
 
 			tx.success();
 
@@ -440,6 +447,12 @@ public class StructrWebSocket implements WebSocketListener {
 
 	}
 
+	public OutboundMessageQueue getOutboundQueue() {
+
+		return outbound;
+
+	}
+
 	public HttpServletRequest getRequest() {
 
 		return request;
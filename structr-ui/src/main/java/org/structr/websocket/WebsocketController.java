@@ -19,20 +19,25 @@
 package org.structr.websocket;
 
 import com.google.gson.Gson;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
 import org.eclipse.jetty.util.ConcurrentHashSet;
 import org.eclipse.jetty.util.URIUtil;
 import org.eclipse.jetty.websocket.api.Session;
-import org.eclipse.jetty.websocket.api.WebSocketException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.structr.api.graph.RelationshipType;
+import org.structr.api.util.Statistics;
 import org.structr.common.SecurityContext;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.GraphObject;
@@ -42,6 +47,7 @@ import org.structr.core.entity.AbstractNode;
 import org.structr.core.graph.ModificationEvent;
 import org.structr.core.graph.NodeInterface;
 import org.structr.core.graph.RelationshipInterface;
+import org.structr.core.property.PropertyKey;
 import org.structr.core.property.PropertyMap;
 import org.structr.web.entity.AbstractFile;
 import org.structr.web.entity.User;
@@ -59,12 +65,15 @@ public class WebsocketController implements StructrTransactionListener {
 	private static final Set<String> BroadcastCommands = new HashSet<>(Arrays.asList(new String[] { "UPDATE", "ADD", "CREATE" } ));
 
 	private final Set<StructrWebSocket> clients = new ConcurrentHashSet<>();
+	private final AtomicLong serialized         = new AtomicLong();
 	private Gson gson = null;
 
 	public WebsocketController(final Gson gson) {
 
 		this.gson = gson;
 
+		Statistics.register("websocket", this::getStatistics);
+
 	}
 
 	public void registerClient(final StructrWebSocket client) {
@@ -80,6 +89,12 @@ public class WebsocketController implements StructrTransactionListener {
 	}
 
 	// ----- private methods -----
+	/**
+	 * Sends a message to all clients that may see it. The message is
+	 * serialized once per distinct filtered result instead of once per
+	 * client, and handed to the outbound queue of each client so that a
+	 * slow client does not delay the others.
+	 */
 	private void broadcast(final WebSocketMessage webSocketData) {
 
 		//logger.debug("Broadcasting message to {} clients..", clients.size());
@@ -92,8 +107,11 @@ public class WebsocketController implements StructrTransactionListener {
 		final List<? extends GraphObject> result     = webSocketData.getResult();
 		final String command                         = webSocketData.getCommand();
 		final GraphObject obj                        = webSocketData.getGraphObject();
+		final Map<List<String>, String> messages     = new HashMap<>();
+		final boolean filterResult                   = result != null && !result.isEmpty() && BroadcastCommands.contains(command);
+		final String coalesceKey                     = getCoalesceKey(webSocketData);
 
-		String message;
+		String unfilteredMessage = null;
 
 		// create message
 		for (StructrWebSocket socket : clients) {
@@ -103,9 +121,17 @@ public class WebsocketController implements StructrTransactionListener {
 				continue;
 			}
 
+			final OutboundMessageQueue outbound = socket.getOutboundQueue();
+
+			if (outbound != null && outbound.isClosed()) {
+
+				clientsToRemove.add(socket);
+				continue;
+			}
+
 			Session session = socket.getSession();
 
-			if (session != null && socket.isAuthenticated()) {
+			if (session != null && outbound != null && socket.isAuthenticated()) {
 
 				final SecurityContext securityContext = socket.getSecurityContext();
 
@@ -127,37 +153,37 @@ public class WebsocketController implements StructrTransactionListener {
 					}
 				}
 
-				if (result != null && !result.isEmpty() && BroadcastCommands.contains(command)) {
-
-					final WebSocketMessage clientData = webSocketData.copy();
+				final String message;
 
-					clientData.setResult(filter(securityContext, result));
+				if (filterResult) {
 
-					message = gson.toJson(clientData, WebSocketMessage.class);
-
-				} else {
+					// clients that see the same subset of the result receive the same message
+					final List<? extends GraphObject> filtered = filter(securityContext, result);
+					final List<String> key                     = new ArrayList<>(filtered.size());
 
-					message = gson.toJson(webSocketData, WebSocketMessage.class);
-				}
+					for (final GraphObject graphObject : filtered) {
+						key.add(graphObject.getUuid());
+					}
 
-				try {
+					message = messages.computeIfAbsent(key, k -> {
 
-					session.getRemote().sendString(message);
+						final WebSocketMessage clientData = webSocketData.copy();
 
-				} catch (Throwable t) {
+						clientData.setResult(filtered);
 
-					if (t instanceof WebSocketException) {
+						return serialize(clientData);
+					});
 
-						WebSocketException wse = (WebSocketException) t;
+				} else {
 
-						if ("RemoteEndpoint unavailable, current state [CLOSED], expecting [OPEN or CONNECTED]".equals(wse.getMessage())) {
-							clientsToRemove.add(socket);
-						}
+					if (unfilteredMessage == null) {
+						unfilteredMessage = serialize(webSocketData);
 					}
 
-					logger.debug("Error sending message to client.", t);
+					message = unfilteredMessage;
 				}
 
+				outbound.offer(message, coalesceKey, true);
 			}
 
 		}
@@ -171,6 +197,49 @@ public class WebsocketController implements StructrTransactionListener {
 
 	}
 
+	private String serialize(final WebSocketMessage message) {
+
+		serialized.incrementAndGet();
+
+		return gson.toJson(message, WebSocketMessage.class);
+	}
+
+	/**
+	 * Returns the key under which a queued message may be replaced by a
+	 * newer one. Only plain updates qualify, a newer update of the same
+	 * properties of the same object makes the older one obsolete.
+	 */
+	private String getCoalesceKey(final WebSocketMessage message) {
+
+		if ("UPDATE".equals(message.getCommand()) && message.getCallback() == null && message.getId() != null) {
+
+			final Set<String> keys = new TreeSet<>();
+
+			for (final PropertyKey key : message.getModifiedProperties()) {
+				keys.add(key.jsonName());
+			}
+
+			for (final PropertyKey key : message.getRemovedProperties()) {
+				keys.add("-" + key.jsonName());
+			}
+
+			return message.getId() + ":" + keys;
+		}
+
+		return null;
+	}
+
+	private Map<String, Object> getStatistics() {
+
+		final Map<String, Object> data = new LinkedHashMap<>();
+
+		data.put("clients",    clients.size());
+		data.put("serialized", serialized.get());
+		data.putAll(OutboundMessageQueue.getStatistics());
+
+		return data;
+	}
+
 	private <T extends GraphObject> List<T> filter(final SecurityContext securityContext, final List<T> all) {
 
 		List<T> filteredResult = new LinkedList<>();
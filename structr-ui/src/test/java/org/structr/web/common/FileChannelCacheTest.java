@@ -0,0 +1,196 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.common;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests reuse, ref-counted eviction and invalidation of cached file
+ * channels.
+ */
+public class FileChannelCacheTest {
+
+	private final List<Path> files = new ArrayList<>();
+
+	@Before
+	public void createFiles() throws IOException {
+
+		for (int i=0; i<3; i++) {
+
+			final Path path = Files.createTempFile("structr-channel-cache", ".txt");
+
+			Files.write(path, ("content" + i).getBytes(StandardCharsets.UTF_8));
+
+			files.add(path);
+		}
+	}
+
+	@After
+	public void deleteFiles() throws IOException {
+
+		for (final Path path : files) {
+			Files.deleteIfExists(path);
+		}
+	}
+
+	@Test
+	public void testChannelReuse() throws IOException {
+
+		final FileChannelCache cache = new FileChannelCache(2);
+		final FileChannel first;
+		final FileChannel second;
+
+		try (final FileChannelCache.Handle handle = cache.acquire(files.get(0))) {
+
+			first = handle.getChannel();
+
+			assertEquals(8, handle.getSize());
+			assertEquals("content0", read(first));
+		}
+
+		// released but not evicted, the channel stays open for the next download
+		assertTrue(first.isOpen());
+
+		try (final FileChannelCache.Handle handle = cache.acquire(files.get(0))) {
+
+			second = handle.getChannel();
+		}
+
+		assertSame("Cached channel was not reused", first, second);
+		assertEquals(1L, cache.getStatistics().get("hits"));
+		assertEquals(1L, cache.getStatistics().get("misses"));
+
+		cache.clear();
+
+		assertFalse(first.isOpen());
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testRefCountedEviction() throws IOException {
+
+		final FileChannelCache cache = new FileChannelCache(2);
+
+		final FileChannelCache.Handle handle = cache.acquire(files.get(0));
+		final FileChannel channel            = handle.getChannel();
+
+		// evicts the least recently used channel while it is still in use
+		cache.acquire(files.get(1)).close();
+		cache.acquire(files.get(2)).close();
+
+		assertEquals(2, cache.size());
+		assertEquals(1L, cache.getStatistics().get("evictions"));
+
+		// the evicted channel must stay readable until it is released
+		assertTrue(channel.isOpen());
+		assertEquals("content0", read(channel));
+
+		handle.close();
+
+		assertFalse(channel.isOpen());
+
+		// closing a handle twice must not release the channel twice
+		handle.close();
+
+		// the next lookup opens a new channel
+		try (final FileChannelCache.Handle newHandle = cache.acquire(files.get(0))) {
+
+			assertNotSame(channel, newHandle.getChannel());
+			assertEquals("content0", read(newHandle.getChannel()));
+		}
+
+		cache.clear();
+	}
+
+	@Test
+	public void testInvalidationOnModification() throws IOException {
+
+		final FileChannelCache cache = new FileChannelCache(2);
+		final Path path              = files.get(0);
+		final FileChannel channel;
+
+		try (final FileChannelCache.Handle handle = cache.acquire(path)) {
+
+			channel = handle.getChannel();
+		}
+
+		// same size, different modification time
+		final FileTime lastModified = Files.getLastModifiedTime(path);
+
+		Files.write(path, "CONTENT0".getBytes(StandardCharsets.UTF_8));
+		Files.setLastModifiedTime(path, FileTime.fromMillis(lastModified.toMillis() + 10000));
+
+		try (final FileChannelCache.Handle handle = cache.acquire(path)) {
+
+			assertNotSame("Channel of a modified file was reused", channel, handle.getChannel());
+			assertEquals("CONTENT0", read(handle.getChannel()));
+		}
+
+		// the old channel was not in use and must be closed
+		assertFalse(channel.isOpen());
+		assertEquals(1, cache.size());
+
+		cache.clear();
+	}
+
+	@Test
+	public void testExplicitInvalidation() throws IOException {
+
+		final FileChannelCache cache = new FileChannelCache(2);
+		final Path path              = files.get(0);
+
+		final FileChannelCache.Handle handle = cache.acquire(path);
+		final FileChannel channel            = handle.getChannel();
+
+		cache.invalidate(path);
+
+		assertEquals(0, cache.size());
+		assertTrue(channel.isOpen());
+
+		handle.close();
+
+		assertFalse(channel.isOpen());
+	}
+
+	// ----- private methods -----
+	private String read(final FileChannel channel) throws IOException {
+
+		final ByteBuffer buffer = ByteBuffer.allocate((int)channel.size());
+
+		channel.read(buffer, 0);
+
+		return new String(buffer.array(), StandardCharsets.UTF_8);
+	}
+}
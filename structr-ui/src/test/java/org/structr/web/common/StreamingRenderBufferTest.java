@@ -0,0 +1,98 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.common;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Queue;
+import org.apache.commons.lang3.StringUtils;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Tests the chunking and the queue view of {@link StreamingRenderBuffer}.
+ */
+public class StreamingRenderBufferTest {
+
+	@Test
+	public void testPollAndQueue() {
+
+		final StreamingRenderBuffer buffer = new StreamingRenderBuffer(4, 1024, 60000);
+
+		buffer.append("abc");
+
+		// less than one chunk, nothing to consume yet
+		assertNull(buffer.poll());
+
+		buffer.append("d\u00e9");
+
+		assertEquals("abcd\u00e9", new String(buffer.poll(), StandardCharsets.UTF_8));
+
+		buffer.append("fg");
+		buffer.append("hijk");
+
+		// the queue contains all remaining output, including the pending part
+		final Queue<String> queue = buffer.getQueue();
+
+		assertEquals("fghijk", StringUtils.join(queue, ""));
+		assertNull(buffer.poll());
+		assertTrue(buffer.getQueue().isEmpty());
+
+		buffer.finish();
+
+		assertTrue(buffer.isDone());
+		assertFalse(buffer.isCancelled());
+	}
+
+	@Test
+	public void testQueueReleasesProducer() throws InterruptedException {
+
+		final StreamingRenderBuffer buffer = new StreamingRenderBuffer(4, 4, 60000);
+
+		buffer.setListener(() -> {});
+
+		final Thread producer = new Thread(() -> {
+
+			// each append exceeds the queue limit and blocks until the output is consumed
+			buffer.append("12345");
+			buffer.append("67890");
+		});
+
+		producer.start();
+
+		final StringBuilder output = new StringBuilder();
+		final long deadline        = System.currentTimeMillis() + 10000;
+
+		while (producer.isAlive() && System.currentTimeMillis() < deadline) {
+
+			output.append(StringUtils.join(buffer.getQueue(), ""));
+			Thread.sleep(10);
+		}
+
+		producer.join(1000);
+
+		output.append(StringUtils.join(buffer.getQueue(), ""));
+
+		assertFalse("Producer was not released", producer.isAlive());
+		assertFalse(buffer.isCancelled());
+		assertEquals("1234567890", output.toString());
+	}
+}
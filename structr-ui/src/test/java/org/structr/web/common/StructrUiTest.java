@@ -64,6 +64,7 @@ import org.structr.rest.servlet.JsonRestServlet;
 import org.structr.web.auth.UiAuthenticator;
 import org.structr.web.entity.User;
 import org.structr.web.servlet.HtmlServlet;
+import org.structr.web.servlet.UploadServlet;
 import org.structr.websocket.servlet.WebSocketServlet;
 
 //~--- classes ----------------------------------------------------------------
@@ -92,6 +93,7 @@ public abstract class StructrUiTest {
 	protected static final String restUrl = "/structr/rest";
 	protected static final String htmlUrl = "/structr/html";
 	protected static final String wsUrl = "/structr/ws";
+	protected static final String uploadUrl = "/structr/upload";
 	protected static final String host = "localhost";
 	protected static final int httpPort = (System.getProperty("httpPort") != null ? Integer.parseInt(System.getProperty("httpPort")) : 8875);
 	protected static final int ftpPort = (System.getProperty("ftpPort") != null ? Integer.parseInt(System.getProperty("ftpPort")) : 8876);
@@ -162,7 +164,7 @@ public abstract class StructrUiTest {
 		config.setProperty(HttpService.APPLICATION_TITLE, "structr unit test app" + timestamp);
 		config.setProperty(HttpService.APPLICATION_HOST, host);
 		config.setProperty(HttpService.APPLICATION_HTTP_PORT, Integer.toString(httpPort));
-		config.setProperty(HttpService.SERVLETS, "JsonRestServlet WebSocketServlet HtmlServlet");
+		config.setProperty(HttpService.SERVLETS, "JsonRestServlet WebSocketServlet HtmlServlet UploadServlet");
 
 		config.setProperty("JsonRestServlet.class", JsonRestServlet.class.getName());
 		config.setProperty("JsonRestServlet.path", restUrl);
@@ -191,6 +193,17 @@ public abstract class StructrUiTest {
 		config.setProperty("HtmlServlet.defaultview", PropertyView.Public);
 		config.setProperty("HtmlServlet.outputdepth", "3");
 
+		config.setProperty("UploadServlet.class", UploadServlet.class.getName());
+		config.setProperty("UploadServlet.path", uploadUrl);
+		config.setProperty("UploadServlet.resourceprovider", UiResourceProvider.class.getName());
+		config.setProperty("UploadServlet.authenticator", UiAuthenticator.class.getName());
+		config.setProperty("UploadServlet.user.class", User.class.getName());
+		config.setProperty("UploadServlet.user.autocreate", "false");
+		config.setProperty("UploadServlet.defaultview", PropertyView.Public);
+		config.setProperty("UploadServlet.outputdepth", "3");
+		config.setProperty("UploadServlet.maxFileSize", "1");
+		config.setProperty("UploadServlet.maxRequestSize", "10");
+
 		// Configure resource handlers
 		config.setProperty(HttpService.RESOURCE_HANDLERS, "StructrUiHandler");
 
@@ -18,11 +18,18 @@
  */
 package org.structr.web.common;
 
+import com.jayway.restassured.RestAssured;
+import com.jayway.restassured.filter.log.ResponseLoggingFilter;
+import com.jayway.restassured.response.Response;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Map.Entry;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
+import static org.hamcrest.Matchers.equalTo;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
@@ -508,4 +515,265 @@ public class UiTest extends StructrUiTest {
 
 
 	}
+
+	@Test
+	public void testCreateFileFromStream() {
+
+		final byte[] content = new byte[200_000];
+		FileBase file        = null;
+
+		// larger than the copy buffer, with a recognizable PNG header
+		for (int i=0; i<content.length; i++) {
+			content[i] = (byte)(i % 251);
+		}
+
+		try {
+
+			final byte[] png = IOUtils.toByteArray(UiTest.class.getResourceAsStream("/test/test.png"));
+			System.arraycopy(png, 0, content, 0, png.length);
+
+		} catch (IOException ioex) {
+			fail("Unexpected exception.");
+		}
+
+		try (final Tx tx = app.tx()) {
+
+			file = FileHelper.createFile(securityContext, new ByteArrayInputStream(content), null, File.class, "streamed");
+
+			tx.success();
+
+		} catch (FrameworkException | IOException ex) {
+
+			logger.warn("", ex);
+			fail("Unexpected exception");
+		}
+
+		try (final Tx tx = app.tx()) {
+
+			final java.io.File fileOnDisk = file.getFileOnDisk();
+			final String uuid             = file.getUuid();
+
+			assertEquals("Invalid relative file path", FileBase.getDirectoryPath(uuid) + "/" + uuid, file.getRelativeFilePath());
+			assertEquals("Invalid file size", Long.valueOf(content.length), file.getProperty(FileBase.size));
+			assertEquals("Invalid checksum", Long.valueOf(FileUtils.checksumCRC32(fileOnDisk)), file.getChecksum());
+			assertEquals("Invalid content type", "image/png", file.getContentType());
+			assertTrue("Invalid file content", Arrays.equals(content, IOUtils.toByteArray(file.getInputStream())));
+
+			tx.success();
+
+		} catch (FrameworkException | IOException ex) {
+
+			logger.warn("", ex);
+			fail("Unexpected exception");
+		}
+	}
+
+	@Test
+	public void testPutUploadKeepsContentOnFailure() {
+
+		final String content = "original content";
+		final byte[] large   = new byte[2 * 1024 * 1024];
+		String uuid          = null;
+		Long checksum        = null;
+
+		try (final Tx tx = app.tx()) {
+
+			final FileBase file = FileHelper.createFile(securityContext, content.getBytes("utf-8"), "text/plain", File.class, "put.txt");
+
+			uuid     = file.getUuid();
+			checksum = file.getChecksum();
+
+			tx.success();
+
+		} catch (FrameworkException | IOException ex) {
+
+			logger.warn("", ex);
+			fail("Unexpected exception");
+		}
+
+		final String url = prot + host + ":" + httpPort + uploadUrl + "/" + uuid;
+
+		// exceeds UploadServlet.maxFileSize while streaming
+		RestAssured
+			.given()
+				.header("X-User", "superadmin")
+				.header("X-Password", "sehrgeheim")
+				.multiPart("file", "put.txt", large)
+			.expect()
+				.statusCode(413)
+			.when()
+				.put(url);
+
+		try (final Tx tx = app.tx()) {
+
+			final FileBase file           = app.get(FileBase.class, uuid);
+			final java.io.File fileOnDisk = file.getFileOnDisk();
+
+			assertEquals("Invalid file size", Long.valueOf(content.length()), file.getProperty(FileBase.size));
+			assertEquals("Invalid checksum", checksum, file.getChecksum());
+			assertEquals("Invalid file content", content, IOUtils.toString(file.getInputStream(), "utf-8"));
+			assertEquals("Temporary file not removed", 0, fileOnDisk.getParentFile().listFiles((dir, name) -> name.endsWith(".tmp")).length);
+
+			tx.success();
+
+		} catch (FrameworkException | IOException ex) {
+
+			logger.warn("", ex);
+			fail("Unexpected exception");
+		}
+
+		// a complete upload replaces content, checksum and size
+		final String replaced = "replaced content, a bit longer";
+
+		RestAssured
+			.given()
+				.header("X-User", "superadmin")
+				.header("X-Password", "sehrgeheim")
+				.multiPart("file", "put.txt", replaced.getBytes())
+			.expect()
+				.statusCode(200)
+			.when()
+				.put(url);
+
+		try (final Tx tx = app.tx()) {
+
+			final FileBase file           = app.get(FileBase.class, uuid);
+			final java.io.File fileOnDisk = file.getFileOnDisk();
+
+			assertEquals("Invalid file size", Long.valueOf(replaced.length()), file.getProperty(FileBase.size));
+			assertEquals("Invalid checksum", Long.valueOf(FileUtils.checksumCRC32(fileOnDisk)), file.getChecksum());
+			assertEquals("Invalid file content", replaced, IOUtils.toString(file.getInputStream(), "utf-8"));
+			assertEquals("Temporary file not removed", 0, fileOnDisk.getParentFile().listFiles((dir, name) -> name.endsWith(".tmp")).length);
+
+			tx.success();
+
+		} catch (FrameworkException | IOException ex) {
+
+			logger.warn("", ex);
+			fail("Unexpected exception");
+		}
+	}
+
+	@Test
+	public void testRangeDownload() {
+
+		final String content = "0123456789abcdefghijklmnopqrstuvwxyz";
+		final String url     = baseUri + "range.txt";
+
+		try (final Tx tx = app.tx()) {
+
+			final FileBase file = FileHelper.createFile(securityContext, content.getBytes("utf-8"), "text/plain", File.class, "range.txt");
+
+			makePublic(file);
+
+			tx.success();
+
+		} catch (FrameworkException | IOException ex) {
+
+			logger.warn("", ex);
+			fail("Unexpected exception");
+		}
+
+		final Response response = RestAssured
+			.given()
+				.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(500))
+			.expect()
+				.statusCode(200)
+				.header("Accept-Ranges", "bytes")
+				.body(equalTo(content))
+			.when()
+				.get(url);
+
+		final String etag         = response.getHeader("ETag");
+		final String lastModified = response.getHeader("Last-Modified");
+
+		assertNotNull("Missing ETag header", etag);
+		assertNotNull("Missing Last-Modified header", lastModified);
+
+		// single range
+		RestAssured
+			.given()
+				.header("Range", "bytes=0-9")
+			.expect()
+				.statusCode(206)
+				.header("Content-Range", "bytes 0-9/36")
+				.header("Content-Length", "10")
+				.body(equalTo("0123456789"))
+			.when()
+				.get(url);
+
+		// suffix range
+		RestAssured
+			.given()
+				.header("Range", "bytes=-6")
+			.expect()
+				.statusCode(206)
+				.header("Content-Range", "bytes 30-35/36")
+				.body(equalTo("uvwxyz"))
+			.when()
+				.get(url);
+
+		// unsatisfiable range
+		RestAssured
+			.given()
+				.header("Range", "bytes=100-199")
+			.expect()
+				.statusCode(416)
+				.header("Content-Range", "bytes */36")
+			.when()
+				.get(url);
+
+		// If-Range with the current and an outdated entity tag
+		RestAssured
+			.given()
+				.header("Range", "bytes=10-19")
+				.header("If-Range", etag)
+			.expect()
+				.statusCode(206)
+				.header("Content-Range", "bytes 10-19/36")
+				.body(equalTo("abcdefghij"))
+			.when()
+				.get(url);
+
+		RestAssured
+			.given()
+				.header("Range", "bytes=10-19")
+				.header("If-Range", "\"outdated\"")
+			.expect()
+				.statusCode(200)
+				.body(equalTo(content))
+			.when()
+				.get(url);
+
+		// If-Range with the modification date
+		RestAssured
+			.given()
+				.header("Range", "bytes=10-19")
+				.header("If-Range", lastModified)
+			.expect()
+				.statusCode(206)
+				.body(equalTo("abcdefghij"))
+			.when()
+				.get(url);
+
+		// If-None-Match takes precedence over If-Modified-Since
+		RestAssured
+			.given()
+				.header("If-None-Match", etag)
+				.header("If-Modified-Since", "Thu, 01 Jan 1970 00:00:00 GMT")
+			.expect()
+				.statusCode(304)
+			.when()
+				.get(url);
+
+		RestAssured
+			.given()
+				.header("If-None-Match", "\"outdated\"")
+				.header("If-Modified-Since", lastModified)
+			.expect()
+				.statusCode(200)
+				.body(equalTo(content))
+			.when()
+				.get(url);
+	}
 }
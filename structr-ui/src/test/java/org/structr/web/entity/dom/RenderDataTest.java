@@ -19,6 +19,7 @@
 package org.structr.web.entity.dom;
 
 import java.util.List;
+import org.apache.commons.lang3.StringUtils;
 import static junit.framework.TestCase.assertEquals;
 import static junit.framework.TestCase.fail;
 import org.jsoup.Jsoup;
@@ -26,14 +27,17 @@ import org.jsoup.nodes.Document;
 import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.structr.common.Permission;
 import org.structr.core.app.StructrApp;
 import org.structr.core.entity.AbstractNode;
 import org.structr.core.graph.CreateRelationshipCommand;
+import org.structr.core.graph.NodeAttribute;
 import org.structr.core.graph.NodeInterface;
 import org.structr.core.graph.Tx;
 import org.structr.core.property.PropertyMap;
 import org.structr.dynamic.File;
 import org.structr.web.common.DOMTest;
+import org.structr.web.common.FragmentCache;
 import org.structr.web.common.RenderContext;
 import org.structr.web.entity.FileBase;
 import org.structr.web.entity.Folder;
@@ -319,4 +323,272 @@ public class RenderDataTest extends DOMTest {
 		}
 
 	}
+
+	@Test
+	public void testFragmentCache() {
+
+		final FragmentCache cache = FragmentCache.getInstance();
+		String name               = null;
+		Content content           = null;
+		User user1                = null;
+
+		try (final Tx tx = app.tx()) {
+
+			final Page doc = (Page) getDocument();
+			name = doc.getName();
+
+			final List<User> users = createTestNodes(User.class, 2);
+
+			user1 = users.get(0);
+			user1.setProperties(user1.getSecurityContext(), new PropertyMap(AbstractNode.name, "user1"));
+			User user2 = users.get(1);
+			user2.setProperties(user2.getSecurityContext(), new PropertyMap(AbstractNode.name, "user2"));
+
+			// create dom tree
+			Element html = doc.createElement("html");
+			Element body = doc.createElement("body");
+			Element div  = doc.createElement("div");
+			final Element p1 = doc.createElement("p");
+
+			((DOMElement) div).setProperties(((DOMElement) div).getSecurityContext(), new PropertyMap(DOMNode.fragmentCache, true));
+
+			final PropertyMap p1Properties = new PropertyMap();
+			p1Properties.put(DOMElement.restQuery, "users?sort=name");
+			p1Properties.put(DOMElement.dataKey, "user");
+			((DOMElement) p1).setProperties(((DOMElement) p1).getSecurityContext(), p1Properties);
+
+			Content userNameContentNode = (Content) doc.createTextNode("${user.name}");
+			content = (Content) doc.createTextNode("static");
+
+			p1.appendChild(userNameContentNode);
+
+			doc.appendChild(html);
+			html.appendChild(body);
+			body.appendChild(div);
+			div.appendChild(content);
+			div.appendChild(p1);
+
+			makePublic(doc, html, body, div, p1, content, userNameContentNode, user1, user2);
+
+			tx.success();
+
+		} catch (Exception ex) {
+
+			logger.warn("", ex);
+			fail("Unexpected exception");
+		}
+
+		try {
+
+			final long hits = getFragmentCacheHits(cache);
+
+			assertEquals("static", Jsoup.connect(baseUri + name).get().select("html > body > div").get(0).ownText());
+			assertEquals(hits, getFragmentCacheHits(cache));
+
+			// second request is served from the cache
+			final Document parsedDocument = Jsoup.connect(baseUri + name).get();
+
+			assertEquals(hits + 1, getFragmentCacheHits(cache));
+			assertEquals("user1", parsedDocument.select("html > body > div > p").get(0).ownText());
+			assertEquals("user2", parsedDocument.select("html > body > div > p").get(1).ownText());
+
+		} catch (Exception ex) {
+			logger.warn("", ex);
+			fail("unexpected exception");
+		}
+
+		// modification of a node in the subtree invalidates the fragment
+		try (final Tx tx = app.tx()) {
+
+			content.setProperty(Content.content, "modified");
+			tx.success();
+
+		} catch (Exception ex) {
+			logger.warn("", ex);
+			fail("unexpected exception");
+		}
+
+		try {
+
+			assertEquals("modified", Jsoup.connect(baseUri + name).get().select("html > body > div").get(0).ownText());
+
+		} catch (Exception ex) {
+			logger.warn("", ex);
+			fail("unexpected exception");
+		}
+
+		// modification of a data object invalidates the fragment
+		try (final Tx tx = app.tx()) {
+
+			user1.setProperty(AbstractNode.name, "user0");
+			tx.success();
+
+		} catch (Exception ex) {
+			logger.warn("", ex);
+			fail("unexpected exception");
+		}
+
+		try {
+
+			assertEquals("user0", Jsoup.connect(baseUri + name).get().select("html > body > div > p").get(0).ownText());
+
+		} catch (Exception ex) {
+			logger.warn("", ex);
+			fail("unexpected exception");
+		}
+
+		// creation of a node invalidates fragments with data sources
+		try (final Tx tx = app.tx()) {
+
+			final User user3 = createTestNodes(User.class, 1).get(0);
+
+			user3.setProperties(user3.getSecurityContext(), new PropertyMap(AbstractNode.name, "user3"));
+			makePublic(user3);
+
+			tx.success();
+
+		} catch (Exception ex) {
+			logger.warn("", ex);
+			fail("unexpected exception");
+		}
+
+		try {
+
+			assertEquals(3, Jsoup.connect(baseUri + name).get().select("html > body > div > p").size());
+
+		} catch (Exception ex) {
+			logger.warn("", ex);
+			fail("unexpected exception");
+		}
+	}
+
+	@Test
+	public void testFragmentCacheRevokedGrant() {
+
+		final FragmentCache cache = FragmentCache.getInstance();
+		String name               = null;
+		Content content           = null;
+		User user                 = null;
+
+		try (final Tx tx = app.tx()) {
+
+			final Page doc = (Page) getDocument();
+			name = doc.getName();
+
+			user = createTestNode(User.class, new NodeAttribute(User.name, "user1"), new NodeAttribute(User.password, "password"));
+
+			// create dom tree
+			Element html = doc.createElement("html");
+			Element body = doc.createElement("body");
+			Element div  = doc.createElement("div");
+
+			((DOMElement) div).setProperties(((DOMElement) div).getSecurityContext(), new PropertyMap(DOMNode.fragmentCache, true));
+
+			content = (Content) doc.createTextNode("secret");
+
+			doc.appendChild(html);
+			html.appendChild(body);
+			body.appendChild(div);
+			div.appendChild(content);
+
+			for (final DOMNode node : toList(doc, (DOMNode)html, (DOMNode)body, (DOMNode)div)) {
+				node.setProperties(node.getSecurityContext(), new PropertyMap(DOMNode.visibleToAuthenticatedUsers, true));
+			}
+
+			// only the content node is protected by a grant
+			content.grant(Permission.read, user);
+
+			tx.success();
+
+		} catch (Exception ex) {
+
+			logger.warn("", ex);
+			fail("Unexpected exception");
+		}
+
+		try {
+
+			final long hits = getFragmentCacheHits(cache);
+
+			assertEquals("secret", Jsoup.connect(baseUri + name).header("X-User", "user1").header("X-Password", "password").get().select("html > body > div").get(0).ownText());
+			assertEquals("secret", Jsoup.connect(baseUri + name).header("X-User", "user1").header("X-Password", "password").get().select("html > body > div").get(0).ownText());
+
+			// second request is served from the cache
+			assertEquals(hits + 1, getFragmentCacheHits(cache));
+
+		} catch (Exception ex) {
+			logger.warn("", ex);
+			fail("unexpected exception");
+		}
+
+		// revoking the grant must invalidate the fragment
+		try (final Tx tx = app.tx()) {
+
+			content.revoke(Permission.read, user);
+			tx.success();
+
+		} catch (Exception ex) {
+			logger.warn("", ex);
+			fail("unexpected exception");
+		}
+
+		try {
+
+			assertEquals("", Jsoup.connect(baseUri + name).header("X-User", "user1").header("X-Password", "password").get().select("html > body > div").get(0).ownText());
+
+		} catch (Exception ex) {
+			logger.warn("", ex);
+			fail("unexpected exception");
+		}
+	}
+
+	@Test
+	public void testRenderLargePageAsync() {
+
+		final String text = StringUtils.repeat("äöü€-", 100000);
+		String name       = null;
+
+		try (final Tx tx = app.tx()) {
+
+			final Page doc = (Page) getDocument();
+			name = doc.getName();
+
+			// create dom tree with more output than the render buffer holds
+			Element html = doc.createElement("html");
+			Element body = doc.createElement("body");
+			Element div  = doc.createElement("div");
+
+			Content content = (Content) doc.createTextNode(text);
+
+			doc.appendChild(html);
+			html.appendChild(body);
+			body.appendChild(div);
+			div.appendChild(content);
+
+			makePublic(doc, html, body, div, content);
+
+			tx.success();
+
+		} catch (Exception ex) {
+
+			logger.warn("", ex);
+			fail("Unexpected exception");
+		}
+
+		try {
+
+			final Document parsedDocument = Jsoup.connect(baseUri + name).maxBodySize(0).get();
+
+			assertEquals(text, parsedDocument.select("html > body > div").get(0).ownText());
+
+		} catch (Exception ex) {
+			logger.warn("", ex);
+			fail("unexpected exception");
+		}
+	}
+
+	// ----- private methods -----
+	private long getFragmentCacheHits(final FragmentCache cache) {
+		return (Long)cache.getStatistics().get("hits");
+	}
 }
@@ -0,0 +1,216 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.servlet;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Tests the range and conditional request handling of {@link FileSender}.
+ */
+public class FileSenderTest {
+
+	private static final String ETAG          = "\"1a2b3c-3e8\"";
+	private static final String LAST_MODIFIED = "Tue, 03 Oct 2017 10:00:00 GMT";
+
+	@Test
+	public void testSimpleRanges() {
+
+		assertRanges(FileSender.parseRanges("bytes=0-99", 1000), 0, 99);
+		assertRanges(FileSender.parseRanges("bytes=900-", 1000), 900, 999);
+		assertRanges(FileSender.parseRanges("bytes=990-2000", 1000), 990, 999);
+		assertRanges(FileSender.parseRanges("bytes= 10 - 19 ", 1000), 10, 19);
+	}
+
+	@Test
+	public void testSuffixRanges() {
+
+		assertRanges(FileSender.parseRanges("bytes=-100", 1000), 900, 999);
+		assertRanges(FileSender.parseRanges("bytes=-1", 1000), 999, 999);
+
+		// a suffix longer than the file selects the whole file
+		assertRanges(FileSender.parseRanges("bytes=-5000", 1000), 0, 999);
+	}
+
+	@Test
+	public void testOverlappingAndAdjacentRanges() {
+
+		assertRanges(FileSender.parseRanges("bytes=0-99,50-149", 1000), 0, 149);
+		assertRanges(FileSender.parseRanges("bytes=0-99,100-199", 1000), 0, 199);
+		assertRanges(FileSender.parseRanges("bytes=0-499,-600", 1000), 0, 999);
+		assertRanges(FileSender.parseRanges("bytes=500-599,0-99,550-649", 1000), 0, 99, 500, 649);
+		assertRanges(FileSender.parseRanges("bytes=0-9,20-29", 1000), 0, 9, 20, 29);
+	}
+
+	@Test
+	public void testUnsatisfiableRanges() {
+
+		final List<long[]> ranges = FileSender.parseRanges("bytes=1000-1099", 1000);
+
+		// an empty list results in 416 Range Not Satisfiable
+		assertNotNull(ranges);
+		assertTrue(ranges.isEmpty());
+
+		assertTrue(FileSender.parseRanges("bytes=-0", 1000).isEmpty());
+		assertTrue(FileSender.parseRanges("bytes=0-", 0).isEmpty());
+
+		// satisfiable ranges are kept
+		assertRanges(FileSender.parseRanges("bytes=2000-2099,0-9", 1000), 0, 9);
+	}
+
+	@Test
+	public void testInvalidRanges() {
+
+		assertNull(FileSender.parseRanges("items=0-99", 1000));
+		assertNull(FileSender.parseRanges("bytes=abc", 1000));
+		assertNull(FileSender.parseRanges("bytes=-", 1000));
+		assertNull(FileSender.parseRanges("bytes=99-0", 1000));
+		assertNull(FileSender.parseRanges("bytes=0-9,x", 1000));
+	}
+
+	@Test
+	public void testTooManyRanges() {
+
+		// 32 disjoint ranges are accepted
+		assertEquals(32, FileSender.parseRanges(disjointRanges(32), 1000).size());
+
+		// more than 32 ranges are ignored and the whole file is sent
+		assertNull(FileSender.parseRanges(disjointRanges(33), 1000));
+
+		// the limit applies after adjacent ranges were merged
+		final StringBuilder buf = new StringBuilder("bytes=");
+		for (int i=0; i<100; i++) {
+
+			if (i > 0) {
+				buf.append(",");
+			}
+
+			buf.append(i).append("-").append(i);
+		}
+
+		assertRanges(FileSender.parseRanges(buf.toString(), 1000), 0, 99);
+	}
+
+	@Test
+	public void testIfRangeWithETag() {
+
+		final HttpServletResponse response = response(LAST_MODIFIED);
+
+		assertTrue(FileSender.isRangeApplicable(request(null, null), response, ETAG));
+		assertTrue(FileSender.isRangeApplicable(request("If-Range", ETAG), response, ETAG));
+		assertFalse(FileSender.isRangeApplicable(request("If-Range", "\"other\""), response, ETAG));
+
+		// weak entity tags never match in If-Range
+		assertFalse(FileSender.isRangeApplicable(request("If-Range", "W/" + ETAG), response, ETAG));
+
+		// no entity tag for the file
+		assertFalse(FileSender.isRangeApplicable(request("If-Range", ETAG), response, null));
+	}
+
+	@Test
+	public void testIfRangeWithDate() {
+
+		final HttpServletResponse response = response(LAST_MODIFIED);
+
+		assertTrue(FileSender.isRangeApplicable(request("If-Range", LAST_MODIFIED), response, ETAG));
+		assertFalse(FileSender.isRangeApplicable(request("If-Range", "Mon, 02 Oct 2017 10:00:00 GMT"), response, ETAG));
+		assertFalse(FileSender.isRangeApplicable(request("If-Range", LAST_MODIFIED), response(null), ETAG));
+	}
+
+	@Test
+	public void testIfNoneMatch() {
+
+		assertFalse(FileSender.matchesIfNoneMatch(request(null, null), ETAG));
+		assertTrue(FileSender.matchesIfNoneMatch(request("If-None-Match", ETAG), ETAG));
+		assertTrue(FileSender.matchesIfNoneMatch(request("If-None-Match", "W/" + ETAG), ETAG));
+		assertTrue(FileSender.matchesIfNoneMatch(request("If-None-Match", "\"other\", " + ETAG), ETAG));
+		assertTrue(FileSender.matchesIfNoneMatch(request("If-None-Match", "*"), ETAG));
+		assertFalse(FileSender.matchesIfNoneMatch(request("If-None-Match", "\"other\""), ETAG));
+		assertFalse(FileSender.matchesIfNoneMatch(request("If-None-Match", ETAG), null));
+	}
+
+	// ----- private methods -----
+	private void assertRanges(final List<long[]> ranges, final long... expected) {
+
+		assertNotNull("Ranges should be satisfiable", ranges);
+		assertEquals("Invalid number of ranges", expected.length / 2, ranges.size());
+
+		for (int i=0; i<ranges.size(); i++) {
+
+			assertArrayEquals(new long[] { expected[i*2], expected[i*2+1] }, ranges.get(i));
+		}
+	}
+
+	private String disjointRanges(final int count) {
+
+		final StringBuilder buf = new StringBuilder("bytes=");
+
+		for (int i=0; i<count; i++) {
+
+			if (i > 0) {
+				buf.append(",");
+			}
+
+			buf.append(i * 10).append("-").append(i * 10 + 4);
+		}
+
+		return buf.toString();
+	}
+
+	private HttpServletRequest request(final String name, final String value) {
+
+		final Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+
+		if (name != null) {
+			headers.put(name, value);
+		}
+
+		return (HttpServletRequest)Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] { HttpServletRequest.class }, (proxy, method, args) -> {
+
+			if ("getHeader".equals(method.getName())) {
+				return headers.get((String)args[0]);
+			}
+
+			throw new UnsupportedOperationException(method.getName());
+		});
+	}
+
+	private HttpServletResponse response(final String lastModified) {
+
+		return (HttpServletResponse)Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] { HttpServletResponse.class }, (proxy, method, args) -> {
+
+			if ("getHeader".equals(method.getName())) {
+				return "Last-Modified".equalsIgnoreCase((String)args[0]) ? lastModified : null;
+			}
+
+			throw new UnsupportedOperationException(method.getName());
+		});
+	}
+}
@@ -1553,6 +1553,26 @@ public class DeploymentTest extends StructrUiTest {
 		}
 	}
 
+	@Test
+	public void test34ManyPages() {
+
+		// setup, enough pages to be exported and imported by several threads
+		try (final Tx tx = app.tx()) {
+
+			for (int i=0; i<20; i++) {
+				Page.createSimplePage(securityContext, "test34-" + i);
+			}
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+			fail("Unexpected exception.");
+		}
+
+		// test
+		compare(calculateHash(), true);
+	}
+
 	// ----- private methods -----
 	private void compare(final String sourceHash, final boolean deleteTestDirectory) {
 		compare(sourceHash, deleteTestDirectory, true);
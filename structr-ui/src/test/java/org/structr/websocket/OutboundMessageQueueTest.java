@@ -0,0 +1,187 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.websocket;
+
+import java.lang.reflect.Proxy;
+import java.util.LinkedList;
+import java.util.List;
+import org.eclipse.jetty.websocket.api.RemoteEndpoint;
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Tests ordering, coalescing and dropping in {@link OutboundMessageQueue}.
+ */
+public class OutboundMessageQueueTest {
+
+	@Test
+	public void testSynchronousWrites() {
+
+		final TestRemote remote          = new TestRemote(true);
+		final OutboundMessageQueue queue = new OutboundMessageQueue(remote.getSession(), 10);
+
+		for (int i=0; i<100; i++) {
+			queue.offer("message" + i, null, true);
+		}
+
+		// callbacks invoked from within sendString must not recurse or reorder
+		assertEquals(100, remote.sent.size());
+		assertEquals("message0", remote.sent.get(0));
+		assertEquals("message99", remote.sent.get(99));
+		assertEquals(0, queue.size());
+	}
+
+	@Test
+	public void testSlowClient() {
+
+		final TestRemote remote          = new TestRemote(false);
+		final OutboundMessageQueue queue = new OutboundMessageQueue(remote.getSession(), 2);
+
+		// in flight, the queue is empty
+		queue.offer("first", null, true);
+
+		assertEquals(1, remote.sent.size());
+		assertEquals(0, queue.size());
+
+		// a newer update replaces the queued one
+		queue.offer("update1", "id:[name]", true);
+		queue.offer("update2", "id:[name]", true);
+
+		assertEquals(1, queue.size());
+
+		// the queue is full, the oldest broadcast message is dropped
+		queue.offer("broadcast1", null, true);
+		queue.offer("broadcast2", null, true);
+
+		assertEquals(2, queue.size());
+
+		// replies are never dropped
+		queue.offer("reply1", null, false);
+		queue.offer("reply2", null, false);
+
+		assertEquals(2, queue.size());
+
+		// no droppable message left, so a new broadcast message is dropped
+		queue.offer("broadcast3", null, true);
+
+		assertEquals(2, queue.size());
+
+		remote.complete();
+		remote.complete();
+		remote.complete();
+
+		assertEquals("[first, reply1, reply2]", remote.sent.toString());
+		assertEquals(0, queue.size());
+	}
+
+	@Test
+	public void testCoalescedMessageKeepsPosition() {
+
+		final TestRemote remote          = new TestRemote(false);
+		final OutboundMessageQueue queue = new OutboundMessageQueue(remote.getSession(), 10);
+
+		queue.offer("first", null, true);
+		queue.offer("update1", "id:[name]", true);
+		queue.offer("other", null, true);
+		queue.offer("update2", "id:[name]", true);
+
+		remote.complete();
+		remote.complete();
+		remote.complete();
+
+		assertEquals("[first, update2, other]", remote.sent.toString());
+	}
+
+	@Test
+	public void testFailedWriteClosesQueue() {
+
+		final TestRemote remote          = new TestRemote(false);
+		final OutboundMessageQueue queue = new OutboundMessageQueue(remote.getSession(), 10);
+
+		queue.offer("first", null, true);
+		queue.offer("second", null, false);
+
+		assertFalse(queue.isClosed());
+
+		remote.fail();
+
+		assertTrue(queue.isClosed());
+		assertEquals(0, queue.size());
+
+		queue.offer("third", null, false);
+
+		assertEquals(0, queue.size());
+		assertEquals("[first]", remote.sent.toString());
+	}
+
+	// ----- nested classes -----
+	private static class TestRemote {
+
+		private final List<WriteCallback> pending = new LinkedList<>();
+		private final List<String> sent           = new LinkedList<>();
+		private final boolean synchronous;
+
+		public TestRemote(final boolean synchronous) {
+			this.synchronous = synchronous;
+		}
+
+		public Session getSession() {
+
+			final RemoteEndpoint remote = (RemoteEndpoint)Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] { RemoteEndpoint.class }, (proxy, method, args) -> {
+
+				if ("sendString".equals(method.getName()) && args.length == 2) {
+
+					sent.add((String)args[0]);
+
+					if (synchronous) {
+
+						((WriteCallback)args[1]).writeSuccess();
+
+					} else {
+
+						pending.add((WriteCallback)args[1]);
+					}
+				}
+
+				return null;
+			});
+
+			return (Session)Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] { Session.class }, (proxy, method, args) -> {
+
+				if ("getRemote".equals(method.getName())) {
+					return remote;
+				}
+
+				return null;
+			});
+		}
+
+		public void complete() {
+			pending.remove(0).writeSuccess();
+		}
+
+		public void fail() {
+			pending.remove(0).writeFailed(new RuntimeException("Connection lost"));
+		}
+	}
+}